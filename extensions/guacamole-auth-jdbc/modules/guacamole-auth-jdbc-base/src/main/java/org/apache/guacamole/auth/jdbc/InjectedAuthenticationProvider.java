@@ -21,6 +21,9 @@ package org.apache.guacamole.auth.jdbc;
 
 import com.google.inject.Injector;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionHistoryWriter;
+import org.apache.guacamole.auth.jdbc.tunnel.GuacdHealthProber;
+import org.apache.guacamole.auth.jdbc.tunnel.GuacdSocketPool;
 import org.apache.guacamole.net.auth.AbstractAuthenticationProvider;
 import org.apache.guacamole.net.auth.Credentials;
 import org.apache.guacamole.net.auth.UserContext;
@@ -42,6 +45,24 @@ public abstract class InjectedAuthenticationProvider extends AbstractAuthenticat
      */
     private final AuthenticationProviderService authProviderService;
 
+    /**
+     * The service writing connection history in the background, which must
+     * be shut down when this AuthenticationProvider is unloaded.
+     */
+    private final ConnectionHistoryWriter connectionHistoryWriter;
+
+    /**
+     * The service probing the health of guacd instances in the background,
+     * which must be stopped when this AuthenticationProvider is unloaded.
+     */
+    private final GuacdHealthProber guacdHealthProber;
+
+    /**
+     * The pool of sockets connected to guacd in advance, which must be
+     * closed when this AuthenticationProvider is unloaded.
+     */
+    private final GuacdSocketPool guacdSocketPool;
+
     /**
      * Creates a new AuthenticationProvider that delegates all calls to an
      * underlying AuthenticationProviderService. The behavior of the
@@ -67,6 +88,9 @@ public abstract class InjectedAuthenticationProvider extends AbstractAuthenticat
 
         Injector injector = injectorProvider.get();
         authProviderService = injector.getInstance(authProviderServiceClass);
+        connectionHistoryWriter = injector.getInstance(ConnectionHistoryWriter.class);
+        guacdHealthProber = injector.getInstance(GuacdHealthProber.class);
+        guacdSocketPool = injector.getInstance(GuacdSocketPool.class);
 
     }
 
@@ -90,4 +114,18 @@ public abstract class InjectedAuthenticationProvider extends AbstractAuthenticat
                 authenticatedUser, credentials);
     }
 
+    @Override
+    public void shutdown() {
+
+        // Write any connection history still queued
+        connectionHistoryWriter.shutdown();
+
+        // Stop probing guacd health
+        guacdHealthProber.shutdown();
+
+        // Close all pooled guacd sockets
+        guacdSocketPool.shutdown();
+
+    }
+
 }
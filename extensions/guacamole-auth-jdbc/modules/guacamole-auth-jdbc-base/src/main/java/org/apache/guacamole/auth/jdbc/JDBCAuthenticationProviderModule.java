@@ -20,11 +20,14 @@
 package org.apache.guacamole.auth.jdbc;
 
 import com.google.inject.Scopes;
+import com.google.inject.multibindings.Multibinder;
 import org.apache.guacamole.auth.jdbc.user.ModeledUserContext;
 import org.apache.guacamole.auth.jdbc.connectiongroup.RootConnectionGroup;
 import org.apache.guacamole.auth.jdbc.connectiongroup.ModeledConnectionGroup;
 import org.apache.guacamole.auth.jdbc.connectiongroup.ConnectionGroupDirectory;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionDirectory;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionHistoryWriter;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionParameterCache;
 import org.apache.guacamole.auth.jdbc.connection.ModeledGuacamoleConfiguration;
 import org.apache.guacamole.auth.jdbc.connection.ModeledConnection;
 import org.apache.guacamole.auth.jdbc.permission.SystemPermissionSet;
@@ -36,12 +39,21 @@ import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordMapper;
 import org.apache.guacamole.auth.jdbc.permission.SystemPermissionMapper;
 import org.apache.guacamole.auth.jdbc.user.UserMapper;
 import org.apache.guacamole.auth.jdbc.connectiongroup.ConnectionGroupService;
+import org.apache.guacamole.auth.jdbc.connectiongroup.ConnectionGroupTreeService;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionService;
+import org.apache.guacamole.auth.jdbc.tunnel.BalancingStrategy;
+import org.apache.guacamole.auth.jdbc.tunnel.BalancingStrategyService;
 import org.apache.guacamole.auth.jdbc.tunnel.GuacamoleTunnelService;
+import org.apache.guacamole.auth.jdbc.tunnel.GuacdHealthProber;
+import org.apache.guacamole.auth.jdbc.tunnel.GuacdSocketPool;
+import org.apache.guacamole.auth.jdbc.tunnel.LatencyAwareBalancingStrategy;
+import org.apache.guacamole.auth.jdbc.tunnel.LeastLoadedBalancingStrategy;
+import org.apache.guacamole.auth.jdbc.tunnel.PowerOfTwoChoicesBalancingStrategy;
 import org.apache.guacamole.auth.jdbc.security.PasswordEncryptionService;
 import org.apache.guacamole.auth.jdbc.security.SHA256PasswordEncryptionService;
 import org.apache.guacamole.auth.jdbc.security.SaltService;
 import org.apache.guacamole.auth.jdbc.security.SecureRandomSaltService;
+import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionCache;
 import org.apache.guacamole.auth.jdbc.permission.SystemPermissionService;
 import org.apache.guacamole.auth.jdbc.user.UserService;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
@@ -59,6 +71,7 @@ import org.apache.guacamole.auth.jdbc.activeconnection.ActiveConnectionPermissio
 import org.apache.guacamole.auth.jdbc.activeconnection.ActiveConnectionPermissionSet;
 import org.apache.guacamole.auth.jdbc.activeconnection.ActiveConnectionService;
 import org.apache.guacamole.auth.jdbc.activeconnection.TrackedActiveConnection;
+import org.apache.guacamole.auth.jdbc.base.EffectiveGroupCache;
 import org.apache.guacamole.auth.jdbc.base.EntityMapper;
 import org.apache.guacamole.auth.jdbc.base.EntityService;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionParameterMapper;
@@ -78,6 +91,7 @@ import org.apache.guacamole.auth.jdbc.sharingprofile.ModeledSharingProfile;
 import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileDirectory;
 import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileMapper;
 import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileParameterMapper;
+import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileParameterCache;
 import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileService;
 import org.apache.guacamole.auth.jdbc.tunnel.RestrictedGuacamoleTunnelService;
 import org.apache.guacamole.auth.jdbc.user.PasswordRecordMapper;
@@ -179,16 +193,24 @@ public class JDBCAuthenticationProviderModule extends MyBatisModule {
         bind(ActiveConnectionPermissionService.class);
         bind(ConnectionGroupPermissionService.class);
         bind(ConnectionGroupService.class);
+        bind(ConnectionGroupTreeService.class);
         bind(ConnectionPermissionService.class);
+        bind(ConnectionHistoryWriter.class);
+        bind(ConnectionParameterCache.class);
         bind(ConnectionSharingService.class);
         bind(ConnectionService.class);
+        bind(EffectiveGroupCache.class);
         bind(EntityService.class);
+        bind(GuacdHealthProber.class);
+        bind(GuacdSocketPool.class);
         bind(GuacamoleTunnelService.class).to(RestrictedGuacamoleTunnelService.class);
+        bind(ObjectPermissionCache.class);
         bind(PasswordEncryptionService.class).to(SHA256PasswordEncryptionService.class);
         bind(PasswordPolicyService.class);
         bind(SaltService.class).to(SecureRandomSaltService.class);
         bind(SharedConnectionMap.class).to(HashSharedConnectionMap.class).in(Scopes.SINGLETON);
         bind(ShareKeyGenerator.class).to(SecureRandomShareKeyGenerator.class).in(Scopes.SINGLETON);
+        bind(SharingProfileParameterCache.class);
         bind(SharingProfilePermissionService.class);
         bind(SharingProfileService.class);
         bind(SystemPermissionService.class);
@@ -196,6 +218,13 @@ public class JDBCAuthenticationProviderModule extends MyBatisModule {
         bind(UserGroupPermissionService.class);
         bind(UserPermissionService.class);
         bind(UserService.class);
+
+        // Bind available balancing strategies
+        Multibinder<BalancingStrategy> balancingStrategies = Multibinder.newSetBinder(binder(), BalancingStrategy.class);
+        balancingStrategies.addBinding().to(LatencyAwareBalancingStrategy.class);
+        balancingStrategies.addBinding().to(LeastLoadedBalancingStrategy.class);
+        balancingStrategies.addBinding().to(PowerOfTwoChoicesBalancingStrategy.class);
+        bind(BalancingStrategyService.class);
         
     }
 
@@ -22,6 +22,7 @@ package org.apache.guacamole.auth.jdbc;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.environment.LocalEnvironment;
 import org.apache.guacamole.auth.jdbc.security.PasswordPolicy;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
 import org.apache.ibatis.session.SqlSession;
 
 /**
@@ -29,6 +30,47 @@ import org.apache.ibatis.session.SqlSession;
  * intended for use within JDBC based authentication providers.
  */
 public abstract class JDBCEnvironment extends LocalEnvironment {
+
+    /**
+     * The default maximum number of object identifiers that may be included
+     * within any single query.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The default number of sockets kept connected to each guacd instance in
+     * use.
+     */
+    public static final int DEFAULT_GUACD_POOL_SIZE = 2;
+
+    /**
+     * The default number of seconds after connecting that a pooled guacd
+     * socket is closed and replaced if it has not been used.
+     */
+    public static final int DEFAULT_GUACD_POOL_SOCKET_LIFETIME = 8;
+
+    /**
+     * The number of sockets kept connected to each guacd instance in use,
+     * ready for new connections. Zero disables pooling entirely.
+     */
+    public static final IntegerGuacamoleProperty GUACD_POOL_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-pool-size"; }
+
+    };
+
+    /**
+     * The number of seconds after connecting that a pooled guacd socket is
+     * closed and replaced if it has not been used. This must be less than
+     * the 15 second handshake timeout of guacd.
+     */
+    public static final IntegerGuacamoleProperty GUACD_POOL_SOCKET_LIFETIME = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-pool-socket-lifetime"; }
+
+    };
     
     /**
      * Constructs a new JDBCEnvironment using an underlying LocalEnviroment to
@@ -168,4 +210,56 @@ public abstract class JDBCEnvironment extends LocalEnvironment {
      */
     public abstract boolean autoCreateAbsentAccounts() throws GuacamoleException;
 
+    /**
+     * Returns the maximum number of object identifiers that may be included
+     * within any single query. Requests involving more identifiers than this
+     * are split across multiple queries, avoiding the limits that databases
+     * place on the number of parameters within a single statement. By
+     * default, this is DEFAULT_BATCH_SIZE.
+     *
+     * @return
+     *     The maximum number of object identifiers that may be included
+     *     within any single query.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the batch size.
+     */
+    public int getBatchSize() throws GuacamoleException {
+        return DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Returns the number of sockets which should be kept connected to each
+     * guacd instance in use, as specified by the "guacd-pool-size" property.
+     * By default, this is DEFAULT_GUACD_POOL_SIZE. Zero disables pooling.
+     *
+     * @return
+     *     The number of sockets which should be kept connected to each guacd
+     *     instance in use.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public int getGuacdPoolSize() throws GuacamoleException {
+        return getProperty(GUACD_POOL_SIZE, DEFAULT_GUACD_POOL_SIZE);
+    }
+
+    /**
+     * Returns the number of seconds after connecting that a pooled guacd
+     * socket should be closed and replaced if it has not been used, as
+     * specified by the "guacd-pool-socket-lifetime" property. By default,
+     * this is DEFAULT_GUACD_POOL_SOCKET_LIFETIME.
+     *
+     * @return
+     *     The number of seconds that an unused pooled guacd socket should be
+     *     kept connected.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public int getGuacdPoolSocketLifetime() throws GuacamoleException {
+        return getProperty(GUACD_POOL_SOCKET_LIFETIME,
+                DEFAULT_GUACD_POOL_SOCKET_LIFETIME);
+    }
+
 }
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.base;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache of user group membership, allowing the effective groups of any entity
+ * to be determined without recursively querying the database. The direct
+ * parent groups of every enabled user group are loaded at once into an
+ * in-memory graph, while the direct parent groups of each entity are loaded
+ * and cached as needed. The transitive closure of these memberships is then
+ * computed in memory.
+ *
+ * Cached memberships must be invalidated through invalidate() whenever group
+ * membership changes, or whenever user groups are created, modified, or
+ * deleted. As with ParameterCache, nothing loaded shortly after an
+ * invalidation is cached, such that data read before the invalidating
+ * transaction commits is not retained. Changes made directly within the
+ * database, or by other Guacamole instances sharing the database, take effect
+ * once cached entries expire, within one minute.
+ */
+@Singleton
+public class EffectiveGroupCache {
+
+    /**
+     * The number of milliseconds that cached memberships are used before they
+     * are reloaded from the database. As with ObjectPermissionCache and
+     * ParameterCache, this bounds how long a membership revoked by another
+     * Guacamole instance continues to grant the permissions of that group.
+     */
+    private static final long ENTRY_LIFETIME = 60000;
+
+    /**
+     * The maximum number of entities whose direct parent groups are cached.
+     */
+    private static final int MAX_ENTITIES = 10000;
+
+    /**
+     * The number of nanoseconds after an invalidation during which loaded
+     * memberships are not cached.
+     */
+    private static final long INVALIDATION_GRACE_PERIOD = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The direct parent groups of every enabled user group.
+     */
+    private static class GroupGraph {
+
+        /**
+         * The identifiers of the enabled, direct parent groups of each
+         * enabled user group, indexed by the identifier of that group.
+         */
+        private final Map<String, Set<String>> parents;
+
+        /**
+         * The time after which this graph must be reloaded, in milliseconds
+         * since midnight of January 1, 1970 UTC.
+         */
+        private final long expires;
+
+        /**
+         * Creates a new GroupGraph from the given memberships.
+         *
+         * @param memberships
+         *     Every enabled user group paired with each of its enabled,
+         *     direct parent groups, as returned by
+         *     EntityMapper.selectGroupMemberships().
+         */
+        public GroupGraph(Collection<GroupMembershipModel> memberships) {
+
+            parents = new HashMap<String, Set<String>>();
+            for (GroupMembershipModel membership : memberships) {
+
+                // Every enabled group is present, even if it has no parents
+                Set<String> groupParents = parents.get(membership.getGroupIdentifier());
+                if (groupParents == null) {
+                    groupParents = new HashSet<String>();
+                    parents.put(membership.getGroupIdentifier(), groupParents);
+                }
+
+                if (membership.getParentIdentifier() != null)
+                    groupParents.add(membership.getParentIdentifier());
+
+            }
+
+            expires = System.currentTimeMillis() + ENTRY_LIFETIME;
+
+        }
+
+    }
+
+    /**
+     * Mapper for retrieving group memberships.
+     */
+    @Inject
+    private EntityMapper entityMapper;
+
+    /**
+     * The current membership graph of all enabled user groups, or null if
+     * the graph must be loaded.
+     */
+    private final AtomicReference<GroupGraph> graph = new AtomicReference<GroupGraph>();
+
+    /**
+     * The identifiers of the enabled, direct parent groups of each entity,
+     * indexed by entity ID.
+     */
+    private final Cache<Integer, Set<String>> parentGroups = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTITIES)
+            .expireAfterWrite(ENTRY_LIFETIME, TimeUnit.MILLISECONDS)
+            .build();
+
+    /**
+     * The number of times cached memberships have been invalidated. Loaded
+     * memberships are only cached if this value has not changed since the
+     * load began.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The value of System.nanoTime() at the time of the most recent
+     * invalidation.
+     */
+    private volatile long lastInvalidation = System.nanoTime() - INVALIDATION_GRACE_PERIOD;
+
+    /**
+     * The number of lookups of direct parent groups satisfied by the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups of direct parent groups which required a
+     * database query.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns whether memberships which began loading when the invalidation
+     * version was the given value may be cached.
+     *
+     * @param loadedVersion
+     *     The invalidation version at the time the load began.
+     *
+     * @return
+     *     true if the loaded memberships may be cached, false otherwise.
+     */
+    private boolean isCacheable(long loadedVersion) {
+        return version.get() == loadedVersion
+                && System.nanoTime() - lastInvalidation >= INVALIDATION_GRACE_PERIOD;
+    }
+
+    /**
+     * Returns the current membership graph of all enabled user groups,
+     * loading that graph from the database if necessary.
+     *
+     * @return
+     *     The current membership graph of all enabled user groups.
+     */
+    private GroupGraph getGraph() {
+
+        GroupGraph current = graph.get();
+        if (current != null && System.currentTimeMillis() < current.expires)
+            return current;
+
+        long loadedVersion = version.get();
+        GroupGraph loaded = new GroupGraph(entityMapper.selectGroupMemberships());
+
+        // Cache the graph, backing out if invalidated concurrently
+        if (isCacheable(loadedVersion) && graph.compareAndSet(current, loaded)
+                && version.get() != loadedVersion)
+            graph.compareAndSet(loaded, null);
+
+        return loaded;
+
+    }
+
+    /**
+     * Returns the identifiers of the enabled user groups which directly
+     * contain the given entity, loading those groups from the database if
+     * they are not cached.
+     *
+     * @param entity
+     *     The entity whose direct parent groups should be returned.
+     *
+     * @return
+     *     The identifiers of the enabled user groups which directly contain
+     *     the given entity.
+     */
+    private Set<String> getParentGroups(EntityModel entity) {
+
+        Integer entityID = entity.getEntityID();
+        Set<String> cached = parentGroups.getIfPresent(entityID);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        long loadedVersion = version.get();
+        Set<String> loaded = Collections.unmodifiableSet(
+                entityMapper.selectParentGroupIdentifiers(entity));
+
+        // Cache the groups, backing out if invalidated concurrently
+        if (isCacheable(loadedVersion)) {
+            parentGroups.put(entityID, loaded);
+            if (version.get() != loadedVersion)
+                parentGroups.invalidate(entityID);
+        }
+
+        return loaded;
+
+    }
+
+    /**
+     * Returns the set of all group identifiers of which the given entity is a
+     * member, taking into account the given collection of known group
+     * memberships which are not necessarily defined within the database. Only
+     * enabled groups are considered, and membership is not inherited through
+     * disabled groups.
+     *
+     * @param entity
+     *     The entity whose effective groups should be returned.
+     *
+     * @param effectiveGroups
+     *     The identifiers of any known effective groups that should be taken
+     *     into account, such as those defined externally to the database.
+     *
+     * @return
+     *     The set of identifiers of all groups that the given entity is a
+     *     member of, including those where membership is inherited through
+     *     membership in other groups.
+     */
+    public Set<String> getEffectiveGroups(EntityModel entity,
+            Collection<String> effectiveGroups) {
+
+        Map<String, Set<String>> parents = getGraph().parents;
+
+        Set<String> identifiers = new HashSet<String>();
+        Deque<String> pending = new ArrayDeque<String>();
+
+        // Start with the groups directly containing the entity
+        for (String identifier : getParentGroups(entity)) {
+            if (identifiers.add(identifier))
+                pending.add(identifier);
+        }
+
+        // Include any externally-declared groups defined within the database
+        for (String identifier : effectiveGroups) {
+            if (parents.containsKey(identifier) && identifiers.add(identifier))
+                pending.add(identifier);
+        }
+
+        // Add all groups containing groups already found
+        while (!pending.isEmpty()) {
+
+            Set<String> groupParents = parents.get(pending.remove());
+            if (groupParents == null)
+                continue;
+
+            for (String identifier : groupParents) {
+                if (identifiers.add(identifier))
+                    pending.add(identifier);
+            }
+
+        }
+
+        return identifiers;
+
+    }
+
+    /**
+     * Discards all cached memberships, such that memberships are reloaded
+     * from the database when next needed.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        lastInvalidation = System.nanoTime();
+        graph.set(null);
+        parentGroups.invalidateAll();
+    }
+
+    /**
+     * Returns the number of lookups of the direct parent groups of an entity
+     * which were satisfied by the cache.
+     *
+     * @return
+     *     The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups of the direct parent groups of an entity
+     * which required a database query.
+     *
+     * @return
+     *     The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+}
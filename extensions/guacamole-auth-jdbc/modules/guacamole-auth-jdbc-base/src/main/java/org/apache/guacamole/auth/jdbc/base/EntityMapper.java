@@ -77,4 +77,29 @@ public interface EntityMapper {
             @Param("effectiveGroups") Collection<String> effectiveGroups,
             @Param("recursive") boolean recursive);
 
+    /**
+     * Returns the identifiers of all enabled user groups which directly
+     * contain the given entity as a member. Groups which contain the entity
+     * only through membership in other groups are not included.
+     *
+     * @param entity
+     *     The entity whose parent groups should be retrieved.
+     *
+     * @return
+     *     The identifiers of all enabled user groups which directly contain
+     *     the given entity.
+     */
+    Set<String> selectParentGroupIdentifiers(@Param("entity") EntityModel entity);
+
+    /**
+     * Returns every enabled user group paired with each of its enabled,
+     * direct parent groups. Groups having no enabled parent groups are
+     * included once, with a null parent.
+     *
+     * @return
+     *     A collection of all direct membership relations between enabled
+     *     user groups.
+     */
+    Collection<GroupMembershipModel> selectGroupMemberships();
+
 }
@@ -22,8 +22,6 @@ package org.apache.guacamole.auth.jdbc.base;
 import com.google.inject.Inject;
 import java.util.Collection;
 import java.util.Set;
-import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
-import org.apache.ibatis.session.SqlSession;
 import org.mybatis.guice.transactional.Transactional;
 
 /**
@@ -33,22 +31,10 @@ import org.mybatis.guice.transactional.Transactional;
 public class EntityService {
 
     /**
-     * The Guacamole server environment.
+     * Cache of user group membership.
      */
     @Inject
-    private JDBCEnvironment environment;
-
-    /**
-     * Mapper for Entity model objects.
-     */
-    @Inject
-    private EntityMapper entityMapper;
-
-    /**
-     * The current SQL session used by MyBatis.
-     */
-    @Inject
-    private SqlSession sqlSession;
+    private EffectiveGroupCache effectiveGroupCache;
 
     /**
      * Returns the set of all group identifiers of which the given entity is a
@@ -60,6 +46,10 @@ public class EntityService {
      * of that group will be included in the returned set even if the current
      * user lacks "READ" permission for that group.
      *
+     * Group membership is resolved using the EffectiveGroupCache, and thus
+     * requires at most two simple queries regardless of the depth of group
+     * nesting.
+     *
      * @param entity
      *     The entity whose effective groups should be returned.
      *
@@ -76,22 +66,8 @@ public class EntityService {
     public Set<String> retrieveEffectiveGroups(ModeledPermissions<? extends EntityModel> entity,
             Collection<String> effectiveGroups) {
 
-        // Retrieve the effective user groups of the given entity, recursively if possible
-        boolean recursive = environment.isRecursiveQuerySupported(sqlSession);
-        Set<String> identifiers = entityMapper.selectEffectiveGroupIdentifiers(entity.getModel(), effectiveGroups, recursive);
-
-        // If the set of user groups retrieved was not produced recursively,
-        // manually repeat the query to expand the set until all effective
-        // groups have been found
-        if (!recursive && !identifiers.isEmpty()) {
-            Set<String> previousIdentifiers;
-            do {
-                previousIdentifiers = identifiers;
-                identifiers = entityMapper.selectEffectiveGroupIdentifiers(entity.getModel(), previousIdentifiers, false);
-            } while (identifiers.size() > previousIdentifiers.size());
-        }
-
-        return identifiers;
+        // Resolve all effective groups from cached group membership
+        return effectiveGroupCache.getEffectiveGroups(entity.getModel(), effectiveGroups);
 
     }
 
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.base;
+
+/**
+ * A single relation between an enabled user group and one of its enabled,
+ * direct parent groups.
+ */
+public class GroupMembershipModel {
+
+    /**
+     * The identifier of the member group.
+     */
+    private String groupIdentifier;
+
+    /**
+     * The identifier of the parent group, or null if the member group has no
+     * enabled parent groups.
+     */
+    private String parentIdentifier;
+
+    /**
+     * Creates a new, empty GroupMembershipModel.
+     */
+    public GroupMembershipModel() {
+    }
+
+    /**
+     * Returns the identifier of the member group.
+     *
+     * @return
+     *     The identifier of the member group.
+     */
+    public String getGroupIdentifier() {
+        return groupIdentifier;
+    }
+
+    /**
+     * Sets the identifier of the member group.
+     *
+     * @param groupIdentifier
+     *     The identifier of the member group.
+     */
+    public void setGroupIdentifier(String groupIdentifier) {
+        this.groupIdentifier = groupIdentifier;
+    }
+
+    /**
+     * Returns the identifier of the parent group.
+     *
+     * @return
+     *     The identifier of the parent group, or null if the member group has
+     *     no enabled parent groups.
+     */
+    public String getParentIdentifier() {
+        return parentIdentifier;
+    }
+
+    /**
+     * Sets the identifier of the parent group.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent group, or null if the member group has
+     *     no enabled parent groups.
+     */
+    public void setParentIdentifier(String parentIdentifier) {
+        this.parentIdentifier = parentIdentifier;
+    }
+
+}
@@ -19,13 +19,18 @@
 
 package org.apache.guacamole.auth.jdbc.base;
 
+import com.google.common.collect.Iterables;
+import com.google.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
 import org.apache.guacamole.auth.jdbc.user.ModeledAuthenticatedUser;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
+import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionCache;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionModel;
 import org.apache.guacamole.auth.jdbc.user.UserModel;
@@ -65,6 +70,19 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
         ObjectPermission.Type.DELETE,
         ObjectPermission.Type.ADMINISTER
     };
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    /**
+     * Cache of the object permissions effectively granted to each entity,
+     * invalidated whenever objects are created, renamed, or deleted.
+     */
+    @Inject
+    private ObjectPermissionCache permissionCache;
     
     /**
      * Returns an instance of a mapper for the type of object used by this
@@ -393,17 +411,22 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
         if (identifiers.isEmpty())
             return Collections.<InternalType>emptyList();
 
-        Collection<ModelType> objects;
+        Collection<ModelType> objects = new ArrayList<ModelType>(identifiers.size());
 
-        // Bypass permission checks if the user is privileged
-        if (user.isPrivileged())
-            objects = getObjectMapper().select(identifiers);
+        // Query in batches, as databases limit the size of any one query
+        for (List<String> batch : Iterables.partition(identifiers, environment.getBatchSize())) {
+
+            // Bypass permission checks if the user is privileged
+            if (user.isPrivileged())
+                objects.addAll(getObjectMapper().select(batch));
+
+            // Otherwise only return explicitly readable identifiers
+            else
+                objects.addAll(getObjectMapper().selectReadable(user.getUser().getModel(),
+                        batch, user.getEffectiveUserGroups()));
+
+        }
 
-        // Otherwise only return explicitly readable identifiers
-        else
-            objects = getObjectMapper().selectReadable(user.getUser().getModel(),
-                    identifiers, user.getEffectiveUserGroups());
-        
         // Return collection of requested objects
         return getObjectInstances(user, objects);
         
@@ -471,8 +494,10 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
 
         // Add implicit permissions
         Collection<ObjectPermissionModel> implicitPermissions = getImplicitPermissions(user, model);
-        if (!implicitPermissions.isEmpty())
+        if (!implicitPermissions.isEmpty()) {
             getPermissionMapper().insert(implicitPermissions);
+            permissionCache.invalidate(user.getUser().getModel());
+        }
 
         // Add any arbitrary attributes
         if (model.hasArbitraryAttributes())
@@ -488,8 +513,9 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
 
         beforeDelete(user, identifier);
         
-        // Delete object
+        // Delete object (and, implicitly, all permissions affecting it)
         getObjectMapper().delete(identifier);
+        permissionCache.invalidateAll();
 
     }
 
@@ -501,8 +527,10 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
         ModelType model = object.getModel();
         beforeUpdate(user, object, model);
         
-        // Update object
+        // Update object, which may rename the object affected by existing
+        // permissions
         getObjectMapper().update(model);
+        permissionCache.invalidateAll();
 
         // Replace any existing arbitrary attributes
         getObjectMapper().deleteAttributes(model);
@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.base;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+import com.google.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+
+/**
+ * Cache of the parameters associated with each object of a particular type,
+ * such as connections or sharing profiles, indexed by object identifier.
+ * Cached parameters must be invalidated through invalidate() whenever they
+ * are modified, and otherwise expire after a fixed lifetime, such that
+ * changes made outside this Guacamole instance are eventually seen. At most
+ * MAX_ENTRIES objects have their parameters cached at any one time.
+ *
+ * Each invalidation increments the version of the cache. Parameters which
+ * were loaded while an invalidation occurred, or shortly after an
+ * invalidation, are returned but not cached, as the transaction which made
+ * the change may not yet have been committed.
+ */
+public abstract class ParameterCache {
+
+    /**
+     * The amount of time that cached parameters remain valid, in
+     * milliseconds.
+     */
+    private static final long ENTRY_LIFETIME = 60000;
+
+    /**
+     * The maximum number of objects whose parameters are cached.
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * The amount of time after any invalidation during which loaded
+     * parameters are not cached, in nanoseconds.
+     */
+    private static final long INVALIDATION_GRACE_PERIOD = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    /**
+     * All cached parameters, indexed by object identifier.
+     */
+    private final Cache<String, Map<String, String>> entries = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .expireAfterWrite(ENTRY_LIFETIME, TimeUnit.MILLISECONDS)
+            .build();
+
+    /**
+     * The current version of this cache, incremented by each invalidation.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The time of the most recent invalidation, as returned by
+     * System.nanoTime().
+     */
+    private volatile long lastInvalidation = System.nanoTime() - INVALIDATION_GRACE_PERIOD;
+
+    /**
+     * The number of requests for parameters which were satisfied by this
+     * cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of requests for parameters which required the parameters
+     * to be loaded from the database.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The listener to notify of invalidations, or null if no such listener
+     * has been bound.
+     */
+    private ParameterInvalidationListener listener;
+
+    /**
+     * Sets the listener which should be notified whenever parameters are
+     * invalidated. This listener is injected only if an implementation has
+     * been explicitly bound.
+     *
+     * @param listener
+     *     The listener to notify of invalidations.
+     */
+    @Inject(optional = true)
+    public void setInvalidationListener(ParameterInvalidationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the parameters of the object having the given identifier from the
+     * database.
+     *
+     * @param identifier
+     *     The identifier of the object whose parameters should be loaded.
+     *
+     * @return
+     *     A map of all parameter name/value pairs associated with the object.
+     *     This map will be empty if no such object exists.
+     */
+    protected abstract Map<String, String> load(String identifier);
+
+    /**
+     * Loads the parameters of all objects having the given identifiers from
+     * the database. Implementations should override this function to load
+     * all parameters within a single query. By default, the parameters of
+     * each object are loaded individually through load(). The number of
+     * identifiers given will never exceed the batch size returned by
+     * JDBCEnvironment.getBatchSize().
+     *
+     * @param identifiers
+     *     The identifiers of the objects whose parameters should be loaded.
+     *
+     * @return
+     *     A map of object identifier to the parameter name/value pairs
+     *     associated with that object. Objects having no parameters may be
+     *     omitted.
+     */
+    protected Map<String, Map<String, String>> loadAll(Collection<String> identifiers) {
+
+        Map<String, Map<String, String>> parameters = new HashMap<String, Map<String, String>>();
+        for (String identifier : identifiers)
+            parameters.put(identifier, load(identifier));
+
+        return parameters;
+
+    }
+
+    /**
+     * Returns the cached parameters of the object having the given
+     * identifier, if those parameters are cached and have not expired.
+     *
+     * @param identifier
+     *     The identifier of the object whose parameters should be returned.
+     *
+     * @return
+     *     The cached parameters, or null if the parameters are not cached.
+     */
+    private Map<String, String> getCached(String identifier) {
+        return entries.getIfPresent(identifier);
+    }
+
+    /**
+     * Caches the given freshly-loaded parameters, unless this cache has been
+     * invalidated since or shortly before those parameters were loaded.
+     *
+     * @param identifier
+     *     The identifier of the object whose parameters were loaded.
+     *
+     * @param parameters
+     *     The loaded parameters.
+     *
+     * @param loadedVersion
+     *     The version of this cache at the time loading began.
+     */
+    private void store(String identifier, Map<String, String> parameters,
+            long loadedVersion) {
+
+        // Do not cache parameters which may predate a recent change
+        if (version.get() != loadedVersion
+                || System.nanoTime() - lastInvalidation < INVALIDATION_GRACE_PERIOD)
+            return;
+
+        // Cache the parameters, backing out if invalidated concurrently
+        entries.put(identifier, parameters);
+        if (version.get() != loadedVersion)
+            entries.asMap().remove(identifier, parameters);
+
+    }
+
+    /**
+     * Returns the parameters of the object having the given identifier,
+     * loading those parameters from the database if they are not cached.
+     *
+     * @param identifier
+     *     The identifier of the object whose parameters should be returned.
+     *
+     * @return
+     *     An unmodifiable map of all parameter name/value pairs associated
+     *     with the object. This map will be empty if no such object exists.
+     */
+    public Map<String, String> get(String identifier) {
+
+        Map<String, String> parameters = getCached(identifier);
+        if (parameters != null) {
+            hits.incrementAndGet();
+            return parameters;
+        }
+
+        // Load and cache parameters
+        misses.incrementAndGet();
+        long loadedVersion = version.get();
+        parameters = Collections.unmodifiableMap(load(identifier));
+        store(identifier, parameters, loadedVersion);
+
+        return parameters;
+
+    }
+
+    /**
+     * Returns the parameters of all objects having the given identifiers.
+     * The parameters of all objects which are not cached are loaded together
+     * through loadAll(), in batches no larger than the batch size returned by
+     * JDBCEnvironment.getBatchSize().
+     *
+     * @param identifiers
+     *     The identifiers of the objects whose parameters should be returned.
+     *
+     * @return
+     *     A map of object identifier to an unmodifiable map of all parameter
+     *     name/value pairs associated with that object. Every given
+     *     identifier is present within the returned map.
+     *
+     * @throws GuacamoleException
+     *     If the batch size cannot be read from guacamole.properties.
+     */
+    public Map<String, Map<String, String>> getAll(Collection<String> identifiers)
+            throws GuacamoleException {
+
+        Map<String, Map<String, String>> parameters =
+                new HashMap<String, Map<String, String>>(identifiers.size());
+
+        // Use cached parameters where possible
+        List<String> uncached = new ArrayList<String>();
+        for (String identifier : identifiers) {
+            Map<String, String> cached = getCached(identifier);
+            if (cached != null)
+                parameters.put(identifier, cached);
+            else
+                uncached.add(identifier);
+        }
+
+        hits.addAndGet(parameters.size());
+        if (uncached.isEmpty())
+            return parameters;
+
+        // Load everything else in as few queries as the database allows
+        misses.addAndGet(uncached.size());
+        for (List<String> batch : Iterables.partition(uncached, environment.getBatchSize())) {
+
+            long loadedVersion = version.get();
+            Map<String, Map<String, String>> loaded = loadAll(batch);
+            for (String identifier : batch) {
+
+                Map<String, String> objectParameters = loaded.get(identifier);
+                if (objectParameters == null)
+                    objectParameters = Collections.emptyMap();
+                else
+                    objectParameters = Collections.unmodifiableMap(objectParameters);
+
+                store(identifier, objectParameters, loadedVersion);
+                parameters.put(identifier, objectParameters);
+
+            }
+
+        }
+
+        return parameters;
+
+    }
+
+    /**
+     * Removes the cached parameters of the object having the given
+     * identifier, without notifying any ParameterInvalidationListener. This
+     * function should be invoked when notified of a change made through
+     * another Guacamole instance.
+     *
+     * @param identifier
+     *     The identifier of the object whose parameters have changed.
+     */
+    public void evict(String identifier) {
+        version.incrementAndGet();
+        lastInvalidation = System.nanoTime();
+        entries.invalidate(identifier);
+    }
+
+    /**
+     * Removes all cached parameters, without notifying any
+     * ParameterInvalidationListener.
+     */
+    public void evictAll() {
+        version.incrementAndGet();
+        lastInvalidation = System.nanoTime();
+        entries.invalidateAll();
+    }
+
+    /**
+     * Invalidates the cached parameters of the object having the given
+     * identifier, notifying the ParameterInvalidationListener, if any. This
+     * function must be invoked whenever the parameters of an object are
+     * modified, or the object is created or deleted.
+     *
+     * @param identifier
+     *     The identifier of the object whose parameters have changed.
+     */
+    public void invalidate(String identifier) {
+
+        evict(identifier);
+
+        // Relay invalidation to other instances, if possible
+        ParameterInvalidationListener current = listener;
+        if (current != null)
+            current.parametersInvalidated(this, identifier);
+
+    }
+
+    /**
+     * Returns the number of requests for parameters which were satisfied
+     * from this cache.
+     *
+     * @return
+     *     The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests for parameters which required the
+     * parameters to be loaded from the database.
+     *
+     * @return
+     *     The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+}
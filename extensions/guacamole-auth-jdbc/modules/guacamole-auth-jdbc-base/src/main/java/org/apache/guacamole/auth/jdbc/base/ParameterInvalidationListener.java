@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.base;
+
+/**
+ * Listener which is notified whenever the cached parameters of a connection
+ * or sharing profile are invalidated due to changes made through this
+ * Guacamole instance. If multiple Guacamole instances share the same
+ * database, an implementation of this interface may be bound within the
+ * Guice module of the database-specific extension to relay invalidations to
+ * the other instances, which should then invoke ParameterCache.evict() for
+ * the relevant identifier. If no implementation is bound, cached parameters
+ * are invalidated only locally, and changes made through other instances are
+ * seen only once the relevant cache entries expire.
+ */
+public interface ParameterInvalidationListener {
+
+    /**
+     * Invoked after the parameters of the object having the given identifier
+     * have been invalidated within the given cache.
+     *
+     * @param cache
+     *     The cache within which the parameters were invalidated.
+     *
+     * @param identifier
+     *     The identifier of the connection or sharing profile whose
+     *     parameters were invalidated.
+     */
+    void parametersInvalidated(ParameterCache cache, String identifier);
+
+}
@@ -160,6 +160,15 @@ public abstract class RelatedObjectSet<ParentObjectType extends ModeledDirectory
 
     }
 
+    /**
+     * Invoked after relations between the parent object and its child objects
+     * have been added or removed. Implementations which cache data derived
+     * from these relations should override this function to invalidate that
+     * data. By default, this function does nothing.
+     */
+    protected void relationsChanged() {
+    }
+
     @Override
     public Set<String> getObjects() throws GuacamoleException {
 
@@ -183,8 +192,10 @@ public abstract class RelatedObjectSet<ParentObjectType extends ModeledDirectory
             return;
 
         // Create relations only if permission is granted
-        if (canAlterRelation(identifiers))
+        if (canAlterRelation(identifiers)) {
             getObjectRelationMapper().insert(parent.getModel(), identifiers);
+            relationsChanged();
+        }
 
         // User lacks permission to add user groups
         else
@@ -200,8 +211,10 @@ public abstract class RelatedObjectSet<ParentObjectType extends ModeledDirectory
             return;
 
         // Delete relations only if permission is granted
-        if (canAlterRelation(identifiers))
+        if (canAlterRelation(identifiers)) {
             getObjectRelationMapper().delete(parent.getModel(), identifiers);
+            relationsChanged();
+        }
 
         // User lacks permission to remove user groups
         else
@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.guice.transactional.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which writes connection history records to the database in the
+ * background, such that closing a connection never waits on the database.
+ * Records are queued within a bounded queue and written in batches by a
+ * single background thread using the MyBatis batch executor, allowing the
+ * inserts of any number of queued records to be sent to the database
+ * together. If the queue is full, or the service has been shut down,
+ * records are instead written immediately by the calling thread.
+ */
+@Singleton
+public class ConnectionHistoryWriter {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionHistoryWriter.class);
+
+    /**
+     * The maximum number of records which may be queued at any one time.
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * The maximum number of records written within a single batch.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The maximum amount of time to wait for queued records to be written
+     * when shutting down, in milliseconds.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+
+    /**
+     * The amount of time the background thread waits for new records before
+     * checking whether the service has been shut down, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 1000;
+
+    /**
+     * Mapper for accessing connection history.
+     */
+    @Inject
+    private ConnectionRecordMapper connectionRecordMapper;
+
+    /**
+     * All records which have been queued but not yet written.
+     */
+    private final BlockingQueue<ConnectionRecordModel> queue =
+            new ArrayBlockingQueue<ConnectionRecordModel>(QUEUE_CAPACITY);
+
+    /**
+     * The total number of records written by the background thread.
+     */
+    private final AtomicLong recordsWritten = new AtomicLong();
+
+    /**
+     * The total number of records written immediately because the queue was
+     * full.
+     */
+    private final AtomicLong recordsOverflowed = new AtomicLong();
+
+    /**
+     * The total number of batches written by the background thread.
+     */
+    private final AtomicLong batchesWritten = new AtomicLong();
+
+    /**
+     * The total amount of time spent writing batches, in nanoseconds.
+     */
+    private final AtomicLong totalFlushTime = new AtomicLong();
+
+    /**
+     * The longest amount of time spent writing any one batch, in
+     * nanoseconds.
+     */
+    private volatile long maxFlushTime = 0;
+
+    /**
+     * The background thread writing queued records, or null if the thread
+     * has not yet been started. Access to this field is synchronized on this
+     * ConnectionHistoryWriter.
+     */
+    private Thread worker;
+
+    /**
+     * Whether this service has been shut down. Access to this field is
+     * synchronized on this ConnectionHistoryWriter.
+     */
+    private boolean shutdown = false;
+
+    /**
+     * Writes the given connection record to the database. The record is
+     * queued for writing by the background thread if possible, and written
+     * immediately otherwise.
+     *
+     * @param record
+     *     The connection record to write.
+     */
+    public void write(ConnectionRecordModel record) {
+
+        synchronized (this) {
+
+            // Once shut down, all records are written immediately
+            if (!shutdown) {
+
+                // Start writing in the background upon first use
+                if (worker == null) {
+                    worker = new Thread(new Worker(), "guacamole-jdbc-history");
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+
+                if (queue.offer(record))
+                    return;
+
+                recordsOverflowed.incrementAndGet();
+
+            }
+
+        }
+
+        // Write immediately if the record cannot be queued
+        connectionRecordMapper.insert(record);
+
+    }
+
+    /**
+     * Inserts all given records within a single transaction using the
+     * MyBatis batch executor, such that the inserts are sent to the database
+     * together when the transaction is committed. This function must only be
+     * invoked while no other transaction is in progress on the current
+     * thread.
+     *
+     * @param records
+     *     The records to insert.
+     */
+    @Transactional(executorType = ExecutorType.BATCH)
+    protected void insertBatch(List<ConnectionRecordModel> records) {
+        for (ConnectionRecordModel record : records)
+            connectionRecordMapper.insert(record);
+    }
+
+    /**
+     * Writes all given records to the database as a single batch, updating
+     * statistics accordingly. If the batch cannot be written, each record is
+     * retried individually so that a single bad record cannot cause the loss
+     * of the entire batch.
+     *
+     * @param records
+     *     The records to write.
+     */
+    private void flush(List<ConnectionRecordModel> records) {
+
+        long start = System.nanoTime();
+
+        try {
+            insertBatch(records);
+        }
+
+        // Retry individually if the batch as a whole fails
+        catch (Exception e) {
+
+            logger.warn("Batch of {} connection history records could not be "
+                    + "written: {}", records.size(), e.getMessage());
+            logger.debug("Batch insert of connection history failed.", e);
+
+            for (ConnectionRecordModel record : records) {
+                try {
+                    connectionRecordMapper.insert(record);
+                }
+                catch (Exception recordError) {
+                    logger.error("Connection history record for user \"{}\" "
+                            + "could not be saved: {}", record.getUsername(),
+                            recordError.getMessage());
+                    logger.debug("Unable to save connection history record.", recordError);
+                }
+            }
+
+        }
+
+        // Record batch statistics
+        long duration = System.nanoTime() - start;
+        recordsWritten.addAndGet(records.size());
+        batchesWritten.incrementAndGet();
+        totalFlushTime.addAndGet(duration);
+        if (duration > maxFlushTime)
+            maxFlushTime = duration;
+
+        logger.debug("Wrote {} connection history records in {} ms ({} "
+                + "still queued).", records.size(),
+                TimeUnit.NANOSECONDS.toMillis(duration), queue.size());
+
+    }
+
+    /**
+     * Task which repeatedly writes queued records in batches until this
+     * service has been shut down and the queue is empty.
+     */
+    private class Worker implements Runnable {
+
+        /**
+         * Returns whether this service has been shut down.
+         *
+         * @return
+         *     true if this service has been shut down, false otherwise.
+         */
+        private boolean isShutdown() {
+            synchronized (ConnectionHistoryWriter.this) {
+                return shutdown;
+            }
+        }
+
+        @Override
+        public void run() {
+
+            List<ConnectionRecordModel> batch = new ArrayList<ConnectionRecordModel>(BATCH_SIZE);
+
+            try {
+                while (!isShutdown() || !queue.isEmpty()) {
+
+                    // Wait for at least one record
+                    ConnectionRecordModel record = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (record == null)
+                        continue;
+
+                    // Write that record along with anything else queued
+                    batch.add(record);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    flush(batch);
+                    batch.clear();
+
+                }
+            }
+
+            // Stop if interrupted, leaving any remaining records for
+            // shutdown()
+            catch (InterruptedException e) {
+                logger.debug("Connection history writer interrupted.", e);
+            }
+
+        }
+
+    }
+
+    /**
+     * Returns the number of records currently queued and not yet written.
+     *
+     * @return
+     *     The number of records currently queued.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the total number of records written by the background thread.
+     *
+     * @return
+     *     The total number of records written in batches.
+     */
+    public long getRecordsWritten() {
+        return recordsWritten.get();
+    }
+
+    /**
+     * Returns the total number of records which were written immediately by
+     * the calling thread because the queue was full.
+     *
+     * @return
+     *     The total number of records which could not be queued.
+     */
+    public long getRecordsOverflowed() {
+        return recordsOverflowed.get();
+    }
+
+    /**
+     * Returns the average amount of time taken to write each batch of
+     * records.
+     *
+     * @param unit
+     *     The unit in which the latency should be returned.
+     *
+     * @return
+     *     The average amount of time taken to write each batch, in the given
+     *     unit, or zero if no batches have been written.
+     */
+    public long getAverageFlushLatency(TimeUnit unit) {
+        long batches = batchesWritten.get();
+        if (batches == 0)
+            return 0;
+        return unit.convert(totalFlushTime.get() / batches, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest amount of time taken to write any one batch of
+     * records.
+     *
+     * @param unit
+     *     The unit in which the latency should be returned.
+     *
+     * @return
+     *     The longest amount of time taken to write any one batch, in the
+     *     given unit, or zero if no batches have been written.
+     */
+    public long getMaxFlushLatency(TimeUnit unit) {
+        return unit.convert(maxFlushTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Shuts down this service, waiting for all queued records to be written.
+     * Records written after shutdown are written immediately by the calling
+     * thread. This function MUST be invoked when the extension is unloaded to
+     * avoid losing queued records. Invoking this function more than once has
+     * no further effect.
+     */
+    public void shutdown() {
+
+        Thread current;
+        synchronized (this) {
+            if (shutdown)
+                return;
+            shutdown = true;
+            current = worker;
+        }
+
+        // Allow the background thread to finish writing the queue
+        if (current != null) {
+            try {
+                current.join(SHUTDOWN_TIMEOUT);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            current.interrupt();
+        }
+
+        // Write anything which could not be written in time
+        List<ConnectionRecordModel> remaining = new ArrayList<ConnectionRecordModel>();
+        queue.drainTo(remaining);
+        for (ConnectionRecordModel record : remaining)
+            connectionRecordMapper.insert(record);
+
+        logger.info("Connection history writer stopped. {} records written "
+                + "in batches (average {} ms, maximum {} ms per batch), {} "
+                + "written directly.", recordsWritten.get(),
+                getAverageFlushLatency(TimeUnit.MILLISECONDS),
+                getMaxFlushLatency(TimeUnit.MILLISECONDS),
+                recordsOverflowed.get() + remaining.size());
+
+    }
+
+}
@@ -24,6 +24,7 @@ import java.util.Set;
 import org.apache.guacamole.auth.jdbc.base.ModeledDirectoryObjectMapper;
 import org.apache.guacamole.auth.jdbc.user.UserModel;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 /**
  * Mapper for connection objects.
@@ -91,5 +92,80 @@ public interface ConnectionMapper extends ModeledDirectoryObjectMapper<Connectio
      */
     ConnectionModel selectOneByName(@Param("parentIdentifier") String parentIdentifier,
             @Param("name") String name);
-    
+
+    /**
+     * Selects all connections within the given parent connection group or
+     * any of its descendant connection groups, regardless of whether they are
+     * readable by any particular user. This should only be called on behalf
+     * of a system administrator. If connections are needed by a
+     * non-administrative user who must have explicit read rights, use
+     * selectReadableDescendants() instead. Connections are returned in the
+     * depth-first order of their parent connection groups, as defined by
+     * selectDescendants() of ConnectionGroupMapper, and are ordered by
+     * identifier within each parent.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent connection group, or null if the root
+     *     connection group is to be queried.
+     *
+     * @param recursive
+     *     Whether the query should leverage database engine features to
+     *     retrieve only descendants of the given parent connection group, in
+     *     depth-first order. If false, all connections are returned in an
+     *     arbitrary order, and those which are not descendants must be
+     *     filtered out and ordered by the caller. If it is known that the
+     *     database engine in question will always support recursive queries,
+     *     this parameter may be ignored.
+     *
+     * @return
+     *     A cursor over all requested connections. The cursor remains
+     *     valid only for the duration of the current transaction.
+     */
+    Cursor<ConnectionModel> selectDescendants(@Param("parentIdentifier") String parentIdentifier,
+            @Param("recursive") boolean recursive);
+
+    /**
+     * Selects all connections within the given parent connection group or
+     * any of its descendant connection groups that are explicitly readable by
+     * the given user, where each of those descendant connection groups is
+     * reachable from that parent through readable connection groups only. If
+     * connections are needed by a system administrator (who, by definition,
+     * does not need explicit read rights), use selectDescendants() instead.
+     * Connections are returned in the depth-first order of their parent
+     * connection groups, as defined by selectReadableDescendants() of
+     * ConnectionGroupMapper, and are ordered by identifier within each
+     * parent.
+     *
+     * @param user
+     *    The user whose permissions should determine whether an object is
+     *    returned.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent connection group, or null if the root
+     *     connection group is to be queried.
+     *
+     * @param effectiveGroups
+     *     The identifiers of all groups that should be taken into account
+     *     when determining the permissions effectively granted to the user. If
+     *     no groups are given, only permissions directly granted to the user
+     *     will be used.
+     *
+     * @param recursive
+     *     Whether the query should leverage database engine features to
+     *     retrieve only descendants of the given parent connection group, in
+     *     depth-first order. If false, all connections are returned in an
+     *     arbitrary order, and those which are not descendants must be
+     *     filtered out and ordered by the caller. If it is known that the
+     *     database engine in question will always support recursive queries,
+     *     this parameter may be ignored.
+     *
+     * @return
+     *     A cursor over all requested connections. The cursor remains
+     *     valid only for the duration of the current transaction.
+     */
+    Cursor<ConnectionModel> selectReadableDescendants(@Param("user") UserModel user,
+            @Param("parentIdentifier") String parentIdentifier,
+            @Param("effectiveGroups") Collection<String> effectiveGroups,
+            @Param("recursive") boolean recursive);
+
 }
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.guacamole.auth.jdbc.base.ParameterCache;
+
+/**
+ * Cache of the parameters associated with each connection, indexed by
+ * connection identifier.
+ */
+@Singleton
+public class ConnectionParameterCache extends ParameterCache {
+
+    /**
+     * Mapper for accessing connection parameters.
+     */
+    @Inject
+    private ConnectionParameterMapper parameterMapper;
+
+    @Override
+    protected Map<String, String> load(String identifier) {
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (ConnectionParameterModel parameter : parameterMapper.select(identifier))
+            parameters.put(parameter.getName(), parameter.getValue());
+
+        return parameters;
+
+    }
+
+    @Override
+    protected Map<String, Map<String, String>> loadAll(Collection<String> identifiers) {
+
+        Map<String, Map<String, String>> parameters = new HashMap<String, Map<String, String>>();
+        for (ConnectionParameterModel parameter : parameterMapper.selectAll(identifiers)) {
+
+            // Group parameters by connection
+            Map<String, String> connectionParameters = parameters.get(parameter.getConnectionIdentifier());
+            if (connectionParameters == null) {
+                connectionParameters = new HashMap<String, String>();
+                parameters.put(parameter.getConnectionIdentifier(), connectionParameters);
+            }
+
+            connectionParameters.put(parameter.getName(), parameter.getValue());
+
+        }
+
+        return parameters;
+
+    }
+
+}
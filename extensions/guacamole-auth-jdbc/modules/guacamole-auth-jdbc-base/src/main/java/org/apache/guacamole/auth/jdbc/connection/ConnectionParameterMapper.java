@@ -42,6 +42,21 @@ public interface ConnectionParameterMapper {
      */
     Collection<ConnectionParameterModel> select(@Param("identifier") String identifier);
 
+    /**
+     * Returns a collection of all parameters associated with any of the
+     * connections having the given identifiers.
+     *
+     * @param identifiers
+     *     The identifiers of the connections whose parameters are to be
+     *     retrieved.
+     *
+     * @return
+     *     A collection of all parameters associated with the connections
+     *     having the given identifiers. This collection will be empty if no
+     *     such connections exist.
+     */
+    Collection<ConnectionParameterModel> selectAll(@Param("identifiers") Collection<String> identifiers);
+
     /**
      * Inserts each of the parameter model objects in the given collection as
      * new connection parameters.
@@ -72,6 +72,12 @@ public class ConnectionService extends ModeledChildDirectoryObjectService<Modele
     @Inject
     private ConnectionParameterMapper parameterMapper;
 
+    /**
+     * Cache of the parameters of each connection.
+     */
+    @Inject
+    private ConnectionParameterCache parameterCache;
+
     /**
      * Mapper for accessing connection history.
      */
@@ -252,6 +258,8 @@ public class ConnectionService extends ModeledChildDirectoryObjectService<Modele
         if (!parameterModels.isEmpty())
             parameterMapper.insert(parameterModels);
 
+        parameterCache.invalidate(connection.getIdentifier());
+        tunnelService.invalidateBalancingIndexes();
         return connection;
 
     }
@@ -268,7 +276,41 @@ public class ConnectionService extends ModeledChildDirectoryObjectService<Modele
         parameterMapper.delete(object.getIdentifier());
         if (!parameterModels.isEmpty())
             parameterMapper.insert(parameterModels);
-        
+
+        parameterCache.invalidate(object.getIdentifier());
+        tunnelService.invalidateBalancingIndexes();
+
+    }
+
+    @Override
+    public void deleteObject(ModeledAuthenticatedUser user, String identifier)
+            throws GuacamoleException {
+
+        // Delete connection (and, implicitly, its parameters)
+        super.deleteObject(user, identifier);
+        parameterCache.invalidate(identifier);
+        tunnelService.invalidateBalancingIndexes();
+
+    }
+
+    @Override
+    public Collection<ModeledConnection> retrieveObjects(ModeledAuthenticatedUser user,
+            Collection<String> identifiers) throws GuacamoleException {
+
+        Collection<ModeledConnection> connections = super.retrieveObjects(user, identifiers);
+
+        // Load the parameters of all retrieved connections within a single
+        // query, rather than one query per connection as the parameters of
+        // each connection are read
+        if (connections.size() > 1) {
+            List<String> retrieved = new ArrayList<>(connections.size());
+            for (ModeledConnection connection : connections)
+                retrieved.add(connection.getIdentifier());
+            parameterCache.getAll(retrieved);
+        }
+
+        return connections;
+
     }
 
     /**
@@ -346,10 +388,8 @@ public class ConnectionService extends ModeledChildDirectoryObjectService<Modele
         // Populate parameter map if we have permission to do so
         // @rjp-001, rjp-002, rjp-004
         canRetrieveParameters = true;
-        if (canRetrieveParameters) {
-            for (ConnectionParameterModel parameter : parameterMapper.select(identifier))
-                parameterMap.put(parameter.getName(), parameter.getValue());
-        }
+        if (canRetrieveParameters)
+            parameterMap.putAll(parameterCache.get(identifier));
 
         return parameterMap;
 
@@ -24,6 +24,7 @@ import java.util.Set;
 import org.apache.guacamole.auth.jdbc.base.ModeledDirectoryObjectMapper;
 import org.apache.guacamole.auth.jdbc.user.UserModel;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 /**
  * Mapper for connection group objects.
@@ -91,5 +92,75 @@ public interface ConnectionGroupMapper extends ModeledDirectoryObjectMapper<Conn
      */
     ConnectionGroupModel selectOneByName(@Param("parentIdentifier") String parentIdentifier,
             @Param("name") String name);
-    
+
+    /**
+     * Selects all connection groups beneath the given parent connection
+     * group, regardless of whether they are readable by any particular user.
+     * This should only be called on behalf of a system administrator. If
+     * connection groups are needed by a non-administrative user who must have
+     * explicit read rights, use selectReadableDescendants() instead.
+     * Connection groups are returned in depth-first order, each group
+     * preceding its own descendants.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent connection group, or null if the root
+     *     connection group is to be queried.
+     *
+     * @param recursive
+     *     Whether the query should leverage database engine features to
+     *     retrieve only descendants of the given parent connection group, in
+     *     depth-first order. If false, all connection groups are returned in
+     *     an arbitrary order, and those which are not descendants must be
+     *     filtered out and ordered by the caller. If it is known that the
+     *     database engine in question will always support recursive queries,
+     *     this parameter may be ignored.
+     *
+     * @return
+     *     A cursor over all requested connection groups. The cursor remains
+     *     valid only for the duration of the current transaction.
+     */
+    Cursor<ConnectionGroupModel> selectDescendants(@Param("parentIdentifier") String parentIdentifier,
+            @Param("recursive") boolean recursive);
+
+    /**
+     * Selects all connection groups beneath the given parent connection
+     * group that are explicitly readable by the given user and reachable
+     * from that parent through readable connection groups only. If
+     * connection groups are needed by a system administrator (who, by
+     * definition, does not need explicit read rights), use
+     * selectDescendants() instead. Connection groups are returned in
+     * depth-first order, each group preceding its own descendants.
+     *
+     * @param user
+     *    The user whose permissions should determine whether an object is
+     *    returned.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent connection group, or null if the root
+     *     connection group is to be queried.
+     *
+     * @param effectiveGroups
+     *     The identifiers of all groups that should be taken into account
+     *     when determining the permissions effectively granted to the user. If
+     *     no groups are given, only permissions directly granted to the user
+     *     will be used.
+     *
+     * @param recursive
+     *     Whether the query should leverage database engine features to
+     *     retrieve only descendants of the given parent connection group, in
+     *     depth-first order. If false, all connection groups are returned in
+     *     an arbitrary order, and those which are not descendants must be
+     *     filtered out and ordered by the caller. If it is known that the
+     *     database engine in question will always support recursive queries,
+     *     this parameter may be ignored.
+     *
+     * @return
+     *     A cursor over all requested connection groups. The cursor remains
+     *     valid only for the duration of the current transaction.
+     */
+    Cursor<ConnectionGroupModel> selectReadableDescendants(@Param("user") UserModel user,
+            @Param("parentIdentifier") String parentIdentifier,
+            @Param("effectiveGroups") Collection<String> effectiveGroups,
+            @Param("recursive") boolean recursive);
+
 }
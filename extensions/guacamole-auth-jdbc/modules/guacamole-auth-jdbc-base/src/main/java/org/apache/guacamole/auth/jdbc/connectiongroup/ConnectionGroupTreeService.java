@@ -0,0 +1,419 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.connectiongroup;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.auth.jdbc.base.ChildObjectModel;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionMapper;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionModel;
+import org.apache.guacamole.auth.jdbc.connection.ModeledConnection;
+import org.apache.guacamole.auth.jdbc.sharingprofile.ModeledSharingProfile;
+import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileMapper;
+import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileModel;
+import org.apache.guacamole.auth.jdbc.user.ModeledAuthenticatedUser;
+import org.apache.guacamole.net.auth.ConnectionGroup;
+import org.apache.guacamole.net.auth.ConnectionGroupVisitor;
+import org.apache.ibatis.session.SqlSession;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * Service which traverses entire trees of connection groups, connections,
+ * and sharing profiles. Each tree is retrieved using exactly three queries,
+ * regardless of its size or depth: one for the connection groups within the
+ * tree, one for their connections, and one for the sharing profiles of those
+ * connections. Where the database supports recursive queries, each query
+ * returns only the objects within the tree, already in the order they are to
+ * be visited, and objects are passed to the visitor as their rows are read.
+ * Otherwise, each query returns all visible objects of its type, which are
+ * then filtered and ordered in memory before being visited.
+ */
+public class ConnectionGroupTreeService {
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    /**
+     * The current SQL session used by MyBatis.
+     */
+    @Inject
+    private SqlSession sqlSession;
+
+    /**
+     * Mapper for accessing connection groups.
+     */
+    @Inject
+    private ConnectionGroupMapper connectionGroupMapper;
+
+    /**
+     * Mapper for accessing connections.
+     */
+    @Inject
+    private ConnectionMapper connectionMapper;
+
+    /**
+     * Mapper for accessing sharing profiles.
+     */
+    @Inject
+    private SharingProfileMapper sharingProfileMapper;
+
+    /**
+     * Provider for creating connection groups.
+     */
+    @Inject
+    private Provider<ModeledConnectionGroup> connectionGroupProvider;
+
+    /**
+     * Provider for creating connections.
+     */
+    @Inject
+    private Provider<ModeledConnection> connectionProvider;
+
+    /**
+     * Provider for creating sharing profiles.
+     */
+    @Inject
+    private Provider<ModeledSharingProfile> sharingProfileProvider;
+
+    /**
+     * Traverses the given connection group and all of its descendants that
+     * are visible to the given user, passing each to the given visitor in
+     * depth-first order, as required by TraversableConnectionGroup.
+     *
+     * @param user
+     *     The user traversing the tree.
+     *
+     * @param root
+     *     The connection group at the root of the tree.
+     *
+     * @param rootIdentifier
+     *     The database identifier of the connection group at the root of the
+     *     tree, or null if the root is the root connection group.
+     *
+     * @param visitor
+     *     The visitor which should receive each object within the tree.
+     *
+     * @throws GuacamoleException
+     *     If the visitor fails to handle any object within the tree.
+     */
+    @Transactional
+    public void traverse(ModeledAuthenticatedUser user, ConnectionGroup root,
+            String rootIdentifier, ConnectionGroupVisitor visitor)
+            throws GuacamoleException {
+
+        boolean recursive = environment.isRecursiveQuerySupported(sqlSession);
+
+        Iterator<ConnectionGroupModel> groups;
+        Iterator<ConnectionModel> connections;
+        Iterator<SharingProfileModel> sharingProfiles;
+
+        // Bypass permission checks if the user is privileged. Each cursor is
+        // closed automatically when the transaction ends.
+        if (user.isPrivileged()) {
+            groups = connectionGroupMapper.selectDescendants(rootIdentifier, recursive).iterator();
+            connections = connectionMapper.selectDescendants(rootIdentifier, recursive).iterator();
+            sharingProfiles = sharingProfileMapper.selectDescendants(rootIdentifier, recursive).iterator();
+        }
+
+        // Otherwise only traverse explicitly readable objects
+        else {
+            Collection<String> effectiveGroups = user.getEffectiveUserGroups();
+            groups = connectionGroupMapper.selectReadableDescendants(
+                    user.getUser().getModel(), rootIdentifier, effectiveGroups,
+                    recursive).iterator();
+            connections = connectionMapper.selectReadableDescendants(
+                    user.getUser().getModel(), rootIdentifier, effectiveGroups,
+                    recursive).iterator();
+            sharingProfiles = sharingProfileMapper.selectReadableDescendants(
+                    user.getUser().getModel(), rootIdentifier, effectiveGroups,
+                    recursive).iterator();
+        }
+
+        // Without recursive queries, the rows retrieved are all visible
+        // objects in no particular order, and must be filtered and sorted
+        // before they can be visited
+        if (!recursive) {
+
+            List<ConnectionGroupModel> orderedGroups = sortDescendants(rootIdentifier, groups);
+
+            // Determine the position of each connection group within the
+            // tree, including the root
+            Map<String, Integer> groupPositions = new HashMap<>();
+            groupPositions.put(rootIdentifier, -1);
+            for (ConnectionGroupModel group : orderedGroups)
+                groupPositions.put(group.getIdentifier(), groupPositions.size());
+
+            List<ConnectionModel> orderedConnections = sortByParent(groupPositions, connections);
+
+            // Determine the position of each connection within the tree
+            Map<String, Integer> connectionPositions = new HashMap<>();
+            for (ConnectionModel connection : orderedConnections)
+                connectionPositions.put(connection.getIdentifier(), connectionPositions.size());
+
+            groups = orderedGroups.iterator();
+            connections = orderedConnections.iterator();
+            sharingProfiles = sortByParent(connectionPositions, sharingProfiles).iterator();
+
+        }
+
+        visit(user, root, rootIdentifier, Iterators.peekingIterator(groups),
+                Iterators.peekingIterator(connections),
+                Iterators.peekingIterator(sharingProfiles), visitor);
+
+    }
+
+    /**
+     * Filters the given connection groups down to only those which are
+     * reachable from the given root connection group, returning those groups
+     * in depth-first order. Child connection groups are ordered as they
+     * appear within the given groups.
+     *
+     * @param rootIdentifier
+     *     The identifier of the connection group at the root of the tree, or
+     *     null if the root is the root connection group.
+     *
+     * @param groups
+     *     All visible connection groups, in any order.
+     *
+     * @return
+     *     A new list of all connection groups beneath the given root, in
+     *     depth-first order.
+     */
+    private List<ConnectionGroupModel> sortDescendants(String rootIdentifier,
+            Iterator<ConnectionGroupModel> groups) {
+
+        // Index all groups by parent
+        Map<String, List<ConnectionGroupModel>> children = new HashMap<>();
+        while (groups.hasNext()) {
+            ConnectionGroupModel group = groups.next();
+            List<ConnectionGroupModel> siblings = children.get(group.getParentIdentifier());
+            if (siblings == null) {
+                siblings = new ArrayList<>();
+                children.put(group.getParentIdentifier(), siblings);
+            }
+            siblings.add(group);
+        }
+
+        List<ConnectionGroupModel> ordered = new ArrayList<>();
+
+        // Walk the tree depth-first, beginning with the children of the root
+        Deque<Iterator<ConnectionGroupModel>> pending = new ArrayDeque<>();
+        pending.push(getChildren(children, rootIdentifier));
+        while (!pending.isEmpty()) {
+
+            Iterator<ConnectionGroupModel> siblings = pending.peek();
+            if (!siblings.hasNext()) {
+                pending.pop();
+                continue;
+            }
+
+            ConnectionGroupModel group = siblings.next();
+            ordered.add(group);
+            pending.push(getChildren(children, group.getIdentifier()));
+
+        }
+
+        return ordered;
+
+    }
+
+    /**
+     * Returns an iterator over the connection groups stored within the given
+     * index under the given parent identifier.
+     *
+     * @param children
+     *     An index of connection groups by the identifier of their parent.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent connection group.
+     *
+     * @return
+     *     An iterator over the children of the given connection group.
+     */
+    private Iterator<ConnectionGroupModel> getChildren(
+            Map<String, List<ConnectionGroupModel>> children,
+            String parentIdentifier) {
+
+        List<ConnectionGroupModel> groups = children.get(parentIdentifier);
+        if (groups == null)
+            return Collections.<ConnectionGroupModel>emptyIterator();
+
+        return groups.iterator();
+
+    }
+
+    /**
+     * Filters the given objects down to only those whose parents have a
+     * known position within the tree, returning those objects ordered by the
+     * position of their parents. Objects having the same parent are ordered
+     * as they appear within the given objects.
+     *
+     * @param <ModelType>
+     *     The type of model being sorted.
+     *
+     * @param positions
+     *     The position of each parent within the tree, by identifier.
+     *
+     * @param objects
+     *     The objects to sort, in any order.
+     *
+     * @return
+     *     A new list of all given objects whose parents have a known
+     *     position, ordered by those positions.
+     */
+    private <ModelType extends ChildObjectModel> List<ModelType> sortByParent(
+            final Map<String, Integer> positions, Iterator<ModelType> objects) {
+
+        List<ModelType> ordered = new ArrayList<>();
+        while (objects.hasNext()) {
+            ModelType object = objects.next();
+            if (positions.containsKey(object.getParentIdentifier()))
+                ordered.add(object);
+        }
+
+        // Collections.sort() is stable, preserving the order of siblings
+        Collections.sort(ordered, new Comparator<ModelType>() {
+
+            @Override
+            public int compare(ModelType a, ModelType b) {
+                return Integer.compare(positions.get(a.getParentIdentifier()),
+                        positions.get(b.getParentIdentifier()));
+            }
+
+        });
+
+        return ordered;
+
+    }
+
+    /**
+     * Passes each of the given objects to the given visitor, interleaving
+     * connection groups, connections, and sharing profiles such that each
+     * object is visited within its parent. Each of the given iterators must
+     * provide objects in the order they are to be visited. As each object is
+     * visited only after all objects preceding it, objects are read from the
+     * given iterators only as they are needed.
+     *
+     * @param user
+     *     The user traversing the tree.
+     *
+     * @param root
+     *     The connection group at the root of the tree.
+     *
+     * @param rootIdentifier
+     *     The database identifier of the connection group at the root of the
+     *     tree, or null if the root is the root connection group.
+     *
+     * @param groups
+     *     All connection groups beneath the root, in depth-first order.
+     *
+     * @param connections
+     *     All connections within the tree, in the order of their parent
+     *     connection groups.
+     *
+     * @param sharingProfiles
+     *     All sharing profiles of the connections within the tree, in the
+     *     order of their primary connections.
+     *
+     * @param visitor
+     *     The visitor which should receive each object within the tree.
+     *
+     * @throws GuacamoleException
+     *     If the visitor fails to handle any object within the tree.
+     */
+    private void visit(ModeledAuthenticatedUser user, ConnectionGroup root,
+            String rootIdentifier, PeekingIterator<ConnectionGroupModel> groups,
+            PeekingIterator<ConnectionModel> connections,
+            PeekingIterator<SharingProfileModel> sharingProfiles,
+            ConnectionGroupVisitor visitor) throws GuacamoleException {
+
+        // Track the connection group currently being visited, along with all
+        // of its ancestors, by database identifier
+        Deque<ConnectionGroup> ancestors = new ArrayDeque<>();
+        Deque<String> ancestorIdentifiers = new ArrayDeque<>();
+
+        visitor.enterConnectionGroup(root);
+        ancestors.push(root);
+        ancestorIdentifiers.push(Objects.toString(rootIdentifier, ""));
+
+        while (!ancestors.isEmpty()) {
+
+            String current = ancestorIdentifiers.peek();
+
+            // Visit all connections of the current group before any of its
+            // child groups, along with the sharing profiles of each
+            if (connections.hasNext() && current.equals(
+                    Objects.toString(connections.peek().getParentIdentifier(), ""))) {
+
+                ModeledConnection connection = connectionProvider.get();
+                connection.init(user, connections.next());
+                visitor.visitConnection(connection);
+
+                while (sharingProfiles.hasNext() && connection.getIdentifier().equals(
+                        sharingProfiles.peek().getParentIdentifier())) {
+                    ModeledSharingProfile sharingProfile = sharingProfileProvider.get();
+                    sharingProfile.init(user, sharingProfiles.next());
+                    visitor.visitSharingProfile(sharingProfile);
+                }
+
+            }
+
+            // Descend into each child group in turn
+            else if (groups.hasNext() && current.equals(
+                    Objects.toString(groups.peek().getParentIdentifier(), ""))) {
+
+                ModeledConnectionGroup group = connectionGroupProvider.get();
+                group.init(user, groups.next());
+                visitor.enterConnectionGroup(group);
+
+                ancestors.push(group);
+                ancestorIdentifiers.push(group.getIdentifier());
+
+            }
+
+            // Once all children have been visited, return to the parent
+            else {
+                ancestorIdentifiers.pop();
+                visitor.leaveConnectionGroup(ancestors.pop());
+            }
+
+        }
+
+    }
+
+}
@@ -30,12 +30,17 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
 import org.apache.guacamole.auth.jdbc.base.ModeledChildDirectoryObject;
 import org.apache.guacamole.auth.jdbc.tunnel.GuacamoleTunnelService;
+import org.apache.guacamole.auth.jdbc.tunnel.LatencyAwareBalancingStrategy;
+import org.apache.guacamole.auth.jdbc.tunnel.LeastLoadedBalancingStrategy;
+import org.apache.guacamole.auth.jdbc.tunnel.PowerOfTwoChoicesBalancingStrategy;
 import org.apache.guacamole.form.BooleanField;
+import org.apache.guacamole.form.EnumField;
 import org.apache.guacamole.form.Field;
 import org.apache.guacamole.form.Form;
 import org.apache.guacamole.form.NumericField;
 import org.apache.guacamole.net.GuacamoleTunnel;
-import org.apache.guacamole.net.auth.ConnectionGroup;
+import org.apache.guacamole.net.auth.ConnectionGroupVisitor;
+import org.apache.guacamole.net.auth.TraversableConnectionGroup;
 import org.apache.guacamole.protocol.GuacamoleClientInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,7 +50,7 @@ import org.slf4j.LoggerFactory;
  * database model.
  */
 public class ModeledConnectionGroup extends ModeledChildDirectoryObject<ConnectionGroupModel>
-    implements ConnectionGroup {
+    implements TraversableConnectionGroup {
 
     /**
      * Logger for this class.
@@ -71,6 +76,12 @@ public class ModeledConnectionGroup extends ModeledChildDirectoryObject<Connecti
      */
     public static final String ENABLE_SESSION_AFFINITY = "enable-session-affinity";
 
+    /**
+     * The name of the attribute which controls the strategy used to select
+     * connections within a balancing group.
+     */
+    public static final String BALANCING_STRATEGY_NAME = "balancing-strategy";
+
     /**
      * All attributes related to restricting user accounts, within a logical
      * form.
@@ -81,12 +92,27 @@ public class ModeledConnectionGroup extends ModeledChildDirectoryObject<Connecti
         new BooleanField(ENABLE_SESSION_AFFINITY, "true")
     ));
 
+    /**
+     * All attributes related to load balancing, within a logical form. As
+     * these attributes are not mapped to the model, they are stored as
+     * arbitrary attributes.
+     */
+    public static final Form LOAD_BALANCING = new Form("load-balancing", Arrays.<Field>asList(
+        new EnumField(BALANCING_STRATEGY_NAME, Arrays.asList(
+            "",
+            LeastLoadedBalancingStrategy.NAME,
+            PowerOfTwoChoicesBalancingStrategy.NAME,
+            LatencyAwareBalancingStrategy.NAME
+        ))
+    ));
+
     /**
      * All possible attributes of connection group objects organized as
      * individual, logical forms.
      */
     public static final Collection<Form> ATTRIBUTES = Collections.unmodifiableCollection(Arrays.asList(
-        CONCURRENCY_LIMITS
+        CONCURRENCY_LIMITS,
+        LOAD_BALANCING
     ));
 
     /**
@@ -112,6 +138,12 @@ public class ModeledConnectionGroup extends ModeledChildDirectoryObject<Connecti
     @Inject
     private ConnectionGroupService connectionGroupService;
 
+    /**
+     * Service for traversing trees of connection groups.
+     */
+    @Inject
+    private ConnectionGroupTreeService connectionGroupTreeService;
+
     /**
      * Service for creating and tracking tunnels.
      */
@@ -167,6 +199,13 @@ public class ModeledConnectionGroup extends ModeledChildDirectoryObject<Connecti
         return getModel().getConnectionGroupIdentifiers();
     }
 
+    @Override
+    public void traverse(ConnectionGroupVisitor visitor)
+            throws GuacamoleException {
+        connectionGroupTreeService.traverse(getCurrentUser(), this,
+                getIdentifier(), visitor);
+    }
+
     @Override
     public Set<String> getSupportedAttributeNames() {
         return ATTRIBUTE_NAMES;
@@ -279,4 +318,16 @@ public class ModeledConnectionGroup extends ModeledChildDirectoryObject<Connecti
         return getModel().isSessionAffinityEnabled();
     }
 
+    /**
+     * Returns the name of the strategy which should be used to select
+     * connections within this balancing group.
+     *
+     * @return
+     *     The name of the balancing strategy of this group, or null if the
+     *     default strategy should be used.
+     */
+    public String getBalancingStrategy() {
+        return getModel().getArbitraryAttributeMap().get(BALANCING_STRATEGY_NAME);
+    }
+
 }
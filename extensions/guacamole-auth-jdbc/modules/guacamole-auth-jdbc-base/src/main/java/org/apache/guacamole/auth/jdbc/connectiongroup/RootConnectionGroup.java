@@ -29,6 +29,8 @@ import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.auth.jdbc.base.RestrictedObject;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.ConnectionGroup;
+import org.apache.guacamole.net.auth.ConnectionGroupVisitor;
+import org.apache.guacamole.net.auth.TraversableConnectionGroup;
 import org.apache.guacamole.protocol.GuacamoleClientInformation;
 
 /**
@@ -36,7 +38,7 @@ import org.apache.guacamole.protocol.GuacamoleClientInformation;
  * the database does not contain an actual root group.
  */
 public class RootConnectionGroup extends RestrictedObject
-    implements ConnectionGroup {
+    implements TraversableConnectionGroup {
 
     /**
      * The identifier used to represent the root connection group. There is no
@@ -63,6 +65,12 @@ public class RootConnectionGroup extends RestrictedObject
      */
     @Inject
     private ConnectionGroupService connectionGroupService;
+
+    /**
+     * Service for traversing trees of connection groups.
+     */
+    @Inject
+    private ConnectionGroupTreeService connectionGroupTreeService;
     
     /**
      * Creates a new, empty RootConnectionGroup.
@@ -111,6 +119,13 @@ public class RootConnectionGroup extends RestrictedObject
         return connectionGroupService.getIdentifiersWithin(getCurrentUser(), null);
     }
 
+    @Override
+    public void traverse(ConnectionGroupVisitor visitor)
+            throws GuacamoleException {
+        connectionGroupTreeService.traverse(getCurrentUser(), this, null,
+                visitor);
+    }
+
     @Override
     public String getIdentifier() {
         return IDENTIFIER;
@@ -19,6 +19,7 @@
 
 package org.apache.guacamole.auth.jdbc.permission;
 
+import com.google.inject.Inject;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -40,9 +41,38 @@ public abstract class ModeledObjectPermissionService
     extends ModeledPermissionService<ObjectPermissionSet, ObjectPermission, ObjectPermissionModel>
     implements ObjectPermissionService {
 
+    /**
+     * Cache of the object permissions effectively granted to each entity.
+     */
+    @Inject
+    private ObjectPermissionCache permissionCache;
+
     @Override
     protected abstract ObjectPermissionMapper getPermissionMapper();
 
+    /**
+     * Returns all object permissions of the type managed by this service
+     * which are effectively granted to the given entity, using cached
+     * permissions where possible. Permission to read the entity's
+     * permissions is not checked.
+     *
+     * @param targetEntity
+     *     The entity whose permissions should be returned.
+     *
+     * @param effectiveGroups
+     *     The identifiers of all groups whose permissions should be taken
+     *     into account.
+     *
+     * @return
+     *     The object permissions effectively granted to the given entity.
+     */
+    private ObjectPermissionCache.EffectivePermissions getEffectivePermissions(
+            ModeledPermissions<? extends EntityModel> targetEntity,
+            Set<String> effectiveGroups) {
+        return permissionCache.get(getClass(), targetEntity.getModel(),
+                effectiveGroups, getPermissionMapper());
+    }
+
     @Override
     protected ObjectPermission getPermissionInstance(ObjectPermissionModel model) {
         return new ObjectPermission(model.getType(), model.getObjectIdentifier());
@@ -134,6 +164,7 @@ public abstract class ModeledObjectPermissionService
         if (canAlterPermissions(user, targetEntity, permissions)) {
             Collection<ObjectPermissionModel> models = getModelInstances(targetEntity, permissions);
             getPermissionMapper().insert(models);
+            permissionCache.invalidate(targetEntity.getModel());
             return;
         }
         
@@ -152,6 +183,7 @@ public abstract class ModeledObjectPermissionService
         if (canAlterPermissions(user, targetEntity, permissions)) {
             Collection<ObjectPermissionModel> models = getModelInstances(targetEntity, permissions);
             getPermissionMapper().delete(models);
+            permissionCache.invalidate(targetEntity.getModel());
             return;
         }
         
@@ -160,6 +192,20 @@ public abstract class ModeledObjectPermissionService
 
     }
 
+    @Override
+    public Set<ObjectPermission> retrievePermissions(ModeledAuthenticatedUser user,
+            ModeledPermissions<? extends EntityModel> targetEntity,
+            Set<String> effectiveGroups) throws GuacamoleException {
+
+        // Retrieve permissions only if allowed
+        if (canReadPermissions(user, targetEntity))
+            return getEffectivePermissions(targetEntity, effectiveGroups).getPermissions();
+
+        // User cannot read this entity's permissions
+        throw new GuacamoleSecurityException("Permission denied.");
+
+    }
+
     @Override
     public boolean hasPermission(ModeledAuthenticatedUser user,
             ModeledPermissions<? extends EntityModel> targetEntity,
@@ -168,8 +214,8 @@ public abstract class ModeledObjectPermissionService
 
         // Retrieve permissions only if allowed
         if (canReadPermissions(user, targetEntity))
-            return getPermissionMapper().selectOne(targetEntity.getModel(),
-                    type, identifier, effectiveGroups) != null;
+            return getEffectivePermissions(targetEntity, effectiveGroups)
+                    .hasPermission(type, identifier);
 
         // User cannot read this entity's permissions
         throw new GuacamoleSecurityException("Permission denied.");
@@ -193,9 +239,8 @@ public abstract class ModeledObjectPermissionService
 
         // Otherwise, return explicitly-retrievable identifiers only if allowed
         if (canReadPermissions(user, targetEntity))
-            return getPermissionMapper().selectAccessibleIdentifiers(
-                    targetEntity.getModel(), permissions, identifiers,
-                    effectiveGroups);
+            return getEffectivePermissions(targetEntity, effectiveGroups)
+                    .getAccessibleObjects(permissions, identifiers);
 
         // User cannot read this entity's permissions
         throw new GuacamoleSecurityException("Permission denied.");
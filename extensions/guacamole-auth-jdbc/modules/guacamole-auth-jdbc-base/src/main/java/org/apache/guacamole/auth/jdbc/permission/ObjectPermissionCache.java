@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.permission;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.auth.jdbc.base.EntityModel;
+import org.apache.guacamole.auth.jdbc.base.EntityType;
+import org.apache.guacamole.net.auth.permission.ObjectPermission;
+
+/**
+ * Cache of the object permissions effectively granted to each entity, taking
+ * into account the groups of which that entity is a member. All permissions
+ * of a particular type (connection permissions, user permissions, etc.)
+ * granted to an entity and its effective groups are loaded together, such
+ * that subsequent permission checks for that entity, including checks
+ * against many objects at once, can be answered without querying the
+ * database.
+ *
+ * Cached permissions must be invalidated through invalidate() whenever the
+ * permissions granted to an entity change, and through invalidateAll()
+ * whenever objects are deleted. As with ParameterCache, permissions loaded
+ * during or shortly after an invalidation are not cached, and cached
+ * permissions otherwise expire after a fixed lifetime, such that changes made
+ * outside this Guacamole instance are eventually seen.
+ */
+@Singleton
+public class ObjectPermissionCache {
+
+    /**
+     * The amount of time that cached permissions remain valid, in
+     * milliseconds.
+     */
+    private static final long ENTRY_LIFETIME = 60000;
+
+    /**
+     * The maximum number of sets of effective permissions cached.
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * The amount of time after any invalidation during which loaded
+     * permissions are not cached, in nanoseconds.
+     */
+    private static final long INVALIDATION_GRACE_PERIOD = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * All possible types of object permissions, in ordinal order.
+     */
+    private static final ObjectPermission.Type[] TYPES = ObjectPermission.Type.values();
+
+    /**
+     * The unique combination of permission type, entity, and effective groups
+     * associated with a set of cached permissions.
+     */
+    private static class Key {
+
+        /**
+         * The class of the service which loaded the permissions, uniquely
+         * identifying the type of object affected by those permissions.
+         */
+        private final Class<?> type;
+
+        /**
+         * The ID of the entity whose permissions were loaded.
+         */
+        private final Integer entityID;
+
+        /**
+         * The identifiers of all groups whose permissions were taken into
+         * account when loading the permissions.
+         */
+        private final Set<String> effectiveGroups;
+
+        /**
+         * Creates a new Key for the given combination of permission type,
+         * entity, and effective groups.
+         *
+         * @param type
+         *     The class of the service loading the permissions.
+         *
+         * @param entityID
+         *     The ID of the entity whose permissions are being loaded.
+         *
+         * @param effectiveGroups
+         *     The identifiers of all groups whose permissions should be taken
+         *     into account, or null if no groups should be taken into
+         *     account.
+         */
+        public Key(Class<?> type, Integer entityID, Set<String> effectiveGroups) {
+            this.type = type;
+            this.entityID = entityID;
+            this.effectiveGroups = effectiveGroups != null
+                    ? Collections.unmodifiableSet(new HashSet<String>(effectiveGroups))
+                    : Collections.<String>emptySet();
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = type.hashCode();
+            hash = 31 * hash + (entityID != null ? entityID.hashCode() : 0);
+            hash = 31 * hash + effectiveGroups.hashCode();
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+            return type.equals(other.type)
+                    && (entityID != null ? entityID.equals(other.entityID) : other.entityID == null)
+                    && effectiveGroups.equals(other.effectiveGroups);
+
+        }
+
+    }
+
+    /**
+     * The object permissions effectively granted to a single entity, stored
+     * as a bitmask of granted permission types per object identifier.
+     */
+    public static class EffectivePermissions {
+
+        /**
+         * The permission types granted for each object, indexed by object
+         * identifier. Each permission type is represented by the bit
+         * corresponding to its ordinal.
+         */
+        private final Map<String, Integer> granted;
+
+        /**
+         * Creates a new EffectivePermissions containing the given
+         * permissions.
+         *
+         * @param models
+         *     The permissions effectively granted to the entity.
+         */
+        private EffectivePermissions(Collection<ObjectPermissionModel> models) {
+
+            granted = new HashMap<String, Integer>(models.size());
+            for (ObjectPermissionModel model : models) {
+                Integer mask = granted.get(model.getObjectIdentifier());
+                granted.put(model.getObjectIdentifier(),
+                        (mask != null ? mask : 0) | getMask(model.getType()));
+            }
+
+        }
+
+        /**
+         * Returns the bitmask representing the given permission type.
+         *
+         * @param type
+         *     The permission type to represent.
+         *
+         * @return
+         *     The bitmask representing the given permission type.
+         */
+        private static int getMask(ObjectPermission.Type type) {
+            return 1 << type.ordinal();
+        }
+
+        /**
+         * Returns whether the given permission has been granted for the
+         * object having the given identifier.
+         *
+         * @param type
+         *     The type of permission to check.
+         *
+         * @param identifier
+         *     The identifier of the object affected by the permission.
+         *
+         * @return
+         *     true if the permission has been granted, false otherwise.
+         */
+        public boolean hasPermission(ObjectPermission.Type type, String identifier) {
+            Integer mask = granted.get(identifier);
+            return mask != null && (mask & getMask(type)) != 0;
+        }
+
+        /**
+         * Returns the subset of the given identifiers for which at least one
+         * of the given permissions has been granted, in the order given.
+         *
+         * @param permissions
+         *     The permissions to check. An identifier is included in the
+         *     returned collection if any of these permissions are granted.
+         *
+         * @param identifiers
+         *     The identifiers of the objects to check.
+         *
+         * @return
+         *     The identifiers of all given objects for which any of the given
+         *     permissions have been granted.
+         */
+        public Collection<String> getAccessibleObjects(
+                Collection<ObjectPermission.Type> permissions,
+                Collection<String> identifiers) {
+
+            int required = 0;
+            for (ObjectPermission.Type type : permissions)
+                required |= getMask(type);
+
+            List<String> accessible = new ArrayList<String>(identifiers.size());
+            for (String identifier : identifiers) {
+                Integer mask = granted.get(identifier);
+                if (mask != null && (mask & required) != 0)
+                    accessible.add(identifier);
+            }
+
+            return accessible;
+
+        }
+
+        /**
+         * Returns all permissions granted.
+         *
+         * @return
+         *     A new, mutable set of all permissions granted.
+         */
+        public Set<ObjectPermission> getPermissions() {
+
+            Set<ObjectPermission> permissions = new HashSet<ObjectPermission>();
+            for (Map.Entry<String, Integer> entry : granted.entrySet()) {
+                for (ObjectPermission.Type type : TYPES) {
+                    if ((entry.getValue() & getMask(type)) != 0)
+                        permissions.add(new ObjectPermission(type, entry.getKey()));
+                }
+            }
+
+            return permissions;
+
+        }
+
+    }
+
+    /**
+     * All cached permissions.
+     */
+    private final Cache<Key, EffectivePermissions> entries = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .expireAfterWrite(ENTRY_LIFETIME, TimeUnit.MILLISECONDS)
+            .build();
+
+    /**
+     * The current version of this cache, incremented by each invalidation.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The time of the most recent invalidation, as returned by
+     * System.nanoTime().
+     */
+    private volatile long lastInvalidation = System.nanoTime() - INVALIDATION_GRACE_PERIOD;
+
+    /**
+     * The number of requests for permissions which were satisfied by this
+     * cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of requests for permissions which required the permissions
+     * to be loaded from the database.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the object permissions effectively granted to the given entity
+     * and groups, loading those permissions through the given mapper if they
+     * are not cached.
+     *
+     * @param type
+     *     The class of the service requesting the permissions, uniquely
+     *     identifying the type of object affected by those permissions.
+     *
+     * @param entity
+     *     The entity whose permissions should be returned.
+     *
+     * @param effectiveGroups
+     *     The identifiers of all groups whose permissions should be taken
+     *     into account.
+     *
+     * @param mapper
+     *     The mapper to use to load the permissions if they are not cached.
+     *
+     * @return
+     *     The object permissions effectively granted to the given entity and
+     *     groups.
+     */
+    public EffectivePermissions get(Class<?> type, EntityModel entity,
+            Set<String> effectiveGroups, ObjectPermissionMapper mapper) {
+
+        Key key = new Key(type, entity.getEntityID(), effectiveGroups);
+        EffectivePermissions permissions = entries.getIfPresent(key);
+        if (permissions != null) {
+            hits.incrementAndGet();
+            return permissions;
+        }
+
+        // Load permissions
+        misses.incrementAndGet();
+        long loadedVersion = version.get();
+        permissions = new EffectivePermissions(mapper.select(entity, key.effectiveGroups));
+
+        // Cache permissions only if they cannot predate a recent change,
+        // backing out if invalidated concurrently
+        if (version.get() == loadedVersion
+                && System.nanoTime() - lastInvalidation >= INVALIDATION_GRACE_PERIOD) {
+            entries.put(key, permissions);
+            if (version.get() != loadedVersion)
+                entries.invalidate(key);
+        }
+
+        return permissions;
+
+    }
+
+    /**
+     * Invalidates all cached permissions which may be affected by a change to
+     * the permissions granted to the given entity. This includes the
+     * permissions of the entity itself and, if the entity is a user group,
+     * the permissions of all entities which are members of that group.
+     *
+     * @param entity
+     *     The entity whose permissions have changed.
+     */
+    public void invalidate(EntityModel entity) {
+
+        version.incrementAndGet();
+        lastInvalidation = System.nanoTime();
+
+        Integer entityID = entity.getEntityID();
+        String group = entity.getEntityType() == EntityType.USER_GROUP
+                ? entity.getIdentifier() : null;
+
+        Iterator<Key> keys = entries.asMap().keySet().iterator();
+        while (keys.hasNext()) {
+            Key key = keys.next();
+            if ((entityID != null && entityID.equals(key.entityID))
+                    || (group != null && key.effectiveGroups.contains(group)))
+                keys.remove();
+        }
+
+    }
+
+    /**
+     * Invalidates all cached permissions.
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        lastInvalidation = System.nanoTime();
+        entries.invalidateAll();
+    }
+
+    /**
+     * Returns the number of requests for permissions which were satisfied
+     * from this cache.
+     *
+     * @return
+     *     The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests for permissions which required the
+     * permissions to be loaded from the database.
+     *
+     * @return
+     *     The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+}
@@ -19,8 +19,11 @@
 
 package org.apache.guacamole.auth.jdbc.sharingprofile;
 
+import java.util.Collection;
 import org.apache.guacamole.auth.jdbc.base.ModeledDirectoryObjectMapper;
+import org.apache.guacamole.auth.jdbc.user.UserModel;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 /**
  * Mapper for sharing profile objects.
@@ -46,5 +49,78 @@ public interface SharingProfileMapper
     SharingProfileModel selectOneByName(
             @Param("parentIdentifier") String parentIdentifier,
             @Param("name") String name);
-    
+
+    /**
+     * Selects all sharing profiles of the connections within the given
+     * parent connection group or any of its descendant connection groups,
+     * regardless of whether they are readable by any particular user. This
+     * should only be called on behalf of a system administrator. If sharing
+     * profiles are needed by a non-administrative user who must have explicit
+     * read rights, use selectReadableDescendants() instead. Sharing profiles
+     * are returned in the order of their primary connections, as defined by
+     * selectDescendants() of ConnectionMapper, and are ordered by identifier
+     * within each connection.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent connection group, or null if the root
+     *     connection group is to be queried.
+     *
+     * @param recursive
+     *     Whether the query should leverage database engine features to
+     *     retrieve only descendants of the given parent connection group, in
+     *     depth-first order. If false, all sharing profiles are returned in
+     *     an arbitrary order, and those which are not descendants must be
+     *     filtered out and ordered by the caller. If it is known that the
+     *     database engine in question will always support recursive queries,
+     *     this parameter may be ignored.
+     *
+     * @return
+     *     A cursor over all requested sharing profiles. The cursor remains
+     *     valid only for the duration of the current transaction.
+     */
+    Cursor<SharingProfileModel> selectDescendants(@Param("parentIdentifier") String parentIdentifier,
+            @Param("recursive") boolean recursive);
+
+    /**
+     * Selects all sharing profiles that are explicitly readable by the given
+     * user, of the connections returned by selectReadableDescendants() of
+     * ConnectionMapper for the same user and parent connection group. If
+     * sharing profiles are needed by a system administrator (who, by
+     * definition, does not need explicit read rights), use
+     * selectDescendants() instead. Sharing profiles are returned in the order
+     * of their primary connections, and are ordered by identifier within
+     * each connection.
+     *
+     * @param user
+     *    The user whose permissions should determine whether an object is
+     *    returned.
+     *
+     * @param parentIdentifier
+     *     The identifier of the parent connection group, or null if the root
+     *     connection group is to be queried.
+     *
+     * @param effectiveGroups
+     *     The identifiers of all groups that should be taken into account
+     *     when determining the permissions effectively granted to the user. If
+     *     no groups are given, only permissions directly granted to the user
+     *     will be used.
+     *
+     * @param recursive
+     *     Whether the query should leverage database engine features to
+     *     retrieve only descendants of the given parent connection group, in
+     *     depth-first order. If false, all sharing profiles are returned in
+     *     an arbitrary order, and those which are not descendants must be
+     *     filtered out and ordered by the caller. If it is known that the
+     *     database engine in question will always support recursive queries,
+     *     this parameter may be ignored.
+     *
+     * @return
+     *     A cursor over all requested sharing profiles. The cursor remains
+     *     valid only for the duration of the current transaction.
+     */
+    Cursor<SharingProfileModel> selectReadableDescendants(@Param("user") UserModel user,
+            @Param("parentIdentifier") String parentIdentifier,
+            @Param("effectiveGroups") Collection<String> effectiveGroups,
+            @Param("recursive") boolean recursive);
+
 }
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.sharingprofile;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.guacamole.auth.jdbc.base.ParameterCache;
+
+/**
+ * Cache of the parameters associated with each sharing profile, indexed by
+ * sharing profile identifier.
+ */
+@Singleton
+public class SharingProfileParameterCache extends ParameterCache {
+
+    /**
+     * Mapper for accessing sharing profile parameters.
+     */
+    @Inject
+    private SharingProfileParameterMapper parameterMapper;
+
+    @Override
+    protected Map<String, String> load(String identifier) {
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (SharingProfileParameterModel parameter : parameterMapper.select(identifier))
+            parameters.put(parameter.getName(), parameter.getValue());
+
+        return parameters;
+
+    }
+
+}
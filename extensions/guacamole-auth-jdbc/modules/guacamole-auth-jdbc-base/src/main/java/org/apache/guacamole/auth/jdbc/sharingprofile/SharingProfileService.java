@@ -64,6 +64,12 @@ public class SharingProfileService
     @Inject
     private SharingProfileParameterMapper parameterMapper;
 
+    /**
+     * Cache of the parameters of each sharing profile.
+     */
+    @Inject
+    private SharingProfileParameterCache parameterCache;
+
     /**
      * Provider for creating sharing profiles.
      */
@@ -233,6 +239,7 @@ public class SharingProfileService
         if (!parameterModels.isEmpty())
             parameterMapper.insert(parameterModels);
 
+        parameterCache.invalidate(sharingProfile.getIdentifier());
         return sharingProfile;
 
     }
@@ -249,9 +256,21 @@ public class SharingProfileService
         parameterMapper.delete(object.getIdentifier());
         if (!parameterModels.isEmpty())
             parameterMapper.insert(parameterModels);
+
+        parameterCache.invalidate(object.getIdentifier());
         
     }
 
+    @Override
+    public void deleteObject(ModeledAuthenticatedUser user, String identifier)
+            throws GuacamoleException {
+
+        // Delete sharing profile (and, implicitly, its parameters)
+        super.deleteObject(user, identifier);
+        parameterCache.invalidate(identifier);
+
+    }
+
     /**
      * Retrieves all parameters visible to the given user and associated with
      * the sharing profile having the given identifier. If the given user has no
@@ -287,10 +306,8 @@ public class SharingProfileService
         }
 
         // Populate parameter map if we have permission to do so
-        if (canRetrieveParameters) {
-            for (SharingProfileParameterModel parameter : parameterMapper.select(identifier))
-                parameterMap.put(parameter.getName(), parameter.getValue());
-        }
+        if (canRetrieveParameters)
+            parameterMap.putAll(parameterCache.get(identifier));
 
         return parameterMap;
 
@@ -25,19 +25,25 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.guacamole.auth.jdbc.user.ModeledAuthenticatedUser;
 import org.apache.guacamole.auth.jdbc.connection.ModeledConnection;
 import org.apache.guacamole.auth.jdbc.connectiongroup.ModeledConnectionGroup;
-import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordMapper;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionHistoryWriter;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionModel;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordModel;
-import org.apache.guacamole.auth.jdbc.connection.ConnectionParameterModel;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionParameterCache;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceConflictException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
@@ -54,11 +60,9 @@ import org.apache.guacamole.protocol.GuacamoleClientInformation;
 import org.apache.guacamole.protocol.GuacamoleConfiguration;
 import org.apache.guacamole.token.TokenFilter;
 import org.mybatis.guice.transactional.Transactional;
-import org.apache.guacamole.auth.jdbc.connection.ConnectionParameterMapper;
 import org.apache.guacamole.auth.jdbc.sharing.connection.SharedConnectionDefinition;
 import org.apache.guacamole.auth.jdbc.sharingprofile.ModeledSharingProfile;
-import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileParameterMapper;
-import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileParameterModel;
+import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileParameterCache;
 import org.apache.guacamole.auth.jdbc.user.RemoteAuthenticatedUser;
 import org.apache.guacamole.net.auth.GuacamoleProxyConfiguration;
 import org.apache.guacamole.protocol.FailoverGuacamoleSocket;
@@ -91,22 +95,41 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
     private Provider<ModeledConnection> connectionProvider;
 
     /**
-     * Mapper for accessing connection parameters.
+     * Cache of the parameters of each connection.
      */
     @Inject
-    private ConnectionParameterMapper connectionParameterMapper;
+    private ConnectionParameterCache connectionParameterCache;
 
     /**
-     * Mapper for accessing sharing profile parameters.
+     * Cache of the parameters of each sharing profile.
      */
     @Inject
-    private SharingProfileParameterMapper sharingProfileParameterMapper;
+    private SharingProfileParameterCache sharingProfileParameterCache;
 
     /**
-     * Mapper for accessing connection history.
+     * Service for writing connection history.
      */
     @Inject
-    private ConnectionRecordMapper connectionRecordMapper;
+    private ConnectionHistoryWriter connectionHistoryWriter;
+
+    /**
+     * Service providing the balancing strategy of each balancing group.
+     */
+    @Inject
+    private BalancingStrategyService balancingStrategyService;
+
+    /**
+     * Service measuring the health of the guacd instances used by balancing
+     * groups.
+     */
+    @Inject
+    private GuacdHealthProber guacdHealthProber;
+
+    /**
+     * Pool of sockets which have already connected to guacd.
+     */
+    @Inject
+    private GuacdSocketPool guacdSocketPool;
 
     /**
      * Provider for creating active connection records.
@@ -130,6 +153,31 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
      */
     private final ActiveConnectionMultimap activeConnectionGroups = new ActiveConnectionMultimap();
 
+    /**
+     * The BalancingIndex of each balancing connection group which has been
+     * connected to since the last time the indexes were invalidated, indexed
+     * by connection group identifier.
+     */
+    private final ConcurrentMap<String, BalancingIndex> balancingIndexes =
+            new ConcurrentHashMap<String, BalancingIndex>();
+
+    /**
+     * The number of times the balancing indexes have been invalidated. This
+     * value is used to detect invalidation which occurs while an index is
+     * being built, in which case the newly-built index must not be retained.
+     */
+    private final AtomicLong balancingIndexGeneration = new AtomicLong();
+
+    /**
+     * Lock which prevents a balancing index from being built while any
+     * connection is being acquired or released. The read lock is held while
+     * acquiring or releasing a connection and updating the load tracked by
+     * the current balancing index. The write lock is held while the initial
+     * load of a new balancing index is read and that index is stored, such
+     * that no acquire or release can be counted twice or not at all.
+     */
+    private final ReadWriteLock balancingIndexLock = new ReentrantReadWriteLock();
+
     /**
      * Acquires possibly-exclusive access to any one of the given connections
      * on behalf of the given user. If access is denied for any reason, or if
@@ -155,6 +203,49 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             List<ModeledConnection> connections, boolean includeFailoverOnly)
             throws GuacamoleException;
 
+    /**
+     * Acquires possibly-exclusive access to a connection within the given
+     * BalancingIndex on behalf of the given user, as chosen by the given
+     * BalancingStrategy. If access is denied for any reason, or if no
+     * connection is available, an exception is thrown. Implementations must
+     * select the connection using BalancingIndex.select(), such that the load
+     * tracked by the index reflects the acquired connection.
+     *
+     * @param user
+     *     The user acquiring access.
+     *
+     * @param index
+     *     The BalancingIndex of the balancing group containing the connections
+     *     being accessed.
+     *
+     * @param strategy
+     *     The BalancingStrategy dictating the order in which the connections
+     *     within the group are considered.
+     *
+     * @param allowed
+     *     The identifiers of the only connections which may be acquired, or
+     *     null if any connection within the group may be acquired.
+     *
+     * @param excluded
+     *     The identifiers of all connections which must not be acquired.
+     *
+     * @param includeFailoverOnly
+     *     Whether connections which have been designated for use in failover
+     *     situations only (hot spares) may be considered.
+     *
+     * @return
+     *     The connection that has been acquired on behalf of the given user.
+     *     This connection is shared by all users of the BalancingIndex and
+     *     must not be exposed to the user directly.
+     *
+     * @throws GuacamoleException
+     *     If access is denied to the given user for any reason.
+     */
+    protected abstract ModeledConnection acquire(RemoteAuthenticatedUser user,
+            BalancingIndex index, BalancingStrategy strategy,
+            Collection<String> allowed, Collection<String> excluded,
+            boolean includeFailoverOnly) throws GuacamoleException;
+
     /**
      * Releases possibly-exclusive access to the given connection on behalf of
      * the given user. If the given user did not already have access, the
@@ -169,6 +260,21 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
     protected abstract void release(RemoteAuthenticatedUser user,
             ModeledConnection connection);
 
+    /**
+     * Returns the number of times the connection having the given identifier
+     * is currently acquired, as tracked by acquire() and release(). This is
+     * the load with which the connection enters a newly-built
+     * BalancingIndex.
+     *
+     * @param identifier
+     *     The identifier of the connection.
+     *
+     * @return
+     *     The number of times the connection having the given identifier is
+     *     currently acquired.
+     */
+    protected abstract int getAcquiredCount(String identifier);
+
     /**
      * Acquires possibly-exclusive access to the given connection group on
      * behalf of the given user. If access is denied for any reason, an
@@ -237,16 +343,10 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
         config.setConnectionID(connectionID);
 
         // Set parameters from associated data
-        if (sharingProfile != null) {
-            Collection<SharingProfileParameterModel> parameters = sharingProfileParameterMapper.select(sharingProfile.getIdentifier());
-            for (SharingProfileParameterModel parameter : parameters)
-                config.setParameter(parameter.getName(), parameter.getValue());
-        }
-        else {
-            Collection<ConnectionParameterModel> parameters = connectionParameterMapper.select(connection.getIdentifier());
-            for (ConnectionParameterModel parameter : parameters)
-                config.setParameter(parameter.getName(), parameter.getValue());
-        }
+        if (sharingProfile != null)
+            config.setParameters(sharingProfileParameterCache.get(sharingProfile.getIdentifier()));
+        else
+            config.setParameters(connectionParameterCache.get(connection.getIdentifier()));
 
         return config;
 
@@ -254,7 +354,9 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
 
     /**
      * Saves the given ActiveConnectionRecord to the database. The end date of
-     * the saved record will be populated with the current time.
+     * the saved record will be populated with the current time. The record is
+     * written in the background by the ConnectionHistoryWriter, and thus may
+     * not be visible within the database immediately.
      *
      * @param record
      *     The record to save.
@@ -274,8 +376,8 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
         recordModel.setStartDate(record.getStartDate());
         recordModel.setEndDate(new Date());
 
-        // Insert connection record
-        connectionRecordMapper.insert(recordModel);
+        // Queue connection record for insertion
+        connectionHistoryWriter.write(recordModel);
 
     }
 
@@ -327,6 +429,71 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
 
     }
 
+    /**
+     * Returns a GuacamoleSocket which has connected to guacd and completed
+     * the Guacamole protocol handshake using the given configuration. A
+     * socket which has already connected to guacd is used if available,
+     * falling back to connecting a new socket if the handshake over that
+     * socket fails.
+     *
+     * @param proxyConfig
+     *     The configuration information to use when connecting to guacd.
+     *
+     * @param config
+     *     The configuration to use for the Guacamole protocol handshake.
+     *
+     * @param info
+     *     Information describing the Guacamole client connecting.
+     *
+     * @param socketClosedCallback
+     *     The callback which should be invoked whenever the returned socket
+     *     closes.
+     *
+     * @return
+     *     A GuacamoleSocket which has completed the Guacamole protocol
+     *     handshake.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while connecting to guacd, or during the
+     *     Guacamole protocol handshake.
+     */
+    private ConfiguredGuacamoleSocket getConfiguredGuacamoleSocket(
+            GuacamoleProxyConfiguration proxyConfig,
+            GuacamoleConfiguration config, GuacamoleClientInformation info,
+            Runnable socketClosedCallback) throws GuacamoleException {
+
+        // Prefer any socket which has already connected
+        GuacamoleSocket pooled = guacdSocketPool.take(proxyConfig);
+        if (pooled != null) {
+
+            try {
+                return new ConfiguredGuacamoleSocket(new ManagedPooledGuacamoleSocket(
+                        pooled, socketClosedCallback), config, info);
+            }
+
+            // Pooled sockets may be stale if guacd has restarted
+            catch (GuacamoleException e) {
+
+                logger.debug("Handshake over pooled guacd socket failed. "
+                        + "Retrying with a new socket.", e);
+
+                guacdSocketPool.discard(proxyConfig);
+                try {
+                    pooled.close();
+                }
+                catch (GuacamoleException closeError) {
+                    logger.debug("Unable to close failed pooled socket.", closeError);
+                }
+
+            }
+
+        }
+
+        return new ConfiguredGuacamoleSocket(getUnconfiguredGuacamoleSocket(
+                proxyConfig, socketClosedCallback), config, info);
+
+    }
+
     /**
      * Task which handles cleanup of a connection associated with some given
      * ActiveConnectionRecord.
@@ -385,7 +552,22 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
                 // Release connection
                 activeConnections.remove(identifier, activeConnection);
                 activeConnectionGroups.remove(parentIdentifier, activeConnection);
-                release(user, connection);
+
+                Lock lock = balancingIndexLock.readLock();
+                lock.lock();
+                try {
+
+                    release(user, connection);
+
+                    // Update load of connection within any balancing group
+                    BalancingIndex index = balancingIndexes.get(parentIdentifier);
+                    if (index != null)
+                        index.released(identifier);
+
+                }
+                finally {
+                    lock.unlock();
+                }
 
             }
 
@@ -479,9 +661,9 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             tokenFilter.filterValues(config.getParameters());
 
             // Obtain socket which will automatically run the cleanup task
-            ConfiguredGuacamoleSocket socket = new ConfiguredGuacamoleSocket(
-                getUnconfiguredGuacamoleSocket(connection.getGuacamoleProxyConfiguration(),
-                        cleanupTask), config, info);
+            ConfiguredGuacamoleSocket socket = getConfiguredGuacamoleSocket(
+                    connection.getGuacamoleProxyConfiguration(), config, info,
+                    cleanupTask);
 
             // Assign and return new tunnel
             if (interceptErrors)
@@ -537,42 +719,179 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
     }
 
     /**
-     * Returns a list of all balanced connections within a given connection
-     * group. If the connection group is not balancing, or it contains no
-     * connections, an empty list is returned.
+     * Returns the BalancingIndex of the given connection group, building that
+     * index from the database if it does not yet exist. The load of each
+     * connection within a newly-built index is initialized from the number of
+     * times each connection is currently acquired, as returned by
+     * getAcquiredCount(), and the guacd instance of each
+     * connection is registered for health probing. If the connection group is
+     * not balancing, null is returned.
      *
      * @param user
-     *     The user on whose behalf the balanced connections within the given
-     *     connection group are being retrieved.
+     *     The user on whose behalf the balancing index is being retrieved.
      *
      * @param connectionGroup
-     *     The connection group to retrieve the balanced connections of.
+     *     The connection group to retrieve the balancing index of.
      *
      * @return
-     *     A list containing all balanced connections within the given group,
-     *     or an empty list if there are no such connections.
+     *     The BalancingIndex of the given connection group, or null if the
+     *     group is not balancing.
      */
-    private List<ModeledConnection> getBalancedConnections(ModeledAuthenticatedUser user,
+    private BalancingIndex getBalancingIndex(ModeledAuthenticatedUser user,
             ModeledConnectionGroup connectionGroup) {
 
         // If not a balancing group, there are no balanced connections
         if (connectionGroup.getType() != ConnectionGroup.Type.BALANCING)
-            return Collections.<ModeledConnection>emptyList();
+            return null;
 
-        // If group has no children, there are no balanced connections
-        Collection<String> identifiers = connectionMapper.selectIdentifiersWithin(connectionGroup.getIdentifier());
-        if (identifiers.isEmpty())
-            return Collections.<ModeledConnection>emptyList();
+        // Use existing index, if available
+        String groupIdentifier = connectionGroup.getIdentifier();
+        BalancingIndex index = balancingIndexes.get(groupIdentifier);
+        if (index != null)
+            return index;
 
-        // Restrict to preferred connections if session affinity is enabled
-        if (connectionGroup.isSessionAffinityEnabled())
-            identifiers = getPreferredConnections(user, identifiers);
+        long generation = balancingIndexGeneration.get();
 
         // Retrieve all children
-        Collection<ConnectionModel> models = connectionMapper.select(identifiers);
-        List<ModeledConnection> connections = new ArrayList<ModeledConnection>(models.size());
+        Collection<String> identifiers = connectionMapper.selectIdentifiersWithin(groupIdentifier);
+        Collection<ConnectionModel> models = identifiers.isEmpty()
+                ? Collections.<ConnectionModel>emptyList()
+                : connectionMapper.select(identifiers);
+
+        // Convert each retrieved model to a modeled connection, noting the
+        // health of its guacd
+        List<ModeledConnection> connections = wrapConnections(user, models);
+        Map<String, GuacdHealth> health = new HashMap<String, GuacdHealth>(connections.size());
+        for (ModeledConnection connection : connections) {
+
+            String identifier = connection.getIdentifier();
+            try {
+                health.put(identifier, guacdHealthProber.getHealth(
+                        connection.getGuacamoleProxyConfiguration(),
+                        connection.getModel().getProtocol()));
+            }
+            catch (GuacamoleException e) {
+                logger.warn("Health of guacd for connection \"{}\" cannot be "
+                        + "monitored: {}", identifier, e.getMessage());
+                logger.debug("Unable to read guacd configuration.", e);
+            }
+
+        }
+
+        // Read the number of times each connection is acquired and store
+        // the new index without any connection being acquired or released
+        Lock lock = balancingIndexLock.writeLock();
+        lock.lock();
+        try {
+
+            Map<String, Integer> activeCounts = new HashMap<String, Integer>(connections.size());
+            for (ModeledConnection connection : connections) {
+                String identifier = connection.getIdentifier();
+                activeCounts.put(identifier, getAcquiredCount(identifier));
+            }
+
+            // Store new index unless another was built concurrently
+            index = new BalancingIndex(groupIdentifier, connections, activeCounts, health);
+            BalancingIndex existing = balancingIndexes.putIfAbsent(groupIdentifier, index);
+            if (existing != null)
+                return existing;
+
+            // Do not retain the index if invalidated while it was being built
+            if (balancingIndexGeneration.get() != generation)
+                balancingIndexes.remove(groupIdentifier, index);
 
-        // Convert each retrieved model to a modeled connection
+            return index;
+
+        }
+        finally {
+            lock.unlock();
+        }
+        
+    }
+
+    /**
+     * Acquires a connection within the given balancing connection group on
+     * behalf of the given user, as chosen by the given BalancingStrategy.
+     * The connection is selected only from the BalancingIndex currently
+     * stored for the group, such that the load of the acquired connection is
+     * tracked by the same index that will be updated when the connection is
+     * released. If the index is invalidated or replaced before the connection
+     * can be selected, the current index is retrieved and selection is
+     * retried.
+     *
+     * @param user
+     *     The user acquiring access.
+     *
+     * @param connectionGroup
+     *     The balancing connection group containing the connection to
+     *     acquire.
+     *
+     * @param strategy
+     *     The BalancingStrategy dictating the order in which connections are
+     *     considered.
+     *
+     * @param allowed
+     *     The identifiers of the only connections which may be acquired, or
+     *     null if any connection may be acquired.
+     *
+     * @param excluded
+     *     The identifiers of all connections which must not be acquired.
+     *
+     * @param includeFailoverOnly
+     *     Whether connections which have been designated for use in failover
+     *     situations only (hot spares) may be considered.
+     *
+     * @return
+     *     The connection that has been acquired on behalf of the given user.
+     *     This connection is shared by all users of the BalancingIndex and
+     *     must not be modified.
+     *
+     * @throws GuacamoleException
+     *     If access is denied to the given user for any reason.
+     */
+    private ModeledConnection acquireBalanced(ModeledAuthenticatedUser user,
+            ModeledConnectionGroup connectionGroup, BalancingStrategy strategy,
+            Collection<String> allowed, Collection<String> excluded,
+            boolean includeFailoverOnly) throws GuacamoleException {
+
+        while (true) {
+
+            BalancingIndex index = getBalancingIndex(user, connectionGroup);
+            if (index == null)
+                throw new GuacamoleSecurityException("Permission denied.");
+
+            Lock lock = balancingIndexLock.readLock();
+            lock.lock();
+            try {
+                if (balancingIndexes.get(connectionGroup.getIdentifier()) == index)
+                    return acquire(user, index, strategy, allowed, excluded,
+                            includeFailoverOnly);
+            }
+            finally {
+                lock.unlock();
+            }
+
+        }
+
+    }
+
+    /**
+     * Converts each of the given connection models into a ModeledConnection
+     * associated with the given user.
+     *
+     * @param user
+     *     The user that the connections should be associated with.
+     *
+     * @param models
+     *     The connection models to convert.
+     *
+     * @return
+     *     A list containing a ModeledConnection for each of the given models.
+     */
+    private List<ModeledConnection> wrapConnections(ModeledAuthenticatedUser user,
+            Collection<ConnectionModel> models) {
+
+        List<ModeledConnection> connections = new ArrayList<ModeledConnection>(models.size());
         for (ConnectionModel model : models) {
             ModeledConnection connection = connectionProvider.get();
             connection.init(user, model);
@@ -580,7 +899,13 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
         }
 
         return connections;
-        
+
+    }
+
+    @Override
+    public void invalidateBalancingIndexes() {
+        balancingIndexGeneration.incrementAndGet();
+        balancingIndexes.clear();
     }
 
     @Override
@@ -634,8 +959,22 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             final ModeledConnection connection, GuacamoleClientInformation info,
             Map<String, String> tokens) throws GuacamoleException {
 
-        // Acquire access to single connection, ignoring the failover-only flag
-        acquire(user, Collections.singletonList(connection), true);
+        Lock lock = balancingIndexLock.readLock();
+        lock.lock();
+        try {
+
+            // Acquire access to single connection, ignoring the failover-only flag
+            acquire(user, Collections.singletonList(connection), true);
+
+            // Update load of connection within any balancing group
+            BalancingIndex index = balancingIndexes.get(connection.getParentIdentifier());
+            if (index != null)
+                index.acquired(connection.getIdentifier());
+
+        }
+        finally {
+            lock.unlock();
+        }
 
         // Connect only if the connection was successfully acquired
         ActiveConnectionRecord connectionRecord = activeConnectionRecordProvider.get();
@@ -660,10 +999,26 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
         boolean upstreamHasFailed = false;
 
         // If group has no associated balanced connections, cannot connect
-        List<ModeledConnection> connections = getBalancedConnections(user, connectionGroup);
-        if (connections.isEmpty())
+        BalancingIndex index = getBalancingIndex(user, connectionGroup);
+        if (index == null || index.getIdentifiers().isEmpty())
             throw new GuacamoleSecurityException("Permission denied.");
 
+        // Restrict to preferred connections if session affinity is enabled
+        Collection<String> allowed = null;
+        if (connectionGroup.isSessionAffinityEnabled()) {
+            Collection<String> preferred = getPreferredConnections(user, index.getIdentifiers());
+            if (preferred != index.getIdentifiers())
+                allowed = preferred;
+        }
+
+        // Order connections as dictated by the group's balancing strategy
+        BalancingStrategy strategy = balancingStrategyService.getStrategy(
+                connectionGroup.getBalancingStrategy());
+
+        // Connections which have failed during this connection attempt
+        int candidates = (allowed != null) ? allowed.size() : index.getIdentifiers().size();
+        Set<String> failed = new HashSet<String>();
+
         do {
 
             // Acquire group
@@ -673,7 +1028,11 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             // connections only if at least one upstream failure has occurred
             ModeledConnection connection;
             try {
-                connection = acquire(user, connections, upstreamHasFailed);
+                ModeledConnection selected = acquireBalanced(user,
+                        connectionGroup, strategy, allowed, failed,
+                        upstreamHasFailed);
+                connection = wrapConnections(user,
+                        Collections.singletonList(selected.getModel())).get(0);
             }
 
             // Ensure connection group is always released if child acquire fails
@@ -688,7 +1047,7 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
                 ActiveConnectionRecord connectionRecord = activeConnectionRecordProvider.get();
                 connectionRecord.init(user, connectionGroup, connection);
                 GuacamoleTunnel tunnel = assignGuacamoleTunnel(connectionRecord,
-                        info, tokens, connections.size() > 1);
+                        info, tokens, candidates > 1);
 
                 // If session affinity is enabled, prefer this connection going forward
                 if (connectionGroup.isSessionAffinityEnabled())
@@ -711,11 +1070,11 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             catch (GuacamoleUpstreamException e) {
                 logger.info("Upstream error intercepted for connection \"{}\". Failing over to next connection in group...", connection.getIdentifier());
                 logger.debug("Upstream remote desktop reported an error during connection.", e);
-                connections.remove(connection);
+                failed.add(connection.getIdentifier());
                 upstreamHasFailed = true;
             }
 
-        } while (!connections.isEmpty());
+        } while (failed.size() < candidates);
 
         // All connection possibilities have been exhausted
         throw new GuacamoleResourceConflictException("Cannot connect. All upstream connections are unavailable.");
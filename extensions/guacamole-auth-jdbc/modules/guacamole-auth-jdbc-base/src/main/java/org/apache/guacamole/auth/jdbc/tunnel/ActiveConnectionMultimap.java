@@ -19,26 +19,138 @@
 
 package org.apache.guacamole.auth.jdbc.tunnel;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Mapping of object identifiers to lists of connection records. Records are
  * added or removed individually, and the overall list of current records
  * associated with a given object can be retrieved at any time. The public
  * methods of this class are all threadsafe.
+ *
+ * The records associated with each object are stored as an immutable
+ * snapshot which is replaced atomically whenever a record is added or
+ * removed. Retrieving the records of an object thus never blocks, while
+ * updates contend only with other updates to the same object.
  */
 public class ActiveConnectionMultimap {
 
+    /**
+     * An immutable, insertion-ordered set of connection records.
+     */
+    private static class Snapshot {
+
+        /**
+         * The records within this snapshot, in insertion order.
+         */
+        private final ActiveConnectionRecord[] records;
+
+        /**
+         * Read-only view of the records within this snapshot.
+         */
+        private final Collection<ActiveConnectionRecord> view;
+
+        /**
+         * Creates a new Snapshot containing the given records. The given
+         * array must not be modified after the Snapshot is created.
+         *
+         * @param records
+         *     The records within the snapshot, in insertion order.
+         */
+        public Snapshot(ActiveConnectionRecord... records) {
+            this.records = records;
+            this.view = Collections.unmodifiableList(Arrays.asList(records));
+        }
+
+        /**
+         * Returns the index of the given record within this snapshot.
+         *
+         * @param record
+         *     The record to locate.
+         *
+         * @return
+         *     The index of the given record, or -1 if the record is not
+         *     present.
+         */
+        private int indexOf(ActiveConnectionRecord record) {
+
+            for (int i = 0; i < records.length; i++) {
+                if (records[i] == record)
+                    return i;
+            }
+
+            return -1;
+
+        }
+
+        /**
+         * Returns a new snapshot containing all records within this snapshot
+         * plus the given record. If the record is already present, this
+         * snapshot is returned.
+         *
+         * @param record
+         *     The record to add.
+         *
+         * @return
+         *     A snapshot containing all records within this snapshot as well
+         *     as the given record.
+         */
+        public Snapshot with(ActiveConnectionRecord record) {
+
+            if (indexOf(record) != -1)
+                return this;
+
+            ActiveConnectionRecord[] updated = Arrays.copyOf(records, records.length + 1);
+            updated[records.length] = record;
+            return new Snapshot(updated);
+
+        }
+
+        /**
+         * Returns a new snapshot containing all records within this snapshot
+         * except the given record. If the record is not present, this
+         * snapshot is returned.
+         *
+         * @param record
+         *     The record to remove.
+         *
+         * @return
+         *     A snapshot containing all records within this snapshot except
+         *     the given record.
+         */
+        public Snapshot without(ActiveConnectionRecord record) {
+
+            int index = indexOf(record);
+            if (index == -1)
+                return this;
+
+            ActiveConnectionRecord[] updated = new ActiveConnectionRecord[records.length - 1];
+            System.arraycopy(records, 0, updated, 0, index);
+            System.arraycopy(records, index + 1, updated, index, updated.length - index);
+            return new Snapshot(updated);
+
+        }
+
+        /**
+         * Returns whether this snapshot contains no records.
+         *
+         * @return
+         *     true if this snapshot contains no records, false otherwise.
+         */
+        public boolean isEmpty() {
+            return records.length == 0;
+        }
+
+    }
+
     /**
      * All active connections to a connection having a given identifier.
      */
-    private final Map<String, Set<ActiveConnectionRecord>> records =
-            new HashMap<String, Set<ActiveConnectionRecord>>();
+    private final ConcurrentMap<String, Snapshot> records =
+            new ConcurrentHashMap<String, Snapshot>();
 
     /**
      * Stores the given connection record in the list of active connections
@@ -51,19 +163,26 @@ public class ActiveConnectionMultimap {
      *     The record associated with the active connection.
      */
     public void put(String identifier, ActiveConnectionRecord record) {
-        synchronized (records) {
 
-            // Get set of active connection records, creating if necessary
-            Set<ActiveConnectionRecord> connections = records.get(identifier);
+        // Repeatedly attempt to replace the current snapshot until no other
+        // update has intervened
+        while (true) {
+
+            // Create set of active connection records if necessary
+            Snapshot connections = records.get(identifier);
             if (connections == null) {
-                connections = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<ActiveConnectionRecord, Boolean>()));
-                records.put(identifier, connections);
+                if (records.putIfAbsent(identifier, new Snapshot(record)) == null)
+                    return;
+                continue;
             }
 
             // Add active connection
-            connections.add(record);
+            Snapshot updated = connections.with(record);
+            if (updated == connections || records.replace(identifier, connections, updated))
+                return;
 
         }
+
     }
 
     /**
@@ -77,27 +196,40 @@ public class ActiveConnectionMultimap {
      *     The record associated with the active connection.
      */
     public void remove(String identifier, ActiveConnectionRecord record) {
-        synchronized (records) {
+
+        // Repeatedly attempt to replace the current snapshot until no other
+        // update has intervened
+        while (true) {
 
             // Get set of active connection records
-            Set<ActiveConnectionRecord> connections = records.get(identifier);
-            assert(connections != null);
+            Snapshot connections = records.get(identifier);
+            if (connections == null)
+                return;
 
             // Remove old record
-            connections.remove(record);
+            Snapshot updated = connections.without(record);
+            if (updated == connections)
+                return;
 
             // If now empty, clean the tracking entry
-            if (connections.isEmpty())
-                records.remove(identifier);
+            if (updated.isEmpty()) {
+                if (records.remove(identifier, connections))
+                    return;
+            }
+
+            else if (records.replace(identifier, connections, updated))
+                return;
 
         }
+
     }
 
     /**
      * Returns a collection of active connection records associated with the
      * object having the given identifier. The collection will be sorted in
      * insertion order. If there are no such connections, an empty collection is
-     * returned.
+     * returned. The returned collection is a snapshot, and will not reflect
+     * later changes. This function never blocks.
      *
      * @param identifier
      *     The identifier of the object to check.
@@ -108,16 +240,14 @@ public class ActiveConnectionMultimap {
      *     records.
      */
     public Collection<ActiveConnectionRecord> get(String identifier) {
-        synchronized (records) {
 
-            // Get set of active connection records
-            Collection<ActiveConnectionRecord> connections = records.get(identifier);
-            if (connections != null)
-                return Collections.unmodifiableCollection(connections);
+        // Get set of active connection records
+        Snapshot connections = records.get(identifier);
+        if (connections != null)
+            return connections.view;
 
-            return Collections.<ActiveConnectionRecord>emptyList();
+        return Collections.<ActiveConnectionRecord>emptyList();
 
-        }
     }
 
 }
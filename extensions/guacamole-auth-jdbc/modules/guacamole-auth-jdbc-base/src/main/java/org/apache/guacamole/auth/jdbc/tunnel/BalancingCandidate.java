@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import org.apache.guacamole.auth.jdbc.connection.ModeledConnection;
+
+/**
+ * A connection within a balancing connection group which may be selected by
+ * a BalancingStrategy, along with the current load of that connection.
+ */
+public interface BalancingCandidate {
+
+    /**
+     * Returns the identifier of the connection represented by this candidate.
+     *
+     * @return
+     *     The identifier of the connection.
+     */
+    String getIdentifier();
+
+    /**
+     * Returns the connection represented by this candidate. This connection
+     * is shared across all users of the balancing group and must only be used
+     * to read the properties of the connection.
+     *
+     * @return
+     *     The connection represented by this candidate.
+     */
+    ModeledConnection getConnection();
+
+    /**
+     * Returns the weight of the connection, as used by weighted load
+     * balancing. This value is always at least 1.
+     *
+     * @return
+     *     The weight of the connection.
+     */
+    int getWeight();
+
+    /**
+     * Returns the number of times the connection is currently in use.
+     *
+     * @return
+     *     The number of times the connection is currently in use.
+     */
+    int getActiveCount();
+
+    /**
+     * Returns whether the connection has been designated for use in failover
+     * situations only (as a hot spare).
+     *
+     * @return
+     *     true if the connection is failover-only, false otherwise.
+     */
+    boolean isFailoverOnly();
+
+    /**
+     * Returns the current health of the guacd instance used by the
+     * connection, as determined by the GuacdHealthProber.
+     *
+     * @return
+     *     The health of the guacd instance used by the connection, or null if
+     *     the health of that instance is not being tracked.
+     */
+    GuacdHealth getHealth();
+
+}
@@ -0,0 +1,732 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.connection.ModeledConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the connections within a single balancing connection
+ * group, ordered by load. The load of each connection is the number of times
+ * that connection is currently acquired, relative to its connection weight,
+ * such that the least-loaded connection can be found in O(log n) time without
+ * querying the database. Connections having a weight less than 1 are
+ * disabled and never selected, and failover-only connections are selected
+ * only when explicitly requested.
+ *
+ * The order in which connections are considered is determined by a
+ * BalancingStrategy. Connections whose guacd instance is reported unhealthy by
+ * the GuacdHealthProber are avoided unless no healthy connection can be used.
+ *
+ * The acquire count of each connection must be kept up-to-date through
+ * acquired() and released(), which also reposition the connection within the
+ * index in O(log n) time.
+ */
+public class BalancingIndex {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BalancingIndex.class);
+
+    /**
+     * Callback which attempts to reserve a specific connection selected from
+     * the index, such as by checking per-user and per-connection limits.
+     */
+    public interface Reservation {
+
+        /**
+         * Attempts to reserve the given connection. This function is invoked
+         * while the index is locked, and thus must not block.
+         *
+         * @param connection
+         *     The connection to reserve.
+         *
+         * @return
+         *     true if the connection has been reserved, false if the next
+         *     connection in order of load should be tried instead.
+         *
+         * @throws GuacamoleException
+         *     If reservation fails in a way that should abort selection
+         *     entirely.
+         */
+        boolean tryReserve(ModeledConnection connection) throws GuacamoleException;
+
+    }
+
+    /**
+     * A single connection within the index, along with the number of times
+     * that connection is currently acquired.
+     */
+    private static class Member implements BalancingCandidate {
+
+        /**
+         * The connection represented by this member.
+         */
+        private final ModeledConnection connection;
+
+        /**
+         * The identifier of the connection.
+         */
+        private final String identifier;
+
+        /**
+         * The weight of the connection.
+         */
+        private final int weight;
+
+        /**
+         * The health of the guacd instance used by the connection, or null if
+         * not tracked.
+         */
+        private final GuacdHealth health;
+
+        /**
+         * The number of times the connection is currently acquired. This
+         * value is only modified while the index is locked.
+         */
+        private volatile int active;
+
+        /**
+         * Creates a new Member for the given connection.
+         *
+         * @param connection
+         *     The connection represented by the member.
+         *
+         * @param health
+         *     The health of the guacd instance used by the connection, or
+         *     null if not tracked.
+         *
+         * @param active
+         *     The number of times the connection is currently acquired.
+         */
+        public Member(ModeledConnection connection, GuacdHealth health,
+                int active) {
+            this.connection = connection;
+            this.identifier = connection.getIdentifier();
+            this.weight = connection.getConnectionWeight();
+            this.health = health;
+            this.active = active;
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public ModeledConnection getConnection() {
+            return connection;
+        }
+
+        @Override
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public int getActiveCount() {
+            return active;
+        }
+
+        @Override
+        public boolean isFailoverOnly() {
+            return connection.isFailoverOnly();
+        }
+
+        @Override
+        public GuacdHealth getHealth() {
+            return health;
+        }
+
+    }
+
+    /**
+     * Compares the load of the given members, where load is the number of
+     * times a member is in use relative to its weight. Members having equal
+     * load are ordered by ascending weight.
+     *
+     * @param a
+     *     The first member to compare.
+     *
+     * @param b
+     *     The second member to compare.
+     *
+     * @return
+     *     A negative value if the first member is less loaded than the
+     *     second, a positive value if the first member is more loaded than the
+     *     second, or zero if both members are equally loaded and have the same
+     *     weight.
+     */
+    public static int compareLoad(BalancingCandidate a, BalancingCandidate b) {
+
+        // Compare active / weight without division
+        long loadA = (long) a.getActiveCount() * b.getWeight();
+        long loadB = (long) b.getActiveCount() * a.getWeight();
+        if (loadA != loadB)
+            return loadA < loadB ? -1 : 1;
+
+        // If calculated loads are equal, prefer lower assigned weight
+        return Integer.compare(a.getWeight(), b.getWeight());
+
+    }
+
+    /**
+     * Comparator which orders members by ascending load, as determined by the
+     * number of times each member is acquired relative to its weight. Members
+     * having equal load are ordered by ascending weight, and then by
+     * identifier, such that no two distinct members compare as equal.
+     */
+    private static final Comparator<Member> LOAD_ORDER = new Comparator<Member>() {
+
+        @Override
+        public int compare(Member a, Member b) {
+
+            int result = compareLoad(a, b);
+            if (result != 0)
+                return result;
+
+            return a.identifier.compareTo(b.identifier);
+
+        }
+
+    };
+
+    /**
+     * The identifier of the balancing group.
+     */
+    private final String groupIdentifier;
+
+    /**
+     * All enabled members, indexed by connection identifier.
+     */
+    private final Map<String, Member> members = new HashMap<String, Member>();
+
+    /**
+     * All enabled members, in no particular order.
+     */
+    private final List<Member> memberList = new ArrayList<Member>();
+
+    /**
+     * All enabled, normal (not failover-only) members, ordered by load.
+     */
+    private final NavigableSet<Member> normal = new TreeSet<Member>(LOAD_ORDER);
+
+    /**
+     * All enabled, failover-only members, ordered by load.
+     */
+    private final NavigableSet<Member> failover = new TreeSet<Member>(LOAD_ORDER);
+
+    /**
+     * The identifiers of all connections within the group, including
+     * disabled connections.
+     */
+    private final Set<String> identifiers;
+
+    /**
+     * Creates a new BalancingIndex containing the given connections.
+     *
+     * @param groupIdentifier
+     *     The identifier of the balancing group.
+     *
+     * @param connections
+     *     All connections within the balancing group.
+     *
+     * @param activeCounts
+     *     The number of times each connection is currently acquired, indexed
+     *     by connection identifier. Connections which are not present within
+     *     this map are assumed to not be acquired.
+     *
+     * @param health
+     *     The health of the guacd instance used by each connection, indexed by
+     *     connection identifier. Connections which are not present within this
+     *     map are assumed to always be healthy.
+     */
+    public BalancingIndex(String groupIdentifier,
+            Collection<ModeledConnection> connections,
+            Map<String, Integer> activeCounts,
+            Map<String, GuacdHealth> health) {
+
+        this.groupIdentifier = groupIdentifier;
+
+        Set<String> allIdentifiers = new HashSet<String>(connections.size());
+        for (ModeledConnection connection : connections) {
+
+            allIdentifiers.add(connection.getIdentifier());
+
+            // Connections with a weight less than 1 are disabled
+            if (connection.getConnectionWeight() < 1)
+                continue;
+
+            Integer active = activeCounts.get(connection.getIdentifier());
+            Member member = new Member(connection,
+                    health.get(connection.getIdentifier()),
+                    active != null ? active : 0);
+            members.put(member.identifier, member);
+            memberList.add(member);
+            getTree(member).add(member);
+
+        }
+
+        this.identifiers = Collections.unmodifiableSet(allIdentifiers);
+
+    }
+
+    /**
+     * Returns the tree containing the given member.
+     *
+     * @param member
+     *     The member to locate.
+     *
+     * @return
+     *     The tree which contains (or should contain) the given member.
+     */
+    private NavigableSet<Member> getTree(Member member) {
+        return member.connection.isFailoverOnly() ? failover : normal;
+    }
+
+    /**
+     * Returns the identifier of the balancing group represented by this
+     * index.
+     *
+     * @return
+     *     The identifier of the balancing group.
+     */
+    public String getGroupIdentifier() {
+        return groupIdentifier;
+    }
+
+    /**
+     * Returns the identifiers of all connections within the balancing group,
+     * including disabled connections.
+     *
+     * @return
+     *     An unmodifiable set of the identifiers of all connections within
+     *     the balancing group.
+     */
+    public Set<String> getIdentifiers() {
+        return identifiers;
+    }
+
+    /**
+     * Returns the connection within the balancing group having the given
+     * identifier, if that connection is enabled.
+     *
+     * @param identifier
+     *     The identifier of the connection to retrieve.
+     *
+     * @return
+     *     The connection having the given identifier, or null if no such
+     *     enabled connection exists within the group.
+     */
+    public synchronized ModeledConnection getConnection(String identifier) {
+        Member member = members.get(identifier);
+        return member != null ? member.connection : null;
+    }
+
+    /**
+     * Returns the number of times the connection having the given identifier
+     * is currently acquired, as tracked by this index.
+     *
+     * @param identifier
+     *     The identifier of the connection.
+     *
+     * @return
+     *     The number of times the connection is currently acquired, or zero
+     *     if no such enabled connection exists within the group.
+     */
+    public synchronized int getActiveCount(String identifier) {
+        Member member = members.get(identifier);
+        return member != null ? member.active : 0;
+    }
+
+    /**
+     * Adjusts the acquire count of the given member, repositioning that
+     * member within its tree. As every release must correspond to an earlier
+     * acquire, a negative acquire count indicates that the load tracked by
+     * this index has diverged from the connections actually in use, and is
+     * logged.
+     *
+     * @param member
+     *     The member to adjust.
+     *
+     * @param delta
+     *     The amount to add to the acquire count of the member.
+     */
+    private void adjust(Member member, int delta) {
+
+        NavigableSet<Member> tree = getTree(member);
+        tree.remove(member);
+        member.active += delta;
+        tree.add(member);
+
+        if (member.active < 0)
+            logger.warn("Load of connection \"{}\" within balancing group "
+                    + "\"{}\" is negative ({}). Connections may not be "
+                    + "balanced correctly.", member.identifier,
+                    groupIdentifier, member.active);
+
+    }
+
+    /**
+     * Records that the connection having the given identifier has been
+     * acquired outside of select(), such as when connecting to that
+     * connection directly.
+     *
+     * @param identifier
+     *     The identifier of the acquired connection.
+     */
+    public synchronized void acquired(String identifier) {
+        Member member = members.get(identifier);
+        if (member != null)
+            adjust(member, 1);
+    }
+
+    /**
+     * Records that the connection having the given identifier has been
+     * released.
+     *
+     * @param identifier
+     *     The identifier of the released connection.
+     */
+    public synchronized void released(String identifier) {
+        Member member = members.get(identifier);
+        if (member != null)
+            adjust(member, -1);
+    }
+
+    /**
+     * Returns the next member in ascending order of load from either of the
+     * given iterators, advancing only the iterator providing that member.
+     * This class provides a merged, ordered view of two ordered trees.
+     */
+    private static class MergedIterator implements Iterator<Member> {
+
+        /**
+         * The first of the two merged iterators.
+         */
+        private final Iterator<Member> first;
+
+        /**
+         * The second of the two merged iterators.
+         */
+        private final Iterator<Member> second;
+
+        /**
+         * The next member from the first iterator, or null if not yet read
+         * or exhausted.
+         */
+        private Member nextFirst;
+
+        /**
+         * The next member from the second iterator, or null if not yet read
+         * or exhausted.
+         */
+        private Member nextSecond;
+
+        /**
+         * Creates a new MergedIterator which merges the given iterators,
+         * each of which must already be in ascending order of load.
+         *
+         * @param first
+         *     The first iterator to merge.
+         *
+         * @param second
+         *     The second iterator to merge.
+         */
+        public MergedIterator(Iterator<Member> first, Iterator<Member> second) {
+            this.first = first;
+            this.second = second;
+            this.nextFirst = first.hasNext() ? first.next() : null;
+            this.nextSecond = second.hasNext() ? second.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextFirst != null || nextSecond != null;
+        }
+
+        @Override
+        public Member next() {
+
+            Member next;
+
+            // Take from whichever iterator has the lesser member
+            if (nextSecond == null || (nextFirst != null
+                    && LOAD_ORDER.compare(nextFirst, nextSecond) <= 0)) {
+                next = nextFirst;
+                nextFirst = first.hasNext() ? first.next() : null;
+            }
+            else {
+                next = nextSecond;
+                nextSecond = second.hasNext() ? second.next() : null;
+            }
+
+            if (next == null)
+                throw new NoSuchElementException();
+
+            return next;
+
+        }
+
+    }
+
+    /**
+     * The members of the index which may be selected for a single connection
+     * attempt.
+     */
+    private class Selection implements BalancingSelection {
+
+        /**
+         * The identifiers of the only connections which may be selected, or
+         * null if any connection may be selected.
+         */
+        private final Collection<String> allowed;
+
+        /**
+         * The identifiers of all connections which must not be selected.
+         */
+        private final Collection<String> excluded;
+
+        /**
+         * Whether failover-only connections may be selected.
+         */
+        private final boolean includeFailoverOnly;
+
+        /**
+         * Whether connections using unhealthy guacd instances must be
+         * avoided.
+         */
+        private final boolean healthyOnly;
+
+        /**
+         * Whether any otherwise-eligible member has been found to be
+         * unhealthy.
+         */
+        private boolean unhealthySkipped = false;
+
+        /**
+         * Creates a new Selection.
+         *
+         * @param allowed
+         *     The identifiers of the only connections which may be selected,
+         *     or null if any connection may be selected.
+         *
+         * @param excluded
+         *     The identifiers of all connections which must not be selected.
+         *
+         * @param includeFailoverOnly
+         *     Whether failover-only connections may be selected.
+         *
+         * @param healthyOnly
+         *     Whether connections using unhealthy guacd instances must be
+         *     avoided.
+         */
+        public Selection(Collection<String> allowed, Collection<String> excluded,
+                boolean includeFailoverOnly, boolean healthyOnly) {
+            this.allowed = allowed;
+            this.excluded = excluded;
+            this.includeFailoverOnly = includeFailoverOnly;
+            this.healthyOnly = healthyOnly;
+        }
+
+        @Override
+        public List<? extends BalancingCandidate> getMembers() {
+            return Collections.unmodifiableList(memberList);
+        }
+
+        @Override
+        public Iterator<? extends BalancingCandidate> getMembersByLoad() {
+
+            Iterator<Member> candidates = normal.iterator();
+            if (includeFailoverOnly)
+                candidates = new MergedIterator(candidates, failover.iterator());
+
+            return candidates;
+
+        }
+
+        @Override
+        public boolean isEligible(BalancingCandidate candidate) {
+
+            String identifier = candidate.getIdentifier();
+
+            // Skip any connections which may not be used
+            if ((allowed != null && !allowed.contains(identifier))
+                    || excluded.contains(identifier))
+                return false;
+
+            if (!includeFailoverOnly && candidate.isFailoverOnly())
+                return false;
+
+            // Avoid connections whose guacd is not responding
+            GuacdHealth health = candidate.getHealth();
+            if (healthyOnly && health != null && !health.isHealthy()) {
+                unhealthySkipped = true;
+                return false;
+            }
+
+            return true;
+
+        }
+
+        /**
+         * Returns whether any otherwise-eligible member has been found to be
+         * unhealthy.
+         *
+         * @return
+         *     true if any otherwise-eligible member has been found to be
+         *     unhealthy, false otherwise.
+         */
+        public boolean isUnhealthySkipped() {
+            return unhealthySkipped;
+        }
+
+    }
+
+    /**
+     * Selects and acquires the first eligible connection, in the order
+     * dictated by the given BalancingStrategy, which can be reserved using
+     * the given Reservation. The acquire count of the selected connection is
+     * incremented.
+     *
+     * @param strategy
+     *     The BalancingStrategy dictating the order in which connections are
+     *     considered.
+     *
+     * @param selection
+     *     The connections which may be selected.
+     *
+     * @param reservation
+     *     The Reservation which should be used to reserve the selected
+     *     connection.
+     *
+     * @return
+     *     The connection which was selected and reserved, or null if no
+     *     connection could be reserved.
+     *
+     * @throws GuacamoleException
+     *     If the given Reservation aborts selection.
+     */
+    private ModeledConnection select(BalancingStrategy strategy,
+            Selection selection, Reservation reservation)
+            throws GuacamoleException {
+
+        Set<String> tried = new HashSet<String>();
+
+        Iterator<? extends BalancingCandidate> candidates = strategy.getCandidates(selection);
+        while (candidates.hasNext()) {
+
+            // Consider only eligible members of this index, each at most once
+            BalancingCandidate candidate = candidates.next();
+            Member member = members.get(candidate.getIdentifier());
+            if (member == null || !selection.isEligible(member)
+                    || !tried.add(member.identifier))
+                continue;
+
+            // Acquire the first connection which can be reserved (note that
+            // the iterator must not be used after the tree is modified)
+            if (reservation.tryReserve(member.connection)) {
+                adjust(member, 1);
+                return member.connection;
+            }
+
+        }
+
+        return null;
+
+    }
+
+    /**
+     * Selects and acquires a connection which can be reserved using the given
+     * Reservation, considering connections in the order dictated by the given
+     * BalancingStrategy. Connections whose guacd instance is unhealthy are
+     * considered only if no healthy connection can be reserved, and healthy
+     * failover-only connections are preferred over unhealthy normal
+     * connections. The acquire count of the selected connection is
+     * incremented.
+     *
+     * @param strategy
+     *     The BalancingStrategy dictating the order in which connections are
+     *     considered.
+     *
+     * @param reservation
+     *     The Reservation which should be used to reserve the selected
+     *     connection.
+     *
+     * @param allowed
+     *     The identifiers of the only connections which may be selected, or
+     *     null if any connection may be selected.
+     *
+     * @param excluded
+     *     The identifiers of all connections which must not be selected.
+     *
+     * @param includeFailoverOnly
+     *     Whether failover-only connections may be selected.
+     *
+     * @return
+     *     The connection which was selected and reserved, or null if no
+     *     connection could be reserved.
+     *
+     * @throws GuacamoleException
+     *     If the given Reservation aborts selection.
+     */
+    public synchronized ModeledConnection select(BalancingStrategy strategy,
+            Reservation reservation, Collection<String> allowed,
+            Collection<String> excluded, boolean includeFailoverOnly)
+            throws GuacamoleException {
+
+        // Prefer healthy connections
+        Selection selection = new Selection(allowed, excluded, includeFailoverOnly, true);
+        ModeledConnection connection = select(strategy, selection, reservation);
+        if (connection != null || !selection.isUnhealthySkipped())
+            return connection;
+
+        // Fail over to healthy failover-only connections before attempting
+        // connections which are known to be unhealthy
+        if (!includeFailoverOnly) {
+            connection = select(strategy, new Selection(allowed, excluded, true, true), reservation);
+            if (connection != null)
+                return connection;
+        }
+
+        // Health probes may be wrong; try remaining connections regardless
+        return select(strategy, new Selection(allowed, excluded,
+                includeFailoverOnly, false), reservation);
+
+    }
+
+}
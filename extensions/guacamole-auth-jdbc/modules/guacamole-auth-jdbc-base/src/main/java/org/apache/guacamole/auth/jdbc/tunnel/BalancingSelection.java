@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The members of a balancing connection group which are available to a
+ * BalancingStrategy for a single connection attempt.
+ */
+public interface BalancingSelection {
+
+    /**
+     * Returns all enabled members of the balancing group, in no particular
+     * order. Members within this list are not necessarily eligible for the
+     * current connection attempt, and must be tested with isEligible().
+     *
+     * @return
+     *     A random-access, unmodifiable list of all enabled members of the
+     *     balancing group.
+     */
+    List<? extends BalancingCandidate> getMembers();
+
+    /**
+     * Returns an iterator over all enabled members of the balancing group in
+     * ascending order of load, where load is the number of times a member is
+     * in use relative to its weight. Only the members which may be eligible
+     * with respect to the failover-only flag are included. Retrieving each
+     * member takes O(log n) time.
+     *
+     * @return
+     *     An iterator over the members of the balancing group in ascending
+     *     order of load.
+     */
+    Iterator<? extends BalancingCandidate> getMembersByLoad();
+
+    /**
+     * Returns whether the given member may be selected for the current
+     * connection attempt. Members are ineligible if they have already failed
+     * during this connection attempt, are excluded by session affinity, are
+     * failover-only while failover-only members are excluded, or are
+     * currently considered unhealthy.
+     *
+     * @param candidate
+     *     The member to test.
+     *
+     * @return
+     *     true if the given member may be selected, false otherwise.
+     */
+    boolean isEligible(BalancingCandidate candidate);
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import java.util.Iterator;
+
+/**
+ * A policy which determines the order in which the members of a balancing
+ * connection group are considered when connecting to that group. The policy
+ * used by a group is selected through the "balancing-strategy" attribute of
+ * that group. Additional strategies may be provided by binding further
+ * implementations using a Guice Multibinder for this interface.
+ */
+public interface BalancingStrategy {
+
+    /**
+     * Returns the unique name of this strategy, as stored within the
+     * "balancing-strategy" attribute of connection groups.
+     *
+     * @return
+     *     The unique name of this strategy.
+     */
+    String getName();
+
+    /**
+     * Returns the members of the balancing group in the order that they
+     * should be tried. Each member is reserved according to any applicable
+     * concurrency limits, and the first member successfully reserved is used.
+     * Ineligible or duplicate members are ignored, thus strategies need not
+     * filter the members returned. To ensure a connection can be established
+     * whenever possible, the iterator should eventually return all eligible
+     * members, typically by ending with getMembersByLoad().
+     *
+     * This function is invoked while the balancing group is locked, and thus
+     * should return quickly and must not block.
+     *
+     * @param selection
+     *     The members of the balancing group.
+     *
+     * @return
+     *     An iterator over the members of the balancing group, in the order
+     *     that they should be tried.
+     */
+    Iterator<? extends BalancingCandidate> getCandidates(BalancingSelection selection);
+
+}
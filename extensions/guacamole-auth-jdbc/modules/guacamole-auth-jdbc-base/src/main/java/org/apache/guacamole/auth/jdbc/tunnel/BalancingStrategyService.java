@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which provides the BalancingStrategy selected for a balancing
+ * connection group, as determined by the "balancing-strategy" attribute of
+ * that group.
+ */
+@Singleton
+public class BalancingStrategyService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BalancingStrategyService.class);
+
+    /**
+     * All available strategies, indexed by name.
+     */
+    private final Map<String, BalancingStrategy> strategies =
+            new HashMap<String, BalancingStrategy>();
+
+    /**
+     * The strategy to use if no strategy has been selected.
+     */
+    private final BalancingStrategy defaultStrategy;
+
+    /**
+     * Creates a new BalancingStrategyService which provides the given
+     * strategies.
+     *
+     * @param strategies
+     *     All available strategies.
+     *
+     * @param defaultStrategy
+     *     The strategy to use if no strategy has been selected.
+     */
+    @Inject
+    public BalancingStrategyService(Set<BalancingStrategy> strategies,
+            LeastLoadedBalancingStrategy defaultStrategy) {
+
+        for (BalancingStrategy strategy : strategies)
+            this.strategies.put(strategy.getName(), strategy);
+
+        this.defaultStrategy = defaultStrategy;
+
+    }
+
+    /**
+     * Returns the BalancingStrategy having the given name. If no name is
+     * given, or no such strategy exists, the default least-loaded strategy is
+     * returned.
+     *
+     * @param name
+     *     The name of the strategy to return, or null to return the default
+     *     strategy.
+     *
+     * @return
+     *     The BalancingStrategy having the given name, or the default strategy
+     *     if no such strategy exists.
+     */
+    public BalancingStrategy getStrategy(String name) {
+
+        // Use default strategy if none is selected
+        if (name == null || name.isEmpty())
+            return defaultStrategy;
+
+        BalancingStrategy strategy = strategies.get(name);
+        if (strategy == null) {
+            logger.warn("Unknown balancing strategy \"{}\". Least-loaded "
+                    + "balancing will be used instead.", name);
+            return defaultStrategy;
+        }
+
+        return strategy;
+
+    }
+
+}
@@ -189,4 +189,12 @@ public interface GuacamoleTunnelService {
             GuacamoleClientInformation info, Map<String, String> tokens)
             throws GuacamoleException;
 
+    /**
+     * Discards any cached information describing the membership of balancing
+     * connection groups, such that this information is reloaded from the
+     * database the next time a balancing group is used. This function must
+     * be invoked whenever connections are created, deleted, or modified.
+     */
+    void invalidateBalancingIndexes();
+
 }
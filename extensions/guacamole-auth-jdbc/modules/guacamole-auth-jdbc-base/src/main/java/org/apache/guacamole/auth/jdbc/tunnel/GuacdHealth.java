@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.guacamole.net.auth.GuacamoleProxyConfiguration;
+
+/**
+ * The health of a single guacd instance, as periodically measured by the
+ * GuacdHealthProber. A guacd instance is considered unhealthy once several
+ * consecutive probes have failed, and healthy again as soon as a probe
+ * succeeds. Until the first probe completes, guacd is assumed healthy.
+ */
+public class GuacdHealth {
+
+    /**
+     * The weight given to each new latency measurement when updating the
+     * exponentially-weighted moving average latency.
+     */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    /**
+     * The prober which measures the health of this guacd instance.
+     */
+    private final GuacdHealthProber prober;
+
+    /**
+     * The configuration used to connect to this guacd instance.
+     */
+    private final GuacamoleProxyConfiguration proxyConfig;
+
+    /**
+     * The protocol requested from guacd while probing.
+     */
+    private final String protocol;
+
+    /**
+     * Whether this guacd instance is currently considered healthy.
+     */
+    private volatile boolean healthy = true;
+
+    /**
+     * The moving average of the handshake latency of this guacd instance, in
+     * nanoseconds, or a negative value if no probe has yet succeeded.
+     */
+    private volatile long latency = -1;
+
+    /**
+     * The number of consecutive probes which have failed.
+     */
+    private volatile int consecutiveFailures = 0;
+
+    /**
+     * The time that the health of this guacd instance was last requested, in
+     * milliseconds since midnight of January 1, 1970 UTC.
+     */
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * Whether a probe of this guacd instance is currently in progress.
+     */
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+
+    /**
+     * Whether the prober has stopped probing this guacd instance due to
+     * inactivity.
+     */
+    private volatile boolean retired = false;
+
+    /**
+     * Creates a new GuacdHealth for the guacd instance having the given
+     * configuration.
+     *
+     * @param prober
+     *     The prober which measures the health of this guacd instance.
+     *
+     * @param proxyConfig
+     *     The configuration used to connect to this guacd instance.
+     *
+     * @param protocol
+     *     The protocol to request from guacd while probing.
+     */
+    GuacdHealth(GuacdHealthProber prober, GuacamoleProxyConfiguration proxyConfig,
+            String protocol) {
+        this.prober = prober;
+        this.proxyConfig = proxyConfig;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Returns the configuration used to connect to this guacd instance.
+     *
+     * @return
+     *     The configuration used to connect to this guacd instance.
+     */
+    public GuacamoleProxyConfiguration getProxyConfiguration() {
+        return proxyConfig;
+    }
+
+    /**
+     * Returns the protocol requested from guacd while probing.
+     *
+     * @return
+     *     The protocol requested from guacd while probing.
+     */
+    String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Records that the health of this guacd instance has been requested,
+     * resuming probing if probing had stopped due to inactivity.
+     */
+    private void touch() {
+
+        lastUsed = System.currentTimeMillis();
+
+        if (retired) {
+            retired = false;
+            prober.register(this);
+        }
+
+    }
+
+    /**
+     * Returns whether this guacd instance is currently considered healthy.
+     *
+     * @return
+     *     true if this guacd instance is considered healthy, false otherwise.
+     */
+    public boolean isHealthy() {
+        touch();
+        return healthy;
+    }
+
+    /**
+     * Returns the moving average of the time taken by this guacd instance to
+     * respond to "select" with "args" after a connection is opened.
+     *
+     * @param unit
+     *     The unit of the value returned.
+     *
+     * @return
+     *     The average handshake latency of this guacd instance in the given
+     *     unit, or a negative value if no probe has yet succeeded.
+     */
+    public long getLatency(TimeUnit unit) {
+        touch();
+        long current = latency;
+        return current >= 0 ? unit.convert(current, TimeUnit.NANOSECONDS) : -1;
+    }
+
+    /**
+     * Returns the time that the health of this guacd instance was last
+     * requested.
+     *
+     * @return
+     *     The time that the health of this guacd instance was last requested,
+     *     in milliseconds since midnight of January 1, 1970 UTC.
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Marks this guacd instance as no longer being probed due to inactivity.
+     */
+    void retire() {
+        retired = true;
+    }
+
+    /**
+     * Marks this guacd instance as being probed, if it is not already being
+     * probed.
+     *
+     * @return
+     *     true if a probe may now be performed, false if a probe is already
+     *     in progress.
+     */
+    boolean beginProbe() {
+        return probing.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks the probe of this guacd instance started by beginProbe() as
+     * complete.
+     */
+    void endProbe() {
+        probing.set(false);
+    }
+
+    /**
+     * Records the result of a successful probe.
+     *
+     * @param elapsed
+     *     The handshake latency measured by the probe, in nanoseconds.
+     *
+     * @return
+     *     true if this guacd instance was previously considered unhealthy,
+     *     false otherwise.
+     */
+    boolean probeSucceeded(long elapsed) {
+
+        long current = latency;
+        latency = current < 0 ? elapsed
+                : (long) (LATENCY_WEIGHT * elapsed + (1 - LATENCY_WEIGHT) * current);
+
+        consecutiveFailures = 0;
+        boolean recovered = !healthy;
+        healthy = true;
+        return recovered;
+
+    }
+
+    /**
+     * Records the result of a failed probe.
+     *
+     * @param threshold
+     *     The number of consecutive failures after which this guacd instance
+     *     should be considered unhealthy.
+     *
+     * @return
+     *     true if this guacd instance has just become unhealthy, false
+     *     otherwise.
+     */
+    boolean probeFailed(int threshold) {
+
+        int failures = ++consecutiveFailures;
+        if (failures < threshold || !healthy)
+            return false;
+
+        healthy = false;
+        return true;
+
+    }
+
+}
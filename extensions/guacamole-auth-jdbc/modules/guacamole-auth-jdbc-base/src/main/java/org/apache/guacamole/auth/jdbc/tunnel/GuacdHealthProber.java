@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import com.google.inject.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.InetGuacamoleSocket;
+import org.apache.guacamole.net.SSLGuacamoleSocket;
+import org.apache.guacamole.net.auth.GuacamoleProxyConfiguration;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which periodically probes each guacd instance used by a balancing
+ * connection group, measuring the time taken for guacd to respond to a
+ * "select" instruction with "args". Guacd instances which repeatedly fail to
+ * respond are reported as unhealthy, allowing balancing groups to avoid the
+ * connections using those instances before users attempt to connect. Probing
+ * of an instance stops once its health has not been requested for some time.
+ */
+@Singleton
+public class GuacdHealthProber {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacdHealthProber.class);
+
+    /**
+     * The number of seconds between consecutive probes of the same guacd
+     * instance.
+     */
+    private static final int PROBE_INTERVAL = 10;
+
+    /**
+     * The number of threads used to perform probes.
+     */
+    private static final int PROBE_THREADS = 4;
+
+    /**
+     * The number of consecutive failed probes after which a guacd instance is
+     * considered unhealthy.
+     */
+    private static final int FAILURE_THRESHOLD = 2;
+
+    /**
+     * The number of milliseconds after which probing of a guacd instance
+     * stops if its health has not been requested.
+     */
+    private static final long IDLE_TIMEOUT = 600000;
+
+    /**
+     * The health of each guacd instance being probed, indexed by the key
+     * returned by getKey().
+     */
+    private final ConcurrentMap<String, GuacdHealth> targets =
+            new ConcurrentHashMap<String, GuacdHealth>();
+
+    /**
+     * The executor performing all probes, or null if probing has not yet
+     * started.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Whether this prober has been shut down.
+     */
+    private boolean shutdown = false;
+
+    /**
+     * Returns a key which uniquely identifies the guacd instance having the
+     * given configuration.
+     *
+     * @param proxyConfig
+     *     The configuration of the guacd instance.
+     *
+     * @return
+     *     A key which uniquely identifies the guacd instance.
+     */
+    private static String getKey(GuacamoleProxyConfiguration proxyConfig) {
+        return proxyConfig.getEncryptionMethod() + "://"
+                + proxyConfig.getHostname() + ":" + proxyConfig.getPort();
+    }
+
+    /**
+     * Returns the health of the guacd instance having the given
+     * configuration, beginning periodic probing of that instance if it is not
+     * already being probed.
+     *
+     * @param proxyConfig
+     *     The configuration of the guacd instance.
+     *
+     * @param protocol
+     *     The protocol to request from guacd while probing, if the instance is
+     *     not already being probed.
+     *
+     * @return
+     *     The health of the guacd instance having the given configuration.
+     */
+    public GuacdHealth getHealth(GuacamoleProxyConfiguration proxyConfig,
+            String protocol) {
+
+        GuacdHealth health = targets.get(getKey(proxyConfig));
+        if (health != null)
+            return health;
+
+        health = new GuacdHealth(this, proxyConfig, protocol);
+        GuacdHealth existing = targets.putIfAbsent(getKey(proxyConfig), health);
+        if (existing != null)
+            return existing;
+
+        start();
+        return health;
+
+    }
+
+    /**
+     * Resumes probing of the given guacd instance, which must have previously
+     * stopped due to inactivity.
+     *
+     * @param health
+     *     The health of the guacd instance to resume probing.
+     */
+    void register(GuacdHealth health) {
+        targets.putIfAbsent(getKey(health.getProxyConfiguration()), health);
+        start();
+    }
+
+    /**
+     * Starts the executor performing all probes, if not already started.
+     */
+    private synchronized void start() {
+
+        if (executor != null || shutdown)
+            return;
+
+        executor = Executors.newScheduledThreadPool(PROBE_THREADS, new ThreadFactory() {
+
+            /**
+             * The number of threads created by this factory.
+             */
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "guacamole-jdbc-health-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        final ScheduledExecutorService probeExecutor = executor;
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                probeAll(probeExecutor);
+            }
+
+        }, 0, PROBE_INTERVAL, TimeUnit.SECONDS);
+
+    }
+
+    /**
+     * Probes all guacd instances in parallel using the given executor.
+     * Instances which are still being probed from a previous round are
+     * skipped, and instances whose health has not been requested recently are
+     * no longer probed.
+     *
+     * @param probeExecutor
+     *     The executor which should perform the probes.
+     */
+    private void probeAll(ScheduledExecutorService probeExecutor) {
+
+        long now = System.currentTimeMillis();
+
+        for (final GuacdHealth health : targets.values()) {
+
+            // Stop probing instances which are no longer in use
+            if (now - health.getLastUsed() > IDLE_TIMEOUT) {
+                health.retire();
+                targets.remove(getKey(health.getProxyConfiguration()), health);
+                continue;
+            }
+
+            // Skip instances whose previous probe has not yet completed
+            if (!health.beginProbe())
+                continue;
+
+            try {
+                probeExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            probe(health);
+                        }
+                        finally {
+                            health.endProbe();
+                        }
+                    }
+
+                });
+            }
+            catch (RejectedExecutionException e) {
+                health.endProbe();
+                logger.debug("Health probe not performed as probing has stopped.", e);
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     * Opens a new connection to the given guacd instance, sends a "select"
+     * instruction, and waits for the resulting "args" instruction, updating
+     * the health of the instance according to the result.
+     *
+     * @param health
+     *     The health of the guacd instance to probe.
+     */
+    private void probe(GuacdHealth health) {
+
+        GuacamoleProxyConfiguration proxyConfig = health.getProxyConfiguration();
+        long start = System.nanoTime();
+
+        GuacamoleSocket socket = null;
+        try {
+
+            // Connect using the same encryption as actual connections
+            switch (proxyConfig.getEncryptionMethod()) {
+
+                case SSL:
+                    socket = new SSLGuacamoleSocket(proxyConfig.getHostname(),
+                            proxyConfig.getPort());
+                    break;
+
+                case NONE:
+                    socket = new InetGuacamoleSocket(proxyConfig.getHostname(),
+                            proxyConfig.getPort());
+                    break;
+
+                default:
+                    throw new GuacamoleServerException("Unimplemented encryption method.");
+
+            }
+
+            // Perform first stage of handshake
+            socket.getWriter().writeInstruction(
+                    new GuacamoleInstruction("select", health.getProtocol()));
+
+            GuacamoleInstruction reply = socket.getReader().readInstruction();
+            if (reply == null || !"args".equals(reply.getOpcode()))
+                throw new GuacamoleServerException("Expected \"args\" "
+                        + "instruction in response to \"select\".");
+
+            if (health.probeSucceeded(System.nanoTime() - start))
+                logger.info("guacd at {}:{} has recovered.",
+                        proxyConfig.getHostname(), proxyConfig.getPort());
+
+        }
+        catch (GuacamoleException e) {
+
+            if (health.probeFailed(FAILURE_THRESHOLD))
+                logger.warn("guacd at {}:{} is not responding and will be "
+                        + "avoided by balancing groups: {}",
+                        proxyConfig.getHostname(), proxyConfig.getPort(),
+                        e.getMessage());
+
+            logger.debug("Health probe of guacd failed.", e);
+
+        }
+
+        // Always close the probe connection
+        finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                }
+                catch (GuacamoleException e) {
+                    logger.debug("Unable to close health probe connection.", e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Stops all probing. Any probes in progress are interrupted.
+     */
+    public synchronized void shutdown() {
+
+        shutdown = true;
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,591 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.InetGuacamoleSocket;
+import org.apache.guacamole.net.SSLGuacamoleSocket;
+import org.apache.guacamole.net.auth.GuacamoleProxyConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of sockets which have already connected to guacd, including any
+ * SSL/TLS handshake, and are ready for the Guacamole protocol handshake. A
+ * separate pool is maintained for each guacd instance. As guacd sockets can
+ * be used for only one connection, sockets taken from a pool are never
+ * returned, and each pool is instead refilled in the background.
+ *
+ * Guacd closes any connection which does not begin the protocol handshake
+ * within 15 seconds, so pooled sockets which have not been used within their
+ * configured lifetime are closed and replaced. As each replaced socket is an
+ * aborted connection from the perspective of guacd, pools are refilled only
+ * while in use: a pool for a guacd instance which has not been used for one
+ * socket lifetime is closed entirely, and is recreated once that guacd
+ * instance is used again.
+ */
+@Singleton
+public class GuacdSocketPool {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacdSocketPool.class);
+
+    /**
+     * The number of seconds after which guacd closes any connection which
+     * has not begun the protocol handshake. The lifetime of pooled sockets
+     * must be less than this.
+     */
+    private static final int GUACD_HANDSHAKE_TIMEOUT = 15;
+
+    /**
+     * The number of milliseconds between consecutive checks for pooled
+     * sockets which must be replaced.
+     */
+    private static final long MAINTENANCE_INTERVAL = 1000;
+
+    /**
+     * The number of threads used to connect pooled sockets.
+     */
+    private static final int POOL_THREADS = 2;
+
+    /**
+     * A socket connected in advance, along with the time it connected.
+     */
+    private static class PooledSocket {
+
+        /**
+         * The connected socket.
+         */
+        private final GuacamoleSocket socket;
+
+        /**
+         * The time that the socket connected, in milliseconds since midnight
+         * of January 1, 1970 UTC.
+         */
+        private final long connected = System.currentTimeMillis();
+
+        /**
+         * Creates a new PooledSocket wrapping the given, newly-connected
+         * socket.
+         *
+         * @param socket
+         *     The socket which has just connected.
+         */
+        public PooledSocket(GuacamoleSocket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Returns whether this socket has been pooled for too long to be
+         * used, or has been closed.
+         *
+         * @param now
+         *     The current time, in milliseconds since midnight of January 1,
+         *     1970 UTC.
+         *
+         * @param maxAge
+         *     The number of milliseconds after connecting that the socket
+         *     may no longer be used.
+         *
+         * @return
+         *     true if this socket must not be used, false otherwise.
+         */
+        public boolean isExpired(long now, long maxAge) {
+            return now - connected >= maxAge || !socket.isOpen();
+        }
+
+    }
+
+    /**
+     * The pooled sockets for a single guacd instance.
+     */
+    private static class Pool {
+
+        /**
+         * The configuration of the guacd instance.
+         */
+        private final GuacamoleProxyConfiguration proxyConfig;
+
+        /**
+         * The number of milliseconds after connecting that a socket within
+         * this pool may no longer be used.
+         */
+        private final long maxSocketAge;
+
+        /**
+         * All sockets available for use, in the order they connected.
+         */
+        private final ConcurrentLinkedQueue<PooledSocket> sockets =
+                new ConcurrentLinkedQueue<PooledSocket>();
+
+        /**
+         * The number of sockets available or currently connecting.
+         */
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * Whether the most recent attempt to connect failed. Refilling pauses
+         * until the next maintenance pass after a failure.
+         */
+        private final AtomicBoolean failing = new AtomicBoolean();
+
+        /**
+         * The time that a socket was last requested from this pool, in
+         * milliseconds since midnight of January 1, 1970 UTC.
+         */
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        /**
+         * Creates a new, empty Pool for the guacd instance having the given
+         * configuration.
+         *
+         * @param proxyConfig
+         *     The configuration of the guacd instance.
+         *
+         * @param maxSocketAge
+         *     The number of milliseconds after connecting that a socket
+         *     within this pool may no longer be used.
+         */
+        public Pool(GuacamoleProxyConfiguration proxyConfig, long maxSocketAge) {
+            this.proxyConfig = proxyConfig;
+            this.maxSocketAge = maxSocketAge;
+        }
+
+        /**
+         * Removes and returns the oldest socket in this pool which may still
+         * be used, closing any sockets which have expired.
+         *
+         * @return
+         *     A connected socket, or null if no such socket is available.
+         */
+        public GuacamoleSocket poll() {
+
+            lastUsed = System.currentTimeMillis();
+
+            PooledSocket pooled;
+            while ((pooled = sockets.poll()) != null) {
+                size.decrementAndGet();
+                if (!pooled.isExpired(System.currentTimeMillis(), maxSocketAge))
+                    return pooled.socket;
+                closeQuietly(pooled.socket);
+            }
+
+            return null;
+
+        }
+
+        /**
+         * Closes all sockets within this pool which have expired.
+         */
+        public void closeExpired() {
+
+            long now = System.currentTimeMillis();
+
+            // Sockets are queued in the order they connected
+            PooledSocket pooled;
+            while ((pooled = sockets.peek()) != null
+                    && pooled.isExpired(now, maxSocketAge)) {
+                if (sockets.remove(pooled)) {
+                    size.decrementAndGet();
+                    closeQuietly(pooled.socket);
+                }
+            }
+
+        }
+
+        /**
+         * Closes all sockets within this pool.
+         */
+        public void closeAll() {
+            PooledSocket pooled;
+            while ((pooled = sockets.poll()) != null) {
+                size.decrementAndGet();
+                closeQuietly(pooled.socket);
+            }
+        }
+
+    }
+
+    /**
+     * The pool for each guacd instance in use, indexed by the key returned
+     * by getKey().
+     */
+    private final ConcurrentMap<String, Pool> pools =
+            new ConcurrentHashMap<String, Pool>();
+
+    /**
+     * The executor connecting all pooled sockets, or null if pooling has not
+     * yet started.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Whether this pool has been shut down.
+     */
+    private boolean shutdown = false;
+
+    /**
+     * The number of sockets kept connected to each guacd instance in use, or
+     * zero if pooling is disabled.
+     */
+    private final int poolSize;
+
+    /**
+     * The number of milliseconds after connecting that a pooled socket is
+     * closed and replaced if it has not been used. This is also the number
+     * of milliseconds after which a pool which has not been used is closed.
+     */
+    private final long maxSocketAge;
+
+    /**
+     * Creates a new GuacdSocketPool configured using the "guacd-pool-size"
+     * and "guacd-pool-socket-lifetime" properties. If either property is
+     * invalid, the default value for that property is used.
+     *
+     * @param environment
+     *     The environment of the Guacamole server.
+     */
+    @Inject
+    public GuacdSocketPool(JDBCEnvironment environment) {
+
+        int size = JDBCEnvironment.DEFAULT_GUACD_POOL_SIZE;
+        try {
+            size = environment.getGuacdPoolSize();
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Using default guacd socket pool size: {}", e.getMessage());
+            logger.debug("Unable to read guacd socket pool size.", e);
+        }
+
+        if (size < 0) {
+            logger.warn("The guacd socket pool size may not be negative. "
+                    + "Pooling of guacd sockets will be disabled.");
+            size = 0;
+        }
+
+        int lifetime = JDBCEnvironment.DEFAULT_GUACD_POOL_SOCKET_LIFETIME;
+        try {
+            lifetime = environment.getGuacdPoolSocketLifetime();
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Using default guacd socket lifetime: {}", e.getMessage());
+            logger.debug("Unable to read guacd socket lifetime.", e);
+        }
+
+        if (lifetime <= 0 || lifetime >= GUACD_HANDSHAKE_TIMEOUT) {
+            logger.warn("The lifetime of pooled guacd sockets must be "
+                    + "between 1 and {} seconds. The default of {} seconds "
+                    + "will be used.", GUACD_HANDSHAKE_TIMEOUT - 1,
+                    JDBCEnvironment.DEFAULT_GUACD_POOL_SOCKET_LIFETIME);
+            lifetime = JDBCEnvironment.DEFAULT_GUACD_POOL_SOCKET_LIFETIME;
+        }
+
+        this.poolSize = size;
+        this.maxSocketAge = lifetime * 1000L;
+
+    }
+
+    /**
+     * Returns a key which uniquely identifies the guacd instance having the
+     * given configuration.
+     *
+     * @param proxyConfig
+     *     The configuration of the guacd instance.
+     *
+     * @return
+     *     A key which uniquely identifies the guacd instance.
+     */
+    private static String getKey(GuacamoleProxyConfiguration proxyConfig) {
+        return proxyConfig.getEncryptionMethod() + "://"
+                + proxyConfig.getHostname() + ":" + proxyConfig.getPort();
+    }
+
+    /**
+     * Closes the given socket, logging rather than throwing any errors.
+     *
+     * @param socket
+     *     The socket to close.
+     */
+    private static void closeQuietly(GuacamoleSocket socket) {
+        try {
+            socket.close();
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Unable to close pooled guacd socket.", e);
+        }
+    }
+
+    /**
+     * Connects a new socket to the guacd instance having the given
+     * configuration, completing any SSL/TLS handshake.
+     *
+     * @param proxyConfig
+     *     The configuration of the guacd instance.
+     *
+     * @return
+     *     A new socket connected to the given guacd instance.
+     *
+     * @throws GuacamoleException
+     *     If the socket cannot be connected.
+     */
+    private static GuacamoleSocket connect(GuacamoleProxyConfiguration proxyConfig)
+            throws GuacamoleException {
+
+        switch (proxyConfig.getEncryptionMethod()) {
+
+            // The SSL/TLS handshake is completed upon connecting
+            case SSL:
+                return new SSLGuacamoleSocket(proxyConfig.getHostname(),
+                        proxyConfig.getPort());
+
+            case NONE:
+                return new InetGuacamoleSocket(proxyConfig.getHostname(),
+                        proxyConfig.getPort());
+
+        }
+
+        throw new GuacamoleServerException("Unimplemented encryption method.");
+
+    }
+
+    /**
+     * Removes and returns a socket which has already connected to the guacd
+     * instance having the given configuration, if available. If no such
+     * socket is available, null is returned and the caller must connect on
+     * its own. In either case, the pool is refilled in the background.
+     *
+     * The returned socket has not yet begun the Guacamole protocol handshake
+     * and must be closed by the caller once no longer needed.
+     *
+     * @param proxyConfig
+     *     The configuration of the guacd instance.
+     *
+     * @return
+     *     A socket connected to the given guacd instance, or null if no such
+     *     socket is available.
+     */
+    public GuacamoleSocket take(GuacamoleProxyConfiguration proxyConfig) {
+
+        // Never pool sockets if pooling is disabled
+        if (poolSize == 0)
+            return null;
+
+        Pool pool = pools.get(getKey(proxyConfig));
+        if (pool == null) {
+            Pool created = new Pool(proxyConfig, maxSocketAge);
+            pool = pools.putIfAbsent(getKey(proxyConfig), created);
+            if (pool == null) {
+                pool = created;
+                start();
+            }
+        }
+
+        GuacamoleSocket socket = pool.poll();
+        refill(pool);
+        return socket;
+
+    }
+
+    /**
+     * Closes all sockets pooled for the guacd instance having the given
+     * configuration. This function should be invoked if a pooled socket
+     * turns out to be unusable, as the remaining sockets are likely unusable
+     * as well, such as when guacd has restarted.
+     *
+     * @param proxyConfig
+     *     The configuration of the guacd instance.
+     */
+    public void discard(GuacamoleProxyConfiguration proxyConfig) {
+        Pool pool = pools.get(getKey(proxyConfig));
+        if (pool != null)
+            pool.closeAll();
+    }
+
+    /**
+     * Starts the executor which connects and maintains pooled sockets, if not
+     * already started.
+     */
+    private synchronized void start() {
+
+        if (executor != null || shutdown)
+            return;
+
+        executor = Executors.newScheduledThreadPool(POOL_THREADS, new ThreadFactory() {
+
+            /**
+             * The number of threads created by this factory.
+             */
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "guacamole-jdbc-guacd-pool-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                maintainAll();
+            }
+
+        }, MAINTENANCE_INTERVAL, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Replaces expired sockets within all pools, closing any pools which have
+     * not been used within the lifetime of a pooled socket. Pools are not
+     * kept filled beyond that point, as each socket replaced without being
+     * used is an aborted connection to guacd.
+     */
+    private void maintainAll() {
+
+        long now = System.currentTimeMillis();
+
+        for (Pool pool : pools.values()) {
+
+            pool.closeExpired();
+
+            // Close pools for guacd instances which are no longer in use
+            if (now - pool.lastUsed > maxSocketAge) {
+                pools.remove(getKey(pool.proxyConfig), pool);
+                pool.closeAll();
+                continue;
+            }
+
+            // Resume refilling after any failure
+            pool.failing.set(false);
+            refill(pool);
+
+        }
+
+    }
+
+    /**
+     * Connects new sockets in the background until the given pool contains
+     * the configured number of sockets, unless connecting has recently
+     * failed.
+     *
+     * @param pool
+     *     The pool to refill.
+     */
+    private void refill(final Pool pool) {
+
+        ScheduledExecutorService current;
+        synchronized (this) {
+            current = executor;
+        }
+
+        if (current == null)
+            return;
+
+        while (!pool.failing.get()) {
+
+            // Reserve space for one more socket, if not yet full
+            int size = pool.size.get();
+            if (size >= poolSize)
+                return;
+
+            if (!pool.size.compareAndSet(size, size + 1))
+                continue;
+
+            try {
+                current.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        // Connect and add new socket, unless the pool has
+                        // since closed
+                        try {
+                            GuacamoleSocket socket = connect(pool.proxyConfig);
+                            pool.sockets.add(new PooledSocket(socket));
+                            if (pools.get(getKey(pool.proxyConfig)) != pool)
+                                pool.closeAll();
+                        }
+
+                        // Pause refilling until next maintenance pass
+                        catch (GuacamoleException e) {
+                            pool.size.decrementAndGet();
+                            pool.failing.set(true);
+                            logger.debug("Unable to connect pooled socket to guacd.", e);
+                        }
+
+                    }
+
+                });
+            }
+            catch (RejectedExecutionException e) {
+                pool.size.decrementAndGet();
+                logger.debug("Pooled socket not connected as pooling has stopped.", e);
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     * Stops refilling all pools and closes all pooled sockets.
+     */
+    public void shutdown() {
+
+        synchronized (this) {
+
+            shutdown = true;
+
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+
+        }
+
+        for (Pool pool : pools.values())
+            pool.closeAll();
+
+        pools.clear();
+
+    }
+
+}
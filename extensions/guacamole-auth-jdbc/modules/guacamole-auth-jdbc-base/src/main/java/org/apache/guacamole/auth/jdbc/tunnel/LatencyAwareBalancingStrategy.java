@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BalancingStrategy which weighs the load of each member of the balancing
+ * group by the handshake latency of its guacd instance, as measured by the
+ * GuacdHealthProber. Members whose guacd responds faster receive
+ * proportionally more connections. Members whose latency is not yet known are
+ * assumed to have the average latency of all other members. As every member
+ * must be scored, selection takes O(n log n) time, rather than the O(log n)
+ * of the least-loaded strategy.
+ */
+@Singleton
+public class LatencyAwareBalancingStrategy implements BalancingStrategy {
+
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "latency-aware";
+
+    /**
+     * A member of the balancing group along with its latency-weighted load.
+     */
+    private static class ScoredCandidate {
+
+        /**
+         * The member being scored.
+         */
+        private final BalancingCandidate candidate;
+
+        /**
+         * The latency-weighted load of the member. Lower scores are better.
+         */
+        private final double score;
+
+        /**
+         * Creates a new ScoredCandidate.
+         *
+         * @param candidate
+         *     The member being scored.
+         *
+         * @param score
+         *     The latency-weighted load of the member.
+         */
+        public ScoredCandidate(BalancingCandidate candidate, double score) {
+            this.candidate = candidate;
+            this.score = score;
+        }
+
+    }
+
+    /**
+     * Returns the handshake latency of the guacd instance used by the given
+     * member, in microseconds.
+     *
+     * @param candidate
+     *     The member to retrieve the latency of.
+     *
+     * @return
+     *     The handshake latency of the guacd instance used by the given
+     *     member, in microseconds, or a negative value if unknown.
+     */
+    private static long getLatency(BalancingCandidate candidate) {
+        GuacdHealth health = candidate.getHealth();
+        return health != null ? health.getLatency(TimeUnit.MICROSECONDS) : -1;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Iterator<? extends BalancingCandidate> getCandidates(BalancingSelection selection) {
+
+        // Determine eligible members and their average latency
+        List<BalancingCandidate> eligible = new ArrayList<BalancingCandidate>();
+        long totalLatency = 0;
+        int knownLatencies = 0;
+        for (BalancingCandidate candidate : selection.getMembers()) {
+
+            if (!selection.isEligible(candidate))
+                continue;
+
+            eligible.add(candidate);
+
+            long latency = getLatency(candidate);
+            if (latency >= 0) {
+                totalLatency += latency;
+                knownLatencies++;
+            }
+
+        }
+
+        double averageLatency = knownLatencies > 0
+                ? Math.max(1.0, (double) totalLatency / knownLatencies) : 1.0;
+
+        // Score each member by its prospective load, scaled by latency
+        List<ScoredCandidate> scored = new ArrayList<ScoredCandidate>(eligible.size());
+        for (BalancingCandidate candidate : eligible) {
+            long latency = getLatency(candidate);
+            double effectiveLatency = latency >= 0 ? Math.max(1.0, latency) : averageLatency;
+            scored.add(new ScoredCandidate(candidate,
+                    (candidate.getActiveCount() + 1) * effectiveLatency / candidate.getWeight()));
+        }
+
+        Collections.sort(scored, new Comparator<ScoredCandidate>() {
+
+            @Override
+            public int compare(ScoredCandidate a, ScoredCandidate b) {
+                int result = Double.compare(a.score, b.score);
+                if (result != 0)
+                    return result;
+                return BalancingIndex.compareLoad(a.candidate, b.candidate);
+            }
+
+        });
+
+        List<BalancingCandidate> ordered = new ArrayList<BalancingCandidate>(scored.size());
+        for (ScoredCandidate candidate : scored)
+            ordered.add(candidate.candidate);
+
+        return ordered.iterator();
+
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.net.DelegatingGuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleSocket;
+
+/**
+ * Implementation of GuacamoleSocket which wraps a socket that has already
+ * connected to guacd, such as a socket taken from a GuacdSocketPool. If the
+ * socket is closed for any reason, a given task is run.
+ */
+public class ManagedPooledGuacamoleSocket extends DelegatingGuacamoleSocket {
+
+    /**
+     * The task to run when the socket is closed.
+     */
+    private final Runnable socketClosedTask;
+
+    /**
+     * Creates a new socket which wraps the given, already-connected socket.
+     * If the socket is closed for any reason, the given task is run.
+     *
+     * @param socket
+     *     The already-connected socket to wrap.
+     *
+     * @param socketClosedTask
+     *     The task to run when the socket is closed.
+     */
+    public ManagedPooledGuacamoleSocket(GuacamoleSocket socket,
+            Runnable socketClosedTask) {
+        super(socket);
+        this.socketClosedTask = socketClosedTask;
+    }
+
+    @Override
+    public void close() throws GuacamoleException {
+        super.close();
+        socketClosedTask.run();
+    }
+
+}
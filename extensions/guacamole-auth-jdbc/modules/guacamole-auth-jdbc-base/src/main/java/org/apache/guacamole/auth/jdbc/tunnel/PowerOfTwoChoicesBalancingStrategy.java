@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import com.google.common.collect.Iterators;
+import com.google.inject.Singleton;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * BalancingStrategy which selects two eligible members of the balancing group
+ * at random, preferring whichever of the two is less loaded relative to its
+ * weight. Unlike always choosing the least-loaded member, this avoids sending
+ * bursts of concurrent connections to the same member while its load is not
+ * yet reflected, such as when several balancing groups or Guacamole instances
+ * share the same hosts. If neither member can be used, the remaining members
+ * are tried in order of load.
+ */
+@Singleton
+public class PowerOfTwoChoicesBalancingStrategy implements BalancingStrategy {
+
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "power-of-two-choices";
+
+    /**
+     * The maximum number of random members to inspect while looking for two
+     * eligible members.
+     */
+    private static final int MAX_SAMPLES = 8;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Iterator<? extends BalancingCandidate> getCandidates(BalancingSelection selection) {
+
+        List<? extends BalancingCandidate> members = selection.getMembers();
+        if (members.size() < 2)
+            return selection.getMembersByLoad();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // Sample until two distinct eligible members are found
+        BalancingCandidate first = null;
+        BalancingCandidate second = null;
+        for (int i = 0; i < MAX_SAMPLES && second == null; i++) {
+
+            BalancingCandidate candidate = members.get(random.nextInt(members.size()));
+            if (candidate == first || !selection.isEligible(candidate))
+                continue;
+
+            if (first == null)
+                first = candidate;
+            else
+                second = candidate;
+
+        }
+
+        // Fall back to the least-loaded members if too few are eligible
+        if (second == null)
+            return selection.getMembersByLoad();
+
+        // Try the less loaded of the two choices first
+        if (BalancingIndex.compareLoad(second, first) < 0) {
+            BalancingCandidate swap = first;
+            first = second;
+            second = swap;
+        }
+
+        return Iterators.concat(Arrays.asList(first, second).iterator(),
+                selection.getMembersByLoad());
+
+    }
+
+}
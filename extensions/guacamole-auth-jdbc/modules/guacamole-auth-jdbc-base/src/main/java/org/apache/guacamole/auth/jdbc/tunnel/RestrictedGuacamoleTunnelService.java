@@ -23,6 +23,7 @@ import com.google.common.collect.ConcurrentHashMultiset;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -261,6 +262,111 @@ public class RestrictedGuacamoleTunnelService
 
     }
 
+    /**
+     * BalancingIndex.Reservation which reserves connections according to the
+     * per-user and overall limits of each connection, tracking whether any
+     * failure to reserve was due purely to per-user limits.
+     */
+    private class SeatReservation implements BalancingIndex.Reservation {
+
+        /**
+         * The username of the user acquiring the connection.
+         */
+        private final String username;
+
+        /**
+         * Whether all failures to reserve a connection have been due to
+         * user-specific limits.
+         */
+        private boolean userSpecificFailure = true;
+
+        /**
+         * Creates a new SeatReservation which reserves connections on behalf
+         * of the user having the given username.
+         *
+         * @param username
+         *     The username of the user acquiring the connection.
+         */
+        public SeatReservation(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public boolean tryReserve(ModeledConnection connection)
+                throws GuacamoleException {
+
+            // Attempt to aquire connection according to per-user limits
+            Seat seat = new Seat(username, connection.getIdentifier());
+            if (!tryAdd(activeSeats, seat, connection.getMaxConnectionsPerUser()))
+                return false;
+
+            // Attempt to aquire connection according to overall limits
+            if (tryAdd(activeConnections, connection.getIdentifier(),
+                    connection.getMaxConnections()))
+                return true;
+
+            // Acquire failed - retry with next connection
+            activeSeats.remove(seat);
+
+            // Failure to acquire is not user-specific
+            userSpecificFailure = false;
+            return false;
+
+        }
+
+        /**
+         * Returns whether all failures to reserve a connection have been due
+         * to user-specific limits.
+         *
+         * @return
+         *     true if all failures to reserve a connection have been due to
+         *     user-specific limits, false otherwise.
+         */
+        public boolean isUserSpecificFailure() {
+            return userSpecificFailure;
+        }
+
+    }
+
+    @Override
+    protected ModeledConnection acquire(RemoteAuthenticatedUser user,
+            BalancingIndex index, BalancingStrategy strategy,
+            Collection<String> allowed, Collection<String> excluded,
+            boolean includeFailoverOnly) throws GuacamoleException {
+
+        // Do not acquire connection unless within overall limits
+        if (!tryIncrement(totalActiveConnections, environment.getAbsoluteMaxConnections()))
+            throw new GuacamoleResourceConflictException("Cannot connect. Overall maximum connections reached.");
+
+        // Return the first connection chosen by the strategy which can be
+        // reserved
+        SeatReservation reservation = new SeatReservation(user.getIdentifier());
+        ModeledConnection connection;
+        try {
+            connection = index.select(strategy, reservation, allowed, excluded,
+                    includeFailoverOnly);
+        }
+        catch (GuacamoleException e) {
+            totalActiveConnections.decrementAndGet();
+            throw e;
+        }
+
+        if (connection != null)
+            return connection;
+
+        // Acquire failed
+        totalActiveConnections.decrementAndGet();
+
+        // Too many connections by this user
+        if (reservation.isUserSpecificFailure())
+            throw new GuacamoleClientTooManyException("Cannot connect. Connection already in use by this user.");
+
+        // Too many connections, but not necessarily due purely to this user
+        else
+            throw new GuacamoleResourceConflictException("Cannot connect. This connection is in use.");
+
+    }
+
     @Override
     protected void release(RemoteAuthenticatedUser user, ModeledConnection connection) {
         activeSeats.remove(new Seat(user.getIdentifier(), connection.getIdentifier()));
@@ -268,6 +374,11 @@ public class RestrictedGuacamoleTunnelService
         totalActiveConnections.decrementAndGet();
     }
 
+    @Override
+    protected int getAcquiredCount(String identifier) {
+        return activeConnections.count(identifier);
+    }
+
     @Override
     protected void acquire(RemoteAuthenticatedUser user,
             ModeledConnectionGroup connectionGroup) throws GuacamoleException {
@@ -21,6 +21,7 @@ package org.apache.guacamole.auth.jdbc.user;
 
 import com.google.inject.Inject;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.base.EffectiveGroupCache;
 import org.apache.guacamole.auth.jdbc.base.ObjectRelationMapper;
 import org.apache.guacamole.auth.jdbc.base.RelatedObjectSet;
 import org.apache.guacamole.net.auth.permission.ObjectPermissionSet;
@@ -39,6 +40,13 @@ public class UserParentUserGroupSet extends RelatedObjectSet<ModeledUser, UserMo
     @Inject
     private UserParentUserGroupMapper userParentUserGroupMapper;
 
+    /**
+     * Cache of user group membership, invalidated whenever membership
+     * changes.
+     */
+    @Inject
+    private EffectiveGroupCache effectiveGroupCache;
+
     @Override
     protected ObjectRelationMapper<UserModel> getObjectRelationMapper() {
         return userParentUserGroupMapper;
@@ -56,4 +64,9 @@ public class UserParentUserGroupSet extends RelatedObjectSet<ModeledUser, UserMo
         return getCurrentUser().getUser().getEffectivePermissions().getUserGroupPermissions();
     }
 
+    @Override
+    protected void relationsChanged() {
+        effectiveGroupCache.invalidate();
+    }
+
 }
@@ -21,6 +21,7 @@ package org.apache.guacamole.auth.jdbc.usergroup;
 
 import com.google.inject.Inject;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.base.EffectiveGroupCache;
 import org.apache.guacamole.auth.jdbc.base.ObjectRelationMapper;
 import org.apache.guacamole.auth.jdbc.base.RelatedObjectSet;
 import org.apache.guacamole.net.auth.permission.ObjectPermissionSet;
@@ -37,6 +38,13 @@ public class UserGroupMemberUserSet extends RelatedObjectSet<ModeledUserGroup, U
     @Inject
     private UserGroupMemberUserMapper userGroupMemberUserMapper;
 
+    /**
+     * Cache of user group membership, invalidated whenever membership
+     * changes.
+     */
+    @Inject
+    private EffectiveGroupCache effectiveGroupCache;
+
     @Override
     protected ObjectRelationMapper<UserGroupModel> getObjectRelationMapper() {
         return userGroupMemberUserMapper;
@@ -54,4 +62,9 @@ public class UserGroupMemberUserSet extends RelatedObjectSet<ModeledUserGroup, U
         return getCurrentUser().getUser().getEffectivePermissions().getUserPermissions();
     }
 
+    @Override
+    protected void relationsChanged() {
+        effectiveGroupCache.invalidate();
+    }
+
 }
@@ -21,6 +21,7 @@ package org.apache.guacamole.auth.jdbc.usergroup;
 
 import com.google.inject.Inject;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.base.EffectiveGroupCache;
 import org.apache.guacamole.auth.jdbc.base.ObjectRelationMapper;
 import org.apache.guacamole.auth.jdbc.base.RelatedObjectSet;
 import org.apache.guacamole.net.auth.permission.ObjectPermissionSet;
@@ -38,6 +39,13 @@ public class UserGroupParentUserGroupSet extends RelatedObjectSet<ModeledUserGro
     @Inject
     private UserGroupParentUserGroupMapper userGroupParentUserGroupMapper;
 
+    /**
+     * Cache of user group membership, invalidated whenever membership
+     * changes.
+     */
+    @Inject
+    private EffectiveGroupCache effectiveGroupCache;
+
     @Override
     protected ObjectRelationMapper<UserGroupModel> getObjectRelationMapper() {
         return userGroupParentUserGroupMapper;
@@ -55,4 +63,9 @@ public class UserGroupParentUserGroupSet extends RelatedObjectSet<ModeledUserGro
         return getCurrentUser().getUser().getEffectivePermissions().getUserGroupPermissions();
     }
 
+    @Override
+    protected void relationsChanged() {
+        effectiveGroupCache.invalidate();
+    }
+
 }
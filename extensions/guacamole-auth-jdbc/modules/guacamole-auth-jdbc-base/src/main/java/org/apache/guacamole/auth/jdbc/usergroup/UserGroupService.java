@@ -25,6 +25,7 @@ import org.apache.guacamole.auth.jdbc.base.ModeledDirectoryObjectMapper;
 import org.apache.guacamole.auth.jdbc.base.ModeledDirectoryObjectService;
 import org.apache.guacamole.GuacamoleClientException;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.base.EffectiveGroupCache;
 import org.apache.guacamole.auth.jdbc.base.EntityMapper;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.UserGroupPermissionMapper;
@@ -65,6 +66,13 @@ public class UserGroupService extends ModeledDirectoryObjectService<ModeledUserG
     @Inject
     private Provider<ModeledUserGroup> userGroupProvider;
 
+    /**
+     * Cache of user group membership, invalidated whenever user groups are
+     * created, modified, or deleted.
+     */
+    @Inject
+    private EffectiveGroupCache effectiveGroupCache;
+
     @Override
     protected ModeledDirectoryObjectMapper<UserGroupModel> getObjectMapper() {
         return userGroupMapper;
@@ -172,6 +180,37 @@ public class UserGroupService extends ModeledDirectoryObjectService<ModeledUserG
 
     }
 
+    @Override
+    public ModeledUserGroup createObject(ModeledAuthenticatedUser user,
+            UserGroup object) throws GuacamoleException {
+
+        // New groups may match groups declared by other extensions
+        ModeledUserGroup group = super.createObject(user, object);
+        effectiveGroupCache.invalidate();
+        return group;
+
+    }
+
+    @Override
+    public void updateObject(ModeledAuthenticatedUser user,
+            ModeledUserGroup object) throws GuacamoleException {
+
+        // Groups may have been renamed, enabled, or disabled
+        super.updateObject(user, object);
+        effectiveGroupCache.invalidate();
+
+    }
+
+    @Override
+    public void deleteObject(ModeledAuthenticatedUser user, String identifier)
+            throws GuacamoleException {
+
+        // Delete group (and, implicitly, its memberships)
+        super.deleteObject(user, identifier);
+        effectiveGroupCache.invalidate();
+
+    }
+
     @Override
     protected boolean isValidIdentifier(String identifier) {
 
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark measuring contention on ActiveConnectionMultimap with 64
+ * threads performing a mix of connect, disconnect and list operations,
+ * compared against the previous implementation which synchronized all
+ * operations on a single map. This benchmark is not run as part of the
+ * build, and can be run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.guacamole.auth.jdbc.tunnel.ActiveConnectionMultimapBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(64)
+@Fork(1)
+public class ActiveConnectionMultimapBenchmark {
+
+    /**
+     * The number of distinct connections being connected to.
+     */
+    private static final int CONNECTIONS = 256;
+
+    /**
+     * The maximum number of active connections held by each thread.
+     */
+    private static final int MAX_HELD = 16;
+
+    /**
+     * The operations common to both implementations being compared.
+     */
+    private interface Multimap {
+
+        /**
+         * Stores the given record under the given identifier.
+         *
+         * @param identifier
+         *     The identifier of the object being connected to.
+         *
+         * @param record
+         *     The record to store.
+         */
+        void put(String identifier, ActiveConnectionRecord record);
+
+        /**
+         * Removes the given record from the given identifier.
+         *
+         * @param identifier
+         *     The identifier of the object being disconnected from.
+         *
+         * @param record
+         *     The record to remove.
+         */
+        void remove(String identifier, ActiveConnectionRecord record);
+
+        /**
+         * Returns the records stored under the given identifier.
+         *
+         * @param identifier
+         *     The identifier of the object to check.
+         *
+         * @return
+         *     The records stored under the given identifier.
+         */
+        Collection<ActiveConnectionRecord> get(String identifier);
+
+    }
+
+    /**
+     * The previous implementation of ActiveConnectionMultimap, which
+     * synchronizes all operations on a single map of synchronized sets.
+     */
+    private static class SynchronizedMultimap implements Multimap {
+
+        /**
+         * All records, indexed by identifier.
+         */
+        private final Map<String, Set<ActiveConnectionRecord>> records =
+                new HashMap<String, Set<ActiveConnectionRecord>>();
+
+        @Override
+        public void put(String identifier, ActiveConnectionRecord record) {
+            synchronized (records) {
+                Set<ActiveConnectionRecord> connections = records.get(identifier);
+                if (connections == null) {
+                    connections = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<ActiveConnectionRecord, Boolean>()));
+                    records.put(identifier, connections);
+                }
+                connections.add(record);
+            }
+        }
+
+        @Override
+        public void remove(String identifier, ActiveConnectionRecord record) {
+            synchronized (records) {
+                Set<ActiveConnectionRecord> connections = records.get(identifier);
+                connections.remove(record);
+                if (connections.isEmpty())
+                    records.remove(identifier);
+            }
+        }
+
+        @Override
+        public Collection<ActiveConnectionRecord> get(String identifier) {
+            synchronized (records) {
+                Collection<ActiveConnectionRecord> connections = records.get(identifier);
+                if (connections != null)
+                    return Collections.unmodifiableCollection(connections);
+                return Collections.<ActiveConnectionRecord>emptyList();
+            }
+        }
+
+    }
+
+    /**
+     * Adapter exposing the current ActiveConnectionMultimap as a Multimap.
+     */
+    private static class ConcurrentMultimap implements Multimap {
+
+        /**
+         * The ActiveConnectionMultimap being benchmarked.
+         */
+        private final ActiveConnectionMultimap records = new ActiveConnectionMultimap();
+
+        @Override
+        public void put(String identifier, ActiveConnectionRecord record) {
+            records.put(identifier, record);
+        }
+
+        @Override
+        public void remove(String identifier, ActiveConnectionRecord record) {
+            records.remove(identifier, record);
+        }
+
+        @Override
+        public Collection<ActiveConnectionRecord> get(String identifier) {
+            return records.get(identifier);
+        }
+
+    }
+
+    /**
+     * The implementation being benchmarked.
+     */
+    @Param({"synchronized", "concurrent"})
+    public String implementation;
+
+    /**
+     * The multimap shared by all threads.
+     */
+    private Multimap multimap;
+
+    /**
+     * The identifiers of all connections being connected to.
+     */
+    private String[] identifiers;
+
+    /**
+     * A connection held by a single benchmark thread.
+     */
+    private static class HeldConnection {
+
+        /**
+         * The identifier of the connection.
+         */
+        private final String identifier;
+
+        /**
+         * The record of the connection.
+         */
+        private final ActiveConnectionRecord record;
+
+        /**
+         * Creates a new HeldConnection.
+         *
+         * @param identifier
+         *     The identifier of the connection.
+         *
+         * @param record
+         *     The record of the connection.
+         */
+        public HeldConnection(String identifier, ActiveConnectionRecord record) {
+            this.identifier = identifier;
+            this.record = record;
+        }
+
+    }
+
+    /**
+     * The connections held by a single benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        /**
+         * The connections currently held by this thread, oldest first.
+         */
+        private final Deque<HeldConnection> held = new ArrayDeque<HeldConnection>();
+
+    }
+
+    /**
+     * Creates the multimap being benchmarked.
+     */
+    @Setup
+    public void setup() {
+
+        if ("synchronized".equals(implementation))
+            multimap = new SynchronizedMultimap();
+        else
+            multimap = new ConcurrentMultimap();
+
+        identifiers = new String[CONNECTIONS];
+        for (int i = 0; i < identifiers.length; i++)
+            identifiers[i] = Integer.toString(i);
+
+    }
+
+    /**
+     * Performs a single operation: listing the active connections of a
+     * random connection (60%), connecting to a random connection (20%), or
+     * disconnecting the oldest connection held by this thread (20%).
+     *
+     * @param state
+     *     The connections held by the current thread.
+     *
+     * @return
+     *     The number of active connections listed, if any, to prevent the
+     *     listing from being optimized away.
+     */
+    @Benchmark
+    public int mixed(ThreadState state) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int choice = random.nextInt(10);
+
+        // List active connections
+        if (choice < 6)
+            return multimap.get(identifiers[random.nextInt(identifiers.length)]).size();
+
+        // Connect, unless already holding the maximum number of connections
+        if ((choice < 8 || state.held.isEmpty()) && state.held.size() < MAX_HELD) {
+            HeldConnection connection = new HeldConnection(
+                    identifiers[random.nextInt(identifiers.length)],
+                    new ActiveConnectionRecord());
+            multimap.put(connection.identifier, connection.record);
+            state.held.addLast(connection);
+            return 0;
+        }
+
+        // Disconnect
+        HeldConnection connection = state.held.removeFirst();
+        multimap.remove(connection.identifier, connection.record);
+        return 0;
+
+    }
+
+    /**
+     * Runs this benchmark.
+     *
+     * @param args
+     *     Ignored.
+     *
+     * @throws RunnerException
+     *     If the benchmark cannot be run.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ActiveConnectionMultimapBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
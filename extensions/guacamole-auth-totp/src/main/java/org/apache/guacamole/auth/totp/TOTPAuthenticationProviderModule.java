@@ -26,6 +26,7 @@ import org.apache.guacamole.auth.totp.conf.ConfigurationService;
 import org.apache.guacamole.auth.totp.user.CodeUsageTrackingService;
 import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.environment.LocalEnvironment;
+import org.apache.guacamole.expiry.TimingWheel;
 import org.apache.guacamole.net.auth.AuthenticationProvider;
 
 /**
@@ -72,6 +73,7 @@ public class TOTPAuthenticationProviderModule extends AbstractModule {
         // Bind core implementations of guacamole-ext classes
         bind(AuthenticationProvider.class).toInstance(authProvider);
         bind(Environment.class).toInstance(environment);
+        bind(TimingWheel.class).toInstance(TimingWheel.getSharedInstance());
 
         // Bind TOTP-specific services
         bind(CodeUsageTrackingService.class);
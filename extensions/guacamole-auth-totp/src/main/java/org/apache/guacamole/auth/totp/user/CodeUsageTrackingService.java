@@ -21,23 +21,18 @@ package org.apache.guacamole.auth.totp.user;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.auth.totp.conf.ConfigurationService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.guacamole.expiry.Expirable;
+import org.apache.guacamole.expiry.Expiration;
+import org.apache.guacamole.expiry.TimingWheel;
 
 /**
- * Service for tracking past valid uses of TOTP codes. An internal thread
- * periodically walks through records of past codes, removing records which
- * should be invalid by their own nature (no longer matching codes generated by
- * the secret key).
+ * Service for tracking past valid uses of TOTP codes. Records of past codes
+ * are removed by the shared TimingWheel once they would be invalid by their
+ * own nature (no longer matching codes generated by the secret key).
  */
 @Singleton
 public class CodeUsageTrackingService {
@@ -49,16 +44,6 @@ public class CodeUsageTrackingService {
      */
     private static final int INVALID_INTERVAL = 2;
 
-    /**
-     * Logger for this class.
-     */
-    private final Logger logger = LoggerFactory.getLogger(CodeUsageTrackingService.class);
-
-    /**
-     * Executor service which runs the cleanup task.
-     */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-
     /**
      * Service for retrieving configuration information.
      */
@@ -66,51 +51,78 @@ public class CodeUsageTrackingService {
     private ConfigurationService confService;
 
     /**
-     * Map of previously-used codes to the timestamp after which the code can
-     * be used again, providing the TOTP key legitimately generates that code.
+     * The TimingWheel which removes records of codes which are old enough
+     * that they would fail validation against the secret key anyway.
      */
-    private final ConcurrentMap<UsedCode, Long> invalidCodes =
-            new ConcurrentHashMap<UsedCode, Long>();
+    @Inject
+    private TimingWheel timingWheel;
 
     /**
-     * Creates a new CodeUsageTrackingService which tracks past valid uses of
-     * TOTP codes on a per-user basis.
+     * Map of previously-used codes to the record of the timestamp after which
+     * the code can be used again, providing the TOTP key legitimately
+     * generates that code.
      */
-    public CodeUsageTrackingService() {
-        executor.scheduleAtFixedRate(new CodeEvictionTask(), 1, 1, TimeUnit.MINUTES);
-    }
+    private final ConcurrentMap<UsedCode, InvalidCode> invalidCodes =
+            new ConcurrentHashMap<UsedCode, InvalidCode>();
 
     /**
-     * Task which iterates through all explicitly-invalidated codes, evicting
-     * those codes which are old enough that they would fail validation against
-     * the secret key anyway.
+     * Record of a previously-used code which is explicitly invalid until a
+     * particular time, removing itself from the map of invalid codes once
+     * that time has passed.
      */
-    private class CodeEvictionTask implements Runnable {
+    private class InvalidCode implements Expirable {
 
-        @Override
-        public void run() {
-
-            // Get start time of cleanup check
-            long checkStart = System.currentTimeMillis();
+        /**
+         * The previously-used code.
+         */
+        private final UsedCode usedCode;
 
-            // For each code still being tracked, remove those which are old
-            // enough that they would fail validation against the secret key
-            Iterator<Map.Entry<UsedCode, Long>> entries = invalidCodes.entrySet().iterator();
-            while (entries.hasNext()) {
+        /**
+         * The timestamp after which the code can be used again, in
+         * milliseconds since midnight January 1, 1970 GMT.
+         */
+        private final long invalidUntil;
 
-                Map.Entry<UsedCode, Long> entry = entries.next();
-                long invalidUntil = entry.getValue();
+        /**
+         * The registration of this record with the TimingWheel, or null if
+         * this record has not yet been stored.
+         */
+        private volatile Expiration expiration;
 
-                // If code is sufficiently old, evict it and check the next one
-                if (checkStart >= invalidUntil)
-                    entries.remove();
+        /**
+         * Creates a new record of the given code which is explicitly invalid
+         * until the given time.
+         *
+         * @param usedCode
+         *     The previously-used code.
+         *
+         * @param invalidUntil
+         *     The timestamp after which the code can be used again, in
+         *     milliseconds since midnight January 1, 1970 GMT.
+         */
+        public InvalidCode(UsedCode usedCode, long invalidUntil) {
+            this.usedCode = usedCode;
+            this.invalidUntil = invalidUntil;
+        }
 
-            }
+        /**
+         * Stops tracking this record within the TimingWheel, if it was ever
+         * registered.
+         */
+        public void cancel() {
+            Expiration current = expiration;
+            if (current != null)
+                current.cancel();
+        }
 
-            // Log completion and duration
-            logger.debug("TOTP tracking cleanup check completed in {} ms.",
-                    System.currentTimeMillis() - checkStart);
+        @Override
+        public long getExpirationTime() {
+            return invalidUntil;
+        }
 
+        @Override
+        public void expire() {
+            invalidCodes.remove(usedCode, this);
         }
 
     }
@@ -232,21 +244,24 @@ public class CodeUsageTrackingService {
 
             // Try to use the given code, marking it as used within the map of
             // now-invalidated codes
-            Long expires = invalidCodes.putIfAbsent(usedCode, invalidUntil);
-            if (expires == null)
+            InvalidCode invalidCode = new InvalidCode(usedCode, invalidUntil);
+            InvalidCode existing = invalidCodes.putIfAbsent(usedCode, invalidCode);
+            if (existing == null) {
+                invalidCode.expiration = timingWheel.register(invalidCode);
                 return true;
+            }
 
             // If the code was already used, fail to use the code if
             // insufficient time has elapsed since it was last used
             // successfully
-            if (expires > current)
+            if (existing.invalidUntil > current)
                 return false;
 
-
             // Otherwise, the code is actually valid - remove the invalidated
-            // code only if it still has the expected expiration time, and
-            // retry using the code
-            invalidCodes.remove(usedCode, expires);
+            // code only if it is still the same record, and retry using the
+            // code
+            if (invalidCodes.remove(usedCode, existing))
+                existing.cancel();
 
         }
 
@@ -254,11 +269,12 @@ public class CodeUsageTrackingService {
 
     /**
      * Cleans up resources which may be in use by this service in the
-     * background, such as other threads. This function MUST be invoked during
+     * background, such as records registered with the TimingWheel. This function MUST be invoked during
      * webapp shutdown to avoid leaking these resources.
      */
     public void shutdown() {
-        executor.shutdownNow();
+        for (InvalidCode invalidCode : invalidCodes.values())
+            invalidCode.cancel();
     }
 
 }
@@ -824,6 +824,16 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
      */
     var PING_FREQUENCY = 500;
 
+    /**
+     * Decoder for UTF-8 instruction data received within binary WebSocket
+     * frames, or null if the browser does not support TextDecoder, in which
+     * case the server will be asked to send text frames only.
+     *
+     * @private
+     * @type {TextDecoder}
+     */
+    var decoder = window.TextDecoder ? new TextDecoder('utf-8') : null;
+
     // Transform current URL to WebSocket URL
 
     // If not already a websocket URL
@@ -962,8 +972,13 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
         // Mark the tunnel as connecting
         tunnel.setState(Guacamole.Tunnel.State.CONNECTING);
 
+        // Request binary frames only if they can be decoded
+        if (decoder)
+            data += (data ? "&" : "") + "GUAC_BINARY=true";
+
         // Connect socket
         socket = new WebSocket(tunnelURL + "?" + data, "guacamole");
+        socket.binaryType = "arraybuffer";
 
         socket.onopen = function(event) {
             reset_timeout();
@@ -997,7 +1012,11 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
 
             reset_timeout();
 
+            // Decode binary frames, which contain UTF-8 instruction data
             var message = event.data;
+            if (typeof message !== "string")
+                message = decoder.decode(message);
+
             var startIndex = 0;
             var elementEnd;
 
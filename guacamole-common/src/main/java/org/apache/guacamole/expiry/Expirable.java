@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.expiry;
+
+/**
+ * An object which should automatically be expired at some point in the
+ * future, once registered with a TimingWheel. The expiration time of an
+ * Expirable is read only when it is due to expire, thus an Expirable may be
+ * kept alive ("touched") at no cost simply by updating the value returned by
+ * getExpirationTime(), such as the time of last access.
+ */
+public interface Expirable {
+
+    /**
+     * Returns the time at which this object should expire, as the number of
+     * milliseconds since midnight January 1, 1970 GMT. This function is
+     * invoked by the thread of the TimingWheel, and thus must be thread-safe.
+     * It will be invoked again each time the previously-returned time is
+     * reached, and may return a later time to defer expiration.
+     *
+     * @return
+     *     The time at which this object should expire, in milliseconds since
+     *     midnight January 1, 1970 GMT.
+     */
+    long getExpirationTime();
+
+    /**
+     * Expires this object, releasing or invalidating any associated
+     * resources. This function is invoked by the thread of the TimingWheel
+     * at most once, and only after the time returned by getExpirationTime()
+     * has passed. As all expirations share the same thread, implementations
+     * should not block.
+     */
+    void expire();
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.expiry;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The registration of a single Expirable with a TimingWheel. An Expiration
+ * remains active until its Expirable has been expired or the Expiration has
+ * been explicitly cancelled.
+ */
+public final class Expiration {
+
+    /**
+     * The TimingWheel with which this Expiration is registered.
+     */
+    private final TimingWheel wheel;
+
+    /**
+     * The Expirable which will be expired, or null if this Expiration is no
+     * longer active.
+     */
+    private final AtomicReference<Expirable> expirable;
+
+    /**
+     * The tick at which this Expiration is next due to be checked. This
+     * value is used only by the thread of the TimingWheel.
+     */
+    long deadline;
+
+    /**
+     * The next Expiration within the same slot of the timing wheel, or null
+     * if this is the last such Expiration. This value is used only by the
+     * thread of the TimingWheel.
+     */
+    Expiration next;
+
+    /**
+     * Creates a new, active Expiration for the given Expirable.
+     *
+     * @param wheel
+     *     The TimingWheel with which the Expirable is being registered.
+     *
+     * @param expirable
+     *     The Expirable being registered.
+     */
+    Expiration(TimingWheel wheel, Expirable expirable) {
+        this.wheel = wheel;
+        this.expirable = new AtomicReference<Expirable>(expirable);
+    }
+
+    /**
+     * Returns the Expirable associated with this Expiration, if this
+     * Expiration is still active.
+     *
+     * @return
+     *     The Expirable associated with this Expiration, or null if the
+     *     Expiration is no longer active.
+     */
+    Expirable getExpirable() {
+        return expirable.get();
+    }
+
+    /**
+     * Atomically deactivates this Expiration, such that the given Expirable
+     * will no longer be expired, nor referenced by the TimingWheel.
+     *
+     * @param current
+     *     The Expirable which is expected to be associated with this
+     *     Expiration.
+     *
+     * @return
+     *     true if this Expiration was active and has now been deactivated,
+     *     false otherwise.
+     */
+    boolean deactivate(Expirable current) {
+
+        // Only the first of expiration or cancellation may succeed
+        if (current == null || !expirable.compareAndSet(current, null))
+            return false;
+
+        wheel.deactivated();
+        return true;
+
+    }
+
+    /**
+     * Cancels this Expiration, such that the associated Expirable will never
+     * be expired. Cancelling an Expiration which is no longer active has no
+     * effect.
+     *
+     * @return
+     *     true if this Expiration was active and has now been cancelled,
+     *     false if the Expirable has already been expired or the Expiration
+     *     was already cancelled.
+     */
+    public boolean cancel() {
+        return deactivate(expirable.get());
+    }
+
+    /**
+     * Returns whether this Expiration is still active, meaning that the
+     * associated Expirable has been neither expired nor cancelled.
+     *
+     * @return
+     *     true if this Expiration is still active, false otherwise.
+     */
+    public boolean isActive() {
+        return expirable.get() != null;
+    }
+
+}
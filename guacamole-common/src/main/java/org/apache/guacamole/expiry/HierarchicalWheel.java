@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.expiry;
+
+/**
+ * The slots of a hierarchical timing wheel, as described by Varghese and
+ * Lauck. Each level of the wheel divides a span of ticks 64 times larger than
+ * that of the level below into 64 slots, such that scheduling an Expiration
+ * and advancing by a single tick are both constant-time operations, with
+ * Expirations cascading toward the lowest level as their deadline approaches.
+ * Deadlines further in the future than the highest level can represent are
+ * clamped to the furthest representable tick.
+ *
+ * A HierarchicalWheel is not thread-safe and must only be used by a single
+ * thread.
+ */
+class HierarchicalWheel {
+
+    /**
+     * The number of bits of the tick number covered by each level.
+     */
+    private static final int LEVEL_BITS = 6;
+
+    /**
+     * The number of slots within each level.
+     */
+    private static final int SLOTS = 1 << LEVEL_BITS;
+
+    /**
+     * Bitmask which extracts the slot number from a tick number shifted
+     * to the position of a particular level.
+     */
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * The number of levels within the wheel.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * The maximum number of ticks between the current tick and the deadline
+     * of any scheduled Expiration.
+     */
+    public static final long MAX_DELAY = (1L << (LEVEL_BITS * LEVELS)) - 1;
+
+    /**
+     * The first Expiration within each slot of each level, or null if the
+     * slot is empty.
+     */
+    private final Expiration[][] slots = new Expiration[LEVELS][SLOTS];
+
+    /**
+     * The current tick.
+     */
+    private long tick;
+
+    /**
+     * The number of Expirations currently scheduled.
+     */
+    private int size;
+
+    /**
+     * Creates a new, empty HierarchicalWheel which starts at the given tick.
+     *
+     * @param tick
+     *     The initial tick of the wheel.
+     */
+    public HierarchicalWheel(long tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * Returns the current tick of this wheel.
+     *
+     * @return
+     *     The current tick of this wheel.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the number of Expirations currently scheduled within this
+     * wheel, including any which have since been cancelled but not yet
+     * reached.
+     *
+     * @return
+     *     The number of Expirations currently scheduled.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Schedules the given Expiration such that it is returned by the call to
+     * advance() which reaches the given tick. If the given tick is not after
+     * the current tick, the Expiration is returned by the next call to
+     * advance(). If the given tick is further in the future than MAX_DELAY
+     * ticks, it is returned after MAX_DELAY ticks instead.
+     *
+     * @param expiration
+     *     The Expiration to schedule.
+     *
+     * @param deadline
+     *     The tick at which the Expiration should be returned.
+     */
+    public void schedule(Expiration expiration, long deadline) {
+
+        // Clamp deadline to the range representable by the wheel
+        long delay = deadline - tick;
+        if (delay <= 0)
+            delay = 1;
+        else if (delay > MAX_DELAY)
+            delay = MAX_DELAY;
+
+        insert(expiration, tick + delay);
+
+    }
+
+    /**
+     * Adds the given Expiration to the slot covering the given deadline
+     * within the lowest level whose span covers the remaining delay. The
+     * deadline must not be before the current tick, nor more than MAX_DELAY
+     * ticks after the current tick.
+     *
+     * @param expiration
+     *     The Expiration to add.
+     *
+     * @param deadline
+     *     The tick at which the Expiration should be returned.
+     */
+    private void insert(Expiration expiration, long deadline) {
+
+        long delay = deadline - tick;
+        expiration.deadline = deadline;
+
+        // Use the lowest level whose span covers the delay
+        int level = 0;
+        while (delay >= 1L << (LEVEL_BITS * (level + 1)))
+            level++;
+
+        // Push onto the head of the relevant slot
+        int slot = (int) (deadline >>> (LEVEL_BITS * level)) & SLOT_MASK;
+        expiration.next = slots[level][slot];
+        slots[level][slot] = expiration;
+        size++;
+
+    }
+
+    /**
+     * Removes all Expirations from the given slot, returning the first
+     * Expiration of the removed chain.
+     *
+     * @param level
+     *     The level containing the slot.
+     *
+     * @param slot
+     *     The slot to empty.
+     *
+     * @return
+     *     The first Expiration within the slot, with the remainder reachable
+     *     through its next field, or null if the slot was empty.
+     */
+    private Expiration take(int level, int slot) {
+        Expiration head = slots[level][slot];
+        slots[level][slot] = null;
+        return head;
+    }
+
+    /**
+     * Advances this wheel by one tick, returning all Expirations whose
+     * deadline is the new tick. Expirations scheduled within higher levels
+     * are cascaded downward as necessary, discarding any which are no longer
+     * active. The returned Expirations may include some which are no longer
+     * active, and must be checked by the caller.
+     *
+     * @return
+     *     The first Expiration whose deadline is the new tick, with the
+     *     remainder reachable through its next field, or null if no
+     *     Expirations are due.
+     */
+    public Expiration advance() {
+
+        tick++;
+
+        // Cascade the slots of higher levels whose span begins at the new
+        // tick, starting with the highest level so that Expirations may
+        // cascade through multiple levels at once
+        for (int level = LEVELS - 1; level > 0; level--) {
+
+            int shift = LEVEL_BITS * level;
+            if ((tick & ((1L << shift) - 1)) != 0)
+                continue;
+
+            Expiration current = take(level, (int) (tick >>> shift) & SLOT_MASK);
+            while (current != null) {
+                Expiration next = current.next;
+                size--;
+                if (current.isActive())
+                    insert(current, current.deadline);
+                current = next;
+            }
+
+        }
+
+        // Return everything due at the new tick
+        Expiration due = take(0, (int) tick & SLOT_MASK);
+        for (Expiration current = due; current != null; current = current.next)
+            size--;
+
+        return due;
+
+    }
+
+}
@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.expiry;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which expires registered Expirables once their expiration time has
+ * passed, using a hierarchical timing wheel driven by a single background
+ * thread. Registering, touching, cancelling, and expiring an Expirable are
+ * all constant-time operations, regardless of the number of Expirables
+ * registered, and a single TimingWheel may be shared by any number of
+ * independent components. Expirables are expired within one tick after
+ * their expiration time.
+ *
+ * The background thread is started automatically when an Expirable is
+ * registered, and stops automatically once no registered Expirables remain
+ * active. A shared TimingWheel, having a tick duration of one second, is
+ * available through getSharedInstance().
+ */
+public class TimingWheel {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * The duration of each tick of the shared TimingWheel, in milliseconds.
+     */
+    private static final long SHARED_TICK_DURATION = 1000;
+
+    /**
+     * The TimingWheel shared by all components which do not require a
+     * dedicated TimingWheel.
+     */
+    private static final TimingWheel SHARED_INSTANCE =
+            new TimingWheel("guacamole-expiry", SHARED_TICK_DURATION);
+
+    /**
+     * The interval between updates to the expiration rate, in milliseconds.
+     */
+    private static final long RATE_INTERVAL = 1000;
+
+    /**
+     * The interval between logged summaries of expiration activity, in
+     * milliseconds.
+     */
+    private static final long LOG_INTERVAL = 60000;
+
+    /**
+     * The weight given to each new expiration rate sample, relative to the
+     * existing estimate.
+     */
+    private static final double RATE_SAMPLE_WEIGHT = 0.25;
+
+    /**
+     * The name of the background thread of this TimingWheel.
+     */
+    private final String name;
+
+    /**
+     * The duration of each tick, in milliseconds.
+     */
+    private final long tickDuration;
+
+    /**
+     * The time from which ticks are counted, in milliseconds since midnight
+     * January 1, 1970 GMT.
+     */
+    private final long origin = System.currentTimeMillis();
+
+    /**
+     * All Expirations which have been registered but not yet scheduled within
+     * the wheel by the background thread.
+     */
+    private final Queue<Expiration> pending =
+            new ConcurrentLinkedQueue<Expiration>();
+
+    /**
+     * The number of registered Expirations which are still active.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * The total number of Expirables which have been expired.
+     */
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * The estimated number of Expirables expired per second.
+     */
+    private volatile double expirationRate = 0;
+
+    /**
+     * The background thread currently driving this TimingWheel, or null if
+     * no such thread is running. Access to this field is synchronized on this
+     * TimingWheel.
+     */
+    private Thread worker;
+
+    /**
+     * Creates a new TimingWheel which checks for expired Expirables once per
+     * tick, where each tick has the given duration.
+     *
+     * @param name
+     *     The name to assign to the background thread of the TimingWheel.
+     *
+     * @param tickDuration
+     *     The duration of each tick, in milliseconds.
+     *
+     * @throws IllegalArgumentException
+     *     If the given tick duration is not positive.
+     */
+    public TimingWheel(String name, long tickDuration) {
+
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("Tick duration must be positive.");
+
+        this.name = name;
+        this.tickDuration = tickDuration;
+
+    }
+
+    /**
+     * Returns the TimingWheel shared by all components which do not require
+     * a dedicated TimingWheel. The shared TimingWheel has a tick duration of
+     * one second.
+     *
+     * @return
+     *     The shared TimingWheel.
+     */
+    public static TimingWheel getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    /**
+     * Returns the duration of each tick of this TimingWheel.
+     *
+     * @param unit
+     *     The unit in which the duration should be returned.
+     *
+     * @return
+     *     The duration of each tick, in the given unit.
+     */
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickDuration, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers the given Expirable, such that it will be expired once its
+     * expiration time has passed. The Expirable is expired only once, even
+     * if registered multiple times.
+     *
+     * @param expirable
+     *     The Expirable to register.
+     *
+     * @return
+     *     An Expiration representing the registration, which may be used to
+     *     cancel expiration of the Expirable.
+     */
+    public Expiration register(Expirable expirable) {
+
+        Expiration expiration = new Expiration(this, expirable);
+        active.incrementAndGet();
+        pending.add(expiration);
+
+        // Ensure the background thread is running
+        synchronized (this) {
+            if (worker == null) {
+                worker = new Thread(new Worker(), name);
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+
+        return expiration;
+
+    }
+
+    /**
+     * Notifies this TimingWheel that a registered Expiration is no longer
+     * active.
+     */
+    void deactivated() {
+        active.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of registered Expirables which have been neither
+     * expired nor cancelled.
+     *
+     * @return
+     *     The number of active registrations.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Returns the total number of Expirables which have been expired by this
+     * TimingWheel.
+     *
+     * @return
+     *     The total number of Expirables expired.
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Returns the estimated number of Expirables expired by this TimingWheel
+     * per second, as an exponentially-weighted moving average updated once
+     * per second while the background thread is running.
+     *
+     * @return
+     *     The estimated number of Expirables expired per second.
+     */
+    public double getExpirationRate() {
+        return expirationRate;
+    }
+
+    /**
+     * Converts the given time into the first tick at or after that time.
+     *
+     * @param time
+     *     The time to convert, in milliseconds since midnight January 1, 1970
+     *     GMT.
+     *
+     * @return
+     *     The first tick which begins at or after the given time.
+     */
+    private long ceilTick(long time) {
+        return -Math.floorDiv(origin - time, tickDuration);
+    }
+
+    /**
+     * Converts the given time into the tick containing that time.
+     *
+     * @param time
+     *     The time to convert, in milliseconds since midnight January 1, 1970
+     *     GMT.
+     *
+     * @return
+     *     The tick containing the given time.
+     */
+    private long floorTick(long time) {
+        return Math.floorDiv(time - origin, tickDuration);
+    }
+
+    /**
+     * Task which drives the wheel, scheduling newly-registered Expirations
+     * and checking each Expiration as its scheduled tick is reached. Only one
+     * Worker runs at a time, and each Worker owns its own wheel.
+     */
+    private class Worker implements Runnable {
+
+        /**
+         * The wheel of scheduled Expirations.
+         */
+        private final HierarchicalWheel wheel =
+                new HierarchicalWheel(floorTick(System.currentTimeMillis()));
+
+        /**
+         * The time the expiration rate was last updated, in milliseconds
+         * since midnight January 1, 1970 GMT.
+         */
+        private long lastRateUpdate = System.currentTimeMillis();
+
+        /**
+         * The total number of expirations at the time the expiration rate was
+         * last updated.
+         */
+        private long lastRateCount = expirations.get();
+
+        /**
+         * The time a summary of expiration activity was last logged, in
+         * milliseconds since midnight January 1, 1970 GMT.
+         */
+        private long lastLog = lastRateUpdate;
+
+        /**
+         * The total number of expirations at the time a summary of expiration
+         * activity was last logged.
+         */
+        private long lastLogCount = lastRateCount;
+
+        /**
+         * Schedules the given Expiration within the wheel according to the
+         * current expiration time of its Expirable, or expires that Expirable
+         * if its expiration time has passed.
+         *
+         * @param expiration
+         *     The Expiration to check.
+         *
+         * @param now
+         *     The current time, in milliseconds since midnight January 1,
+         *     1970 GMT.
+         */
+        private void check(Expiration expiration, long now) {
+
+            // Ignore any Expirations which have been cancelled
+            Expirable expirable = expiration.getExpirable();
+            if (expirable == null)
+                return;
+
+            try {
+
+                // Defer expiration until the expiration time is reached,
+                // which may have been pushed back since the Expiration was
+                // last scheduled
+                long expirationTime = expirable.getExpirationTime();
+                if (expirationTime > now) {
+                    wheel.schedule(expiration, ceilTick(expirationTime));
+                    return;
+                }
+
+                // Expire only if not concurrently cancelled
+                if (expiration.deactivate(expirable)) {
+                    expirations.incrementAndGet();
+                    expirable.expire();
+                }
+
+            }
+
+            // Do not allow a misbehaving Expirable to stop the wheel
+            catch (RuntimeException e) {
+                logger.warn("Expiration of \"{}\" failed: {}", expirable, e.getMessage());
+                logger.debug("Expirable failed during expiration check.", e);
+                expiration.deactivate(expirable);
+            }
+
+        }
+
+        /**
+         * Updates the expiration rate and logs a summary of expiration
+         * activity, if the relevant intervals have elapsed.
+         *
+         * @param now
+         *     The current time, in milliseconds since midnight January 1,
+         *     1970 GMT.
+         */
+        private void updateStatistics(long now) {
+
+            long count = expirations.get();
+
+            // Update the moving average once per interval
+            long elapsed = now - lastRateUpdate;
+            if (elapsed >= RATE_INTERVAL) {
+                double sample = (count - lastRateCount) * 1000.0 / elapsed;
+                expirationRate += (sample - expirationRate) * RATE_SAMPLE_WEIGHT;
+                lastRateUpdate = now;
+                lastRateCount = count;
+            }
+
+            // Periodically summarize activity, if anything has been expired
+            if (now - lastLog >= LOG_INTERVAL) {
+                if (count != lastLogCount)
+                    logger.debug("{}: {} expired in the last {} seconds "
+                            + "({} per second), {} still active.", name,
+                            count - lastLogCount, (now - lastLog) / 1000,
+                            String.format("%.2f", expirationRate),
+                            active.get());
+                lastLog = now;
+                lastLogCount = count;
+            }
+
+        }
+
+        /**
+         * Returns whether this Worker should stop because no registered
+         * Expirations remain active. If so, this Worker is atomically
+         * removed such that later registrations start a new Worker.
+         *
+         * @return
+         *     true if this Worker has been removed and should stop, false
+         *     otherwise.
+         */
+        private boolean stopIfIdle() {
+            synchronized (TimingWheel.this) {
+
+                if (active.get() > 0 || !pending.isEmpty())
+                    return false;
+
+                worker = null;
+                expirationRate = 0;
+                return true;
+
+            }
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                for (;;) {
+
+                    // Process every tick which has elapsed, catching up if
+                    // this thread has fallen behind
+                    long now = System.currentTimeMillis();
+                    long target = floorTick(now);
+                    while (wheel.getTick() < target) {
+
+                        Expiration due = wheel.advance();
+
+                        // Schedule any newly-registered Expirations first,
+                        // such that those already due are checked on this
+                        // same tick
+                        Expiration registered;
+                        while ((registered = pending.poll()) != null)
+                            check(registered, now);
+
+                        // Check everything scheduled for this tick
+                        while (due != null) {
+                            Expiration next = due.next;
+                            due.next = null;
+                            check(due, now);
+                            due = next;
+                        }
+
+                    }
+
+                    updateStatistics(now);
+
+                    if (stopIfIdle())
+                        return;
+
+                    // Wait for the start of the next tick
+                    long nextTick = origin + (wheel.getTick() + 1) * tickDuration;
+                    Thread.sleep(Math.max(1, nextTick - System.currentTimeMillis()));
+
+                }
+            }
+
+            // Stop if interrupted (shutdown of the containing application)
+            catch (InterruptedException e) {
+                logger.debug("Expiration thread \"{}\" interrupted.", name, e);
+                synchronized (TimingWheel.this) {
+                    if (worker == Thread.currentThread())
+                        worker = null;
+                }
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Reusable buffer for the data of a single "blob" instruction, converting
+ * between raw data and base64 without constructing a GuacamoleInstruction or
+ * allocating a new array for the data of each blob. Data read from an
+ * InputStream is written to a GuacamoleWriter as a complete "blob"
+ * instruction, base64-encoded into a reusable character buffer, and base64
+ * data received within a "blob" instruction is decoded into a reusable byte
+ * buffer. Buffers should be obtained with acquire() and returned with
+ * release() such that they can be reused across streams.
+ */
+public class BlobBuffer {
+
+    /**
+     * The maximum number of bytes read for each blob sent. Once
+     * base64-encoded, blobs of this size remain within the maximum
+     * instruction length accepted by guacd.
+     */
+    public static final int MAX_BLOB_LENGTH = 6048;
+
+    /**
+     * The maximum number of released buffers retained for reuse.
+     */
+    private static final int MAX_POOLED_BUFFERS = 32;
+
+    /**
+     * The opcode and its length prefix which begin every "blob" instruction.
+     */
+    private static final char[] BLOB_OPCODE = "4.blob,".toCharArray();
+
+    /**
+     * Released buffers available for reuse.
+     */
+    private static final Queue<BlobBuffer> pool = new ConcurrentLinkedQueue<BlobBuffer>();
+
+    /**
+     * The number of buffers currently within the pool.
+     */
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * The raw data of the current blob.
+     */
+    private byte[] data = new byte[MAX_BLOB_LENGTH];
+
+    /**
+     * The number of bytes of data within the current blob.
+     */
+    private int length = 0;
+
+    /**
+     * The base64 representation of the current blob, allocated upon first
+     * use.
+     */
+    private byte[] base64;
+
+    /**
+     * The buffer into which "blob" instructions are encoded, allocated upon
+     * first use.
+     */
+    private char[] instruction;
+
+    /**
+     * Returns a buffer from the pool, or a new buffer if the pool is empty.
+     * The returned buffer should be returned with release() once no longer
+     * needed.
+     *
+     * @return
+     *     A buffer which is not in use.
+     */
+    public static BlobBuffer acquire() {
+
+        BlobBuffer buffer = pool.poll();
+        if (buffer == null)
+            return new BlobBuffer();
+
+        pooled.decrementAndGet();
+        return buffer;
+
+    }
+
+    /**
+     * Returns this buffer to the pool, such that it may be reused. This
+     * buffer must not be used after being released.
+     */
+    public void release() {
+
+        // Discard buffers beyond the pool capacity
+        if (pooled.incrementAndGet() > MAX_POOLED_BUFFERS) {
+            pooled.decrementAndGet();
+            return;
+        }
+
+        // Do not retain buffers grown to decode unusually large blobs
+        if (data.length != MAX_BLOB_LENGTH)
+            data = new byte[MAX_BLOB_LENGTH];
+
+        length = 0;
+        pool.offer(this);
+
+    }
+
+    /**
+     * Returns the array containing the raw data of the current blob. Only
+     * the first getLength() bytes of this array are part of the blob.
+     *
+     * @return
+     *     The array containing the raw data of the current blob.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the number of bytes of data within the current blob.
+     *
+     * @return
+     *     The number of bytes of data within the current blob.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Replaces the current blob with the next chunk of data from the given
+     * InputStream, reading until MAX_BLOB_LENGTH bytes have been read or the
+     * end of the InputStream is reached.
+     *
+     * @param input
+     *     The InputStream to read from.
+     *
+     * @return
+     *     The number of bytes read, or -1 if the end of the InputStream has
+     *     been reached, in which case the current blob is empty.
+     *
+     * @throws IOException
+     *     If an error occurs while reading from the InputStream.
+     */
+    public int read(InputStream input) throws IOException {
+
+        length = 0;
+        while (length < MAX_BLOB_LENGTH) {
+            int read = input.read(data, length, MAX_BLOB_LENGTH - length);
+            if (read == -1)
+                break;
+            length += read;
+        }
+
+        return length == 0 ? -1 : length;
+
+    }
+
+    /**
+     * Replaces the current blob with the given base64 data, decoding that
+     * data directly into this buffer.
+     *
+     * @param value
+     *     The base64 data to decode.
+     *
+     * @throws IllegalArgumentException
+     *     If the given data is not valid base64.
+     */
+    public void decode(String value) throws IllegalArgumentException {
+
+        // Characters outside ISO-8859-1 become '?', which is not valid base64
+        byte[] encoded = value.getBytes(StandardCharsets.ISO_8859_1);
+
+        int required = encoded.length / 4 * 3 + 2;
+        if (required > data.length)
+            data = new byte[required];
+
+        length = Base64.getDecoder().decode(encoded, data);
+
+    }
+
+    /**
+     * Appends the decimal representation of the given non-negative value to
+     * the given buffer.
+     *
+     * @param buffer
+     *     The buffer to append to, which must have sufficient space.
+     *
+     * @param offset
+     *     The offset within the buffer at which to append.
+     *
+     * @param value
+     *     The non-negative value to append.
+     *
+     * @return
+     *     The offset immediately following the appended digits.
+     */
+    private static int appendInt(char[] buffer, int offset, int value) {
+
+        int digits = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10)
+            digits++;
+
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return offset + digits;
+
+    }
+
+    /**
+     * Writes the current blob to the given GuacamoleWriter as a complete
+     * "blob" instruction for the stream having the given index, encoding the
+     * blob as base64 directly into a reusable buffer.
+     *
+     * @param writer
+     *     The GuacamoleWriter to write the "blob" instruction to.
+     *
+     * @param index
+     *     The index of the stream that the "blob" instruction relates to.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing the instruction.
+     */
+    public void writeBlob(GuacamoleWriter writer, String index)
+            throws GuacamoleException {
+
+        int encodedLength = (length + 2) / 3 * 4;
+        int required = BLOB_OPCODE.length + index.length() + encodedLength + 24;
+        if (instruction == null || instruction.length < required)
+            instruction = new char[required];
+
+        // Opcode and stream index
+        System.arraycopy(BLOB_OPCODE, 0, instruction, 0, BLOB_OPCODE.length);
+        int offset = appendInt(instruction, BLOB_OPCODE.length,
+                index.codePointCount(0, index.length()));
+        instruction[offset++] = '.';
+        index.getChars(0, index.length(), instruction, offset);
+        offset += index.length();
+        instruction[offset++] = ',';
+
+        // Base64-encoded data
+        offset = appendInt(instruction, offset, encodedLength);
+        instruction[offset++] = '.';
+
+        if (base64 == null || base64.length < encodedLength)
+            base64 = new byte[Math.max(encodedLength, (MAX_BLOB_LENGTH + 2) / 3 * 4)];
+
+        // Base64.Encoder requires an array containing only the data to encode
+        byte[] source = (length == data.length) ? data : Arrays.copyOf(data, length);
+        Base64.getEncoder().encode(source, base64);
+        // Widening through a Latin-1 String uses intrinsics which are
+        // considerably faster than widening each character individually
+        new String(base64, 0, encodedLength, StandardCharsets.ISO_8859_1)
+                .getChars(0, encodedLength, instruction, offset);
+        offset += encodedLength;
+
+        instruction[offset++] = ';';
+        writer.write(instruction, 0, offset);
+
+    }
+
+}
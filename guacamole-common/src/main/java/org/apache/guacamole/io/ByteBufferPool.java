@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of equally-sized ByteBuffers which may be shared across
+ * threads. Buffers are allocated on demand and retained for reuse once
+ * released, up to a fixed number of pooled buffers. Buffers released while
+ * the pool is full are simply left for garbage collection.
+ */
+public class ByteBufferPool {
+
+    /**
+     * The size of each buffer, in bytes.
+     */
+    private final int bufferSize;
+
+    /**
+     * The maximum number of released buffers to retain for reuse.
+     */
+    private final int maxPooled;
+
+    /**
+     * All buffers which have been released and are available for reuse.
+     */
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * The number of buffers currently within the pool. This is tracked
+     * separately as the size() of a ConcurrentLinkedQueue is not a
+     * constant-time operation.
+     */
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Creates a new ByteBufferPool which provides buffers of the given size,
+     * retaining at most the given number of released buffers.
+     *
+     * @param bufferSize
+     *     The size of each buffer, in bytes.
+     *
+     * @param maxPooled
+     *     The maximum number of released buffers to retain for reuse.
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Returns the size of each buffer provided by this pool, in bytes.
+     *
+     * @return
+     *     The size of each buffer provided by this pool, in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Acquires an empty buffer from this pool, allocating a new buffer if no
+     * pooled buffers are available. The buffer should be returned via
+     * release() once it is no longer in use.
+     *
+     * @return
+     *     An empty buffer, ready for writing.
+     */
+    public ByteBuffer acquire() {
+
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null)
+            return ByteBuffer.allocate(bufferSize);
+
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+
+    }
+
+    /**
+     * Returns the given buffer to this pool. The buffer must have been
+     * acquired from this pool and must not be used after being released.
+     *
+     * @param buffer
+     *     The buffer to release.
+     */
+    public void release(ByteBuffer buffer) {
+
+        // Drop buffers in excess of the pool limit
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+
+        buffers.offer(buffer);
+
+    }
+
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
+
+/**
+ * A GuacamoleReader which reads UTF-8 instruction data from a blocking
+ * ReadableByteChannel into a reusable ring buffer. Unlike
+ * ReaderGuacamoleReader, complete instructions are not copied out of the
+ * buffer as they are parsed. Each instruction is instead exposed through
+ * readView() as a GuacamoleInstructionView describing where the instruction
+ * and each of its elements reside within the buffer, and consumed data is
+ * released simply by advancing the start of the buffer.
+ *
+ * <p>The buffer is used circularly: once the end of the buffer is reached,
+ * only the trailing incomplete instruction (if any) is relocated to the
+ * beginning of the buffer, such that every complete instruction is always
+ * contiguous. The read() and readInstruction() functions behave exactly as
+ * those of ReaderGuacamoleReader, copying or decoding the instruction only
+ * for callers which require it.
+ */
+public class ChannelGuacamoleReader implements GuacamoleReader {
+
+    /**
+     * The default initial size of the character buffer, in characters.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 20480;
+
+    /**
+     * The size of the buffer holding received bytes which have not yet been
+     * decoded, in bytes.
+     */
+    private static final int BYTE_BUFFER_SIZE = 8192;
+
+    /**
+     * The channel from which all instruction data is read.
+     */
+    private final ReadableByteChannel input;
+
+    /**
+     * Decoder which converts received UTF-8 data into characters. As with
+     * InputStreamReader, malformed input is replaced rather than rejected.
+     */
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Buffer of bytes received from the channel which have not yet been
+     * decoded into characters, such as the leading bytes of a multi-byte
+     * character split across reads.
+     */
+    private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+    /**
+     * The buffer holding all decoded data, including data which has already
+     * been consumed as part of a returned instruction.
+     */
+    private char[] buffer;
+
+    /**
+     * CharBuffer wrapping the current character buffer, reused as the
+     * destination of each decode operation.
+     */
+    private CharBuffer charBuffer;
+
+    /**
+     * The offset of the first character within the buffer which has not yet
+     * been consumed as part of a returned instruction.
+     */
+    private int start = 0;
+
+    /**
+     * The offset within the buffer that parsing should resume from when more
+     * data is read. All elements prior to this offset have already been
+     * recorded within the view.
+     */
+    private int parseStart = 0;
+
+    /**
+     * The offset just past the last character of decoded data within the
+     * buffer.
+     */
+    private int end = 0;
+
+    /**
+     * The view describing the current instruction, reused for every
+     * instruction read.
+     */
+    private final GuacamoleInstructionView view = new GuacamoleInstructionView();
+
+    /**
+     * Creates a new ChannelGuacamoleReader which will use the given channel
+     * as the Guacamole instruction stream.
+     *
+     * @param input
+     *     The blocking ReadableByteChannel to use as the Guacamole
+     *     instruction stream.
+     */
+    public ChannelGuacamoleReader(ReadableByteChannel input) {
+        this(input, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new ChannelGuacamoleReader which will use the given channel
+     * as the Guacamole instruction stream, with a buffer of the given initial
+     * size. The buffer will grow automatically if an instruction larger than
+     * half the buffer is received.
+     *
+     * @param input
+     *     The blocking ReadableByteChannel to use as the Guacamole
+     *     instruction stream.
+     *
+     * @param bufferSize
+     *     The initial size of the character buffer, in characters.
+     */
+    public ChannelGuacamoleReader(ReadableByteChannel input, int bufferSize) {
+        this.input = input;
+        this.buffer = new char[Math.max(bufferSize, 16)];
+        this.charBuffer = CharBuffer.wrap(buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>As a channel cannot be queried for pending data without reading, this
+     * implementation considers data available only if undecoded bytes or
+     * unconsumed characters have already been received.
+     */
+    @Override
+    public boolean available() throws GuacamoleException {
+        return end != start || bytes.position() != 0;
+    }
+
+    /**
+     * Ensures there is free space at the end of the buffer for more data to
+     * be decoded. If the incomplete data remaining in the buffer occupies
+     * more than half the buffer, the buffer is doubled in size. If the end of
+     * the buffer is near, the incomplete data is relocated to the beginning
+     * of the buffer, wrapping around.
+     */
+    private void reserveSpace() {
+
+        int pending = end - start;
+
+        // If past threshold, resize buffer before reading
+        if (pending > buffer.length / 2) {
+            char[] biggerBuffer = new char[buffer.length * 2];
+            System.arraycopy(buffer, start, biggerBuffer, 0, pending);
+            buffer = biggerBuffer;
+            charBuffer = CharBuffer.wrap(buffer);
+        }
+
+        // Otherwise, wrap around if the end of the buffer is near
+        else if (buffer.length - end < buffer.length / 4) {
+            System.arraycopy(buffer, start, buffer, 0, pending);
+        }
+
+        // No need to relocate data if there is sufficient free space
+        else
+            return;
+
+        parseStart -= start;
+        end = pending;
+        start = 0;
+
+    }
+
+    /**
+     * Reads and decodes more data into the free space at the end of the
+     * buffer, blocking until at least one character is available.
+     *
+     * @return
+     *     true if data was read, false if the end of stream has been reached.
+     *
+     * @throws IOException
+     *     If an error occurs while reading from the channel.
+     */
+    private boolean fill() throws IOException {
+
+        charBuffer.limit(buffer.length).position(end);
+
+        for (;;) {
+
+            // Decode as much of the data already received as possible
+            bytes.flip();
+            decoder.decode(bytes, charBuffer, false);
+            bytes.compact();
+
+            // Stop once at least one character is available
+            if (charBuffer.position() != end) {
+                end = charBuffer.position();
+                return true;
+            }
+
+            // Otherwise, read more data
+            if (input.read(bytes) == -1)
+                return false;
+
+        }
+
+    }
+
+    /**
+     * Reads exactly one complete Guacamole instruction, returning a view of
+     * that instruction within this reader's internal buffer. No copy of the
+     * instruction data is made. The returned view, which is reused for each
+     * call, is only valid until the next call to readView(), read(), or
+     * readInstruction().
+     *
+     * @return
+     *     A view of the next complete instruction from the stream, or null
+     *     if no more instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the stream, or if the
+     *     instruction cannot be parsed.
+     */
+    public GuacamoleInstructionView readView() throws GuacamoleException {
+
+        // Start a new instruction if no elements have been parsed yet
+        if (parseStart == start)
+            view.reset();
+
+        try {
+
+            // While we're blocking, or input is available
+            for (;;) {
+
+                // Length of element
+                int elementLength = 0;
+
+                // Resume where we left off
+                int i = parseStart;
+
+                // Parse instruction in buffer
+                while (i < end) {
+
+                    // Read character
+                    char readChar = buffer[i++];
+
+                    // If digit, update length
+                    if (readChar >= '0' && readChar <= '9')
+                        elementLength = elementLength * 10 + readChar - '0';
+
+                    // If not digit, check for end-of-length character
+                    else if (readChar == '.') {
+
+                        // Check if element present in buffer
+                        if (i + elementLength < end) {
+
+                            // Get terminator
+                            char terminator = buffer[i + elementLength];
+
+                            // Handle invalid terminator characters
+                            if (terminator != ';' && terminator != ',')
+                                throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
+
+                            // Record element relative to instruction start
+                            view.addElement(i - start, elementLength);
+
+                            // Move to character after terminator
+                            i += elementLength + 1;
+
+                            // Reset length
+                            elementLength = 0;
+
+                            // Continue here if necessary
+                            parseStart = i;
+
+                            // If terminator is semicolon, we have a full
+                            // instruction.
+                            if (terminator == ';') {
+
+                                view.complete(buffer, start, i - start);
+
+                                // Consume instruction, rewinding to the
+                                // beginning of the buffer if nothing remains
+                                if (i == end)
+                                    start = parseStart = end = 0;
+                                else
+                                    start = i;
+
+                                return view;
+
+                            }
+
+                        }
+
+                        // Otherwise, read more data
+                        else
+                            break;
+
+                    }
+
+                    // Otherwise, parse error
+                    else
+                        throw new GuacamoleServerException("Non-numeric character in element length.");
+
+                }
+
+                // Make room for more data, relocating or growing if needed
+                reserveSpace();
+
+                // Attempt to fill buffer
+                if (!fill())
+                    return null;
+
+            } // End read loop
+
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    @Override
+    public char[] read() throws GuacamoleException {
+
+        GuacamoleInstructionView instruction = readView();
+        if (instruction == null)
+            return null;
+
+        return instruction.toCharArray();
+
+    }
+
+    @Override
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+        GuacamoleInstructionView instruction = readView();
+        if (instruction == null)
+            return null;
+
+        return instruction.toInstruction();
+
+    }
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Tracks the frame currently being built for a single tunnel, determining
+ * when that frame should be sent according to a FrameCoalescingPolicy. The
+ * bandwidth of the tunnel is estimated from the time taken to send each
+ * frame, and histograms of the size of each frame and of the time data was
+ * held before being sent are recorded.
+ *
+ * Other than reporting the completion of sends through frameSent() and
+ * reading statistics, a FrameCoalescer must only be used by the thread
+ * currently reading from the tunnel.
+ */
+public class FrameCoalescer {
+
+    /**
+     * The maximum amount of time to wait before again checking whether data
+     * is available within awaitFlush(), in nanoseconds.
+     */
+    private static final long POLL_INTERVAL = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * The weight given to each new bandwidth sample, relative to the
+     * existing estimate.
+     */
+    private static final double BANDWIDTH_SAMPLE_WEIGHT = 0.25;
+
+    /**
+     * The encoded form of the opcode of the "sync" instruction, including
+     * the length prefix and trailing delimiter.
+     */
+    private static final String SYNC_PREFIX = "4.sync,";
+
+    /**
+     * The policy applied by this coalescer.
+     */
+    private final FrameCoalescingPolicy policy;
+
+    /**
+     * The maximum delay of the policy, in nanoseconds.
+     */
+    private final long maxDelay;
+
+    /**
+     * The size of each frame sent, in bytes or characters.
+     */
+    private final FrameHistogram frameSizes = new FrameHistogram();
+
+    /**
+     * The amount of time data within each frame was held before that frame
+     * was sent, in microseconds.
+     */
+    private final FrameHistogram frameLatencies = new FrameHistogram();
+
+    /**
+     * The size of the frame currently being built, in bytes or characters.
+     */
+    private int length = 0;
+
+    /**
+     * The value of System.nanoTime() when the first instruction of the
+     * current frame was buffered.
+     */
+    private long started;
+
+    /**
+     * Whether the last instruction of the current frame is a "sync"
+     * instruction.
+     */
+    private boolean complete;
+
+    /**
+     * The estimated bandwidth of the tunnel, in bytes or characters per
+     * nanosecond, or zero if no estimate is yet available.
+     */
+    private volatile double bandwidth = 0;
+
+    /**
+     * Creates a new FrameCoalescer which applies the given policy.
+     *
+     * @param policy
+     *     The policy to apply.
+     */
+    public FrameCoalescer(FrameCoalescingPolicy policy) {
+        this.policy = policy;
+        this.maxDelay = TimeUnit.MICROSECONDS.toNanos(policy.getMaxDelay());
+    }
+
+    /**
+     * Returns whether the given encoded instruction is a "sync" instruction.
+     *
+     * @param instruction
+     *     The full, encoded instruction to test.
+     *
+     * @return
+     *     true if the given instruction is a "sync" instruction, false
+     *     otherwise.
+     */
+    public static boolean isSync(char[] instruction) {
+
+        if (instruction.length < SYNC_PREFIX.length())
+            return false;
+
+        for (int i = 0; i < SYNC_PREFIX.length(); i++) {
+            if (instruction[i] != SYNC_PREFIX.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns whether the remaining contents of the given buffer, which must
+     * be a full, UTF-8 encoded instruction, are a "sync" instruction. The
+     * position of the buffer is not changed.
+     *
+     * @param instruction
+     *     The buffer containing the encoded instruction to test.
+     *
+     * @return
+     *     true if the given instruction is a "sync" instruction, false
+     *     otherwise.
+     */
+    public static boolean isSync(ByteBuffer instruction) {
+
+        if (instruction.remaining() < SYNC_PREFIX.length())
+            return false;
+
+        int position = instruction.position();
+        for (int i = 0; i < SYNC_PREFIX.length(); i++) {
+            if (instruction.get(position + i) != SYNC_PREFIX.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the policy applied by this coalescer.
+     *
+     * @return
+     *     The policy applied by this coalescer.
+     */
+    public FrameCoalescingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Records that an instruction has been added to the current frame.
+     *
+     * @param instructionLength
+     *     The length of the instruction, in bytes or characters.
+     *
+     * @param sync
+     *     Whether the instruction is a "sync" instruction.
+     */
+    public void instructionBuffered(int instructionLength, boolean sync) {
+
+        if (length == 0)
+            started = System.nanoTime();
+
+        length += instructionLength;
+        complete = sync;
+
+    }
+
+    /**
+     * Returns whether the current frame contains no data.
+     *
+     * @return
+     *     true if no instructions have been added to the current frame,
+     *     false otherwise.
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Returns the size of the current frame, in bytes or characters.
+     *
+     * @return
+     *     The size of the current frame.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the size at which the current frame should be sent, taking
+     * into account both the maximum frame size of the policy and the
+     * estimated bandwidth of the tunnel. Frames are limited to the amount
+     * of data which could be sent within the maximum delay, but are never
+     * limited below MIN_FRAME_SIZE unless the policy itself requires it.
+     *
+     * @return
+     *     The size at which the current frame should be sent, in bytes or
+     *     characters.
+     */
+    public int getFrameLimit() {
+
+        int limit = policy.getMaxFrameSize();
+
+        double estimate = bandwidth;
+        if (estimate > 0 && maxDelay > 0) {
+            double affordable = Math.max(FrameCoalescingPolicy.MIN_FRAME_SIZE,
+                    estimate * maxDelay);
+            if (affordable < limit)
+                limit = (int) affordable;
+        }
+
+        return limit;
+
+    }
+
+    /**
+     * Returns the amount of time remaining before data within the current
+     * frame has been held for the maximum delay.
+     *
+     * @return
+     *     The amount of time remaining, in nanoseconds, which is zero if the
+     *     maximum delay has elapsed or the current frame is empty.
+     */
+    public long getRemainingDelay() {
+
+        if (length == 0)
+            return 0;
+
+        return Math.max(0, maxDelay - (System.nanoTime() - started));
+
+    }
+
+    /**
+     * Returns whether the current frame should be sent now, given whether
+     * further data is immediately available. If data is available, the
+     * frame is sent only once full, or once it is complete and has been
+     * held for the maximum delay. If no data is available, the frame is
+     * sent if complete (for sync-aligned policies) or once the maximum delay
+     * has elapsed.
+     *
+     * @param available
+     *     Whether further data can be read without blocking.
+     *
+     * @return
+     *     true if the current frame should be sent now, false if further
+     *     data should be awaited or read.
+     */
+    public boolean isFlushRequired(boolean available) {
+
+        if (length == 0)
+            return false;
+
+        if (length >= getFrameLimit())
+            return true;
+
+        boolean frameEnded = complete || !policy.isSyncAligned();
+
+        // Continue reading available data unless the current frame has
+        // already been held too long
+        if (available)
+            return maxDelay > 0 && frameEnded && getRemainingDelay() == 0;
+
+        return (complete && policy.isSyncAligned()) || getRemainingDelay() == 0;
+
+    }
+
+    /**
+     * Waits until either further data is available from the given reader or
+     * the current frame should be sent, returning whether the current frame
+     * should be sent now. The calling thread waits no longer than the
+     * remaining delay of the current frame.
+     *
+     * @param reader
+     *     The reader being read from.
+     *
+     * @return
+     *     true if the current frame should be sent now, false if further
+     *     data should be read first.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while checking whether data is available.
+     */
+    public boolean awaitFlush(GuacamoleReader reader) throws GuacamoleException {
+
+        while (!reader.available()) {
+
+            if (isFlushRequired(false))
+                return true;
+
+            LockSupport.parkNanos(Math.min(getRemainingDelay(), POLL_INTERVAL));
+
+        }
+
+        return isFlushRequired(true);
+
+    }
+
+    /**
+     * Records that the current frame has been handed off for sending,
+     * starting a new, empty frame.
+     */
+    public void frameFlushed() {
+
+        if (length == 0)
+            return;
+
+        frameSizes.record(length);
+        frameLatencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+
+        length = 0;
+        complete = false;
+
+    }
+
+    /**
+     * Records that a frame of the given size has been sent, updating the
+     * estimated bandwidth of the tunnel. Unlike other functions of this
+     * coalescer, this function may be called by the thread completing the
+     * send. Sends must not be reported concurrently.
+     *
+     * @param frameLength
+     *     The size of the frame sent, in bytes or characters.
+     *
+     * @param duration
+     *     The time taken to send the frame, in nanoseconds.
+     */
+    public void frameSent(int frameLength, long duration) {
+
+        if (frameLength <= 0 || duration <= 0)
+            return;
+
+        double sample = (double) frameLength / duration;
+        double estimate = bandwidth;
+
+        if (estimate == 0)
+            bandwidth = sample;
+        else
+            bandwidth = estimate + (sample - estimate) * BANDWIDTH_SAMPLE_WEIGHT;
+
+    }
+
+    /**
+     * Returns the estimated bandwidth of the tunnel.
+     *
+     * @return
+     *     The estimated bandwidth, in bytes or characters per second, or
+     *     zero if no estimate is yet available.
+     */
+    public double getBandwidth() {
+        return bandwidth * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the histogram of the size of each frame sent, in bytes or
+     * characters.
+     *
+     * @return
+     *     The histogram of frame sizes.
+     */
+    public FrameHistogram getFrameSizes() {
+        return frameSizes;
+    }
+
+    /**
+     * Returns the histogram of the amount of time data within each frame
+     * was held before that frame was sent, in microseconds.
+     *
+     * @return
+     *     The histogram of frame latencies.
+     */
+    public FrameHistogram getFrameLatencies() {
+        return frameLatencies;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frame sizes [%s], latencies in us [%s], "
+                + "bandwidth %.0f/s", frameSizes, frameLatencies,
+                getBandwidth());
+    }
+
+}
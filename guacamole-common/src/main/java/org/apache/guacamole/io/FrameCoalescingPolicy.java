@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+/**
+ * Policy which determines how instructions read from guacd are combined into
+ * the frames sent to the client of a tunnel. Data is held until the frame
+ * being built is complete (ends with a "sync" instruction), until no further
+ * data arrives within the maximum delay, or until the frame reaches the
+ * maximum frame size, whichever comes first. The maximum frame size is
+ * further reduced for tunnels whose estimated bandwidth would not allow a
+ * full frame to be sent within the maximum delay. Each tunnel tracks its own
+ * state through a FrameCoalescer obtained from newCoalescer().
+ *
+ * The default policy has a maximum delay of zero, in which case frames are
+ * sent as soon as no further data is immediately available, exactly as if
+ * no coalescing were performed.
+ */
+public class FrameCoalescingPolicy {
+
+    /**
+     * The default maximum delay, in microseconds.
+     */
+    public static final long DEFAULT_MAX_DELAY = 0;
+
+    /**
+     * The default maximum frame size, in bytes or characters.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 8192;
+
+    /**
+     * The smallest frame size to which the maximum frame size will be
+     * reduced based on the estimated bandwidth of a tunnel, in bytes or
+     * characters.
+     */
+    public static final int MIN_FRAME_SIZE = 1024;
+
+    /**
+     * The default policy, which sends each frame as soon as no further data
+     * is immediately available.
+     */
+    public static final FrameCoalescingPolicy DEFAULT = new FrameCoalescingPolicy(
+            DEFAULT_MAX_DELAY, DEFAULT_MAX_FRAME_SIZE, true);
+
+    /**
+     * The maximum amount of time that data may be held awaiting further
+     * data, in microseconds.
+     */
+    private final long maxDelay;
+
+    /**
+     * The maximum size of each frame, in bytes or characters.
+     */
+    private final int maxFrameSize;
+
+    /**
+     * Whether a frame should be sent as soon as it ends with a "sync"
+     * instruction and no further data is immediately available.
+     */
+    private final boolean syncAligned;
+
+    /**
+     * Creates a new FrameCoalescingPolicy with the given limits.
+     *
+     * @param maxDelay
+     *     The maximum amount of time that data may be held awaiting further
+     *     data, in microseconds. If zero, data is never held once no further
+     *     data is immediately available.
+     *
+     * @param maxFrameSize
+     *     The maximum size of each frame, in bytes or characters. Individual
+     *     instructions larger than this size are still sent within a single
+     *     frame.
+     *
+     * @param syncAligned
+     *     Whether a frame should be sent as soon as it ends with a "sync"
+     *     instruction and no further data is immediately available, rather
+     *     than waiting for the maximum delay to elapse.
+     *
+     * @throws IllegalArgumentException
+     *     If the maximum delay is negative or the maximum frame size is not
+     *     positive.
+     */
+    public FrameCoalescingPolicy(long maxDelay, int maxFrameSize,
+            boolean syncAligned) {
+
+        if (maxDelay < 0)
+            throw new IllegalArgumentException("The maximum delay must not be negative.");
+
+        if (maxFrameSize <= 0)
+            throw new IllegalArgumentException("The maximum frame size must be positive.");
+
+        this.maxDelay = maxDelay;
+        this.maxFrameSize = maxFrameSize;
+        this.syncAligned = syncAligned;
+
+    }
+
+    /**
+     * Returns the maximum amount of time that data may be held awaiting
+     * further data, in microseconds.
+     *
+     * @return
+     *     The maximum delay, in microseconds.
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Returns the maximum size of each frame, in bytes or characters.
+     *
+     * @return
+     *     The maximum frame size.
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Returns whether a frame is sent as soon as it ends with a "sync"
+     * instruction and no further data is immediately available.
+     *
+     * @return
+     *     true if frames are sent as soon as they end with a "sync"
+     *     instruction, false if data is held for the maximum delay
+     *     regardless of "sync" instructions.
+     */
+    public boolean isSyncAligned() {
+        return syncAligned;
+    }
+
+    /**
+     * Returns a new FrameCoalescer which applies this policy to the frames
+     * of a single tunnel.
+     *
+     * @return
+     *     A new FrameCoalescer.
+     */
+    public FrameCoalescer newCoalescer() {
+        return new FrameCoalescer(this);
+    }
+
+    @Override
+    public String toString() {
+        return "max delay " + maxDelay + "us, max frame size " + maxFrameSize
+                + (syncAligned ? ", sync-aligned" : "");
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values, such as frame sizes or latencies, using
+ * buckets whose bounds are successive powers of two. Values may be recorded
+ * by one thread while the histogram is read by others.
+ */
+public class FrameHistogram {
+
+    /**
+     * The number of buckets. Bucket zero counts values of zero, and bucket
+     * N counts values from 2^(N-1) through (2^N)-1, with the final bucket
+     * also counting all larger values.
+     */
+    public static final int BUCKETS = 32;
+
+    /**
+     * The number of values recorded within each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The total number of values recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of all values recorded.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * The largest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Returns the index of the bucket which counts the given value.
+     *
+     * @param value
+     *     The value to locate.
+     *
+     * @return
+     *     The index of the bucket counting the given value.
+     */
+    private static int getBucket(long value) {
+
+        if (value <= 0)
+            return 0;
+
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+
+    }
+
+    /**
+     * Returns the largest value counted by the bucket having the given
+     * index.
+     *
+     * @param bucket
+     *     The index of the bucket.
+     *
+     * @return
+     *     The largest value counted by the given bucket.
+     */
+    public static long getUpperBound(int bucket) {
+
+        if (bucket >= BUCKETS - 1)
+            return Long.MAX_VALUE;
+
+        return (1L << bucket) - 1;
+
+    }
+
+    /**
+     * Records the given value. Negative values are recorded as zero.
+     *
+     * @param value
+     *     The value to record.
+     */
+    public void record(long value) {
+
+        value = Math.max(0, value);
+
+        counts.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        // Update maximum, retrying only if raced by a larger value
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+            current = max.get();
+
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return
+     *     The number of values recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the number of values recorded within the bucket having the
+     * given index.
+     *
+     * @param bucket
+     *     The index of the bucket, from 0 through BUCKETS - 1.
+     *
+     * @return
+     *     The number of values recorded within the given bucket.
+     */
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * Returns the mean of all values recorded.
+     *
+     * @return
+     *     The mean of all values recorded, or zero if no values have been
+     *     recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return
+     *     The largest value recorded, or zero if no values have been
+     *     recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound for the given percentile of all values
+     * recorded. The bound returned is the upper bound of the bucket
+     * containing that percentile, limited to the largest value recorded.
+     *
+     * @param percentile
+     *     The percentile to return, from 0 through 100.
+     *
+     * @return
+     *     An upper bound for the given percentile, or zero if no values have
+     *     been recorded.
+     */
+    public long getPercentile(double percentile) {
+
+        long n = count.get();
+        if (n == 0)
+            return 0;
+
+        // Locate the bucket containing the value at the given rank
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(getUpperBound(bucket), max.get());
+        }
+
+        return max.get();
+
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1f p50<=%d p90<=%d p99<=%d max=%d",
+                getCount(), getMean(), getPercentile(50), getPercentile(90),
+                getPercentile(99), getMax());
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.ByteBuffer;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+
+/**
+ * A GuacamoleReader which additionally provides access to instructions in
+ * their original, UTF-8 encoded form, such that instructions can be relayed
+ * without first being decoded into characters and then re-encoded.
+ */
+public interface GuacamoleByteReader extends GuacamoleReader {
+
+    /**
+     * Reads exactly one complete Guacamole instruction, returning a buffer
+     * containing only the UTF-8 encoded bytes of that instruction. The
+     * returned buffer may be backed by storage internal to this reader, and
+     * is only valid until the next read. The contents of the returned buffer
+     * must not be modified.
+     *
+     * @return
+     *     A buffer containing the bytes of exactly one complete Guacamole
+     *     instruction, or null if no more instructions are available for
+     *     reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the stream.
+     */
+    public ByteBuffer readBytes() throws GuacamoleException;
+
+    /**
+     * Returns the opcode of the instruction most recently returned by
+     * readBytes(), without decoding the arguments of that instruction. Where
+     * possible, opcodes defined by the Guacamole protocol are returned as
+     * canonical String instances without allocating.
+     *
+     * @return
+     *     The opcode of the instruction most recently returned by
+     *     readBytes(), or null if no instruction has been read.
+     *
+     * @throws GuacamoleException
+     *     If the opcode cannot be decoded.
+     */
+    public String decodeOpcode() throws GuacamoleException;
+
+    /**
+     * Decodes and returns the instruction most recently returned by
+     * readBytes(). Unlike readInstruction(), this does not read any further
+     * data from the stream.
+     *
+     * @return
+     *     The fully parsed form of the instruction most recently returned by
+     *     readBytes(), or null if no instruction has been read.
+     *
+     * @throws GuacamoleException
+     *     If the instruction cannot be decoded.
+     */
+    public GuacamoleInstruction decodeInstruction() throws GuacamoleException;
+
+}
@@ -63,4 +63,31 @@ public interface GuacamoleWriter {
      */
     public void writeInstruction(GuacamoleInstruction instruction) throws GuacamoleException;
 
+    /**
+     * Begins a batch of writes. Until the matching call to endBatch(), data
+     * written may be buffered rather than sent immediately, such that the
+     * entire batch can be sent at once. Batches may be nested, in which case
+     * buffered data is sent only once the outermost batch ends. Every call
+     * to beginBatch() must be matched by a call to endBatch(), even if a
+     * write within the batch fails. By default, this function does nothing,
+     * and all data is sent as it is written.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while beginning the batch.
+     */
+    default void beginBatch() throws GuacamoleException {
+    }
+
+    /**
+     * Ends a batch of writes previously begun with beginBatch(), sending any
+     * data buffered during the batch if this is the outermost batch. By
+     * default, this function does nothing.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while sending the data buffered during the
+     *     batch.
+     */
+    default void endBatch() throws GuacamoleException {
+    }
+
 }
@@ -0,0 +1,450 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleOpcodeInterner;
+
+/**
+ * A GuacamoleByteReader which wraps a standard Java InputStream, using that
+ * InputStream as a UTF-8 encoded Guacamole instruction stream. Instruction
+ * boundaries are located directly within the received bytes, with element
+ * lengths counted in Unicode code points as defined by the Guacamole
+ * protocol. Instructions are decoded into characters only if requested
+ * through read(), readInstruction(), or decodeInstruction().
+ */
+public class InputStreamGuacamoleReader implements GuacamoleByteReader {
+
+    /**
+     * The default initial size of the data buffer, in bytes.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 20480;
+
+    /**
+     * Wrapped InputStream to be used for all input.
+     */
+    private final InputStream input;
+
+    /**
+     * The buffer holding all received data, including data which has already
+     * been consumed as part of a returned instruction.
+     */
+    private byte[] buffer;
+
+    /**
+     * ByteBuffer wrapping the current data buffer, reused to expose each
+     * instruction returned by readBytes().
+     */
+    private ByteBuffer instructionBuffer;
+
+    /**
+     * The offset of the first byte within the buffer which has not yet been
+     * consumed as part of a returned instruction.
+     */
+    private int start = 0;
+
+    /**
+     * The offset within the buffer that parsing should resume from when more
+     * data is read.
+     */
+    private int parsePos = 0;
+
+    /**
+     * The offset just past the last byte of received data within the buffer.
+     */
+    private int end = 0;
+
+    /**
+     * Whether the parser is currently within the content of an element, as
+     * opposed to its length prefix.
+     */
+    private boolean parsingContent = false;
+
+    /**
+     * The length of the current element, in code points, as parsed so far
+     * from its length prefix.
+     */
+    private int elementLength = 0;
+
+    /**
+     * The number of code points of the current element which have not yet
+     * been located within the buffer.
+     */
+    private int remainingLength = 0;
+
+    /**
+     * The offset of the content of the current element within the buffer.
+     */
+    private int elementStart = 0;
+
+    /**
+     * The number of elements parsed within the current instruction.
+     */
+    private int elementCount = 0;
+
+    /**
+     * The offset of the content of each parsed element, in bytes, relative
+     * to the start of the instruction.
+     */
+    private int[] elementOffsets = new int[16];
+
+    /**
+     * The length of the content of each parsed element, in bytes.
+     */
+    private int[] elementLengths = new int[16];
+
+    /**
+     * The number of elements within the most recently returned instruction.
+     */
+    private int parsedElementCount = 0;
+
+    /**
+     * The offset of the most recently returned instruction within the
+     * buffer.
+     */
+    private int instructionStart = 0;
+
+    /**
+     * The length of the most recently returned instruction, in bytes, or -1
+     * if no instruction has been returned.
+     */
+    private int instructionLength = -1;
+
+    /**
+     * The decoded form of the most recently returned instruction, if it has
+     * been decoded.
+     */
+    private GuacamoleInstruction decodedInstruction;
+
+    /**
+     * Creates a new InputStreamGuacamoleReader which will use the given
+     * InputStream as the Guacamole instruction stream.
+     *
+     * @param input
+     *     The InputStream to use as the Guacamole instruction stream.
+     */
+    public InputStreamGuacamoleReader(InputStream input) {
+        this(input, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new InputStreamGuacamoleReader which will use the given
+     * InputStream as the Guacamole instruction stream, with a buffer of the
+     * given initial size. The buffer will grow automatically if an
+     * instruction larger than half the buffer is received.
+     *
+     * @param input
+     *     The InputStream to use as the Guacamole instruction stream.
+     *
+     * @param bufferSize
+     *     The initial size of the data buffer, in bytes.
+     */
+    public InputStreamGuacamoleReader(InputStream input, int bufferSize) {
+        this.input = input;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.instructionBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    @Override
+    public boolean available() throws GuacamoleException {
+        try {
+            return input.available() > 0 || end != start;
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the UTF-8 sequence beginning with the
+     * given byte. Bytes which cannot begin a valid sequence are treated as
+     * single-byte sequences, consistent with replacing each with a single
+     * replacement character when decoded.
+     *
+     * @param leadByte
+     *     The first byte of the UTF-8 sequence.
+     *
+     * @return
+     *     The number of bytes in the UTF-8 sequence.
+     */
+    private static int getSequenceLength(byte leadByte) {
+
+        if ((leadByte & 0x80) == 0x00) return 1;
+        if ((leadByte & 0xE0) == 0xC0) return 2;
+        if ((leadByte & 0xF0) == 0xE0) return 3;
+        if ((leadByte & 0xF8) == 0xF0) return 4;
+
+        return 1;
+
+    }
+
+    /**
+     * Records the location of a fully parsed element of the current
+     * instruction.
+     *
+     * @param offset
+     *     The offset of the content of the element within the buffer.
+     *
+     * @param length
+     *     The length of the content of the element, in bytes.
+     */
+    private void addElement(int offset, int length) {
+
+        // Grow element storage if necessary
+        if (elementCount == elementOffsets.length) {
+            elementOffsets = Arrays.copyOf(elementOffsets, elementCount * 2);
+            elementLengths = Arrays.copyOf(elementLengths, elementCount * 2);
+        }
+
+        elementOffsets[elementCount] = offset - start;
+        elementLengths[elementCount] = length;
+        elementCount++;
+
+    }
+
+    /**
+     * Ensures there is free space at the end of the buffer for more data to
+     * be read, growing the buffer or relocating unconsumed data to the
+     * beginning of the buffer as necessary.
+     */
+    private void reserveSpace() {
+
+        int pending = end - start;
+
+        // If past threshold, resize buffer before reading
+        if (pending > buffer.length / 2) {
+            byte[] biggerBuffer = new byte[buffer.length * 2];
+            System.arraycopy(buffer, start, biggerBuffer, 0, pending);
+            buffer = biggerBuffer;
+            instructionBuffer = ByteBuffer.wrap(buffer);
+        }
+
+        // Otherwise, wrap around if the end of the buffer is near
+        else if (buffer.length - end < buffer.length / 4)
+            System.arraycopy(buffer, start, buffer, 0, pending);
+
+        // No need to relocate data if there is sufficient free space
+        else
+            return;
+
+        parsePos -= start;
+        elementStart -= start;
+        end = pending;
+        start = 0;
+
+    }
+
+    @Override
+    public ByteBuffer readBytes() throws GuacamoleException {
+
+        // Any previously returned instruction is no longer valid
+        decodedInstruction = null;
+        instructionLength = -1;
+
+        try {
+
+            // While we're blocking, or input is available
+            for (;;) {
+
+                // Parse instruction in buffer
+                while (parsePos < end) {
+
+                    // Parse length prefix
+                    if (!parsingContent) {
+
+                        byte readByte = buffer[parsePos++];
+
+                        // If digit, update length
+                        if (readByte >= '0' && readByte <= '9')
+                            elementLength = elementLength * 10 + readByte - '0';
+
+                        // If period, begin parsing content
+                        else if (readByte == '.') {
+                            parsingContent = true;
+                            elementStart = parsePos;
+                            remainingLength = elementLength;
+                            elementLength = 0;
+                        }
+
+                        // Otherwise, parse error
+                        else
+                            throw new GuacamoleServerException("Non-numeric character in element length.");
+
+                    }
+
+                    // Skip past each code point of content
+                    else if (remainingLength > 0) {
+
+                        // Wait for the remainder of split sequences
+                        int sequenceLength = getSequenceLength(buffer[parsePos]);
+                        if (parsePos + sequenceLength > end)
+                            break;
+
+                        parsePos += sequenceLength;
+                        remainingLength--;
+
+                    }
+
+                    // Handle terminator once all content is present
+                    else {
+
+                        byte terminator = buffer[parsePos];
+                        if (terminator != ';' && terminator != ',')
+                            throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
+
+                        addElement(elementStart, parsePos - elementStart);
+                        parsingContent = false;
+                        parsePos++;
+
+                        // If terminator is semicolon, we have a full
+                        // instruction.
+                        if (terminator == ';') {
+
+                            instructionStart = start;
+                            instructionLength = parsePos - start;
+                            parsedElementCount = elementCount;
+                            elementCount = 0;
+
+                            // Consume instruction, rewinding to the beginning
+                            // of the buffer if nothing remains
+                            if (parsePos == end)
+                                start = parsePos = end = 0;
+                            else
+                                start = parsePos;
+
+                            instructionBuffer.clear();
+                            instructionBuffer.position(instructionStart);
+                            instructionBuffer.limit(instructionStart + instructionLength);
+                            return instructionBuffer;
+
+                        }
+
+                    }
+
+                }
+
+                // Make room for more data, relocating or growing if needed
+                reserveSpace();
+
+                // Attempt to fill buffer
+                int numRead = input.read(buffer, end, buffer.length - end);
+                if (numRead == -1)
+                    return null;
+
+                // Update used length
+                end += numRead;
+
+            } // End read loop
+
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    @Override
+    public String decodeOpcode() throws GuacamoleException {
+
+        // No instruction to decode if nothing has been read
+        if (instructionLength == -1)
+            return null;
+
+        if (decodedInstruction != null)
+            return decodedInstruction.getOpcode();
+
+        int opcodeStart = instructionStart + elementOffsets[0];
+        String opcode = GuacamoleOpcodeInterner.intern(buffer, opcodeStart, elementLengths[0]);
+        if (opcode == null)
+            return new String(buffer, opcodeStart, elementLengths[0], StandardCharsets.UTF_8);
+
+        return opcode;
+
+    }
+
+    @Override
+    public GuacamoleInstruction decodeInstruction() throws GuacamoleException {
+
+        // No instruction to decode if nothing has been read
+        if (instructionLength == -1)
+            return null;
+
+        // Avoid decoding the same instruction multiple times
+        if (decodedInstruction == null) {
+
+            // NOTE: The element offsets and lengths of the most recently
+            // returned instruction remain intact until the next read, as
+            // parsing of the following instruction has not yet begun
+            String opcode = decodeOpcode();
+
+            String[] args = new String[parsedElementCount - 1];
+            for (int i = 0; i < args.length; i++)
+                args[i] = new String(buffer,
+                        instructionStart + elementOffsets[i + 1],
+                        elementLengths[i + 1], StandardCharsets.UTF_8);
+
+            decodedInstruction = new GuacamoleInstruction(opcode, args);
+
+        }
+
+        return decodedInstruction;
+
+    }
+
+    @Override
+    public char[] read() throws GuacamoleException {
+
+        ByteBuffer instruction = readBytes();
+        if (instruction == null)
+            return null;
+
+        return new String(buffer, instructionStart, instructionLength,
+                StandardCharsets.UTF_8).toCharArray();
+
+    }
+
+    @Override
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+        if (readBytes() == null)
+            return null;
+
+        return decodeInstruction();
+
+    }
+
+}
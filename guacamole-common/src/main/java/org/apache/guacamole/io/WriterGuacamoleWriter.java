@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.List;
 import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
@@ -32,14 +33,36 @@ import org.apache.guacamole.protocol.GuacamoleInstruction;
 
 /**
  * A GuacamoleWriter which wraps a standard Java Writer, using that Writer as
- * the Guacamole instruction stream.
+ * the Guacamole instruction stream. Outside of a batch, the Writer is flushed
+ * after each write. Within a batch (see beginBatch()), the Writer is flushed
+ * only once the batch ends, such that each batch is typically sent to guacd
+ * with a single write to the underlying socket.
  */
 public class WriterGuacamoleWriter implements GuacamoleWriter {
 
+    /**
+     * The initial size of the buffer used to serialize instructions, in
+     * characters.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
     /**
      * Wrapped Writer to be used for all output.
      */
-    private Writer output;
+    private final Writer output;
+
+    /**
+     * Buffer into which each instruction is serialized prior to being
+     * written, reused for all instructions. The buffer grows as necessary to
+     * contain the largest instruction written.
+     */
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+
+    /**
+     * The number of batches currently in progress. The wrapped Writer is
+     * flushed after each write only while this is zero.
+     */
+    private int batchDepth = 0;
 
     /**
      * Creates a new WriterGuacamoleWriter which will use the given Writer as
@@ -51,20 +74,37 @@ public class WriterGuacamoleWriter implements GuacamoleWriter {
         this.output = output;
     }
 
+    /**
+     * Returns a GuacamoleException which corresponds to the given error
+     * having occurred while writing to or flushing the wrapped Writer.
+     *
+     * @param e
+     *     The error which occurred.
+     *
+     * @return
+     *     A GuacamoleException describing the given error.
+     */
+    private static GuacamoleException toGuacamoleException(IOException e) {
+
+        if (e instanceof SocketTimeoutException)
+            return new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+
+        if (e instanceof SocketException)
+            return new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+
+        return new GuacamoleServerException(e);
+
+    }
+
     @Override
     public void write(char[] chunk, int off, int len) throws GuacamoleException {
         try {
             output.write(chunk, off, len);
-            output.flush();
-        }
-        catch (SocketTimeoutException e) {
-            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
-        }
-        catch (SocketException e) {
-            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+            if (batchDepth == 0)
+                output.flush();
         }
         catch (IOException e) {
-            throw new GuacamoleServerException(e);
+            throw toGuacamoleException(e);
         }
     }
 
@@ -73,9 +113,104 @@ public class WriterGuacamoleWriter implements GuacamoleWriter {
         write(chunk, 0, chunk.length);
     }
 
+    /**
+     * Ensures the serialization buffer can contain at least the given number
+     * of characters, preserving its current contents.
+     *
+     * @param required
+     *     The number of characters the buffer must be able to contain.
+     */
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            char[] expanded = new char[Math.max(required, buffer.length * 2)];
+            System.arraycopy(buffer, 0, expanded, 0, buffer.length);
+            buffer = expanded;
+        }
+    }
+
+    /**
+     * Serializes the given instruction element, including its length prefix,
+     * into the serialization buffer at the given position.
+     *
+     * @param value
+     *     The value of the element to serialize.
+     *
+     * @param position
+     *     The position within the serialization buffer at which the element
+     *     should be written.
+     *
+     * @return
+     *     The position within the serialization buffer immediately after the
+     *     serialized element.
+     */
+    private int appendElement(String value, int position) {
+
+        int length = value.length();
+
+        // Count digits of length prefix
+        int digits = 1;
+        for (int remaining = length / 10; remaining != 0; remaining /= 10)
+            digits++;
+
+        // Reserve room for prefix, period, value and trailing delimiter
+        ensureCapacity(position + digits + length + 2);
+
+        // Write length prefix, least significant digit first
+        int end = position + digits;
+        int remaining = length;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+
+        buffer[end++] = '.';
+        value.getChars(0, length, buffer, end);
+
+        return end + length;
+
+    }
+
     @Override
     public void writeInstruction(GuacamoleInstruction instruction) throws GuacamoleException {
-        write(instruction.toString().toCharArray());
+
+        // Serialize directly into the reusable buffer, rather than building
+        // the string form of the instruction
+        int position = appendElement(instruction.getOpcode(), 0);
+
+        List<String> args = instruction.getArgs();
+        for (String arg : args) {
+            buffer[position++] = ',';
+            position = appendElement(arg, position);
+        }
+
+        buffer[position++] = ';';
+
+        write(buffer, 0, position);
+
+    }
+
+    @Override
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    @Override
+    public void endBatch() throws GuacamoleException {
+
+        // Ignore unmatched calls
+        if (batchDepth == 0)
+            return;
+
+        // Send all data written within the outermost batch
+        if (--batchDepth == 0) {
+            try {
+                output.flush();
+            }
+            catch (IOException e) {
+                throw toGuacamoleException(e);
+            }
+        }
+
     }
 
 }
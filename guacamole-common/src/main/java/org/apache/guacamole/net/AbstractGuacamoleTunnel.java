@@ -20,8 +20,9 @@
 package org.apache.guacamole.net;
 
 
-import java.util.HashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
@@ -30,26 +31,29 @@ import org.apache.guacamole.protocol.GuacamoleConfiguration;
 
 /**
  * Base GuacamoleTunnel implementation which synchronizes access to the
- * underlying reader and writer with reentrant locks. Implementations need only
- * provide the tunnel's UUID and socket.
+ * underlying reader and writer with reentrant locks. Each lock is owned
+ * through a single atomic reference, such that uncontended acquisition and
+ * release never park a thread, while contended acquisition hands ownership
+ * from one thread to the next in the order the threads began waiting.
+ * Implementations need only provide the tunnel's UUID and socket.
  */
 public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
 
     /**
      * Lock acquired when a read operation is in progress.
      */
-    private final ReentrantLock readerLock;
+    private final HandoffLock readerLock;
 
     /**
      * Lock acquired when a write operation is in progress.
      */
-    private final ReentrantLock writerLock;
+    private final HandoffLock writerLock;
 
-    private String tunnelRequestTypeName = "";
-    private GuacamoleConfiguration connectionConfiguration = null;
-    private GuacamoleClientInformation tunnelRequestInfo;
+    private volatile String tunnelRequestTypeName = "";
+    private volatile GuacamoleConfiguration connectionConfiguration = null;
+    private volatile GuacamoleClientInformation tunnelRequestInfo;
     // @rjp
-    private HashMap<String, Object> extras = new HashMap<String, Object>();
+    private final ConcurrentMap<String, Object> extras = new ConcurrentHashMap<String, Object>();
 
     /**
      * Creates a new GuacamoleTunnel which synchronizes access to the
@@ -57,8 +61,8 @@ public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
      * GuacamoleSocket.
      */
     public AbstractGuacamoleTunnel() {
-        readerLock = new ReentrantLock();
-        writerLock = new ReentrantLock();
+        readerLock = new HandoffLock();
+        writerLock = new HandoffLock();
     }
 
     /**
@@ -70,10 +74,37 @@ public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
      */
     @Override
     public GuacamoleReader acquireReader() {
-        readerLock.lock();
+        readerLock.acquire();
         return getSocket().getReader();
     }
 
+    /**
+     * Acquires exclusive read access to the Guacamole instruction stream,
+     * waiting no longer than the given amount of time for another thread to
+     * relinquish read access, and returns a GuacamoleReader for reading from
+     * that stream.
+     *
+     * @param timeout
+     *     The maximum amount of time to wait for read access.
+     *
+     * @param unit
+     *     The unit of the given timeout.
+     *
+     * @return
+     *     A GuacamoleReader for reading from the Guacamole instruction
+     *     stream, or null if read access could not be acquired before the
+     *     timeout elapsed.
+     */
+    @Override
+    public GuacamoleReader acquireReader(long timeout, TimeUnit unit) {
+
+        if (!readerLock.tryAcquire(timeout, unit))
+            return null;
+
+        return getSocket().getReader();
+
+    }
+
     /**
      * Relinquishes exclusive read access to the Guacamole instruction
      * stream. This function should be called whenever a thread finishes using
@@ -81,7 +112,7 @@ public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
      */
     @Override
     public void releaseReader() {
-        readerLock.unlock();
+        readerLock.release();
     }
 
     /**
@@ -105,7 +136,7 @@ public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
      */
     @Override
     public GuacamoleWriter acquireWriter() {
-        writerLock.lock();
+        writerLock.acquire();
         return getSocket().getWriter();
     }
 
@@ -116,7 +147,7 @@ public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
      */
     @Override
     public void releaseWriter() {
-        writerLock.unlock();
+        writerLock.release();
     }
 
     @Override
@@ -166,11 +197,18 @@ public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
 
     @Override
     public void setExtra(String key, Object object) {
-        this.extras.put(key, object);
+
+        // Concurrent maps cannot contain null values
+        if (object == null)
+            this.extras.remove(key);
+        else
+            this.extras.put(key, object);
+
     }
 
     @Override
     public Object getExtra(String key) {
         return this.extras.get(key);
     }
+
 }
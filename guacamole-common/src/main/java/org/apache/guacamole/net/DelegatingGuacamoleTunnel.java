@@ -20,6 +20,7 @@
 package org.apache.guacamole.net;
 
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
@@ -96,6 +97,11 @@ public class DelegatingGuacamoleTunnel implements GuacamoleTunnel {
         return tunnel.acquireReader();
     }
 
+    @Override
+    public GuacamoleReader acquireReader(long timeout, TimeUnit unit) {
+        return tunnel.acquireReader(timeout, unit);
+    }
+
     @Override
     public void releaseReader() {
         tunnel.releaseReader();
@@ -21,6 +21,7 @@ package org.apache.guacamole.net;
 
 
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
@@ -52,6 +53,28 @@ public interface GuacamoleTunnel {
      */
     GuacamoleReader acquireReader();
 
+    /**
+     * Acquires exclusive read access to the Guacamole instruction stream,
+     * waiting no longer than the given amount of time for another thread to
+     * relinquish read access, and returns a GuacamoleReader for reading from
+     * that stream. By default, this function ignores the timeout and waits
+     * as long as necessary, as with acquireReader().
+     *
+     * @param timeout
+     *     The maximum amount of time to wait for read access.
+     *
+     * @param unit
+     *     The unit of the given timeout.
+     *
+     * @return
+     *     A GuacamoleReader for reading from the Guacamole instruction
+     *     stream, or null if read access could not be acquired before the
+     *     timeout elapsed.
+     */
+    default GuacamoleReader acquireReader(long timeout, TimeUnit unit) {
+        return acquireReader();
+    }
+
     /**
      * Relinquishes exclusive read access to the Guacamole instruction
      * stream. This function should be called whenever a thread finishes using
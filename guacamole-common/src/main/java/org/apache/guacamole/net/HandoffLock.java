@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reentrant mutual exclusion lock whose ownership is tracked by a single
+ * atomic reference to the owning thread. Acquiring an unowned lock and
+ * releasing a lock with no waiting threads are each a single atomic
+ * operation, with no thread ever parked. Threads which find the lock owned
+ * spin briefly before queueing and parking, and are unparked in turn as the
+ * lock is released, allowing ownership to be handed from one thread to the
+ * next. Waiting may be bounded by a timeout.
+ *
+ * This lock is intended for the reader and writer of a tunnel, where the
+ * lock is nearly always uncontended, and where contention indicates that
+ * ownership should be handed off (see hasQueuedThreads()), as with the
+ * successive long-poll requests of the HTTP tunnel.
+ */
+class HandoffLock {
+
+    /**
+     * The number of times a thread which finds this lock owned should check
+     * again before queueing itself and parking.
+     */
+    private static final int SPIN_ATTEMPTS = 64;
+
+    /**
+     * The thread currently owning this lock, or null if this lock is not
+     * owned.
+     */
+    private final AtomicReference<Thread> owner = new AtomicReference<Thread>();
+
+    /**
+     * The number of times the owning thread has acquired this lock without
+     * releasing it. This value is only accessed by the owning thread.
+     */
+    private int holds = 0;
+
+    /**
+     * All threads which are parked awaiting ownership of this lock, in the
+     * order they began waiting.
+     */
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+    /**
+     * The number of threads currently waiting for ownership of this lock,
+     * including threads which are still spinning.
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Attempts to take ownership of this lock on behalf of the current
+     * thread, without waiting.
+     *
+     * @param current
+     *     The current thread.
+     *
+     * @return
+     *     true if the current thread now owns this lock, false otherwise.
+     */
+    private boolean tryAcquire(Thread current) {
+
+        // Reacquire if already owned by the current thread
+        if (owner.get() == current) {
+            holds++;
+            return true;
+        }
+
+        if (owner.compareAndSet(null, current)) {
+            holds = 1;
+            return true;
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Waits for ownership of this lock on behalf of the current thread,
+     * giving up once the given deadline is reached. Interrupts are ignored
+     * while waiting, but the interrupted status of the thread is preserved.
+     *
+     * @param current
+     *     The current thread.
+     *
+     * @param timed
+     *     Whether waiting should stop once the deadline is reached.
+     *
+     * @param deadline
+     *     The value of System.nanoTime() at which waiting should stop, if
+     *     timed.
+     *
+     * @return
+     *     true if the current thread now owns this lock, false if the
+     *     deadline was reached.
+     */
+    private boolean await(Thread current, boolean timed, long deadline) {
+
+        waiting.incrementAndGet();
+        try {
+
+            // Ownership is usually handed off quickly
+            for (int i = 0; i < SPIN_ATTEMPTS; i++) {
+                if (owner.compareAndSet(null, current)) {
+                    holds = 1;
+                    return true;
+                }
+            }
+
+            // Otherwise, park until unparked by release()
+            boolean interrupted = false;
+            waiters.add(current);
+            try {
+
+                while (!owner.compareAndSet(null, current)) {
+
+                    if (timed) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0)
+                            return false;
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                    else
+                        LockSupport.park(this);
+
+                    if (Thread.interrupted())
+                        interrupted = true;
+
+                }
+
+                holds = 1;
+                return true;
+
+            }
+            finally {
+
+                waiters.remove(current);
+
+                // Pass on any wakeup received after giving up, such that
+                // the next waiting thread is not stranded
+                if (owner.get() != current)
+                    unparkNext();
+
+                if (interrupted)
+                    current.interrupt();
+
+            }
+
+        }
+        finally {
+            waiting.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * Unparks the thread which has been waiting longest for ownership of
+     * this lock, if any.
+     */
+    private void unparkNext() {
+        Thread next = waiters.peek();
+        if (next != null)
+            LockSupport.unpark(next);
+    }
+
+    /**
+     * Acquires this lock, waiting as long as necessary for ownership to be
+     * released by any other thread.
+     */
+    void acquire() {
+
+        Thread current = Thread.currentThread();
+        if (!tryAcquire(current))
+            await(current, false, 0);
+
+    }
+
+    /**
+     * Acquires this lock, waiting no longer than the given amount of time
+     * for ownership to be released by any other thread.
+     *
+     * @param timeout
+     *     The maximum amount of time to wait.
+     *
+     * @param unit
+     *     The unit of the given timeout.
+     *
+     * @return
+     *     true if the lock was acquired, false if the timeout elapsed first.
+     */
+    boolean tryAcquire(long timeout, TimeUnit unit) {
+
+        Thread current = Thread.currentThread();
+        if (tryAcquire(current))
+            return true;
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return await(current, true, deadline);
+
+    }
+
+    /**
+     * Releases one hold of this lock by the current thread. Once all holds
+     * have been released, ownership is released, and the thread which has
+     * been waiting longest (if any) is unparked.
+     *
+     * @throws IllegalMonitorStateException
+     *     If the current thread does not own this lock.
+     */
+    void release() {
+
+        if (owner.get() != Thread.currentThread())
+            throw new IllegalMonitorStateException("Lock is not owned by the current thread.");
+
+        if (--holds != 0)
+            return;
+
+        owner.set(null);
+        unparkNext();
+
+    }
+
+    /**
+     * Returns whether any threads are waiting for ownership of this lock.
+     *
+     * @return
+     *     true if at least one thread is waiting for ownership of this lock,
+     *     false otherwise.
+     */
+    boolean hasQueuedThreads() {
+        return waiting.get() != 0;
+    }
+
+    /**
+     * Returns whether the current thread owns this lock.
+     *
+     * @return
+     *     true if the current thread owns this lock, false otherwise.
+     */
+    boolean isHeldByCurrentThread() {
+        return owner.get() == Thread.currentThread();
+    }
+
+}
@@ -21,15 +21,13 @@ package org.apache.guacamole.net;
 
 
 import org.apache.guacamole.io.GuacamoleReader;
-import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.InputStreamGuacamoleReader;
 import org.apache.guacamole.io.WriterGuacamoleWriter;
 import org.apache.guacamole.io.GuacamoleWriter;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 
-import java.io.InputStreamReader;
-
 import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
@@ -103,7 +101,7 @@ public class InetGuacamoleSocket implements GuacamoleSocket {
             sock.setSoTimeout(SOCKET_TIMEOUT);
 
             // On successful connect, retrieve I/O streams
-            reader = new ReaderGuacamoleReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"));
+            reader = new InputStreamGuacamoleReader(sock.getInputStream());
             writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"));
 
         }
@@ -21,19 +21,17 @@ package org.apache.guacamole.net;
 
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
-import javax.net.SocketFactory;
-import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.SSLSocket;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
-import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.InputStreamGuacamoleReader;
 import org.apache.guacamole.io.WriterGuacamoleWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,7 +72,8 @@ public class SSLGuacamoleSocket implements GuacamoleSocket {
     /**
      * Creates a new SSLGuacamoleSocket which reads and writes instructions
      * to the Guacamole instruction stream of the Guacamole proxy server
-     * running at the given hostname and port using SSL.
+     * running at the given hostname and port using SSL. The default
+     * SSLGuacamoleSocketContext is used.
      *
      * @param hostname The hostname of the Guacamole proxy server to connect to.
      * @param port The port of the Guacamole proxy server to connect to.
@@ -82,10 +81,34 @@ public class SSLGuacamoleSocket implements GuacamoleSocket {
      *                            Guacamole proxy server.
      */
     public SSLGuacamoleSocket(String hostname, int port) throws GuacamoleException {
+        this(hostname, port, SSLGuacamoleSocketContext.getDefault());
+    }
+
+    /**
+     * Creates a new SSLGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port using SSL, as configured by the
+     * given SSLGuacamoleSocketContext. The SSL/TLS handshake is completed
+     * before this constructor returns, resuming a previous session with the
+     * same server where possible.
+     *
+     * @param hostname
+     *     The hostname of the Guacamole proxy server to connect to.
+     *
+     * @param port
+     *     The port of the Guacamole proxy server to connect to.
+     *
+     * @param context
+     *     The SSLGuacamoleSocketContext to use to create the SSL/TLS socket.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while connecting to the Guacamole proxy server,
+     *     including if the SSL/TLS handshake fails.
+     */
+    public SSLGuacamoleSocket(String hostname, int port,
+            SSLGuacamoleSocketContext context) throws GuacamoleException {
 
-        // Get factory for SSL sockets
-        SocketFactory socket_factory = SSLSocketFactory.getDefault();
-        
+        Socket plainSock = new Socket();
         try {
 
             logger.debug("Connecting to guacd at {}:{} via SSL/TLS.",
@@ -97,20 +120,38 @@ public class SSLGuacamoleSocket implements GuacamoleSocket {
                 port
             );
 
-            // Connect with timeout
-            sock = socket_factory.createSocket();
-            sock.connect(address, SOCKET_TIMEOUT);
+            // Connect with timeout, layering SSL/TLS over the connected
+            // plain socket
+            plainSock.connect(address, SOCKET_TIMEOUT);
+            SSLSocket sslSock = context.createSocket(plainSock, hostname, port);
+            sock = sslSock;
 
             // Set read timeout
             sock.setSoTimeout(SOCKET_TIMEOUT);
 
-            // On successful connect, retrieve I/O streams
-            reader = new ReaderGuacamoleReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"));
+            // Complete handshake before use, such that handshake failures are
+            // reported as connection failures
+            context.startHandshake(sslSock);
+
+            // On successful connect, retrieve I/O streams. Only decrypted
+            // data is reported as available, as received TLS records need
+            // not contain any application data at all.
+            reader = new InputStreamGuacamoleReader(sock.getInputStream());
             writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"));
 
         }
         catch (IOException e) {
+
+            // Do not leave a partially-connected socket open
+            try {
+                plainSock.close();
+            }
+            catch (IOException closeError) {
+                logger.debug("Unable to close failed socket to guacd.", closeError);
+            }
+
             throw new GuacamoleServerException(e);
+
         }
 
     }
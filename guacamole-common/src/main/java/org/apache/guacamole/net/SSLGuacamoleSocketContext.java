@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.net;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+
+/**
+ * The SSL/TLS configuration used by SSLGuacamoleSocket, including the
+ * SSLContext used to create sockets, the protocols and cipher suites enabled
+ * on those sockets, and statistics describing the handshakes performed.
+ *
+ * As the client session cache of an SSLContext is used to resume sessions,
+ * all sockets connecting to the same Guacamole proxy server should be created
+ * from the same SSLGuacamoleSocketContext. Session tickets (RFC 5077 and
+ * TLS 1.3) are used automatically where supported by both the server and the
+ * provider of the SSLContext.
+ */
+public class SSLGuacamoleSocketContext {
+
+    /**
+     * The context used by SSLGuacamoleSocket when no context is explicitly
+     * given, or null if the default context has not yet been created.
+     */
+    private static volatile SSLGuacamoleSocketContext defaultContext;
+
+    /**
+     * The SSLContext used to create all sockets.
+     */
+    private final SSLContext sslContext;
+
+    /**
+     * The protocols to enable on each socket, or null to use the defaults of
+     * the SSLContext.
+     */
+    private final String[] protocols;
+
+    /**
+     * The cipher suites to enable on each socket, or null to use the defaults
+     * of the SSLContext.
+     */
+    private final String[] cipherSuites;
+
+    /**
+     * The number of handshakes which have completed.
+     */
+    private final AtomicLong handshakes = new AtomicLong();
+
+    /**
+     * The number of completed handshakes which resumed a previous session.
+     */
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /**
+     * Creates a new SSLGuacamoleSocketContext which creates sockets using the
+     * given SSLContext.
+     *
+     * @param sslContext
+     *     The initialized SSLContext to use to create sockets.
+     *
+     * @param protocols
+     *     The protocols to enable on each socket, such as "TLSv1.3", or null
+     *     to use the defaults of the SSLContext.
+     *
+     * @param cipherSuites
+     *     The cipher suites to enable on each socket, or null to use the
+     *     defaults of the SSLContext.
+     */
+    public SSLGuacamoleSocketContext(SSLContext sslContext, String[] protocols,
+            String[] cipherSuites) {
+        this.sslContext = sslContext;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+    }
+
+    /**
+     * Creates a new SSLGuacamoleSocketContext which creates sockets using the
+     * given SSLContext, enabling the default protocols and cipher suites of
+     * that SSLContext.
+     *
+     * @param sslContext
+     *     The initialized SSLContext to use to create sockets.
+     */
+    public SSLGuacamoleSocketContext(SSLContext sslContext) {
+        this(sslContext, null, null);
+    }
+
+    /**
+     * Returns the context used by SSLGuacamoleSocket when no context is
+     * explicitly given. Unless overridden with setDefault(), this context
+     * uses the default SSLContext of the JVM.
+     *
+     * @return
+     *     The default SSLGuacamoleSocketContext.
+     *
+     * @throws GuacamoleException
+     *     If the default SSLContext of the JVM cannot be created.
+     */
+    public static SSLGuacamoleSocketContext getDefault() throws GuacamoleException {
+
+        SSLGuacamoleSocketContext context = defaultContext;
+        if (context != null)
+            return context;
+
+        synchronized (SSLGuacamoleSocketContext.class) {
+
+            if (defaultContext == null) {
+                try {
+                    defaultContext = new SSLGuacamoleSocketContext(SSLContext.getDefault());
+                }
+                catch (GeneralSecurityException e) {
+                    throw new GuacamoleServerException("Default SSL/TLS "
+                            + "context could not be created.", e);
+                }
+            }
+
+            return defaultContext;
+
+        }
+
+    }
+
+    /**
+     * Replaces the context used by SSLGuacamoleSocket when no context is
+     * explicitly given. Sockets which have already been created are not
+     * affected.
+     *
+     * @param context
+     *     The context to use by default.
+     */
+    public static void setDefault(SSLGuacamoleSocketContext context) {
+        defaultContext = context;
+    }
+
+    /**
+     * Creates and initializes a new SSLContext for the "TLS" protocol, using
+     * the default key and trust managers. If a provider is given, the
+     * SSLContext is obtained from that provider, allowing alternative
+     * implementations such as those based on OpenSSL or BoringSSL to be used.
+     *
+     * @param provider
+     *     The name of a registered security provider, the fully-qualified
+     *     name of a Provider class to instantiate, or null to use the
+     *     highest-priority provider supporting TLS.
+     *
+     * @return
+     *     A new, initialized SSLContext.
+     *
+     * @throws GuacamoleException
+     *     If the provider cannot be found or loaded, or does not support TLS.
+     */
+    public static SSLContext createSSLContext(String provider)
+            throws GuacamoleException {
+
+        try {
+
+            SSLContext sslContext;
+
+            // Use highest-priority provider if none specified
+            if (provider == null)
+                sslContext = SSLContext.getInstance("TLS");
+
+            // Use registered provider, if any, having the given name
+            else if (Security.getProvider(provider) != null)
+                sslContext = SSLContext.getInstance("TLS", provider);
+
+            // Otherwise, load provider by class name
+            else {
+                Provider instance = (Provider) Class.forName(provider)
+                        .getConstructor().newInstance();
+                sslContext = SSLContext.getInstance("TLS", instance);
+            }
+
+            sslContext.init(null, null, null);
+            return sslContext;
+
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            throw new GuacamoleServerException("Security provider \""
+                    + provider + "\" could not be loaded.", e);
+        }
+        catch (GeneralSecurityException e) {
+            throw new GuacamoleServerException("SSL/TLS context could not be "
+                    + "created.", e);
+        }
+
+    }
+
+    /**
+     * Sets the maximum number of sessions cached for resumption.
+     *
+     * @param size
+     *     The maximum number of sessions cached, or zero if there should be
+     *     no limit.
+     */
+    public void setSessionCacheSize(int size) {
+        SSLSessionContext sessions = sslContext.getClientSessionContext();
+        if (sessions != null)
+            sessions.setSessionCacheSize(size);
+    }
+
+    /**
+     * Sets the number of seconds that cached sessions may be resumed.
+     *
+     * @param timeout
+     *     The number of seconds that cached sessions may be resumed, or zero
+     *     if there should be no limit.
+     */
+    public void setSessionTimeout(int timeout) {
+        SSLSessionContext sessions = sslContext.getClientSessionContext();
+        if (sessions != null)
+            sessions.setSessionTimeout(timeout);
+    }
+
+    /**
+     * Creates a new SSL/TLS socket layered over the given connected socket,
+     * enabling the configured protocols and cipher suites. The handshake is
+     * not performed until startHandshake() is invoked.
+     *
+     * @param socket
+     *     The connected plain socket to layer SSL/TLS over. This socket will
+     *     be closed when the returned socket is closed.
+     *
+     * @param hostname
+     *     The hostname of the server, used to verify the server and to locate
+     *     sessions which may be resumed.
+     *
+     * @param port
+     *     The port of the server, used to locate sessions which may be
+     *     resumed.
+     *
+     * @return
+     *     A new SSL/TLS socket layered over the given socket.
+     *
+     * @throws IOException
+     *     If the socket cannot be created.
+     */
+    public SSLSocket createSocket(Socket socket, String hostname, int port)
+            throws IOException {
+
+        SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory()
+                .createSocket(socket, hostname, port, true);
+
+        if (protocols != null)
+            sslSocket.setEnabledProtocols(protocols);
+
+        if (cipherSuites != null)
+            sslSocket.setEnabledCipherSuites(cipherSuites);
+
+        return sslSocket;
+
+    }
+
+    /**
+     * Performs the handshake of the given socket, which must have been
+     * created by createSocket() and must not have yet performed its
+     * handshake, updating the handshake statistics of this context.
+     *
+     * @param socket
+     *     The socket whose handshake should be performed.
+     *
+     * @throws IOException
+     *     If the handshake fails.
+     */
+    public void startHandshake(SSLSocket socket) throws IOException {
+
+        long started = System.currentTimeMillis();
+        socket.startHandshake();
+        handshakes.incrementAndGet();
+
+        // Sessions retain their original creation time when resumed
+        if (socket.getSession().getCreationTime() < started)
+            resumedHandshakes.incrementAndGet();
+
+    }
+
+    /**
+     * Returns the number of handshakes which have completed using this
+     * context, including handshakes which resumed a previous session.
+     *
+     * @return
+     *     The number of completed handshakes.
+     */
+    public long getHandshakeCount() {
+        return handshakes.get();
+    }
+
+    /**
+     * Returns the number of handshakes which have completed using this
+     * context by resuming a previous session.
+     *
+     * @return
+     *     The number of resumed handshakes.
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the fraction of completed handshakes which resumed a previous
+     * session.
+     *
+     * @return
+     *     The fraction of completed handshakes which resumed a previous
+     *     session, between 0 and 1 inclusive, or 0 if no handshakes have
+     *     completed.
+     */
+    public double getResumptionRate() {
+        long total = handshakes.get();
+        return total == 0 ? 0 : (double) resumedHandshakes.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d handshakes, %d resumed (%.1f%%)",
+                getHandshakeCount(), getResumedHandshakeCount(),
+                getResumptionRate() * 100);
+    }
+
+}
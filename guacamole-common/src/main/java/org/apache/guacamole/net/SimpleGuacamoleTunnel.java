@@ -20,10 +20,6 @@
 package org.apache.guacamole.net;
 
 
-import org.apache.guacamole.protocol.GuacamoleClientInformation;
-import org.apache.guacamole.protocol.GuacamoleConfiguration;
-
-import java.util.HashMap;
 import java.util.UUID;
 
 /**
@@ -39,12 +35,6 @@ public class SimpleGuacamoleTunnel extends AbstractGuacamoleTunnel {
      */
     private final UUID uuid = UUID.randomUUID();
 
-    private String tunnelRequestTypeName = "";
-    private GuacamoleConfiguration connectionConfiguration = null;
-    private GuacamoleClientInformation tunnelRequestInfo;
-    // @rjp
-    private HashMap<String, Object> extras = new HashMap<String, Object>();
-
     /**
      * The GuacamoleSocket that tunnel should use for communication on
      * behalf of the connecting user.
@@ -61,48 +51,6 @@ public class SimpleGuacamoleTunnel extends AbstractGuacamoleTunnel {
         this.socket = socket;
     }
 
-    @Override
-    public void setTunnelRequestTypeName(String tunnelRequestTypeName) {
-        this.tunnelRequestTypeName = tunnelRequestTypeName;
-    }
-
-    @Override
-    public String getTunnelRequestTypeName() {
-        return this.tunnelRequestTypeName;
-    }
-
-    @Override
-    public void setConnectionConfiguration(GuacamoleConfiguration configuration) {
-        this.connectionConfiguration = configuration;
-    }
-
-    @Override
-    public GuacamoleConfiguration getConnectionConfiguration() {
-        return this.connectionConfiguration;
-    }
-
-    @Override
-    public void setTunnelRequestInfo(GuacamoleClientInformation info) {
-        this.tunnelRequestInfo = info;
-    }
-
-    @Override
-    public GuacamoleClientInformation getTunnelRequestInfo() {
-        return this.tunnelRequestInfo;
-    }
-
-    // @rjp
-    @Override
-    public void setExtra(String key, Object object) {
-        this.extras.put(key, object);
-    }
-
-    // @rjp
-    @Override
-    public Object getExtra(String key) {
-        return this.extras.get(key);
-    }
-
     @Override
     public UUID getUUID() {
         return uuid;
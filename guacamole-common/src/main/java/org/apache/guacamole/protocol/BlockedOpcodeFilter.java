@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * GuacamoleFilter which drops all instructions having any of a given set of
+ * opcodes, allowing all other instructions through untouched.
+ */
+public class BlockedOpcodeFilter implements GuacamoleFilter {
+
+    /**
+     * The opcodes of all instructions which should be dropped.
+     */
+    private final Set<String> opcodes;
+
+    /**
+     * Creates a new BlockedOpcodeFilter which drops all instructions having
+     * any of the given opcodes.
+     *
+     * @param opcodes
+     *     The opcodes of all instructions which should be dropped.
+     */
+    public BlockedOpcodeFilter(String... opcodes) {
+        this.opcodes = new HashSet<String>(Arrays.asList(opcodes));
+    }
+
+    @Override
+    public GuacamoleInstruction filter(GuacamoleInstruction instruction) {
+        return opcodes.contains(instruction.getOpcode()) ? null : instruction;
+    }
+
+    @Override
+    public boolean appliesTo(String opcode) {
+        return opcodes.contains(opcode);
+    }
+
+}
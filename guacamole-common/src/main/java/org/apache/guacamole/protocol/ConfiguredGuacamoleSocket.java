@@ -133,8 +133,49 @@ public class ConfiguredGuacamoleSocket extends DelegatingGuacamoleSocket {
         if (select_arg == null)
             select_arg = config.getProtocol();
 
-        // Send requested protocol or connection ID
-        writer.writeInstruction(new GuacamoleInstruction("select", select_arg));
+        // Send requested protocol or connection ID, along with the parts of
+        // the handshake which do not depend on the server's response, with a
+        // single write. The server will read these once it has sent its args.
+        writer.beginBatch();
+        try {
+
+            writer.writeInstruction(new GuacamoleInstruction("select", select_arg));
+
+            // Send size
+            writer.writeInstruction(
+                new GuacamoleInstruction(
+                    "size",
+                    Integer.toString(info.getOptimalScreenWidth()),
+                    Integer.toString(info.getOptimalScreenHeight()),
+                    Integer.toString(info.getOptimalResolution())
+                )
+            );
+
+            // Send supported audio formats
+            writer.writeInstruction(
+                    new GuacamoleInstruction(
+                        "audio",
+                        info.getAudioMimetypes().toArray(new String[0])
+                    ));
+
+            // Send supported video formats
+            writer.writeInstruction(
+                    new GuacamoleInstruction(
+                        "video",
+                        info.getVideoMimetypes().toArray(new String[0])
+                    ));
+
+            // Send supported image formats
+            writer.writeInstruction(
+                    new GuacamoleInstruction(
+                        "image",
+                        info.getImageMimetypes().toArray(new String[0])
+                    ));
+
+        }
+        finally {
+            writer.endBatch();
+        }
 
         // Wait for server args
         GuacamoleInstruction args = expect(reader, "args");
@@ -175,46 +216,24 @@ public class ConfiguredGuacamoleSocket extends DelegatingGuacamoleSocket {
 
         }
 
-        // Send size
-        writer.writeInstruction(
-            new GuacamoleInstruction(
-                "size",
-                Integer.toString(info.getOptimalScreenWidth()),
-                Integer.toString(info.getOptimalScreenHeight()),
-                Integer.toString(info.getOptimalResolution())
-            )
-        );
-
-        // Send supported audio formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "audio",
-                    info.getAudioMimetypes().toArray(new String[0])
-                ));
+        // Send the remainder of the handshake with a single write
+        writer.beginBatch();
+        try {
 
-        // Send supported video formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "video",
-                    info.getVideoMimetypes().toArray(new String[0])
-                ));
+            // Send client timezone, if supported and available
+            if (GuacamoleProtocolCapability.TIMEZONE_HANDSHAKE.isSupported(protocolVersion)) {
+                String timezone = info.getTimezone();
+                if (timezone != null)
+                    writer.writeInstruction(new GuacamoleInstruction("timezone", info.getTimezone()));
+            }
 
-        // Send supported image formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "image",
-                    info.getImageMimetypes().toArray(new String[0])
-                ));
-        
-        // Send client timezone, if supported and available
-        if (GuacamoleProtocolCapability.TIMEZONE_HANDSHAKE.isSupported(protocolVersion)) {
-            String timezone = info.getTimezone();
-            if (timezone != null)
-                writer.writeInstruction(new GuacamoleInstruction("timezone", info.getTimezone()));
-        }
+            // Send args
+            writer.writeInstruction(new GuacamoleInstruction("connect", arg_values));
 
-        // Send args
-        writer.writeInstruction(new GuacamoleInstruction("connect", arg_values));
+        }
+        finally {
+            writer.endBatch();
+        }
 
         // Wait for ready, store ID
         GuacamoleInstruction ready = expect(reader, "ready");
@@ -19,6 +19,8 @@
 
 package org.apache.guacamole.protocol;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -27,6 +29,7 @@ import org.apache.guacamole.GuacamoleUpstreamException;
 import org.apache.guacamole.GuacamoleUpstreamNotFoundException;
 import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
 import org.apache.guacamole.GuacamoleUpstreamUnavailableException;
+import org.apache.guacamole.io.GuacamoleByteReader;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.net.DelegatingGuacamoleSocket;
 import org.apache.guacamole.net.GuacamoleSocket;
@@ -219,9 +222,17 @@ public class FailoverGuacamoleSocket extends DelegatingGuacamoleSocket {
      * GuacamoleReader which reads instructions from the queue populated when
      * the FailoverGuacamoleSocket was constructed. Once the queue has been
      * emptied, reads are delegated directly to the reader of the wrapped
-     * socket.
+     * socket, including reads of encoded instruction data if the wrapped
+     * reader is a GuacamoleByteReader.
      */
-    private final GuacamoleReader queuedReader = new GuacamoleReader() {
+    private final GuacamoleByteReader queuedReader = new GuacamoleByteReader() {
+
+        /**
+         * The queued instruction most recently returned by readBytes(), or
+         * null if the most recent call to readBytes() was delegated to the
+         * underlying reader.
+         */
+        private GuacamoleInstruction lastQueuedInstruction;
 
         @Override
         public boolean available() throws GuacamoleException {
@@ -257,6 +268,56 @@ public class FailoverGuacamoleSocket extends DelegatingGuacamoleSocket {
 
         }
 
+        @Override
+        public ByteBuffer readBytes() throws GuacamoleException {
+
+            GuacamoleReader reader = getDelegateSocket().getReader();
+
+            // Delegate directly to underlying reader once queue is empty,
+            // if that reader can provide encoded data
+            if (instructionQueue.isEmpty() && reader instanceof GuacamoleByteReader) {
+                lastQueuedInstruction = null;
+                return ((GuacamoleByteReader) reader).readBytes();
+            }
+
+            // Otherwise, encode each instruction as it is read
+            lastQueuedInstruction = readInstruction();
+            if (lastQueuedInstruction == null)
+                return null;
+
+            return StandardCharsets.UTF_8.encode(lastQueuedInstruction.toString());
+
+        }
+
+        @Override
+        public String decodeOpcode() throws GuacamoleException {
+
+            if (lastQueuedInstruction != null)
+                return lastQueuedInstruction.getOpcode();
+
+            GuacamoleReader reader = getDelegateSocket().getReader();
+            if (reader instanceof GuacamoleByteReader)
+                return ((GuacamoleByteReader) reader).decodeOpcode();
+
+            return null;
+
+        }
+
+        @Override
+        public GuacamoleInstruction decodeInstruction()
+                throws GuacamoleException {
+
+            if (lastQueuedInstruction != null)
+                return lastQueuedInstruction;
+
+            GuacamoleReader reader = getDelegateSocket().getReader();
+            if (reader instanceof GuacamoleByteReader)
+                return ((GuacamoleByteReader) reader).decodeInstruction();
+
+            return null;
+
+        }
+
     };
 
     @Override
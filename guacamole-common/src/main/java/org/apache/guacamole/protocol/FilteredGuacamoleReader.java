@@ -19,15 +19,23 @@
 
 package org.apache.guacamole.protocol;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleByteReader;
 import org.apache.guacamole.io.GuacamoleReader;
 
 /**
  * GuacamoleReader which applies a given GuacamoleFilter to observe or alter all
  * read instructions. Instructions may also be dropped or denied by the the
  * filter.
+ *
+ * <p>If the wrapped GuacamoleReader is a GuacamoleByteReader, instructions
+ * which the filter allows through untouched are returned by readBytes() in
+ * their original, encoded form, and instructions having opcodes that the
+ * filter does not apply to are not decoded at all.
  */
-public class FilteredGuacamoleReader implements GuacamoleReader {
+public class FilteredGuacamoleReader implements GuacamoleByteReader {
 
     /**
      * The wrapped GuacamoleReader.
@@ -39,6 +47,13 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
      */
     private final GuacamoleFilter filter;
 
+    /**
+     * The instruction most recently returned by readBytes(), or null if that
+     * instruction was not decoded, having been passed through from the
+     * wrapped reader untouched.
+     */
+    private GuacamoleInstruction lastInstruction;
+
     /**
      * Wraps the given GuacamoleReader, applying the given filter to all read
      * instructions. Future reads will return only instructions which pass
@@ -82,6 +97,10 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
             if (unfilteredInstruction == null)
                 return null;
 
+            // Pass through instructions the filter does not apply to
+            if (!filter.appliesTo(unfilteredInstruction.getOpcode()))
+                return unfilteredInstruction;
+
             // Apply filter
             filteredInstruction = filter.filter(unfilteredInstruction);
 
@@ -91,4 +110,78 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
         
     }
 
+    @Override
+    public ByteBuffer readBytes() throws GuacamoleException {
+
+        // Encode filtered instructions if original data is unavailable
+        if (!(reader instanceof GuacamoleByteReader)) {
+
+            lastInstruction = readInstruction();
+            if (lastInstruction == null)
+                return null;
+
+            return StandardCharsets.UTF_8.encode(lastInstruction.toString());
+
+        }
+
+        GuacamoleByteReader byteReader = (GuacamoleByteReader) reader;
+
+        // Read and filter instructions until no instructions are dropped
+        for (;;) {
+
+            // Read next instruction
+            ByteBuffer unfilteredBytes = byteReader.readBytes();
+            if (unfilteredBytes == null) {
+                lastInstruction = null;
+                return null;
+            }
+
+            // Pass through instructions the filter does not apply to
+            // without decoding
+            if (!filter.appliesTo(byteReader.decodeOpcode())) {
+                lastInstruction = null;
+                return unfilteredBytes;
+            }
+
+            // Apply filter
+            GuacamoleInstruction unfilteredInstruction = byteReader.decodeInstruction();
+            lastInstruction = filter.filter(unfilteredInstruction);
+            if (lastInstruction == null)
+                continue;
+
+            // Pass through original data if instruction is untouched
+            if (lastInstruction == unfilteredInstruction)
+                return unfilteredBytes;
+
+            return StandardCharsets.UTF_8.encode(lastInstruction.toString());
+
+        }
+
+    }
+
+    @Override
+    public String decodeOpcode() throws GuacamoleException {
+
+        // Delegate to wrapped reader for instructions passed through
+        if (lastInstruction == null && reader instanceof GuacamoleByteReader)
+            return ((GuacamoleByteReader) reader).decodeOpcode();
+
+        if (lastInstruction == null)
+            return null;
+
+        return lastInstruction.getOpcode();
+
+    }
+
+    @Override
+    public GuacamoleInstruction decodeInstruction() throws GuacamoleException {
+
+        // Delegate to wrapped reader for instructions passed through
+        if (lastInstruction == null && reader instanceof GuacamoleByteReader)
+            return ((GuacamoleByteReader) reader).decodeInstruction();
+
+        return lastInstruction;
+
+    }
+
 }
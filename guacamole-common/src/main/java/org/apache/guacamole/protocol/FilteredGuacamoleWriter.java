@@ -26,7 +26,9 @@ import org.apache.guacamole.io.GuacamoleWriter;
 /**
  * GuacamoleWriter which applies a given GuacamoleFilter to observe or alter
  * all written instructions. Instructions may also be dropped or denied by
- * the filter.
+ * the filter. Instructions which are allowed through untouched are written
+ * in their original form, without being re-serialized, and instructions
+ * having opcodes that the filter does not apply to are not decoded at all.
  */
 public class FilteredGuacamoleWriter implements GuacamoleWriter {
 
@@ -42,9 +44,11 @@ public class FilteredGuacamoleWriter implements GuacamoleWriter {
 
     /**
      * Parser for reading instructions prior to writing, such that they can be
-     * passed on to the filter.
+     * passed on to the filter. Elements are only decoded if the instruction
+     * must actually be passed to the filter. The parser is replaced if a
+     * write fails, such that this writer remains usable for later writes.
      */
-    private final GuacamoleParser parser = new GuacamoleParser();
+    private GuacamoleParser parser = new GuacamoleParser(true);
     
     /**
      * Wraps the given GuacamoleWriter, applying the given filter to all written 
@@ -63,6 +67,46 @@ public class FilteredGuacamoleWriter implements GuacamoleWriter {
     @Override
     public void write(char[] chunk, int offset, int length) throws GuacamoleException {
 
+        // Send all instructions resulting from this write together
+        writer.beginBatch();
+        try {
+            writeInstructions(chunk, offset, length);
+        }
+
+        // Discard any partially-parsed instruction, which would otherwise
+        // cause all future writes to fail
+        catch (GuacamoleException e) {
+            parser = new GuacamoleParser(true);
+            throw e;
+        }
+
+        finally {
+            writer.endBatch();
+        }
+
+    }
+
+    /**
+     * Parses and writes each complete instruction within the given data,
+     * applying the filter to each.
+     *
+     * @param chunk
+     *     The buffer containing the data to write.
+     *
+     * @param offset
+     *     The offset within the buffer of the first character of data.
+     *
+     * @param length
+     *     The number of characters of data to write.
+     *
+     * @throws GuacamoleException
+     *     If the data cannot be parsed, if the data does not end with a
+     *     complete instruction, or if an error occurs while filtering or
+     *     writing any instruction.
+     */
+    private void writeInstructions(char[] chunk, int offset, int length)
+            throws GuacamoleException {
+
         // Write all data in chunk
         while (length > 0) {
 
@@ -78,10 +122,28 @@ public class FilteredGuacamoleWriter implements GuacamoleWriter {
                 throw new GuacamoleServerException("Filtered write() contained an incomplete instruction.");
 
             // Write single instruction through filter
-            writeInstruction(parser.next());
+            GuacamoleInstructionView view = parser.nextView();
+
+            // Pass through instructions the filter does not apply to
+            // without decoding
+            if (!filter.appliesTo(view.getOpcode())) {
+                writer.write(view.getBuffer(), view.getOffset(), view.getLength());
+                continue;
+            }
+
+            GuacamoleInstruction instruction = view.toInstruction();
+            GuacamoleInstruction filteredInstruction = filter.filter(instruction);
+
+            // Write original data of instructions allowed through untouched
+            if (filteredInstruction == instruction)
+                writer.write(view.getBuffer(), view.getOffset(), view.getLength());
+
+            // Write modified instructions only if not dropped
+            else if (filteredInstruction != null)
+                writer.writeInstruction(filteredInstruction);
 
         }
-        
+
     }
 
     @Override
@@ -92,6 +154,12 @@ public class FilteredGuacamoleWriter implements GuacamoleWriter {
     @Override
     public void writeInstruction(GuacamoleInstruction instruction) throws GuacamoleException {
 
+        // Pass through instructions the filter does not apply to
+        if (!filter.appliesTo(instruction.getOpcode())) {
+            writer.writeInstruction(instruction);
+            return;
+        }
+
         // Write instruction only if not dropped
         GuacamoleInstruction filteredInstruction = filter.filter(instruction);
         if (filteredInstruction != null)
@@ -99,4 +167,14 @@ public class FilteredGuacamoleWriter implements GuacamoleWriter {
 
     }
 
+    @Override
+    public void beginBatch() throws GuacamoleException {
+        writer.beginBatch();
+    }
+
+    @Override
+    public void endBatch() throws GuacamoleException {
+        writer.endBatch();
+    }
+
 }
@@ -42,5 +42,21 @@ public interface GuacamoleFilter {
      *                            denied.
      */
     public GuacamoleInstruction filter(GuacamoleInstruction instruction) throws GuacamoleException;
+
+    /**
+     * Returns whether this filter needs to examine instructions having the
+     * given opcode. Instructions having opcodes that this filter does not
+     * apply to are passed through untouched, without invoking filter(), and
+     * may be forwarded in their original form without ever being fully
+     * parsed. By default, filters apply to all instructions.
+     *
+     * @param opcode The opcode of the instruction being filtered.
+     * @return true if filter() must be invoked for instructions having the
+     *         given opcode, false if such instructions are always allowed
+     *         through untouched.
+     */
+    public default boolean appliesTo(String opcode) {
+        return true;
+    }
     
 }
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.net.GuacamoleTunnel;
+
+/**
+ * GuacamoleFilter which applies an ordered series of other filters. Each
+ * filter receives the instruction produced by the filter before it, and
+ * filtering stops as soon as any filter drops the instruction. A chain is
+ * intended to be built once and reused for the life of a tunnel.
+ */
+public class GuacamoleFilterChain implements GuacamoleFilter {
+
+    /**
+     * The value of getTunnelRequestTypeName() for tunnels which join an
+     * existing active connection rather than establishing a new one.
+     */
+    public static final String ACTIVE_CONNECTION_TYPE_NAME = "active connection";
+
+    /**
+     * The opcodes of instructions which would allow the user to interact
+     * with the remote desktop.
+     */
+    private static final String[] INPUT_OPCODES = { "key", "mouse" };
+
+    /**
+     * The filters within this chain, in the order they are applied.
+     */
+    private final GuacamoleFilter[] filters;
+
+    /**
+     * Creates a new GuacamoleFilterChain which applies each of the given
+     * filters in order.
+     *
+     * @param filters
+     *     The filters to apply, in the order they should be applied.
+     */
+    public GuacamoleFilterChain(List<GuacamoleFilter> filters) {
+        this.filters = filters.toArray(new GuacamoleFilter[filters.size()]);
+    }
+
+    /**
+     * Creates a new GuacamoleFilterChain which applies each of the given
+     * filters in order.
+     *
+     * @param filters
+     *     The filters to apply, in the order they should be applied.
+     */
+    public GuacamoleFilterChain(GuacamoleFilter... filters) {
+        this(Arrays.asList(filters));
+    }
+
+    /**
+     * Returns the filters which must be applied to all instructions sent by
+     * the user of the given tunnel. Users of tunnels joining an active
+     * connection may only observe (@rjp-003), and connections having
+     * restricted commands enabled are checked against those commands as
+     * each key is pressed (@rjp-002).
+     *
+     * @param tunnel
+     *     The tunnel whose instructions will be filtered.
+     *
+     * @return
+     *     A new, mutable list of the filters required by the given tunnel,
+     *     which may be empty.
+     */
+    public static List<GuacamoleFilter> getTunnelFilters(GuacamoleTunnel tunnel) {
+
+        List<GuacamoleFilter> filters = new ArrayList<GuacamoleFilter>(2);
+
+        // @rjp-003 prevent active connection tunnel to manipulate remote desktop
+        if (ACTIVE_CONNECTION_TYPE_NAME.equals(tunnel.getTunnelRequestTypeName()))
+            filters.add(new BlockedOpcodeFilter(INPUT_OPCODES));
+
+        // @rjp-002 blacklist / whitelist command filtration
+        RestrictedCommandPolicy policy = RestrictedCommandPolicy.fromConfiguration(
+                tunnel.getConnectionConfiguration());
+        if (policy != null)
+            filters.add(new RestrictedCommandFilter(tunnel, policy.newCommandLine()));
+
+        return filters;
+
+    }
+
+    /**
+     * Returns whether this chain contains no filters, and thus always allows
+     * instructions through untouched.
+     *
+     * @return
+     *     true if this chain contains no filters, false otherwise.
+     */
+    public boolean isEmpty() {
+        return filters.length == 0;
+    }
+
+    /**
+     * Returns the filters within this chain, in the order they are applied.
+     *
+     * @return
+     *     An unmodifiable list of the filters within this chain.
+     */
+    public List<GuacamoleFilter> getFilters() {
+        return Collections.unmodifiableList(Arrays.asList(filters));
+    }
+
+    @Override
+    public GuacamoleInstruction filter(GuacamoleInstruction instruction)
+            throws GuacamoleException {
+
+        for (GuacamoleFilter filter : filters) {
+
+            // Skip filters which do not apply to the current instruction
+            if (!filter.appliesTo(instruction.getOpcode()))
+                continue;
+
+            // Stop as soon as the instruction is dropped
+            instruction = filter.filter(instruction);
+            if (instruction == null)
+                return null;
+
+        }
+
+        return instruction;
+
+    }
+
+    @Override
+    public boolean appliesTo(String opcode) {
+
+        for (GuacamoleFilter filter : filters) {
+            if (filter.appliesTo(opcode))
+                return true;
+        }
+
+        return false;
+
+    }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.Arrays;
+
+/**
+ * A view of a single, complete Guacamole instruction which resides within a
+ * larger character buffer. Rather than copying each element into a String,
+ * a GuacamoleInstructionView records only the offset and length of each
+ * element, leaving the data within the buffer of the component which read
+ * it. Elements are decoded into Strings only when explicitly requested.
+ *
+ * <p>A GuacamoleInstructionView is only valid until the component which
+ * produced it reads further data into its buffer. Views are intentionally
+ * reused by their producers, and must be copied (via toCharArray() or
+ * toInstruction()) if the instruction must outlive the next read.
+ */
+public class GuacamoleInstructionView {
+
+    /**
+     * The initial number of elements which may be recorded before the
+     * arrays storing element offsets and lengths must be resized.
+     */
+    private static final int INITIAL_ELEMENT_CAPACITY = 16;
+
+    /**
+     * The buffer containing the instruction data.
+     */
+    private char[] buffer;
+
+    /**
+     * The offset within the buffer at which the instruction begins.
+     */
+    private int offset;
+
+    /**
+     * The total length of the instruction, including all length prefixes,
+     * separators, and the terminating semicolon.
+     */
+    private int length;
+
+    /**
+     * The number of elements within the instruction, including the opcode.
+     */
+    private int elementCount;
+
+    /**
+     * The offset of the content of each element, relative to the start of
+     * the instruction.
+     */
+    private int[] elementOffsets = new int[INITIAL_ELEMENT_CAPACITY];
+
+    /**
+     * The length of the content of each element.
+     */
+    private int[] elementLengths = new int[INITIAL_ELEMENT_CAPACITY];
+
+    /**
+     * Clears all recorded elements, preparing this view to receive the
+     * elements of a new instruction.
+     */
+    public void reset() {
+        buffer = null;
+        offset = 0;
+        length = 0;
+        elementCount = 0;
+    }
+
+    /**
+     * Records the location of the next element of the instruction. Element
+     * locations are relative to the start of the instruction, such that they
+     * remain valid even if the instruction data is relocated within (or
+     * copied out of) the underlying buffer before the instruction is
+     * complete.
+     *
+     * @param elementOffset
+     *     The offset of the content of the element, relative to the start of
+     *     the instruction.
+     *
+     * @param elementLength
+     *     The length of the content of the element.
+     */
+    public void addElement(int elementOffset, int elementLength) {
+
+        // Grow element storage if necessary
+        if (elementCount == elementOffsets.length) {
+            elementOffsets = Arrays.copyOf(elementOffsets, elementCount * 2);
+            elementLengths = Arrays.copyOf(elementLengths, elementCount * 2);
+        }
+
+        elementOffsets[elementCount] = elementOffset;
+        elementLengths[elementCount] = elementLength;
+        elementCount++;
+
+    }
+
+    /**
+     * Marks the instruction as complete, associating this view with the
+     * buffer and range that contain the full instruction.
+     *
+     * @param buffer
+     *     The buffer containing the instruction.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The total length of the instruction, including its terminating
+     *     semicolon.
+     */
+    public void complete(char[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns the buffer containing the instruction. The instruction itself
+     * occupies only the range described by getOffset() and getLength().
+     *
+     * @return
+     *     The buffer containing the instruction.
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the offset within the buffer at which the instruction begins.
+     *
+     * @return
+     *     The offset within the buffer at which the instruction begins.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the total length of the instruction in its protocol form,
+     * including all length prefixes, separators, and the terminating
+     * semicolon.
+     *
+     * @return
+     *     The total length of the instruction.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of elements within the instruction, including the
+     * opcode.
+     *
+     * @return
+     *     The number of elements within the instruction.
+     */
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Returns the offset of the content of the element having the given
+     * index within the buffer returned by getBuffer(). The opcode is the
+     * element at index 0.
+     *
+     * @param index
+     *     The index of the element.
+     *
+     * @return
+     *     The offset of the content of the given element within the buffer.
+     */
+    public int getElementOffset(int index) {
+        return offset + elementOffsets[index];
+    }
+
+    /**
+     * Returns the length of the content of the element having the given
+     * index. The opcode is the element at index 0.
+     *
+     * @param index
+     *     The index of the element.
+     *
+     * @return
+     *     The length of the content of the given element.
+     */
+    public int getElementLength(int index) {
+        return elementLengths[index];
+    }
+
+    /**
+     * Returns whether the content of the element having the given index is
+     * identical to the given String. No copy of the element is made.
+     *
+     * @param index
+     *     The index of the element to compare.
+     *
+     * @param value
+     *     The String to compare against.
+     *
+     * @return
+     *     true if the element is identical to the given String, false
+     *     otherwise.
+     */
+    public boolean elementEquals(int index, String value) {
+
+        int elementLength = elementLengths[index];
+        if (elementLength != value.length())
+            return false;
+
+        int elementStart = getElementOffset(index);
+        for (int i = 0; i < elementLength; i++) {
+            if (buffer[elementStart + i] != value.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the opcode of this instruction. If the opcode is defined by the
+     * Guacamole protocol, the canonical String instance of that opcode is
+     * returned without allocating. Unknown opcodes are decoded into a new
+     * String.
+     *
+     * @return
+     *     The opcode of this instruction.
+     */
+    public String getOpcode() {
+
+        String opcode = GuacamoleOpcodeInterner.intern(buffer,
+                getElementOffset(0), elementLengths[0]);
+
+        if (opcode == null)
+            return getElement(0);
+
+        return opcode;
+
+    }
+
+    /**
+     * Decodes and returns the element having the given index as a new
+     * String. The opcode is the element at index 0.
+     *
+     * @param index
+     *     The index of the element.
+     *
+     * @return
+     *     A new String containing the content of the given element.
+     */
+    public String getElement(int index) {
+        return new String(buffer, getElementOffset(index), elementLengths[index]);
+    }
+
+    /**
+     * Returns a copy of this instruction in its protocol form.
+     *
+     * @return
+     *     A new array containing this instruction in its protocol form.
+     */
+    public char[] toCharArray() {
+        return Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+
+    /**
+     * Decodes all elements of this instruction, returning an equivalent,
+     * fully-parsed GuacamoleInstruction which does not depend on the
+     * underlying buffer.
+     *
+     * @return
+     *     A new GuacamoleInstruction equivalent to this view.
+     */
+    public GuacamoleInstruction toInstruction() {
+
+        String[] args = new String[elementCount - 1];
+        for (int i = 0; i < args.length; i++)
+            args[i] = getElement(i + 1);
+
+        return new GuacamoleInstruction(getOpcode(), args);
+
+    }
+
+    /**
+     * Returns this instruction in the form it would be sent over the
+     * Guacamole protocol.
+     *
+     * @return
+     *     This instruction in the form it would be sent over the Guacamole
+     *     protocol.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length);
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+/**
+ * Lookup table which maps the opcodes defined by the Guacamole protocol to
+ * canonical String instances, without allocating. Opcodes are located
+ * directly within the buffers containing received instruction data, such
+ * that the opcode of an instruction can be obtained and compared without
+ * decoding the instruction. Opcodes which are not part of the table must be
+ * decoded normally by the caller.
+ */
+public final class GuacamoleOpcodeInterner {
+
+    /**
+     * All opcodes defined by the Guacamole protocol, in either direction,
+     * including the internal opcode reserved for use by tunnels.
+     */
+    private static final String[] KNOWN_OPCODES = {
+
+        // Tunnel-internal instructions
+        "",
+
+        // Handshake instructions
+        "args", "audio", "connect", "image", "name", "ready", "select",
+        "size", "timezone", "video", "required", "argv",
+
+        // Client events and control
+        "ack", "blob", "clipboard", "disconnect", "end", "error", "file",
+        "get", "key", "log", "mouse", "msg", "nop", "pipe", "put", "sync",
+        "touch", "body", "filesystem", "undefine", "nest",
+
+        // Drawing instructions
+        "arc", "cfill", "clip", "close", "copy", "cstroke", "cursor",
+        "curve", "dispose", "distort", "identity", "img", "jpeg", "lfill",
+        "line", "lstroke", "move", "png", "pop", "push", "rect", "reset",
+        "set", "shade", "start", "transfer", "transform", "webp"
+
+    };
+
+    /**
+     * Open-addressed hash table of all known opcodes, indexed by the hash of
+     * each opcode as computed by hash().
+     */
+    private static final String[] TABLE = new String[256];
+
+    static {
+        for (String opcode : KNOWN_OPCODES) {
+            int index = hash(opcode.hashCode());
+            while (TABLE[index] != null && !TABLE[index].equals(opcode))
+                index = (index + 1) & (TABLE.length - 1);
+            TABLE[index] = opcode;
+        }
+    }
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private GuacamoleOpcodeInterner() {}
+
+    /**
+     * Reduces the given String-compatible hash code to an index within the
+     * lookup table.
+     *
+     * @param hashCode
+     *     A hash code, computed identically to String.hashCode().
+     *
+     * @return
+     *     The index within the lookup table at which probing should begin.
+     */
+    private static int hash(int hashCode) {
+        return (hashCode ^ (hashCode >>> 8)) & (TABLE.length - 1);
+    }
+
+    /**
+     * Returns the canonical String instance of the opcode contained within
+     * the given range of characters, if that opcode is known.
+     *
+     * @param buffer
+     *     The buffer containing the opcode.
+     *
+     * @param offset
+     *     The offset of the first character of the opcode.
+     *
+     * @param length
+     *     The length of the opcode, in characters.
+     *
+     * @return
+     *     The canonical String instance of the given opcode, or null if the
+     *     opcode is not known.
+     */
+    public static String intern(char[] buffer, int offset, int length) {
+
+        int hashCode = 0;
+        for (int i = 0; i < length; i++)
+            hashCode = 31 * hashCode + buffer[offset + i];
+
+        for (int index = hash(hashCode); TABLE[index] != null;
+                index = (index + 1) & (TABLE.length - 1)) {
+
+            String candidate = TABLE[index];
+            if (candidate.length() != length)
+                continue;
+
+            int i = 0;
+            while (i < length && candidate.charAt(i) == buffer[offset + i])
+                i++;
+
+            if (i == length)
+                return candidate;
+
+        }
+
+        return null;
+
+    }
+
+    /**
+     * Returns the canonical String instance of the opcode contained within
+     * the given range of UTF-8 encoded bytes, if that opcode is known. As all
+     * known opcodes consist only of ASCII characters, each byte of a known
+     * opcode corresponds to exactly one character.
+     *
+     * @param buffer
+     *     The buffer containing the opcode.
+     *
+     * @param offset
+     *     The offset of the first byte of the opcode.
+     *
+     * @param length
+     *     The length of the opcode, in bytes.
+     *
+     * @return
+     *     The canonical String instance of the given opcode, or null if the
+     *     opcode is not known.
+     */
+    public static String intern(byte[] buffer, int offset, int length) {
+
+        int hashCode = 0;
+        for (int i = 0; i < length; i++)
+            hashCode = 31 * hashCode + (buffer[offset + i] & 0xFF);
+
+        for (int index = hash(hashCode); TABLE[index] != null;
+                index = (index + 1) & (TABLE.length - 1)) {
+
+            String candidate = TABLE[index];
+            if (candidate.length() != length)
+                continue;
+
+            int i = 0;
+            while (i < length && candidate.charAt(i) == (buffer[offset + i] & 0xFF))
+                i++;
+
+            if (i == length)
+                return candidate;
+
+        }
+
+        return null;
+
+    }
+
+}
@@ -29,6 +29,13 @@ import org.apache.guacamole.GuacamoleServerException;
  * Parser for the Guacamole protocol. Arbitrary instruction data is appended,
  * and instructions are returned as a result. Invalid instructions result in
  * exceptions.
+ *
+ * <p>A parser may optionally be created in lazy mode, in which case elements
+ * are not decoded into Strings as they are parsed. Each parsed instruction is
+ * instead exposed through nextView() as a GuacamoleInstructionView referring
+ * directly to the appended data. In lazy mode, every instruction must be
+ * contained entirely within a single buffer, and the view remains valid only
+ * as long as that buffer is left unmodified.
  */
 public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
 
@@ -101,6 +108,52 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
      */
     private final String elements[] = new String[INSTRUCTION_MAX_ELEMENTS];
 
+    /**
+     * Whether elements should be recorded as locations within the appended
+     * data rather than decoded into Strings.
+     */
+    private final boolean lazy;
+
+    /**
+     * The view describing the latest parsed instruction, if in lazy mode.
+     */
+    private final GuacamoleInstructionView view = new GuacamoleInstructionView();
+
+    /**
+     * The buffer containing the instruction currently being parsed, if in
+     * lazy mode.
+     */
+    private char[] instructionBuffer;
+
+    /**
+     * The offset within instructionBuffer at which the instruction currently
+     * being parsed begins, or -1 if parsing of a new instruction has not yet
+     * begun.
+     */
+    private int instructionStart = -1;
+
+    /**
+     * Creates a new GuacamoleParser which decodes each element of each
+     * instruction as it is parsed.
+     */
+    public GuacamoleParser() {
+        this(false);
+    }
+
+    /**
+     * Creates a new GuacamoleParser which may optionally expose parsed
+     * instructions as views of the appended data, rather than decoding each
+     * element as it is parsed.
+     *
+     * @param lazy
+     *     true if elements should not be decoded as they are parsed, such
+     *     that parsed instructions may be retrieved via nextView(), false
+     *     otherwise.
+     */
+    public GuacamoleParser(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     /**
      * Appends data from the given buffer to the current instruction.
      * 
@@ -122,6 +175,24 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
             throw new GuacamoleServerException("Instruction contains too many elements.");
         }
 
+        // Track location of instruction if elements are not being decoded
+        if (lazy && state != State.COMPLETE) {
+
+            // Instruction begins with the first appended data
+            if (instructionStart == -1) {
+                view.reset();
+                instructionBuffer = chunk;
+                instructionStart = offset;
+            }
+
+            // Views cannot span multiple buffers
+            else if (chunk != instructionBuffer) {
+                state = State.ERROR;
+                throw new GuacamoleServerException("Instruction is split across multiple buffers.");
+            }
+
+        }
+
         // Parse element length
         if (state == State.PARSING_LENGTH) {
 
@@ -163,22 +234,34 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
         // Parse element content, if available
         if (state == State.PARSING_CONTENT && charsParsed + elementLength + 1 <= length) {
 
-            // Read element
-            String element = new String(chunk, offset + charsParsed, elementLength);
+            // Read element, recording only its location if lazy
+            int elementStart = offset + charsParsed;
+            if (lazy)
+                view.addElement(elementStart - instructionStart, elementLength);
+            else
+                elements[elementCount] = new String(chunk, elementStart, elementLength);
+
             charsParsed += elementLength;
             elementLength = 0;
+            elementCount++;
 
             // Read terminator char following element
             char terminator = chunk[offset + charsParsed++];
 
-            // Add element to currently parsed elements
-            elements[elementCount++] = element;
-            
             // If semicolon, store end-of-instruction
             if (terminator == ';') {
+
                 state = State.COMPLETE;
-                parsedInstruction = new GuacamoleInstruction(elements[0],
-                        Arrays.asList(elements).subList(1, elementCount));
+
+                // Finalize view of instruction within buffer if lazy
+                if (lazy)
+                    view.complete(chunk, instructionStart,
+                            offset + charsParsed - instructionStart);
+
+                else
+                    parsedInstruction = new GuacamoleInstruction(elements[0],
+                            Arrays.asList(elements).subList(1, elementCount));
+
             }
 
             // If comma, move on to next element
@@ -215,6 +298,16 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
         return state == State.COMPLETE;
     }
 
+    /**
+     * Resets the parser such that parsing of the next instruction may begin.
+     */
+    private void reset() {
+        state = State.PARSING_LENGTH;
+        elementCount = 0;
+        elementLength = 0;
+        instructionStart = -1;
+    }
+
     @Override
     public GuacamoleInstruction next() {
 
@@ -223,14 +316,45 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
             return null;
         
         // Reset for next instruction.
-        state = State.PARSING_LENGTH;
-        elementCount = 0;
-        elementLength = 0;
-        
+        reset();
+
+        // Decode all elements if not already decoded
+        if (lazy)
+            return view.toInstruction();
+
         return parsedInstruction;
 
     }
 
+    /**
+     * Returns a view of the latest parsed instruction, without decoding any
+     * of its elements. The returned view is reused for each instruction, and
+     * is only valid until more data is appended. This function is only
+     * available if the parser was created in lazy mode.
+     *
+     * @return
+     *     A view of the latest parsed instruction, or null if no instruction
+     *     has been completely parsed.
+     *
+     * @throws UnsupportedOperationException
+     *     If this parser was not created in lazy mode.
+     */
+    public GuacamoleInstructionView nextView() {
+
+        if (!lazy)
+            throw new UnsupportedOperationException("Instruction views are only available from lazy parsers.");
+
+        // No instruction to return if not yet complete
+        if (state != State.COMPLETE)
+            return null;
+
+        // Reset for next instruction.
+        reset();
+
+        return view;
+
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException("GuacamoleParser does not support remove().");
@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton which locates any of a fixed set of restricted
+ * commands within typed text. The automaton is compiled once into a complete
+ * transition table, such that each character consumed costs a single table
+ * lookup regardless of the number or length of the commands. Instances are
+ * immutable and may be shared between any number of threads.
+ */
+public final class RestrictedCommandAutomaton {
+
+    /**
+     * The state in which the automaton begins, before any characters have
+     * been consumed.
+     */
+    public static final int INITIAL_STATE = 0;
+
+    /**
+     * The number of columns within each row of the transition table. Column
+     * zero is shared by all characters which do not appear in any command.
+     */
+    private final int alphabetSize;
+
+    /**
+     * Mapping of each character to its column within the transition table.
+     * Characters beyond the end of this array map to column zero.
+     */
+    private final int[] alphabet;
+
+    /**
+     * The complete transition table, containing one row of alphabetSize
+     * columns for each state.
+     */
+    private final int[] transitions;
+
+    /**
+     * Whether reaching each state means that at least one command has just
+     * been matched.
+     */
+    private final boolean[] accepting;
+
+    /**
+     * The length of the longest prefix of any command represented by each
+     * state.
+     */
+    private final int[] depth;
+
+    /**
+     * The length of the longest command, in characters.
+     */
+    private final int maxCommandLength;
+
+    /**
+     * Compiles a new RestrictedCommandAutomaton which matches any of the
+     * given commands. Empty commands are ignored.
+     *
+     * @param commands
+     *     The commands to match.
+     */
+    public RestrictedCommandAutomaton(Collection<String> commands) {
+
+        // Assign a column to each distinct character used by any command
+        int maxChar = -1;
+        for (String command : commands) {
+            for (int i = 0; i < command.length(); i++)
+                maxChar = Math.max(maxChar, command.charAt(i));
+        }
+
+        alphabet = new int[maxChar + 1];
+        int columns = 1;
+        for (String command : commands) {
+            for (int i = 0; i < command.length(); i++) {
+                char c = command.charAt(i);
+                if (alphabet[c] == 0)
+                    alphabet[c] = columns++;
+            }
+        }
+
+        alphabetSize = columns;
+
+        // Build trie of all commands, with -1 denoting missing edges
+        List<int[]> trie = new ArrayList<int[]>();
+        List<Integer> trieDepth = new ArrayList<Integer>();
+        List<Boolean> trieAccepting = new ArrayList<Boolean>();
+        trie.add(newRow());
+        trieDepth.add(0);
+        trieAccepting.add(false);
+
+        int longest = 0;
+        for (String command : commands) {
+
+            if (command.isEmpty())
+                continue;
+
+            int state = INITIAL_STATE;
+            for (int i = 0; i < command.length(); i++) {
+                int column = alphabet[command.charAt(i)];
+                int next = trie.get(state)[column];
+                if (next == -1) {
+                    next = trie.size();
+                    trie.get(state)[column] = next;
+                    trie.add(newRow());
+                    trieDepth.add(i + 1);
+                    trieAccepting.add(false);
+                }
+                state = next;
+            }
+
+            trieAccepting.set(state, true);
+            longest = Math.max(longest, command.length());
+
+        }
+
+        maxCommandLength = longest;
+
+        int states = trie.size();
+        transitions = new int[states * alphabetSize];
+        accepting = new boolean[states];
+        depth = new int[states];
+
+        for (int state = 0; state < states; state++) {
+            accepting[state] = trieAccepting.get(state);
+            depth[state] = trieDepth.get(state);
+        }
+
+        // Resolve failure links breadth-first, filling in each missing edge
+        // with the corresponding edge of the failure state
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+
+        int[] root = trie.get(INITIAL_STATE);
+        for (int column = 0; column < alphabetSize; column++) {
+            int child = root[column];
+            if (child == -1)
+                transitions[column] = INITIAL_STATE;
+            else {
+                transitions[column] = child;
+                failure[child] = INITIAL_STATE;
+                queue[tail++] = child;
+            }
+        }
+
+        while (head < tail) {
+
+            int state = queue[head++];
+            int[] row = trie.get(state);
+
+            // A command ending within the failure state also ends here
+            accepting[state] |= accepting[failure[state]];
+
+            for (int column = 0; column < alphabetSize; column++) {
+                int child = row[column];
+                int fallback = transitions[failure[state] * alphabetSize + column];
+                if (child == -1)
+                    transitions[state * alphabetSize + column] = fallback;
+                else {
+                    transitions[state * alphabetSize + column] = child;
+                    failure[child] = fallback;
+                    queue[tail++] = child;
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Returns a new row of the trie in which every edge is missing.
+     *
+     * @return
+     *     A new trie row containing -1 for every column.
+     */
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    /**
+     * Returns the state reached by consuming the given character from the
+     * given state.
+     *
+     * @param state
+     *     The current state.
+     *
+     * @param c
+     *     The character to consume.
+     *
+     * @return
+     *     The resulting state.
+     */
+    public int next(int state, char c) {
+        int column = c < alphabet.length ? alphabet[c] : 0;
+        return transitions[state * alphabetSize + column];
+    }
+
+    /**
+     * Returns whether at least one command ends at the character which
+     * caused the given state to be reached.
+     *
+     * @param state
+     *     The state to test.
+     *
+     * @return
+     *     true if a command has just been matched, false otherwise.
+     */
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    /**
+     * Returns the number of most-recently consumed characters which are
+     * still relevant to the given state. No command matched later can begin
+     * any earlier than this many characters before the current position.
+     *
+     * @param state
+     *     The state to test.
+     *
+     * @return
+     *     The length of the longest prefix of any command which the most
+     *     recently consumed characters end with.
+     */
+    public int getDepth(int state) {
+        return depth[state];
+    }
+
+    /**
+     * Returns the length of the longest command matched by this automaton.
+     *
+     * @return
+     *     The length of the longest command, in characters, or zero if this
+     *     automaton matches no commands.
+     */
+    public int getMaxCommandLength() {
+        return maxCommandLength;
+    }
+
+    /**
+     * Returns whether this automaton matches no commands at all, and thus
+     * can never reach an accepting state.
+     *
+     * @return
+     *     true if this automaton matches no commands, false otherwise.
+     */
+    public boolean isEmpty() {
+        return maxCommandLength == 0;
+    }
+
+    /**
+     * Returns whether the given text contains any command matched by this
+     * automaton.
+     *
+     * @param text
+     *     The text to search.
+     *
+     * @return
+     *     true if the text contains at least one command, false otherwise.
+     */
+    public boolean matches(CharSequence text) {
+
+        int state = INITIAL_STATE;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            if (accepting[state])
+                return true;
+        }
+
+        return false;
+
+    }
+
+}
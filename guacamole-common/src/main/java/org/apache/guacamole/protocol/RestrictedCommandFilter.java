@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.List;
+import org.apache.guacamole.GuacamoleClientException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * GuacamoleFilter which tracks the keys pressed by the user of a tunnel,
+ * closing the tunnel as soon as the typed line contains a blacklisted
+ * command or a non-whitelisted line is entered.
+ */
+public class RestrictedCommandFilter implements GuacamoleFilter {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RestrictedCommandFilter.class);
+
+    /**
+     * The opcode of the instruction sent when a key is pressed or released.
+     */
+    private static final String KEY_OPCODE = "key";
+
+    /**
+     * The value of the second argument of a "key" instruction if the key
+     * was pressed, rather than released.
+     */
+    private static final String PRESSED = "1";
+
+    /**
+     * The tunnel to close if a restricted command is typed.
+     */
+    private final GuacamoleTunnel tunnel;
+
+    /**
+     * The line currently being typed by the user of the tunnel.
+     */
+    private final RestrictedCommandLine line;
+
+    /**
+     * Creates a new RestrictedCommandFilter which checks the keys pressed by
+     * the user of the given tunnel using the given line.
+     *
+     * @param tunnel
+     *     The tunnel to close if a restricted command is typed.
+     *
+     * @param line
+     *     A line dedicated to tracking the keys pressed by the user of the
+     *     given tunnel.
+     */
+    public RestrictedCommandFilter(GuacamoleTunnel tunnel,
+            RestrictedCommandLine line) {
+        this.tunnel = tunnel;
+        this.line = line;
+    }
+
+    @Override
+    public GuacamoleInstruction filter(GuacamoleInstruction instruction)
+            throws GuacamoleException {
+
+        // Only key presses affect the line being typed
+        List<String> args = instruction.getArgs();
+        if (args.size() < 2 || !args.get(1).equals(PRESSED))
+            return instruction;
+
+        int keysym;
+        try {
+            keysym = Integer.parseInt(args.get(0));
+        }
+        catch (NumberFormatException e) {
+            throw new GuacamoleClientException("Invalid keysym in \"key\" instruction.", e);
+        }
+
+        // Drop the key and close the tunnel once restricted
+        if (line.keyPressed(keysym)) {
+            logger.info("@rjp tunnel closed due to restricted command filtration");
+            tunnel.close();
+            return null;
+        }
+
+        return instruction;
+
+    }
+
+    @Override
+    public boolean appliesTo(String opcode) {
+        return KEY_OPCODE.equals(opcode);
+    }
+
+}
@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+/**
+ * The line currently being typed within a single session, reconstructed from
+ * the keysyms of pressed keys and checked against a RestrictedCommandPolicy
+ * as each key is pressed. The line is stored within a gap buffer whose gap is
+ * always at the cursor, and the automaton state reached after each character
+ * before the cursor is retained. Typing at the end of the line therefore
+ * costs a single automaton transition, while edits elsewhere need only
+ * examine the characters following the edit which could form part of a
+ * newly-typed command. This class is not threadsafe.
+ */
+public class RestrictedCommandLine {
+
+    /**
+     * The keysym of the Home key, which moves the cursor to the beginning of
+     * the line.
+     */
+    public static final int KEYSYM_HOME = 0xFF50;
+
+    /**
+     * The keysym of the left arrow key, which moves the cursor back by one
+     * character.
+     */
+    public static final int KEYSYM_LEFT = 0xFF51;
+
+    /**
+     * The keysym of the right arrow key, which moves the cursor forward by
+     * one character.
+     */
+    public static final int KEYSYM_RIGHT = 0xFF53;
+
+    /**
+     * The keysym of the End key, which moves the cursor to the end of the
+     * line.
+     */
+    public static final int KEYSYM_END = 0xFF57;
+
+    /**
+     * The keysym of the Backspace key, which deletes the character before
+     * the cursor.
+     */
+    public static final int KEYSYM_BACKSPACE = 0xFF08;
+
+    /**
+     * The keysym of the Delete key, which deletes the character after the
+     * cursor.
+     */
+    public static final int KEYSYM_DELETE = 0xFFFF;
+
+    /**
+     * The keysym of the Return key, which enters the current line.
+     */
+    public static final int KEYSYM_RETURN = 0xFF0D;
+
+    /**
+     * All keysyms less than this value are typed into the line as the
+     * character having the same value.
+     */
+    private static final int PRINTABLE_LIMIT = 200;
+
+    /**
+     * The initial capacity of the line, in characters.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The policy governing this line.
+     */
+    private final RestrictedCommandPolicy policy;
+
+    /**
+     * Automaton matching all blacklisted commands of the governing policy.
+     */
+    private final RestrictedCommandAutomaton automaton;
+
+    /**
+     * Gap buffer containing the line. The characters before the cursor
+     * occupy the start of the buffer, up to gapStart, while the characters
+     * after the cursor occupy the end of the buffer, from gapEnd onward.
+     */
+    private char[] buffer = new char[INITIAL_CAPACITY];
+
+    /**
+     * The automaton state reached after each character before the cursor,
+     * where the state at index i is the state reached after consuming the
+     * first i characters. Only states up to and including gapStart are
+     * valid.
+     */
+    private int[] states = new int[INITIAL_CAPACITY + 1];
+
+    /**
+     * The index of the start of the gap, which is also the position of the
+     * cursor within the line.
+     */
+    private int gapStart = 0;
+
+    /**
+     * The index of the first character after the gap.
+     */
+    private int gapEnd = INITIAL_CAPACITY;
+
+    /**
+     * Whether the line currently contains a blacklisted command.
+     */
+    private boolean blacklisted = false;
+
+    /**
+     * The line most recently entered via the Return key.
+     */
+    private String enteredLine = "";
+
+    /**
+     * Creates a new, empty RestrictedCommandLine governed by the given
+     * policy.
+     *
+     * @param policy
+     *     The policy governing this line.
+     */
+    public RestrictedCommandLine(RestrictedCommandPolicy policy) {
+        this.policy = policy;
+        this.automaton = policy.getBlacklist();
+        this.states[0] = RestrictedCommandAutomaton.INITIAL_STATE;
+    }
+
+    /**
+     * Updates this line to reflect the press of the key having the given
+     * keysym, returning whether the session is now restricted.
+     *
+     * @param keysym
+     *     The keysym of the key pressed.
+     *
+     * @return
+     *     true if the current line contains a blacklisted command or the
+     *     most recently entered line was not whitelisted, false otherwise.
+     */
+    public boolean keyPressed(int keysym) {
+
+        switch (keysym) {
+
+            case KEYSYM_HOME:
+                while (gapStart > 0)
+                    moveLeft();
+                break;
+
+            case KEYSYM_END:
+                while (gapEnd < buffer.length)
+                    moveRight();
+                break;
+
+            case KEYSYM_LEFT:
+                if (gapStart > 0)
+                    moveLeft();
+                break;
+
+            case KEYSYM_RIGHT:
+                if (gapEnd < buffer.length)
+                    moveRight();
+                break;
+
+            case KEYSYM_BACKSPACE:
+                if (gapStart > 0) {
+                    gapStart--;
+                    blacklisted = blacklisted ? scanLine() : scanJoin();
+                }
+                break;
+
+            case KEYSYM_DELETE:
+                if (gapEnd < buffer.length) {
+                    gapEnd++;
+                    blacklisted = blacklisted ? scanLine() : scanJoin();
+                }
+                break;
+
+            case KEYSYM_RETURN:
+                enteredLine = getLine();
+                gapStart = 0;
+                gapEnd = buffer.length;
+                blacklisted = false;
+                break;
+
+            default:
+                if (keysym >= 0 && keysym < PRINTABLE_LIMIT)
+                    insert((char) keysym);
+
+        }
+
+        return isRestricted();
+
+    }
+
+    /**
+     * Returns whether the session is currently restricted, either because
+     * the current line contains a blacklisted command or because the most
+     * recently entered line was not whitelisted.
+     *
+     * @return
+     *     true if the session is currently restricted, false otherwise.
+     */
+    public boolean isRestricted() {
+        return blacklisted || !policy.isWhitelisted(enteredLine);
+    }
+
+    /**
+     * Returns the contents of the line currently being typed.
+     *
+     * @return
+     *     The contents of the current line.
+     */
+    public String getLine() {
+        StringBuilder line = new StringBuilder(getLength());
+        line.append(buffer, 0, gapStart);
+        line.append(buffer, gapEnd, buffer.length - gapEnd);
+        return line.toString();
+    }
+
+    /**
+     * Returns the length of the line currently being typed.
+     *
+     * @return
+     *     The length of the current line, in characters.
+     */
+    public int getLength() {
+        return gapStart + buffer.length - gapEnd;
+    }
+
+    /**
+     * Returns the position of the cursor within the current line.
+     *
+     * @return
+     *     The number of characters before the cursor.
+     */
+    public int getCursor() {
+        return gapStart;
+    }
+
+    /**
+     * Returns the line most recently entered via the Return key.
+     *
+     * @return
+     *     The most recently entered line, or an empty string if no line has
+     *     yet been entered.
+     */
+    public String getEnteredLine() {
+        return enteredLine;
+    }
+
+    /**
+     * Moves the cursor back by one character. The cursor must not already be
+     * at the beginning of the line.
+     */
+    private void moveLeft() {
+        buffer[--gapEnd] = buffer[--gapStart];
+    }
+
+    /**
+     * Moves the cursor forward by one character, recording the automaton
+     * state reached after the character passed over. The cursor must not
+     * already be at the end of the line.
+     */
+    private void moveRight() {
+        char c = buffer[gapEnd++];
+        buffer[gapStart] = c;
+        states[gapStart + 1] = automaton.next(states[gapStart], c);
+        gapStart++;
+    }
+
+    /**
+     * Inserts the given character at the cursor, advancing the cursor past
+     * the inserted character.
+     *
+     * @param c
+     *     The character to insert.
+     */
+    private void insert(char c) {
+
+        // Grow buffer if gap is exhausted
+        if (gapStart == gapEnd)
+            grow();
+
+        buffer[gapStart] = c;
+        states[gapStart + 1] = automaton.next(states[gapStart], c);
+        gapStart++;
+
+        // Any newly-typed command must include the inserted character
+        if (!blacklisted)
+            blacklisted = automaton.isAccepting(states[gapStart]) || scanSuffix(1);
+        else
+            blacklisted = scanLine();
+
+    }
+
+    /**
+     * Doubles the capacity of the buffer, preserving the line and the
+     * position of the cursor.
+     */
+    private void grow() {
+
+        int capacity = buffer.length * 2;
+        int suffixLength = buffer.length - gapEnd;
+
+        char[] newBuffer = new char[capacity];
+        System.arraycopy(buffer, 0, newBuffer, 0, gapStart);
+        System.arraycopy(buffer, gapEnd, newBuffer, capacity - suffixLength, suffixLength);
+
+        int[] newStates = new int[capacity + 1];
+        System.arraycopy(states, 0, newStates, 0, gapStart + 1);
+
+        buffer = newBuffer;
+        states = newStates;
+        gapEnd = capacity - suffixLength;
+
+    }
+
+    /**
+     * Continues matching from the state at the cursor through the
+     * characters after the cursor, for as long as a command matched could
+     * still include the given number of characters immediately before the
+     * cursor. As the line is known to have contained no blacklisted command
+     * prior to the edit at the cursor, only commands spanning that edit need
+     * be considered, and no such command can be longer than the longest
+     * blacklisted command.
+     *
+     * @param reach
+     *     The number of characters immediately before the cursor which any
+     *     newly-typed command must include.
+     *
+     * @return
+     *     true if a blacklisted command including the required characters
+     *     was found, false otherwise.
+     */
+    private boolean scanSuffix(int reach) {
+
+        int state = states[gapStart];
+        for (int i = gapEnd; i < buffer.length; i++) {
+
+            state = automaton.next(state, buffer[i]);
+            reach++;
+
+            // Stop once no match could include the required characters
+            if (automaton.getDepth(state) < reach)
+                return false;
+
+            if (automaton.isAccepting(state))
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Checks whether joining the characters on either side of the cursor,
+     * following the deletion of the characters formerly between them, has
+     * formed a blacklisted command.
+     *
+     * @return
+     *     true if a blacklisted command now spans the cursor, false
+     *     otherwise.
+     */
+    private boolean scanJoin() {
+
+        // Nothing new can be formed at either end of the line
+        if (gapStart == 0 || gapEnd == buffer.length)
+            return false;
+
+        return scanSuffix(1);
+
+    }
+
+    /**
+     * Checks the entire line for blacklisted commands, without relying on
+     * the line having previously contained no such command.
+     *
+     * @return
+     *     true if the line contains a blacklisted command, false otherwise.
+     */
+    private boolean scanLine() {
+
+        // Check characters before the cursor using the retained states
+        for (int i = 1; i <= gapStart; i++) {
+            if (automaton.isAccepting(states[i]))
+                return true;
+        }
+
+        // Continue matching through the characters after the cursor
+        int state = states[gapStart];
+        for (int i = gapEnd; i < buffer.length; i++) {
+            state = automaton.next(state, buffer[i]);
+            if (automaton.isAccepting(state))
+                return true;
+        }
+
+        return false;
+
+    }
+
+}
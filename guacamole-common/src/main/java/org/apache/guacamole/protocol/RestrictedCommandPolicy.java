@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The restricted commands configured for a connection, compiled into a form
+ * which can be evaluated against typed keystrokes in constant time. A policy
+ * is compiled once per distinct configuration and shared by every session of
+ * every connection using that configuration, while the state of each
+ * individual session is tracked by a separate RestrictedCommandLine.
+ */
+public class RestrictedCommandPolicy {
+
+    /**
+     * The name of the connection parameter which must be set to "true" for
+     * restricted commands to be enforced.
+     */
+    public static final String ENABLED_PARAMETER = "restricted-commands-enabled";
+
+    /**
+     * The name of the connection parameter containing the comma-separated
+     * list of commands which may not be typed anywhere within a line.
+     */
+    public static final String BLACKLIST_PARAMETER = "restricted-commands-blacklist";
+
+    /**
+     * The name of the connection parameter containing the comma-separated
+     * list of the only lines which may be entered.
+     */
+    public static final String WHITELIST_PARAMETER = "restricted-commands-whitelist";
+
+    /**
+     * The maximum number of distinct compiled policies which will be retained
+     * for reuse by future connections.
+     */
+    private static final int MAX_CACHED_POLICIES = 64;
+
+    /**
+     * Previously-compiled policies, indexed by the blacklist and whitelist
+     * parameter values from which they were compiled, and ordered from least
+     * to most recently used.
+     */
+    private static final Map<List<String>, RestrictedCommandPolicy> CACHE =
+            Collections.synchronizedMap(new LinkedHashMap<List<String>, RestrictedCommandPolicy>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, RestrictedCommandPolicy> eldest) {
+            return size() > MAX_CACHED_POLICIES;
+        }
+
+    });
+
+    /**
+     * Automaton matching all blacklisted commands.
+     */
+    private final RestrictedCommandAutomaton blacklist;
+
+    /**
+     * The only lines which may be entered. If empty, any line may be
+     * entered.
+     */
+    private final Set<String> whitelist;
+
+    /**
+     * Creates a new RestrictedCommandPolicy which blocks any line containing
+     * a blacklisted command, as well as the entry of any non-empty line which
+     * is not whitelisted.
+     *
+     * @param blacklist
+     *     The commands which may not be typed anywhere within a line. Empty
+     *     commands are ignored.
+     *
+     * @param whitelist
+     *     The only lines which may be entered, or an empty collection if any
+     *     line may be entered.
+     */
+    public RestrictedCommandPolicy(Collection<String> blacklist,
+            Collection<String> whitelist) {
+        this.blacklist = new RestrictedCommandAutomaton(blacklist);
+        this.whitelist = new HashSet<String>(whitelist);
+    }
+
+    /**
+     * Splits the given comma-separated parameter value into its individual
+     * commands.
+     *
+     * @param value
+     *     The parameter value to split, or null if the parameter is not set.
+     *
+     * @return
+     *     The commands within the given value, or an empty list if the value
+     *     is null.
+     */
+    private static List<String> split(String value) {
+
+        if (value == null)
+            return Collections.<String>emptyList();
+
+        return Arrays.asList(value.split(","));
+
+    }
+
+    /**
+     * Returns the policy defined by the restricted command parameters of the
+     * given configuration. Policies are compiled only once for each distinct
+     * combination of parameter values, with the compiled policy being reused
+     * for subsequent connections.
+     *
+     * @param config
+     *     The configuration of the connection being established, or null if
+     *     the configuration is not known.
+     *
+     * @return
+     *     The restricted command policy of the given configuration, or null
+     *     if restricted commands are not enabled.
+     */
+    public static RestrictedCommandPolicy fromConfiguration(GuacamoleConfiguration config) {
+
+        // Restricted commands apply only if explicitly enabled
+        if (config == null || !"true".equals(config.getParameter(ENABLED_PARAMETER)))
+            return null;
+
+        String blacklistValue = config.getParameter(BLACKLIST_PARAMETER);
+        String whitelistValue = config.getParameter(WHITELIST_PARAMETER);
+        List<String> key = Arrays.asList(blacklistValue, whitelistValue);
+
+        // Reuse any policy already compiled from the same lists
+        RestrictedCommandPolicy policy = CACHE.get(key);
+        if (policy == null) {
+            policy = new RestrictedCommandPolicy(split(blacklistValue), split(whitelistValue));
+            CACHE.put(key, policy);
+        }
+
+        return policy;
+
+    }
+
+    /**
+     * Returns the automaton matching all blacklisted commands.
+     *
+     * @return
+     *     The automaton matching all blacklisted commands.
+     */
+    public RestrictedCommandAutomaton getBlacklist() {
+        return blacklist;
+    }
+
+    /**
+     * Returns whether the given line may be entered. Empty lines may always
+     * be entered, as may any line if no whitelist is defined.
+     *
+     * @param line
+     *     The line being entered.
+     *
+     * @return
+     *     true if the given line may be entered, false otherwise.
+     */
+    public boolean isWhitelisted(String line) {
+        return whitelist.isEmpty() || line.isEmpty() || whitelist.contains(line);
+    }
+
+    /**
+     * Creates a new, empty line which tracks the keystrokes of a single
+     * session against this policy.
+     *
+     * @return
+     *     A new RestrictedCommandLine governed by this policy.
+     */
+    public RestrictedCommandLine newCommandLine() {
+        return new RestrictedCommandLine(this);
+    }
+
+}
@@ -19,8 +19,13 @@
 
 package org.apache.guacamole.servlet;
 
+import org.apache.guacamole.io.FrameCoalescer;
+import org.apache.guacamole.io.FrameCoalescingPolicy;
+import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.DelegatingGuacamoleTunnel;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.protocol.FilteredGuacamoleWriter;
+import org.apache.guacamole.protocol.GuacamoleFilter;
 
 /**
  * Tracks the last time a particular GuacamoleTunnel was accessed. This
@@ -37,7 +42,21 @@ class GuacamoleHTTPTunnel extends DelegatingGuacamoleTunnel {
     /**
      * The last time this tunnel was accessed.
      */
-    private long lastAccessedTime;
+    private volatile long lastAccessedTime;
+
+    /**
+     * Writer which applies the filters of this tunnel to all data received
+     * from the client prior to writing that data to the wrapped tunnel, or
+     * null if this tunnel has no filters.
+     */
+    private final GuacamoleWriter filteredWriter;
+
+    /**
+     * Coalescer which determines how instructions read from this tunnel are
+     * combined into the chunks flushed to the client, and which records
+     * statistics describing those chunks across all read requests.
+     */
+    private final FrameCoalescer coalescer;
 
     /**
      * Creates a new GuacamoleHTTPTunnel which wraps the given tunnel.
@@ -48,7 +67,88 @@ class GuacamoleHTTPTunnel extends DelegatingGuacamoleTunnel {
      *     The GuacamoleTunnel to wrap within this GuacamoleHTTPTunnel.
      */
     public GuacamoleHTTPTunnel(GuacamoleTunnel wrappedTunnel) {
+        this(wrappedTunnel, null);
+    }
+
+    /**
+     * Creates a new GuacamoleHTTPTunnel which wraps the given tunnel,
+     * applying the given filter to all data written by the client. The filter
+     * is applied only to data written through the writer returned by
+     * getFilteredWriter().
+     *
+     * @param wrappedTunnel
+     *     The GuacamoleTunnel to wrap within this GuacamoleHTTPTunnel.
+     *
+     * @param filter
+     *     The filter to apply to all data written by the client, or null if
+     *     data should be written untouched.
+     */
+    public GuacamoleHTTPTunnel(GuacamoleTunnel wrappedTunnel,
+            GuacamoleFilter filter) {
+        this(wrappedTunnel, filter, FrameCoalescingPolicy.DEFAULT);
+    }
+
+    /**
+     * Creates a new GuacamoleHTTPTunnel which wraps the given tunnel,
+     * applying the given filter to all data written by the client and
+     * combining data read from the tunnel as dictated by the given policy.
+     * The filter is applied only to data written through the writer returned
+     * by getFilteredWriter().
+     *
+     * @param wrappedTunnel
+     *     The GuacamoleTunnel to wrap within this GuacamoleHTTPTunnel.
+     *
+     * @param filter
+     *     The filter to apply to all data written by the client, or null if
+     *     data should be written untouched.
+     *
+     * @param policy
+     *     The policy determining how instructions read from the tunnel are
+     *     combined into the chunks flushed to the client.
+     */
+    public GuacamoleHTTPTunnel(GuacamoleTunnel wrappedTunnel,
+            GuacamoleFilter filter, FrameCoalescingPolicy policy) {
+
         super(wrappedTunnel);
+        this.coalescer = policy.newCoalescer();
+
+        // Wrap the writer of the tunnel, which must still be acquired prior
+        // to each write
+        if (filter != null) {
+            GuacamoleWriter writer = wrappedTunnel.acquireWriter();
+            wrappedTunnel.releaseWriter();
+            filteredWriter = new FilteredGuacamoleWriter(writer, filter);
+        }
+        else
+            filteredWriter = null;
+
+    }
+
+    /**
+     * Returns the writer which applies the filter of this tunnel to all
+     * written data. As with any writer of this tunnel, the tunnel must be
+     * locked for writing with acquireWriter() before this writer is used.
+     * Each write must consist only of complete instructions.
+     *
+     * @return
+     *     The writer which applies the filter of this tunnel, or null if
+     *     this tunnel has no filter.
+     */
+    public GuacamoleWriter getFilteredWriter() {
+        return filteredWriter;
+    }
+
+    /**
+     * Returns the coalescer which determines how instructions read from this
+     * tunnel are combined into the chunks flushed to the client. As with the
+     * reader of this tunnel, the tunnel must be locked for reading with
+     * acquireReader() before this coalescer is used.
+     *
+     * @return
+     *     The coalescer of this tunnel.
+     */
+    public FrameCoalescer getFrameCoalescer() {
+        return coalescer;
     }
 
     /**
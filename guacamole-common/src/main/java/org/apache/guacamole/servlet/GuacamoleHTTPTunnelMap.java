@@ -19,15 +19,15 @@
 
 package org.apache.guacamole.servlet;
 
-import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.expiry.Expirable;
+import org.apache.guacamole.expiry.Expiration;
+import org.apache.guacamole.expiry.TimingWheel;
+import org.apache.guacamole.io.FrameCoalescingPolicy;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.protocol.GuacamoleFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,98 +45,83 @@ class GuacamoleHTTPTunnelMap {
     private static final Logger logger = LoggerFactory.getLogger(GuacamoleHTTPTunnelMap.class);
 
     /**
-     * The number of seconds to wait between tunnel accesses before timing out
-     * Note that this will be enforced only within a factor of 2. If a tunnel
-     * is unused, it will take between TUNNEL_TIMEOUT and TUNNEL_TIMEOUT*2
-     * seconds before that tunnel is closed and removed.
+     * The number of seconds to wait between tunnel accesses before timing out.
+     * Note that this will be enforced only to within the tick duration of the
+     * shared TimingWheel (one second).
      */
     private static final int TUNNEL_TIMEOUT = 15;
 
     /**
-     * Executor service which runs the periodic tunnel timeout task.
+     * The TimingWheel which closes and removes tunnels that have timed out.
      */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+    private final TimingWheel timingWheel = TimingWheel.getSharedInstance();
 
     /**
      * Map of all tunnels that are using HTTP, indexed by tunnel UUID.
      */
-    private final ConcurrentMap<String, GuacamoleHTTPTunnel> tunnelMap =
-            new ConcurrentHashMap<String, GuacamoleHTTPTunnel>();
+    private final ConcurrentMap<String, TunnelEntry> tunnelMap =
+            new ConcurrentHashMap<String, TunnelEntry>();
 
     /**
-     * Creates a new GuacamoleHTTPTunnelMap which automatically closes and
-     * removes HTTP tunnels which are no longer in use.
+     * A registered tunnel, which closes and removes itself from the map once
+     * it has not been accessed for TUNNEL_TIMEOUT seconds.
      */
-    public GuacamoleHTTPTunnelMap() {
+    private class TunnelEntry implements Expirable {
 
-        // Check for unused tunnels every few seconds
-        executor.scheduleAtFixedRate(
-            new TunnelTimeoutTask(TUNNEL_TIMEOUT * 1000l),
-            TUNNEL_TIMEOUT, TUNNEL_TIMEOUT, TimeUnit.SECONDS);
-
-    }
+        /**
+         * The UUID of the tunnel.
+         */
+        private final String uuid;
 
-    /**
-     * Task which iterates through all registered tunnels, removing and those
-     * tunnels which have not been accessed for a given number of milliseconds.
-     */
-    private class TunnelTimeoutTask implements Runnable {
+        /**
+         * The registered tunnel.
+         */
+        private final GuacamoleHTTPTunnel tunnel;
 
         /**
-         * The maximum amount of time to allow between accesses to any one
-         * HTTP tunnel, in milliseconds.
+         * The registration of this entry with the TimingWheel.
          */
-        private final long tunnelTimeout;
+        private final Expiration expiration;
 
         /**
-         * Creates a new task which automatically closes and removes tunnels
-         * which have not been accessed for at least the given number of
-         * milliseconds.
+         * Creates a new TunnelEntry for the given tunnel, registering that
+         * entry with the TimingWheel.
+         *
+         * @param uuid
+         *     The UUID of the tunnel.
          *
-         * @param tunnelTimeout
-         *     The maximum amount of time to allow between separate tunnel
-         *     read/write requests, in milliseconds.
+         * @param tunnel
+         *     The tunnel being registered.
          */
-        public TunnelTimeoutTask(long tunnelTimeout) {
-            this.tunnelTimeout = tunnelTimeout;
+        public TunnelEntry(String uuid, GuacamoleHTTPTunnel tunnel) {
+            this.uuid = uuid;
+            this.tunnel = tunnel;
+            this.expiration = timingWheel.register(this);
         }
 
         @Override
-        public void run() {
-
-            // Get current time
-            long now = System.currentTimeMillis();
-
-            // For each tunnel, close and remove any tunnels which have expired
-            Iterator<Map.Entry<String, GuacamoleHTTPTunnel>> entries = tunnelMap.entrySet().iterator();
-            while (entries.hasNext()) {
-
-                Map.Entry<String, GuacamoleHTTPTunnel> entry = entries.next();
-                GuacamoleHTTPTunnel tunnel = entry.getValue();
-
-                // Get elapsed time since last access
-                long age = now - tunnel.getLastAccessedTime();
-
-                // If tunnel is too old, close and remove it
-                if (age >= tunnelTimeout) {
+        public long getExpirationTime() {
+            return tunnel.getLastAccessedTime() + TUNNEL_TIMEOUT * 1000l;
+        }
 
-                    // Remove old entry
-                    logger.debug("HTTP tunnel \"{}\" has timed out.", entry.getKey());
-                    entries.remove();
+        @Override
+        public void expire() {
 
-                    // Attempt to close tunnel
-                    try {
-                        tunnel.close();
-                    }
-                    catch (GuacamoleException e) {
-                        logger.debug("Unable to close expired HTTP tunnel.", e);
-                    }
+            // Remove entry only if not already removed or replaced
+            if (!tunnelMap.remove(uuid, this))
+                return;
 
-                }
+            logger.debug("HTTP tunnel \"{}\" has timed out.", uuid);
 
-            } // end for each tunnel
+            // Attempt to close tunnel
+            try {
+                tunnel.close();
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to close expired HTTP tunnel.", e);
+            }
 
-        } // end timeout task run()
+        }
 
     }
 
@@ -155,13 +140,13 @@ class GuacamoleHTTPTunnelMap {
      */
     public GuacamoleHTTPTunnel get(String uuid) {
 
-        // Update the last access time
-        GuacamoleHTTPTunnel tunnel = tunnelMap.get(uuid);
-        if (tunnel != null)
-            tunnel.access();
+        TunnelEntry entry = tunnelMap.get(uuid);
+        if (entry == null)
+            return null;
 
-        // Return tunnel, if any
-        return tunnel;
+        // Update the last access time, deferring expiration
+        entry.tunnel.access();
+        return entry.tunnel;
 
     }
 
@@ -177,7 +162,59 @@ class GuacamoleHTTPTunnelMap {
      *     having just been established via HTTP.
      */
     public void put(String uuid, GuacamoleTunnel tunnel) {
-        tunnelMap.put(uuid, new GuacamoleHTTPTunnel(tunnel));
+        put(uuid, tunnel, null);
+    }
+
+    /**
+     * Registers that a new connection has been established using HTTP via the
+     * given GuacamoleTunnel, with all data written by the client passing
+     * through the given filter.
+     *
+     * @param uuid
+     *     The UUID of the tunnel being added (registered).
+     *
+     * @param tunnel
+     *     The GuacamoleTunnel being registered, its associated connection
+     *     having just been established via HTTP.
+     *
+     * @param filter
+     *     The filter to apply to all data written by the client, or null if
+     *     data should be written untouched.
+     */
+    public void put(String uuid, GuacamoleTunnel tunnel, GuacamoleFilter filter) {
+        put(uuid, tunnel, filter, FrameCoalescingPolicy.DEFAULT);
+    }
+
+    /**
+     * Registers that a new connection has been established using HTTP via the
+     * given GuacamoleTunnel, with all data written by the client passing
+     * through the given filter, and all data read by the client combined as
+     * dictated by the given policy.
+     *
+     * @param uuid
+     *     The UUID of the tunnel being added (registered).
+     *
+     * @param tunnel
+     *     The GuacamoleTunnel being registered, its associated connection
+     *     having just been established via HTTP.
+     *
+     * @param filter
+     *     The filter to apply to all data written by the client, or null if
+     *     data should be written untouched.
+     *
+     * @param policy
+     *     The policy determining how instructions read from the tunnel are
+     *     combined into the chunks flushed to the client.
+     */
+    public void put(String uuid, GuacamoleTunnel tunnel, GuacamoleFilter filter,
+            FrameCoalescingPolicy policy) {
+
+        // Stop tracking any tunnel being replaced
+        TunnelEntry entry = new TunnelEntry(uuid, new GuacamoleHTTPTunnel(tunnel, filter, policy));
+        TunnelEntry replaced = tunnelMap.put(uuid, entry);
+        if (replaced != null)
+            replaced.expiration.cancel();
+
     }
 
     /**
@@ -194,15 +231,23 @@ class GuacamoleHTTPTunnelMap {
      *     exists and no removal was performed.
      */
     public GuacamoleHTTPTunnel remove(String uuid) {
-        return tunnelMap.remove(uuid);
+
+        TunnelEntry entry = tunnelMap.remove(uuid);
+        if (entry == null)
+            return null;
+
+        entry.expiration.cancel();
+        return entry.tunnel;
+
     }
 
     /**
-     * Shuts down this tunnel map, disallowing future tunnels from being
-     * registered and reclaiming any resources.
+     * Shuts down this tunnel map, cancelling the automatic expiration of all
+     * registered tunnels and reclaiming any resources.
      */
     public void shutdown() {
-        executor.shutdownNow();
+        for (TunnelEntry entry : tunnelMap.values())
+            entry.expiration.cancel();
     }
 
 }
@@ -20,11 +20,14 @@
 package org.apache.guacamole.servlet;
 
 import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -34,9 +37,13 @@ import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
 import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.io.FrameCoalescer;
+import org.apache.guacamole.io.FrameCoalescingPolicy;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.protocol.GuacamoleFilter;
+import org.apache.guacamole.protocol.GuacamoleFilterChain;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +89,15 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      */
     private static final int UUID_LENGTH = 36;
 
+    /**
+     * The maximum amount of time that a read request will wait for the
+     * previous read request of the same tunnel to hand off read access, in
+     * milliseconds. Read requests which time out receive only the
+     * end-of-instructions marker, such that the client simply issues another
+     * read request.
+     */
+    private static final long READ_HANDOFF_TIMEOUT = 10000;
+
     /**
      * Registers the given tunnel such that future read/write requests to that
      * tunnel will be properly directed.
@@ -90,10 +106,49 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      *     The tunnel to register.
      */
     protected void registerTunnel(GuacamoleTunnel tunnel) {
-        tunnels.put(tunnel.getUUID().toString(), tunnel);
+
+        // Build filter chain once for the life of the tunnel
+        GuacamoleFilterChain filterChain = new GuacamoleFilterChain(createFilters(tunnel));
+        tunnels.put(tunnel.getUUID().toString(), tunnel,
+                filterChain.isEmpty() ? null : filterChain,
+                getFrameCoalescingPolicy());
+
         logger.debug("Registered tunnel \"{}\".", tunnel.getUUID());
     }
 
+    /**
+     * Returns the filters which should be applied to all instructions written
+     * by the client of the given tunnel, in the order they should be applied.
+     * The returned filters are created once, when the tunnel is registered,
+     * and are reused for the life of the tunnel. By default, this function
+     * returns the filters required by GuacamoleFilterChain.getTunnelFilters().
+     *
+     * @param tunnel
+     *     The tunnel whose written instructions will be filtered.
+     *
+     * @return
+     *     The filters to apply to all instructions written by the client,
+     *     which may be empty.
+     */
+    protected List<GuacamoleFilter> createFilters(GuacamoleTunnel tunnel) {
+        return GuacamoleFilterChain.getTunnelFilters(tunnel);
+    }
+
+    /**
+     * Returns the policy which should determine how instructions read from
+     * each tunnel are combined into the chunks flushed to the client. The
+     * policy is retrieved once for each tunnel, when the tunnel is
+     * registered. By default, this function returns
+     * FrameCoalescingPolicy.DEFAULT, which flushes as soon as no further
+     * data is immediately available.
+     *
+     * @return
+     *     The policy to apply to data read from newly-registered tunnels.
+     */
+    protected FrameCoalescingPolicy getFrameCoalescingPolicy() {
+        return FrameCoalescingPolicy.DEFAULT;
+    }
+
     /**
      * Deregisters the given tunnel such that future read/write requests to
      * that tunnel will be rejected.
@@ -102,8 +157,14 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      *     The tunnel to deregister.
      */
     protected void deregisterTunnel(GuacamoleTunnel tunnel) {
-        tunnels.remove(tunnel.getUUID().toString());
+
+        GuacamoleHTTPTunnel removed = tunnels.remove(tunnel.getUUID().toString());
+        if (removed != null)
+            logger.debug("Tunnel \"{}\" output: {}", tunnel.getUUID(),
+                    removed.getFrameCoalescer());
+
         logger.debug("Deregistered tunnel \"{}\".", tunnel.getUUID());
+
     }
 
     /**
@@ -327,16 +388,42 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
         if (!tunnel.isOpen())
             throw new GuacamoleResourceNotFoundException("Tunnel is closed.");
 
-        // Obtain exclusive read access
-        GuacamoleReader reader = tunnel.acquireReader();
+        // Note that although we are sending text, Webkit browsers will
+        // buffer 1024 bytes before starting a normal stream if we use
+        // anything but application/octet-stream.
+        response.setContentType("application/octet-stream");
+        response.setHeader("Cache-Control", "no-cache");
 
-        try {
+        // Obtain exclusive read access, waiting only a limited time for the
+        // previous read request to hand off
+        GuacamoleReader reader = tunnel.acquireReader(READ_HANDOFF_TIMEOUT,
+                TimeUnit.MILLISECONDS);
+
+        // Send only the end-of-instructions marker if read access was not
+        // handed off in time
+        if (reader == null) {
+            logger.debug("Read request for tunnel \"{}\" timed out awaiting "
+                    + "previous read request.", tunnel.getUUID());
+            try {
+                Writer out = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+                out.write("0.;");
+                out.close();
+            }
+            catch (IOException e) {
+                logger.debug("Error writing to servlet output stream", e);
+            }
+            return;
+        }
 
-            // Note that although we are sending text, Webkit browsers will
-            // buffer 1024 bytes before starting a normal stream if we use
-            // anything but application/octet-stream.
-            response.setContentType("application/octet-stream");
-            response.setHeader("Cache-Control", "no-cache");
+        // Combine instructions into flushed chunks as dictated by the policy
+        // of the tunnel
+        FrameCoalescer coalescer;
+        if (tunnel instanceof GuacamoleHTTPTunnel)
+            coalescer = ((GuacamoleHTTPTunnel) tunnel).getFrameCoalescer();
+        else
+            coalescer = FrameCoalescingPolicy.DEFAULT.newCoalescer();
+
+        try {
 
             // Get writer for response
             Writer out = new BufferedWriter(new OutputStreamWriter(
@@ -356,12 +443,13 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
 
                     // Get message output bytes
                     out.write(message, 0, message.length);
+                    coalescer.instructionBuffered(message.length,
+                            FrameCoalescer.isSync(message));
 
-                    // Flush if we expect to wait
-                    if (!reader.available()) {
-                        out.flush();
-                        response.flushBuffer();
-                    }
+                    // Flush once the frame is complete, full, or has waited
+                    // long enough for further data
+                    if (coalescer.awaitFlush(reader))
+                        flush(out, response, coalescer);
 
                     // No more messages another stream can take over
                     if (tunnel.hasQueuedReaderThreads())
@@ -377,8 +465,7 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
 
                 // End-of-instructions marker
                 out.write("0.;");
-                out.flush();
-                response.flushBuffer();
+                flush(out, response, coalescer);
             }
 
             // Send end-of-stream marker and close tunnel if connection is closed
@@ -390,8 +477,7 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
 
                 // End-of-instructions marker
                 out.write("0.;");
-                out.flush();
-                response.flushBuffer();
+                flush(out, response, coalescer);
 
             }
 
@@ -426,6 +512,36 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
 
     }
 
+    /**
+     * Flushes all data written to the given writer to the client, recording
+     * the flushed chunk and the time taken to flush it with the given
+     * coalescer.
+     *
+     * @param out
+     *     The writer of the response body.
+     *
+     * @param response
+     *     The HttpServletResponse associated with the read request received.
+     *
+     * @param coalescer
+     *     The coalescer of the tunnel being read.
+     *
+     * @throws IOException
+     *     If an I/O error occurs while flushing data to the client.
+     */
+    private void flush(Writer out, HttpServletResponse response,
+            FrameCoalescer coalescer) throws IOException {
+
+        int length = coalescer.getLength();
+        coalescer.frameFlushed();
+
+        long started = System.nanoTime();
+        out.flush();
+        response.flushBuffer();
+        coalescer.frameSent(length, System.nanoTime() - started);
+
+    }
+
     /**
      * Called whenever the JavaScript Guacamole client makes a write request.
      * This function should in general not be overridden, as it already
@@ -464,8 +580,12 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
         // Send data
         try {
 
-            // Get writer from tunnel
+            // Get writer from tunnel, using the filtered writer of the tunnel
+            // if it has filters
             GuacamoleWriter writer = tunnel.acquireWriter();
+            GuacamoleWriter filteredWriter = null;
+            if (tunnel instanceof GuacamoleHTTPTunnel)
+                filteredWriter = ((GuacamoleHTTPTunnel) tunnel).getFilteredWriter();
 
             // Get input reader for HTTP stream
             Reader input = new InputStreamReader(
@@ -479,10 +599,33 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
                 int length;
                 char[] buffer = new char[8192];
 
-                // Transfer data using buffer
-                while (tunnel.isOpen() &&
-                        (length = input.read(buffer, 0, buffer.length)) != -1)
-                    writer.write(buffer, 0, length);
+                // Instructions must be complete before they can be
+                // filtered, so filtered data is written only once fully
+                // received
+                if (filteredWriter != null) {
+
+                    CharArrayWriter data = new CharArrayWriter(buffer.length);
+                    while ((length = input.read(buffer, 0, buffer.length)) != -1)
+                        data.write(buffer, 0, length);
+
+                    if (tunnel.isOpen())
+                        filteredWriter.write(data.toCharArray());
+
+                }
+
+                // Otherwise, transfer data using buffer, sending the entire
+                // request body to guacd at once
+                else {
+                    writer.beginBatch();
+                    try {
+                        while (tunnel.isOpen() &&
+                                (length = input.read(buffer, 0, buffer.length)) != -1)
+                            writer.write(buffer, 0, length);
+                    }
+                    finally {
+                        writer.endBatch();
+                    }
+                }
 
             }
 
@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import org.apache.guacamole.io.ByteBufferPool;
+
+/**
+ * Sends frames along a WebSocket connection using the asynchronous remote of
+ * that connection, without ever blocking the sending thread. Frames may be
+ * queued by any number of threads, and are sent one at a time in the order
+ * queued, as WebSocket containers do not permit a new message to be sent
+ * until the previous asynchronous send has completed. The number of frames
+ * queued but not yet sent is tracked so that callers can stop producing
+ * frames while the client is not keeping up. Once any send fails, the
+ * sender is considered failed: all queued frames are discarded, and any
+ * further frames are rejected.
+ */
+class AsyncWebSocketSender {
+
+    /**
+     * Receives notification of the completion of each send.
+     */
+    interface Listener {
+
+        /**
+         * Called after a frame has been sent successfully, and is no longer
+         * counted by getPendingFrames().
+         *
+         * @param length
+         *     The size of the frame sent, in bytes for binary frames or
+         *     characters for text frames.
+         *
+         * @param duration
+         *     The time taken to send the frame, measured from when the frame
+         *     was handed to the WebSocket container, in nanoseconds.
+         */
+        void frameSent(int length, long duration);
+
+        /**
+         * Called if a frame could not be sent. This function is called only
+         * for the first such failure, after which all queued frames and
+         * actions are discarded, and further frames are rejected.
+         *
+         * @param cause
+         *     The reason the frame could not be sent.
+         */
+        void sendFailed(Throwable cause);
+
+    }
+
+    /**
+     * A single queued frame, or an action to be run once all frames queued
+     * before it have been sent.
+     */
+    private static class Frame {
+
+        /**
+         * The text of the frame, or null if this is not a text frame.
+         */
+        private final String text;
+
+        /**
+         * The contents of the frame, or null if this is not a binary frame.
+         */
+        private final ByteBuffer data;
+
+        /**
+         * Whether the contents of the frame were acquired from the buffer
+         * pool, and must be returned once sent.
+         */
+        private final boolean pooled;
+
+        /**
+         * The action to run, or null if this is not an action.
+         */
+        private final Runnable action;
+
+        /**
+         * The value of System.nanoTime() when this frame was handed to the
+         * WebSocket container for sending.
+         */
+        private long started;
+
+        /**
+         * Creates a new Frame having the given contents. Exactly one of text,
+         * data and action must be non-null.
+         *
+         * @param text
+         *     The text of the frame, or null if this is not a text frame.
+         *
+         * @param data
+         *     The contents of the frame, or null if this is not a binary
+         *     frame.
+         *
+         * @param pooled
+         *     Whether the given data was acquired from the buffer pool.
+         *
+         * @param action
+         *     The action to run, or null if this is not an action.
+         */
+        private Frame(String text, ByteBuffer data, boolean pooled,
+                Runnable action) {
+            this.text = text;
+            this.data = data;
+            this.pooled = pooled;
+            this.action = action;
+        }
+
+    }
+
+    /**
+     * The asynchronous remote of the WebSocket connection.
+     */
+    private final RemoteEndpoint.Async remote;
+
+    /**
+     * The pool to which pooled binary frames are returned once sent.
+     */
+    private final ByteBufferPool pool;
+
+    /**
+     * The listener to notify as each send completes.
+     */
+    private final Listener listener;
+
+    /**
+     * All frames and actions not yet started, in the order queued.
+     */
+    private final Queue<Frame> queue = new ConcurrentLinkedQueue<Frame>();
+
+    /**
+     * The number of frames queued or in the process of being sent.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Whether a frame is currently being sent, or a thread is currently
+     * dequeuing the next frame to send.
+     */
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    /**
+     * Whether a send has failed, in which case no further frames will be
+     * sent.
+     */
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    /**
+     * Creates a new AsyncWebSocketSender which sends frames using the given
+     * remote.
+     *
+     * @param remote
+     *     The asynchronous remote of the WebSocket connection.
+     *
+     * @param pool
+     *     The pool to which pooled binary frames should be returned once
+     *     sent.
+     *
+     * @param listener
+     *     The listener to notify as each send completes.
+     */
+    AsyncWebSocketSender(RemoteEndpoint.Async remote, ByteBufferPool pool,
+            Listener listener) {
+        this.remote = remote;
+        this.pool = pool;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the number of frames queued or in the process of being sent.
+     *
+     * @return
+     *     The number of frames not yet sent.
+     */
+    int getPendingFrames() {
+        return pending.get();
+    }
+
+    /**
+     * Queues the given text for sending within a text frame.
+     *
+     * @param text
+     *     The text to send.
+     *
+     * @return
+     *     true if the text was queued, false if it was rejected because a
+     *     previous send has failed.
+     */
+    boolean sendText(String text) {
+        return enqueue(new Frame(text, null, false, null));
+    }
+
+    /**
+     * Queues the remaining contents of the given buffer for sending within a
+     * binary frame. The buffer must not be modified by the caller after it
+     * has been queued.
+     *
+     * @param data
+     *     The buffer containing the data to send.
+     *
+     * @param pooled
+     *     Whether the buffer was acquired from the buffer pool, and must be
+     *     returned to the pool once sent. Pooled buffers are returned to the
+     *     pool even if the frame is rejected or discarded.
+     *
+     * @return
+     *     true if the frame was queued, false if it was rejected because a
+     *     previous send has failed.
+     */
+    boolean sendBinary(ByteBuffer data, boolean pooled) {
+        return enqueue(new Frame(null, data, pooled, null));
+    }
+
+    /**
+     * Queues the given action, which will be run once all frames queued
+     * prior to the action have been sent. If a send fails before the action
+     * is reached, the action is discarded and never run.
+     *
+     * @param action
+     *     The action to run.
+     *
+     * @return
+     *     true if the action was queued, false if it was rejected because a
+     *     previous send has failed.
+     */
+    boolean execute(Runnable action) {
+        return enqueue(new Frame(null, null, false, action));
+    }
+
+    /**
+     * Queues the given frame, starting the send of that frame immediately if
+     * no other frame is being sent. If a previous send has failed, the frame
+     * is instead rejected and its buffer released.
+     *
+     * @param frame
+     *     The frame to queue.
+     *
+     * @return
+     *     true if the frame was queued, false if it was rejected.
+     */
+    private boolean enqueue(Frame frame) {
+
+        if (failed.get()) {
+            discard(frame);
+            return false;
+        }
+
+        if (frame.action == null)
+            pending.incrementAndGet();
+
+        queue.add(frame);
+
+        // Do not leave the frame queued if a send failed while queuing
+        if (failed.get()) {
+            drain();
+            return false;
+        }
+
+        sendNext();
+        return true;
+
+    }
+
+    /**
+     * Releases any pooled buffer of the given frame, which will never be
+     * sent.
+     *
+     * @param frame
+     *     The frame to discard.
+     */
+    private void discard(Frame frame) {
+        if (frame.pooled)
+            pool.release(frame.data);
+    }
+
+    /**
+     * Discards all queued frames and actions, releasing any pooled buffers.
+     * Frames which have been discarded are no longer counted by
+     * getPendingFrames().
+     */
+    private void drain() {
+
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            discard(frame);
+            if (frame.action == null)
+                pending.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * Starts sending the next queued frame, unless another frame is already
+     * being sent. Any queued actions reached before the next frame are run.
+     */
+    private void sendNext() {
+
+        while (sending.compareAndSet(false, true)) {
+
+            // Send nothing further once a send has failed
+            if (failed.get()) {
+                drain();
+                sending.set(false);
+                return;
+            }
+
+            final Frame frame = queue.poll();
+
+            // Stop if nothing is queued, rechecking in case a frame was
+            // queued after polling but before sending was cleared
+            if (frame == null) {
+                sending.set(false);
+                if (queue.isEmpty())
+                    return;
+                continue;
+            }
+
+            // Run actions in order with respect to frames
+            if (frame.action != null) {
+                try {
+                    frame.action.run();
+                }
+                finally {
+                    sending.set(false);
+                }
+                continue;
+            }
+
+            frame.started = System.nanoTime();
+            SendHandler handler = new SendHandler() {
+
+                @Override
+                public void onResult(SendResult result) {
+                    complete(frame, result.isOK() ? null : result.getException());
+                }
+
+            };
+
+            try {
+                if (frame.text != null)
+                    remote.sendText(frame.text, handler);
+                else
+                    remote.sendBinary(frame.data, handler);
+            }
+            catch (RuntimeException e) {
+                complete(frame, e);
+            }
+
+            return;
+
+        }
+
+    }
+
+    /**
+     * Marks the given frame as sent, notifying the listener and starting the
+     * send of the next queued frame. If the send failed, the sender is
+     * instead marked as failed and all queued frames are discarded, notifying
+     * the listener only if this is the first failure.
+     *
+     * @param frame
+     *     The frame whose send has completed.
+     *
+     * @param failure
+     *     The reason the frame could not be sent, or null if the frame was
+     *     sent successfully.
+     */
+    private void complete(Frame frame, Throwable failure) {
+
+        long duration = System.nanoTime() - frame.started;
+        int length = frame.text != null ? frame.text.length() : frame.data.limit();
+
+        discard(frame);
+        pending.decrementAndGet();
+
+        if (failure != null) {
+            boolean first = failed.compareAndSet(false, true);
+            drain();
+            sending.set(false);
+            if (first)
+                listener.sendFailed(failure);
+            return;
+        }
+
+        sending.set(false);
+        listener.frameSent(length, duration);
+        sendNext();
+
+    }
+
+}
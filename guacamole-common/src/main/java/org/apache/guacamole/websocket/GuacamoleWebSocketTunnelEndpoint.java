@@ -20,9 +20,15 @@
 package org.apache.guacamole.websocket;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCode;
 import javax.websocket.Endpoint;
@@ -34,11 +40,16 @@ import javax.websocket.OnOpen;
 import javax.websocket.RemoteEndpoint;
 import javax.websocket.Session;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.ByteBufferPool;
+import org.apache.guacamole.io.FrameCoalescer;
+import org.apache.guacamole.io.FrameCoalescingPolicy;
+import org.apache.guacamole.io.GuacamoleByteReader;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.GuacamoleClientException;
 import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.protocol.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +67,34 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
      */
     private static final int BUFFER_SIZE = 8192;
 
+    /**
+     * The maximum number of idle frame buffers to retain for reuse across all
+     * WebSocket tunnels.
+     */
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    /**
+     * Pool of buffers used to assemble binary WebSocket frames. Buffers are
+     * held only while a frame is being assembled and sent, and are shared by
+     * all WebSocket tunnels.
+     */
+    private static final ByteBufferPool BUFFER_POOL =
+            new ByteBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+    /**
+     * The maximum number of frames which may be awaiting delivery to the
+     * client when reads are performed by a read executor. Further data is
+     * left unread within the guacd socket until the client catches up.
+     */
+    private static final int MAX_PENDING_FRAMES = 4;
+
+    /**
+     * The name of the request parameter which, if set to "true", indicates
+     * that the client is able to receive Guacamole instruction data within
+     * binary WebSocket frames, encoded as UTF-8.
+     */
+    private static final String BINARY_PARAMETER = "GUAC_BINARY";
+
     /**
      * The opcode of the instruction used to indicate a connection stability
      * test ping request or response. Note that this instruction is
@@ -83,6 +122,72 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
      */
     private RemoteEndpoint.Basic remote;
 
+    /**
+     * Whether the client has indicated that it can receive instruction data
+     * within binary WebSocket frames.
+     */
+    private boolean binary;
+
+    /**
+     * Sender which delivers all outbound frames asynchronously, or null if
+     * reads are performed by a dedicated thread which sends frames using the
+     * blocking remote.
+     */
+    private AsyncWebSocketSender sender;
+
+    /**
+     * Coalescer which determines how instructions read from the tunnel are
+     * combined into the frames sent to the client, and which records
+     * statistics describing those frames. This value will always be
+     * non-null if tunnel is non-null.
+     */
+    private FrameCoalescer coalescer;
+
+    /**
+     * Writer which applies the filter chain of this endpoint to all data
+     * received from the client prior to writing that data to the tunnel.
+     * This value will always be non-null once the tunnel is fully
+     * established.
+     */
+    private GuacamoleWriter writer;
+
+    /**
+     * GuacamoleFilter which handles tunnel-internal instructions without
+     * passing them through to guacd, responding to ping requests.
+     */
+    private class InternalInstructionFilter implements GuacamoleFilter {
+
+        @Override
+        public GuacamoleInstruction filter(GuacamoleInstruction instruction) {
+
+            // Respond to ping requests
+            List<String> args = instruction.getArgs();
+            if (args.size() >= 2 && args.get(0).equals(PING_OPCODE)) {
+
+                try {
+                    sendInstruction(new GuacamoleInstruction(
+                        GuacamoleTunnel.INTERNAL_DATA_OPCODE,
+                        PING_OPCODE, args.get(1)
+                    ));
+                }
+                catch (IOException e) {
+                    logger.debug("Unable to send \"ping\" response for WebSocket tunnel.", e);
+                }
+
+            }
+
+            // Filter out all tunnel-internal instructions
+            return null;
+
+        }
+
+        @Override
+        public boolean appliesTo(String opcode) {
+            return opcode.equals(GuacamoleTunnel.INTERNAL_DATA_OPCODE);
+        }
+
+    }
+
     /**
      * Sends the numeric Guacaomle Status Code and Web Socket
      * code and closes the connection.
@@ -125,11 +230,44 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
                 guacStatus.getWebSocketCode());
     }
 
+    /**
+     * Closes the given connection due to the given error having occurred
+     * while reading from the tunnel, logging the error appropriately and
+     * sending the corresponding status.
+     *
+     * @param session
+     *     The outbound WebSocket connection to close.
+     *
+     * @param e
+     *     The error which occurred while reading from the tunnel.
+     */
+    private void closeConnection(Session session, GuacamoleException e) {
+
+        if (e instanceof GuacamoleClientException) {
+            logger.info("WebSocket connection terminated: {}", e.getMessage());
+            logger.debug("WebSocket connection terminated due to client error.", e);
+            closeConnection(session, e.getStatus().getGuacamoleStatusCode(),
+                    e.getWebSocketCode());
+        }
+        else if (e instanceof GuacamoleConnectionClosedException) {
+            logger.debug("Connection to guacd closed.", e);
+            closeConnection(session, GuacamoleStatus.SUCCESS);
+        }
+        else {
+            logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
+            logger.debug("Internal error during connection to guacd.", e);
+            closeConnection(session, e.getStatus().getGuacamoleStatusCode(),
+                    e.getWebSocketCode());
+        }
+
+    }
+
     /**
      * Sends a Guacamole instruction along the outbound WebSocket connection to
      * the connected Guacamole client. If an instruction is already in the
      * process of being sent by another thread, this function will block until
-     * in-progress instructions are complete.
+     * in-progress instructions are complete, unless frames are being sent
+     * asynchronously, in which case the instruction is queued.
      *
      * @param instruction
      *     The instruction to send.
@@ -141,6 +279,13 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
     private void sendInstruction(String instruction)
             throws IOException {
 
+        // Queue the instruction if frames are sent asynchronously
+        if (sender != null) {
+            if (!sender.sendText(instruction))
+                throw new IOException("WebSocket connection has failed.");
+            return;
+        }
+
         // NOTE: Synchronization on the non-final remote field here is
         // intentional. The remote (the outbound websocket connection) is only
         // sensitive to simultaneous attempts to send messages with respect to
@@ -171,6 +316,558 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
         sendInstruction(instruction.toString());
     }
 
+    /**
+     * Sends UTF-8 encoded Guacamole instruction data along the outbound
+     * WebSocket connection within a binary frame. If an instruction is
+     * already in the process of being sent by another thread, this function
+     * will block until in-progress instructions are complete.
+     *
+     * @param data
+     *     A buffer containing only complete Guacamole instructions.
+     *
+     * @throws IOException
+     *     If an I/O error occurs preventing the given data from being sent.
+     */
+    private void sendBinary(ByteBuffer data) throws IOException {
+
+        // NOTE: Synchronization on the non-final remote field here is
+        // intentional. See sendInstruction(String).
+        synchronized (remote) {
+            remote.sendBinary(data);
+        }
+
+    }
+
+    /**
+     * Sends the given buffer, which must contain only complete instructions
+     * making up the current frame, as a single binary frame, recording the
+     * frame and the time taken to send it with the coalescer of this
+     * endpoint.
+     *
+     * @param data
+     *     A buffer containing the current frame.
+     *
+     * @throws IOException
+     *     If an I/O error occurs preventing the given data from being sent.
+     */
+    private void sendBinaryFrame(ByteBuffer data) throws IOException {
+
+        int length = data.remaining();
+        coalescer.frameFlushed();
+
+        long started = System.nanoTime();
+        sendBinary(data);
+        coalescer.frameSent(length, System.nanoTime() - started);
+
+    }
+
+    /**
+     * Sends the contents of the given buffer, which must contain only
+     * complete instructions making up the current frame, as a single text
+     * frame, recording the frame and the time taken to send it with the
+     * coalescer of this endpoint. The buffer is emptied once sent.
+     *
+     * @param buffer
+     *     A buffer containing the current frame.
+     *
+     * @throws IOException
+     *     If an I/O error occurs preventing the given data from being sent.
+     */
+    private void sendTextFrame(StringBuilder buffer) throws IOException {
+
+        int length = buffer.length();
+        coalescer.frameFlushed();
+
+        long started = System.nanoTime();
+        sendInstruction(buffer.toString());
+        coalescer.frameSent(length, System.nanoTime() - started);
+
+        buffer.setLength(0);
+
+    }
+
+    /**
+     * Relays all instructions from the given reader to the client as text
+     * frames, combining instructions into frames as dictated by the
+     * coalescer of this endpoint.
+     *
+     * @param reader
+     *     The reader to relay instructions from.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the given reader.
+     *
+     * @throws IOException
+     *     If an I/O error occurs preventing data from being sent.
+     */
+    private void relayText(GuacamoleReader reader)
+            throws GuacamoleException, IOException {
+
+        StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+
+        char[] readMessage;
+        while ((readMessage = reader.read()) != null) {
+
+            // Buffer message
+            buffer.append(readMessage);
+            coalescer.instructionBuffered(readMessage.length,
+                    FrameCoalescer.isSync(readMessage));
+
+            // Flush once the frame is complete, full, or has waited long
+            // enough for further data
+            if (coalescer.awaitFlush(reader))
+                sendTextFrame(buffer);
+
+        }
+
+        // Flush any remaining data
+        if (buffer.length() != 0)
+            sendTextFrame(buffer);
+
+    }
+
+    /**
+     * Relays all instructions from the given reader to the client within
+     * binary WebSocket frames, without decoding the instructions. Complete
+     * instructions are copied into a pooled buffer, which is sent as a single
+     * frame as dictated by the coalescer of this endpoint, or when the buffer
+     * is full. Instructions larger than a pooled buffer are sent directly.
+     *
+     * @param reader
+     *     The reader to relay instructions from.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the given reader.
+     *
+     * @throws IOException
+     *     If an I/O error occurs preventing data from being sent.
+     */
+    private void relayBinary(GuacamoleByteReader reader)
+            throws GuacamoleException, IOException {
+
+        ByteBuffer frame = BUFFER_POOL.acquire();
+        try {
+
+            ByteBuffer instruction;
+            while ((instruction = reader.readBytes()) != null) {
+
+                // Flush any buffered data if the instruction will not fit
+                if (instruction.remaining() > frame.remaining()
+                        && frame.position() != 0) {
+                    frame.flip();
+                    sendBinaryFrame(frame);
+                    frame.clear();
+                }
+
+                coalescer.instructionBuffered(instruction.remaining(),
+                        FrameCoalescer.isSync(instruction));
+
+                // Send instructions larger than the frame buffer directly
+                if (instruction.remaining() > frame.capacity()) {
+                    sendBinaryFrame(instruction);
+                    continue;
+                }
+
+                frame.put(instruction);
+
+                // Flush once the frame is complete, full, or has waited long
+                // enough for further data
+                if (!frame.hasRemaining() || coalescer.awaitFlush(reader)) {
+                    frame.flip();
+                    sendBinaryFrame(frame);
+                    frame.clear();
+                }
+
+            }
+
+            // Flush any remaining data
+            if (frame.position() != 0) {
+                frame.flip();
+                sendBinaryFrame(frame);
+            }
+
+        }
+
+        // Return frame buffer to the pool
+        finally {
+            BUFFER_POOL.release(frame);
+        }
+
+    }
+
+    /**
+     * Relays instructions from the tunnel to the client as a task of a read
+     * executor, rather than within a dedicated thread, queueing frames with
+     * the asynchronous sender as dictated by the coalescer of this endpoint.
+     * The pump blocks within each read until guacd sends data, and thus
+     * wakes only when data actually arrives. If the client falls behind,
+     * such that MAX_PENDING_FRAMES frames are awaiting delivery, the pump
+     * stops reading until a frame is delivered, leaving further data within
+     * the guacd socket such that guacd itself is slowed.
+     */
+    private class ReadPump implements Runnable, AsyncWebSocketSender.Listener {
+
+        /**
+         * The WebSocket connection being relayed to.
+         */
+        private final Session session;
+
+        /**
+         * Lock guarding the wait for frames to be delivered while too many
+         * frames are pending.
+         */
+        private final Lock deliveryLock = new ReentrantLock();
+
+        /**
+         * Condition signalled whenever a frame has been delivered, or the
+         * pump has stopped.
+         */
+        private final Condition frameDelivered = deliveryLock.newCondition();
+
+        /**
+         * Whether this pump has stopped permanently, either because the
+         * tunnel has ended or due to an error.
+         */
+        private volatile boolean stopped = false;
+
+        /**
+         * The text of the frame currently being built, or null if no text
+         * has yet been read. This is only accessed by the pump itself.
+         */
+        private StringBuilder text;
+
+        /**
+         * The pooled buffer containing the binary frame currently being
+         * built, or null if no such frame is being built. This is only
+         * accessed by the pump itself.
+         */
+        private ByteBuffer frame;
+
+        /**
+         * Creates a new ReadPump which relays instructions from the tunnel
+         * to the given WebSocket connection.
+         *
+         * @param session
+         *     The WebSocket connection to relay instructions to.
+         */
+        public ReadPump(Session session) {
+            this.session = session;
+        }
+
+        /**
+         * Stops this pump permanently, waking the pump if it is waiting for
+         * frames to be delivered.
+         */
+        private void stop() {
+
+            stopped = true;
+
+            deliveryLock.lock();
+            try {
+                frameDelivered.signalAll();
+            }
+            finally {
+                deliveryLock.unlock();
+            }
+
+        }
+
+        /**
+         * Stops this pump permanently, closing the WebSocket connection due
+         * to the given error.
+         *
+         * @param e
+         *     The error which occurred while reading from the tunnel.
+         */
+        private void stop(GuacamoleException e) {
+            stop();
+            closeConnection(session, e);
+        }
+
+        @Override
+        public void run() {
+
+            GuacamoleReader reader = tunnel.acquireReader();
+            try {
+                pump(reader);
+            }
+            catch (GuacamoleException e) {
+                stop(e);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop(new GuacamoleServerException("Interrupted while relaying WebSocket tunnel.", e));
+            }
+            finally {
+
+                // Return any unsent frame buffer to the pool
+                if (frame != null) {
+                    BUFFER_POOL.release(frame);
+                    frame = null;
+                }
+
+                tunnel.releaseReader();
+
+            }
+
+        }
+
+        /**
+         * Waits until fewer than MAX_PENDING_FRAMES frames are awaiting
+         * delivery, or until this pump has stopped.
+         *
+         * @throws InterruptedException
+         *     If the pump is interrupted while waiting.
+         */
+        private void awaitDelivery() throws InterruptedException {
+
+            deliveryLock.lock();
+            try {
+                while (!stopped && sender.getPendingFrames() >= MAX_PENDING_FRAMES)
+                    frameDelivered.await();
+            }
+            finally {
+                deliveryLock.unlock();
+            }
+
+        }
+
+        /**
+         * Relays all instructions from the given reader, blocking within
+         * each read until data arrives, and stopping once the tunnel has
+         * ended or this pump has been stopped.
+         *
+         * @param reader
+         *     The reader to relay instructions from.
+         *
+         * @throws GuacamoleException
+         *     If an error occurs while reading from the given reader.
+         *
+         * @throws InterruptedException
+         *     If the pump is interrupted while waiting for frames to be
+         *     delivered.
+         */
+        private void pump(GuacamoleReader reader)
+                throws GuacamoleException, InterruptedException {
+
+            while (!stopped) {
+
+                // Stop reading while the client is behind
+                awaitDelivery();
+                if (stopped)
+                    return;
+
+                boolean more;
+                if (binary && reader instanceof GuacamoleByteReader)
+                    more = readBinary((GuacamoleByteReader) reader);
+                else
+                    more = readText(reader);
+
+                // Close connection once all data has been delivered
+                if (!more) {
+                    queueFrame();
+                    stop();
+                    sender.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            closeConnection(session, GuacamoleStatus.SUCCESS);
+                        }
+
+                    });
+                    return;
+                }
+
+                // Queue the current frame once complete, full, or once it
+                // has waited long enough for further data
+                if (!coalescer.isEmpty() && coalescer.awaitFlush(reader))
+                    queueFrame();
+
+            }
+
+        }
+
+        /**
+         * Queues the frame currently being built for delivery, if that frame
+         * contains any data, starting a new, empty frame.
+         */
+        private void queueFrame() {
+
+            if (coalescer.isEmpty())
+                return;
+
+            coalescer.frameFlushed();
+
+            if (frame != null && frame.position() != 0) {
+                frame.flip();
+                sender.sendBinary(frame, true);
+                frame = null;
+            }
+
+            if (text != null && text.length() != 0) {
+                sender.sendText(text.toString());
+                text.setLength(0);
+            }
+
+        }
+
+        /**
+         * Reads a single instruction from the given reader, adding that
+         * instruction to the current text frame.
+         *
+         * @param reader
+         *     The reader to read an instruction from.
+         *
+         * @return
+         *     true if further instructions may be read, false if the end of
+         *     the stream has been reached.
+         *
+         * @throws GuacamoleException
+         *     If an error occurs while reading from the given reader.
+         */
+        private boolean readText(GuacamoleReader reader)
+                throws GuacamoleException {
+
+            char[] readMessage = reader.read();
+            if (readMessage == null)
+                return false;
+
+            if (text == null)
+                text = new StringBuilder(BUFFER_SIZE);
+
+            text.append(readMessage);
+            coalescer.instructionBuffered(readMessage.length,
+                    FrameCoalescer.isSync(readMessage));
+
+            return true;
+
+        }
+
+        /**
+         * Reads a single encoded instruction from the given reader, adding
+         * that instruction to the current binary frame. The current frame is
+         * queued first if the instruction will not fit, and is queued
+         * immediately once full. Instructions larger than a pooled buffer
+         * are copied into a dedicated frame, as the reader reuses its own
+         * buffer.
+         *
+         * @param reader
+         *     The reader to read an encoded instruction from.
+         *
+         * @return
+         *     true if further instructions may be read, false if the end of
+         *     the stream has been reached.
+         *
+         * @throws GuacamoleException
+         *     If an error occurs while reading from the given reader.
+         */
+        private boolean readBinary(GuacamoleByteReader reader)
+                throws GuacamoleException {
+
+            ByteBuffer instruction = reader.readBytes();
+            if (instruction == null)
+                return false;
+
+            // Queue any buffered data if the instruction will not fit
+            if (frame != null && instruction.remaining() > frame.remaining())
+                queueFrame();
+
+            int length = instruction.remaining();
+            coalescer.instructionBuffered(length, FrameCoalescer.isSync(instruction));
+
+            // Copy instructions larger than the frame buffer into their own
+            // frame
+            if (length > BUFFER_POOL.getBufferSize()) {
+                ByteBuffer copy = ByteBuffer.allocate(length);
+                copy.put(instruction);
+                copy.flip();
+                coalescer.frameFlushed();
+                sender.sendBinary(copy, false);
+                return true;
+            }
+
+            if (frame == null)
+                frame = BUFFER_POOL.acquire();
+
+            frame.put(instruction);
+
+            // Queue the frame as soon as it is full
+            if (!frame.hasRemaining())
+                queueFrame();
+
+            return true;
+
+        }
+
+        @Override
+        public void frameSent(int length, long duration) {
+
+            coalescer.frameSent(length, duration);
+
+            // Resume reading if stopped due to the client falling behind
+            deliveryLock.lock();
+            try {
+                frameDelivered.signalAll();
+            }
+            finally {
+                deliveryLock.unlock();
+            }
+
+        }
+
+        @Override
+        public void sendFailed(Throwable cause) {
+            logger.debug("I/O error prevents further reads.", cause);
+            stop();
+            closeConnection(session, GuacamoleStatus.SERVER_ERROR);
+        }
+
+    }
+
+    /**
+     * Returns the executor which should be used to relay instructions from
+     * guacd to the client for all tunnels, or null if each tunnel should
+     * use its own, dedicated thread. If an executor is provided, each tunnel
+     * submits a single task which blocks within reads of the tunnel until
+     * the tunnel ends, and all frames are sent using the asynchronous remote
+     * of the WebSocket connection. The executor must therefore not limit
+     * the number of tasks running concurrently, and is intended to run each
+     * task within its own virtual thread, such that no platform thread is
+     * held by an idle tunnel. The executor is shared and must not be shut
+     * down while tunnels remain open. By default, this function returns
+     * null.
+     *
+     * @param config
+     *     Configuration information associated with the instance of the
+     *     endpoint created for handling this single connection.
+     *
+     * @return
+     *     The executor to use for relaying instructions, or null if a
+     *     dedicated thread should be used.
+     */
+    protected Executor getReadExecutor(EndpointConfig config) {
+        return null;
+    }
+
+    /**
+     * Returns the policy which should determine how instructions read from
+     * the tunnel are combined into the frames sent to the client. By default,
+     * this function returns FrameCoalescingPolicy.DEFAULT, which sends each
+     * frame as soon as no further data is immediately available. Binary
+     * frames never exceed the size of the pooled frame buffers (8192 bytes),
+     * except where a single instruction is larger.
+     *
+     * @param config
+     *     Configuration information associated with the instance of the
+     *     endpoint created for handling this single connection.
+     *
+     * @return
+     *     The policy to apply to all frames sent to the client.
+     */
+    protected FrameCoalescingPolicy getFrameCoalescingPolicy(EndpointConfig config) {
+        return FrameCoalescingPolicy.DEFAULT;
+    }
+
     /**
      * Returns a new tunnel for the given session. How this tunnel is created
      * or retrieved is implementation-dependent.
@@ -186,6 +883,26 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
     protected abstract GuacamoleTunnel createTunnel(Session session, EndpointConfig config)
             throws GuacamoleException;
 
+    /**
+     * Returns the filters which should be applied to all instructions
+     * received from the client of the given tunnel, in the order they should
+     * be applied. The returned filters are created once, when the tunnel is
+     * established, and are reused for the life of the tunnel. Tunnel-internal
+     * instructions are always handled before any of these filters are
+     * applied. By default, this function returns the filters required by
+     * GuacamoleFilterChain.getTunnelFilters().
+     *
+     * @param tunnel
+     *     The tunnel whose received instructions will be filtered.
+     *
+     * @return
+     *     The filters to apply to all instructions received from the client,
+     *     which may be empty.
+     */
+    protected List<GuacamoleFilter> createFilters(GuacamoleTunnel tunnel) {
+        return GuacamoleFilterChain.getTunnelFilters(tunnel);
+    }
+
     @Override
     @OnOpen
     public void onOpen(final Session session, EndpointConfig config) {
@@ -193,7 +910,21 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
         // Store underlying remote for future use via sendInstruction()
         remote = session.getBasicRemote();
 
-        GuacamoleConfiguration connectionConfiguration;
+        // Use binary frames only if explicitly supported by the client
+        List<String> binaryParameter = session.getRequestParameterMap().get(BINARY_PARAMETER);
+        binary = binaryParameter != null && binaryParameter.contains("true");
+
+        // Combine instructions into frames as dictated by the configured
+        // policy
+        coalescer = getFrameCoalescingPolicy(config).newCoalescer();
+
+        // Send all frames asynchronously if reads use a read executor
+        Executor readExecutor = getReadExecutor(config);
+        ReadPump pump = null;
+        if (readExecutor != null) {
+            pump = new ReadPump(session);
+            sender = new AsyncWebSocketSender(session.getAsyncRemote(), BUFFER_POOL, pump);
+        }
 
         try {
 
@@ -203,10 +934,19 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
                 closeConnection(session, GuacamoleStatus.RESOURCE_NOT_FOUND);
                 return;
             }
-            
-            // @rjp guacamoleConfiguration prep
-            connectionConfiguration = tunnel.getConnectionConfiguration();
-             connectionConfiguration.getParameters();
+
+            // Build filter chain once, handling tunnel-internal instructions
+            // without passing through to guacd
+            List<GuacamoleFilter> filters = new ArrayList<GuacamoleFilter>();
+            filters.add(new InternalInstructionFilter());
+            filters.addAll(createFilters(tunnel));
+
+            // Wrap the writer of the tunnel, which must still be acquired
+            // prior to each write
+            GuacamoleWriter tunnelWriter = tunnel.acquireWriter();
+            tunnel.releaseWriter();
+            writer = new FilteredGuacamoleWriter(tunnelWriter, new GuacamoleFilterChain(filters));
+
         }
         catch (GuacamoleException e) {
             logger.error("Creation of WebSocket tunnel to guacd failed: {}", e.getMessage());
@@ -226,15 +966,41 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
         });
 
-        // Prepare read transfer thread
+        // Relay instructions using the read executor, if any
+        if (pump != null) {
+
+            try {
+
+                // Send tunnel UUID
+                sendInstruction(new GuacamoleInstruction(
+                    GuacamoleTunnel.INTERNAL_DATA_OPCODE,
+                    tunnel.getUUID().toString()
+                ));
+
+                readExecutor.execute(pump);
+
+            }
+            catch (IOException e) {
+                logger.debug("I/O error prevents further reads.", e);
+                closeConnection(session, GuacamoleStatus.SERVER_ERROR);
+            }
+            catch (RejectedExecutionException e) {
+                logger.error("Unable to relay WebSocket tunnel: {}", e.getMessage());
+                logger.debug("Read executor rejected WebSocket tunnel.", e);
+                closeConnection(session, GuacamoleStatus.SERVER_ERROR);
+            }
+
+            return;
+
+        }
+
+        // Otherwise, prepare dedicated read transfer thread
         Thread readThread = new Thread() {
 
             @Override
             public void run() {
 
-                StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
                 GuacamoleReader reader = tunnel.acquireReader();
-                char[] readMessage;
 
                 try {
 
@@ -246,19 +1012,14 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
                     try {
 
-                        // Attempt to read
-                        while ((readMessage = reader.read()) != null) {
+                        // Relay encoded instruction data directly if
+                        // supported by both the client and the reader
+                        if (binary && reader instanceof GuacamoleByteReader)
+                            relayBinary((GuacamoleByteReader) reader);
 
-                            // Buffer message
-                            buffer.append(readMessage);
-
-                            // Flush if we expect to wait or buffer is getting full
-                            if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                sendInstruction(buffer.toString());
-                                buffer.setLength(0);
-                            }
-
-                        }
+                        // Otherwise, relay instruction data as text
+                        else
+                            relayText(reader);
 
                         // No more data
                         closeConnection(session, GuacamoleStatus.SUCCESS);
@@ -268,21 +1029,8 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
                     // Catch any thrown guacamole exception and attempt
                     // to pass within the WebSocket connection, logging
                     // each error appropriately.
-                    catch (GuacamoleClientException e) {
-                        logger.info("WebSocket connection terminated: {}", e.getMessage());
-                        logger.debug("WebSocket connection terminated due to client error.", e);
-                        closeConnection(session, e.getStatus().getGuacamoleStatusCode(),
-                                e.getWebSocketCode());
-                    }
-                    catch (GuacamoleConnectionClosedException e) {
-                        logger.debug("Connection to guacd closed.", e);
-                        closeConnection(session, GuacamoleStatus.SUCCESS);
-                    }
                     catch (GuacamoleException e) {
-                        logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
-                        logger.debug("Internal error during connection to guacd.", e);
-                        closeConnection(session, e.getStatus().getGuacamoleStatusCode(),
-                                e.getWebSocketCode());
+                        closeConnection(session, e);
                     }
 
                 }
@@ -295,153 +1043,19 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
         };
 
-        // @rjp-003 prevent active connection tunnel to manipulate remote desktop
-        if (tunnel.getTunnelRequestTypeName().equals("active connection")) {
-            opCodesToFilter = new String[]{"key", "mouse"};
-
-        }
-        
-        // @rjp-002 set black/white lists if restricted commands enabled
-        if (connectionConfiguration != null && connectionConfiguration.getParameter("restricted-commands-enabled") != null &&
-                connectionConfiguration.getParameter("restricted-commands-enabled").equals("true")) {
-            if (connectionConfiguration.getParameter("restricted-commands-whitelist") != null){
-                whitelistCommands = connectionConfiguration.getParameter("restricted-commands-whitelist").split(",");
-                logger.info("whitelistCommands {}",whitelistCommands);
-            }
-            if (connectionConfiguration.getParameter("restricted-commands-blacklist") != null){
-                blacklistCommands = connectionConfiguration.getParameter("restricted-commands-blacklist").split(",");
-                logger.info("blacklistCommands {}",blacklistCommands);
-            }
-        }
-
         readThread.start();
 
     }
 
-    private String[] opCodesToFilter = {};
-    private String[] whitelistCommands = {};
-    private String[] blacklistCommands = {};
-    private String keyHistory = "";
-    private String keyHistoryEntered = "";
-    private Integer keyHistoryCursor = 0;
-
-
     @OnMessage
     public void onMessage(String message) {
 
         // Ignore inbound messages if there is no associated tunnel
-        if (tunnel == null)
+        if (tunnel == null || writer == null)
             return;
 
-        // @rjp-002 & @rjp-003 filtration
-        final String[] finalOpCodesToFilter = opCodesToFilter;
-        final String[] finalWhitelistCommands = whitelistCommands;
-        final String[] finalBlacklistCommands = blacklistCommands;
-
-        // Filter received instructions, handling tunnel-internal instructions
-        // without passing through to guacd
-        GuacamoleWriter writer = new FilteredGuacamoleWriter(tunnel.acquireWriter(), new GuacamoleFilter() {
-
-            // @rjp-002 save keystrokes for later filtration
-            private void updateKeyHistory(String keyCode) {
-                // logger.info("kc={}", keyCode);
-                char keyChar = (char) Integer.parseInt(keyCode);
-                // update keyHistoryCursor in order to reflect keys:
-                // left, right, home, end, bksp, del, enter
-                if (keyCode.equals("65360")) // home
-                    keyHistoryCursor = 0;
-                if (keyCode.equals("65367")) // end
-                    keyHistoryCursor = keyHistory.length();
-                if (keyCode.equals("65361") && keyHistoryCursor > 0) // left
-                    keyHistoryCursor--;
-                if (keyCode.equals("65363") && keyHistoryCursor < keyHistory.length()) // right
-                    keyHistoryCursor++;
-                if (keyCode.equals("65288") && keyHistoryCursor > 0) { // back
-                    keyHistoryCursor--;
-                    keyHistory = new StringBuilder(keyHistory).deleteCharAt(keyHistoryCursor).toString();
-                }
-                if (keyCode.equals("65535") && keyHistoryCursor < keyHistory.length()) // del
-                    keyHistory = new StringBuilder(keyHistory).deleteCharAt(keyHistoryCursor+1).toString();
-                if (keyCode.equals("65293")) { // enter
-                    keyHistoryEntered = keyHistory;
-                    keyHistory = "";
-                    keyHistoryCursor = 0;
-                }
-                // CTRL, ALT
-                // if not a control key, e.g. f1~12, ctrl, alt, tab, ...
-                List<String> fnKeys = Arrays.asList("65360", "65367", "65361", "65363", "65288", "65535", "65293");
-                if (!fnKeys.contains(keyCode) && Integer.parseInt(keyCode) < 200) {
-                    keyHistory = new StringBuilder(keyHistory).insert(keyHistoryCursor, String.valueOf(keyChar)).toString();
-                    keyHistoryCursor++;
-                }
-            }
-            // @rjp-002 filter commands
-            private Boolean filterKeyHistory() {
-                // checking blacklist
-                for (String blacklistCommand : finalBlacklistCommands ) {
-                    if (keyHistory.contains(blacklistCommand)) {
-                        return true;
-                    }
-                }
-                // checking whitelist
-                for (String whitelistCommand : finalWhitelistCommands ) {
-                    if (keyHistoryEntered.equals("") || keyHistoryEntered.equals(whitelistCommand)) {
-                        return false;
-                    }
-                }
-                return finalWhitelistCommands.length != 0;
-            }
-
-            @Override
-            public GuacamoleInstruction filter(GuacamoleInstruction instruction)
-                    throws GuacamoleException {
-
-                // Filter out all tunnel-internal instructions
-                if (instruction.getOpcode().equals(GuacamoleTunnel.INTERNAL_DATA_OPCODE)) {
-
-                    // Respond to ping requests
-                    List<String> args = instruction.getArgs();
-                    if (args.size() >= 2 && args.get(0).equals(PING_OPCODE)) {
-
-                        try {
-                            sendInstruction(new GuacamoleInstruction(
-                                GuacamoleTunnel.INTERNAL_DATA_OPCODE,
-                                PING_OPCODE, args.get(1)
-                            ));
-                        }
-                        catch (IOException e) {
-                            logger.debug("Unable to send \"ping\" response for WebSocket tunnel.", e);
-                        }
-
-                    }
-
-                    return null;
-
-                }
-
-                	
-                // @rjp-003 prevent active connection tunnel to manipulate remote desktop
-                if (Arrays.asList(finalOpCodesToFilter).contains(instruction.getOpcode())) {
-                    return null;
-                }
-                
-                // @rjp-002 blacklist / whitelist command filtration
-                if (instruction.getOpcode().equals("key") && instruction.getArgs().get(1).equals("1")) {
-                    updateKeyHistory(instruction.getArgs().get(0));
-                    if (filterKeyHistory()) {
-                        logger.info("@rjp tunnel closed due to restricted command filtration");
-                        tunnel.close();
-//                        closeConnection(session,...);
-                        return null;
-                    }
-                }
-
-                // Pass through all non-internal instructions untouched
-                return instruction;
-
-            }
-
-        });
+        // Writer is shared, but the tunnel must still be locked for writing
+        tunnel.acquireWriter();
 
         try {
             // Write received message
@@ -463,8 +1077,11 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
     public void onClose(Session session, CloseReason closeReason) {
 
         try {
-            if (tunnel != null)
+            if (tunnel != null) {
+                logger.debug("WebSocket tunnel \"{}\" output: {}",
+                        tunnel.getUUID(), coalescer);
                 tunnel.close();
+            }
         }
         catch (GuacamoleException e) {
             logger.debug("Unable to close WebSocket tunnel.", e);
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.expiry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test for TimingWheel and HierarchicalWheel. Verifies that scheduled
+ * Expirations are returned at exactly their deadline across all levels of
+ * the wheel, and that registered Expirables are expired, deferred, and
+ * cancelled as expected.
+ */
+public class TimingWheelTest {
+
+    /**
+     * Expirable which expires at a mutable time, counting the number of
+     * times it has been expired.
+     */
+    private static class TestExpirable implements Expirable {
+
+        /**
+         * The time at which this Expirable should expire, in milliseconds
+         * since midnight January 1, 1970 GMT.
+         */
+        private volatile long expirationTime;
+
+        /**
+         * The number of times this Expirable has been expired.
+         */
+        private final AtomicInteger expired = new AtomicInteger();
+
+        /**
+         * Latch which is released when this Expirable is expired.
+         */
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        /**
+         * Creates a new TestExpirable which expires after the given delay.
+         *
+         * @param delay
+         *     The number of milliseconds from now at which the Expirable
+         *     should expire.
+         */
+        public TestExpirable(long delay) {
+            touch(delay);
+        }
+
+        /**
+         * Defers expiration of this Expirable until the given number of
+         * milliseconds from now.
+         *
+         * @param delay
+         *     The number of milliseconds from now at which the Expirable
+         *     should expire.
+         */
+        public final void touch(long delay) {
+            expirationTime = System.currentTimeMillis() + delay;
+        }
+
+        @Override
+        public long getExpirationTime() {
+            return expirationTime;
+        }
+
+        @Override
+        public void expire() {
+            expired.incrementAndGet();
+            latch.countDown();
+        }
+
+    }
+
+    /**
+     * Test which verifies that Expirations scheduled within any level of a
+     * HierarchicalWheel are returned exactly when their deadline is reached,
+     * that deadlines beyond the range of the wheel are clamped, and that
+     * cancelled Expirations are discarded while cascading.
+     */
+    @Test
+    public void testHierarchicalWheel() {
+
+        TimingWheel owner = new TimingWheel("test", 1000);
+        long start = 1000;
+        HierarchicalWheel wheel = new HierarchicalWheel(start);
+
+        long[] delays = {
+            1, 2, 63, 64, 65, 4095, 4096, 4097, 5000, 262143, 262144,
+            262145, 300000, HierarchicalWheel.MAX_DELAY
+        };
+
+        // Schedule one Expiration at each delay
+        Map<Expiration, Long> deadlines = new HashMap<Expiration, Long>();
+        for (long delay : delays) {
+            Expiration expiration = new Expiration(owner, new TestExpirable(0));
+            wheel.schedule(expiration, start + delay);
+            deadlines.put(expiration, start + delay);
+        }
+
+        // Deadlines beyond the range of the wheel are clamped
+        Expiration clamped = new Expiration(owner, new TestExpirable(0));
+        wheel.schedule(clamped, start + HierarchicalWheel.MAX_DELAY * 2);
+        deadlines.put(clamped, start + HierarchicalWheel.MAX_DELAY);
+
+        // Cancelled Expirations never reach the lowest level
+        Expiration cancelled = new Expiration(owner, new TestExpirable(0));
+        wheel.schedule(cancelled, start + 100000);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertFalse(cancelled.isActive());
+
+        assertEquals(delays.length + 2, wheel.size());
+
+        // Each Expiration must be returned exactly at its deadline
+        int returned = 0;
+        while (wheel.getTick() < start + HierarchicalWheel.MAX_DELAY) {
+            for (Expiration due = wheel.advance(); due != null; due = due.next) {
+                assertNotSame(cancelled, due);
+                assertEquals(deadlines.get(due).longValue(), wheel.getTick());
+                returned++;
+            }
+        }
+
+        assertEquals(deadlines.size(), returned);
+        assertEquals(0, wheel.size());
+
+    }
+
+    /**
+     * Test which verifies that deadlines which have already passed are
+     * returned by the next advance of a HierarchicalWheel.
+     */
+    @Test
+    public void testPastDeadline() {
+
+        TimingWheel owner = new TimingWheel("test", 1000);
+        HierarchicalWheel wheel = new HierarchicalWheel(500);
+
+        Expiration expiration = new Expiration(owner, new TestExpirable(0));
+        wheel.schedule(expiration, 10);
+
+        assertSame(expiration, wheel.advance());
+        assertNull(wheel.advance());
+
+    }
+
+    /**
+     * Test which verifies that registered Expirables are expired once their
+     * expiration time has passed, not before, and only once, and that the
+     * background thread stops once nothing remains registered.
+     *
+     * @throws InterruptedException
+     *     If the test is interrupted while waiting for expiration.
+     */
+    @Test
+    public void testExpire() throws InterruptedException {
+
+        TimingWheel wheel = new TimingWheel("test-expire", 10);
+        assertEquals(10, wheel.getTickDuration(TimeUnit.MILLISECONDS));
+
+        long registered = System.currentTimeMillis();
+        TestExpirable expirable = new TestExpirable(100);
+        Expiration expiration = wheel.register(expirable);
+        assertTrue(expiration.isActive());
+        assertEquals(1, wheel.getActiveCount());
+
+        assertTrue(expirable.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - registered >= 100);
+        assertFalse(expiration.isActive());
+        assertFalse(expiration.cancel());
+
+        // Expiration happens exactly once
+        Thread.sleep(50);
+        assertEquals(1, expirable.expired.get());
+        assertEquals(1, wheel.getExpirationCount());
+        assertEquals(0, wheel.getActiveCount());
+
+    }
+
+    /**
+     * Test which verifies that updating the expiration time of a registered
+     * Expirable defers its expiration, and that cancelled Expirables are
+     * never expired.
+     *
+     * @throws InterruptedException
+     *     If the test is interrupted while waiting for expiration.
+     */
+    @Test
+    public void testTouchAndCancel() throws InterruptedException {
+
+        TimingWheel wheel = new TimingWheel("test-touch", 10);
+
+        TestExpirable touched = new TestExpirable(100);
+        TestExpirable cancelled = new TestExpirable(100);
+        wheel.register(touched);
+        Expiration cancellation = wheel.register(cancelled);
+        assertTrue(cancellation.cancel());
+
+        // Keep touching one Expirable well beyond its original expiration
+        long deadline = System.currentTimeMillis() + 500;
+        while (System.currentTimeMillis() < deadline) {
+            touched.touch(100);
+            Thread.sleep(20);
+        }
+
+        assertEquals(0, touched.expired.get());
+
+        // Once no longer touched, the Expirable should expire
+        assertTrue(touched.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, cancelled.expired.get());
+        assertEquals(1, wheel.getExpirationCount());
+        assertEquals(0, wheel.getActiveCount());
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates BlobBuffer, verifying that "blob" instructions are
+ * encoded and decoded identically to GuacamoleInstruction and standard
+ * base64.
+ */
+public class BlobBufferTest {
+
+    /**
+     * Verifies that blobs of every length modulo three, including empty
+     * blobs, are written as the same "blob" instruction that would be
+     * produced by GuacamoleInstruction.
+     *
+     * @throws Exception
+     *     If reading or writing fails.
+     */
+    @Test
+    public void testWriteBlob() throws Exception {
+
+        byte[] data = new byte[BlobBuffer.MAX_BLOB_LENGTH * 2 + 2];
+        new Random(0).nextBytes(data);
+
+        StringWriter written = new StringWriter();
+        GuacamoleWriter writer = new WriterGuacamoleWriter(written);
+        StringBuilder expected = new StringBuilder();
+
+        BlobBuffer buffer = new BlobBuffer();
+        ByteArrayInputStream input = new ByteArrayInputStream(data);
+        int offset = 0;
+        int length;
+        while ((length = buffer.read(input)) != -1) {
+            buffer.writeBlob(writer, "12");
+            expected.append(new GuacamoleInstruction("blob", "12",
+                    Base64.getEncoder().encodeToString(
+                        Arrays.copyOfRange(data, offset, offset + length))));
+            offset += length;
+        }
+
+        // Empty blobs must also be encoded correctly
+        buffer.writeBlob(writer, "12");
+        expected.append(new GuacamoleInstruction("blob", "12", ""));
+
+        assertEquals(data.length, offset);
+        assertEquals(expected.toString(), written.toString());
+
+        for (int i = 1; i <= 3; i++) {
+            written.getBuffer().setLength(0);
+            buffer.read(new ByteArrayInputStream(data, 0, i));
+            buffer.writeBlob(writer, "0");
+            assertEquals(new GuacamoleInstruction("blob", "0",
+                    Base64.getEncoder().encodeToString(Arrays.copyOf(data, i))).toString(),
+                    written.toString());
+        }
+
+    }
+
+    /**
+     * Verifies that base64 data of every length modulo four, with and without
+     * padding, decodes to the original data.
+     */
+    @Test
+    public void testDecode() {
+
+        byte[] data = new byte[64];
+        new Random(1).nextBytes(data);
+
+        BlobBuffer buffer = new BlobBuffer();
+        for (int i = 0; i < data.length; i++) {
+
+            byte[] expected = Arrays.copyOf(data, i);
+            String padded = Base64.getEncoder().encodeToString(expected);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(expected);
+
+            buffer.decode(padded);
+            assertArrayEquals(expected, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+
+            buffer.decode(unpadded);
+            assertArrayEquals(expected, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+
+        }
+
+        // Blobs larger than the maximum sent are still decoded
+        byte[] large = new byte[BlobBuffer.MAX_BLOB_LENGTH * 3];
+        new Random(2).nextBytes(large);
+        buffer.decode(Base64.getEncoder().encodeToString(large));
+        assertArrayEquals(large, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+
+    }
+
+    /**
+     * Verifies that invalid base64 data is rejected.
+     */
+    @Test
+    public void testDecodeInvalid() {
+
+        BlobBuffer buffer = new BlobBuffer();
+        for (String invalid : new String[] { "A", "AB$D", "AB=D", "ABCDE", "éAAA" }) {
+            try {
+                buffer.decode(invalid);
+                fail("Invalid base64 \"" + invalid + "\" was accepted.");
+            }
+            catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+    }
+
+    /**
+     * Verifies that released buffers are reused.
+     */
+    @Test
+    public void testPool() {
+        BlobBuffer buffer = BlobBuffer.acquire();
+        buffer.release();
+        assertSame(buffer, BlobBuffer.acquire());
+    }
+
+}
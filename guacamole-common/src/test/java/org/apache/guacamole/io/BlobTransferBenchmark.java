@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark measuring the time taken to transfer 1 GiB through an
+ * intercepted stream, comparing the conversion of each blob to and from
+ * GuacamoleInstruction and base64 Strings against BlobBuffer. Only the cost
+ * of converting data is measured; data is read from memory and written to a
+ * Writer which discards all data. This benchmark is not run as part of the
+ * build, and can be run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.guacamole.io.BlobTransferBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx512m" })
+public class BlobTransferBenchmark {
+
+    /**
+     * The number of bytes transferred by each benchmark invocation.
+     */
+    private static final long TRANSFER_SIZE = 1L << 30;
+
+    /**
+     * The index of the intercepted stream.
+     */
+    private static final String STREAM_INDEX = "3";
+
+    /**
+     * InputStream which provides TRANSFER_SIZE bytes of data, repeating the
+     * contents of a smaller array.
+     */
+    private static class RepeatingInputStream extends InputStream {
+
+        /**
+         * The data to repeat.
+         */
+        private final byte[] data;
+
+        /**
+         * The number of bytes which remain to be read.
+         */
+        private long remaining = TRANSFER_SIZE;
+
+        /**
+         * Creates a new RepeatingInputStream which repeats the given data.
+         *
+         * @param data
+         *     The data to repeat.
+         */
+        public RepeatingInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            if (remaining == 0)
+                return -1;
+            remaining--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) {
+
+            if (remaining == 0)
+                return -1;
+
+            int length = (int) Math.min(Math.min(len, data.length), remaining);
+            System.arraycopy(data, 0, buffer, off, length);
+            remaining -= length;
+            return length;
+
+        }
+
+    }
+
+    /**
+     * Writer which discards all data.
+     */
+    private static class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] buffer, int off, int len) {
+        }
+
+        @Override
+        public void write(String str) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    /**
+     * Random data comprising each uploaded blob.
+     */
+    private byte[] data;
+
+    /**
+     * The base64 content of each downloaded blob.
+     */
+    private String encoded;
+
+    /**
+     * The writer receiving all uploaded blobs.
+     */
+    private GuacamoleWriter writer;
+
+    /**
+     * Generates the data transferred and the writer receiving that data.
+     */
+    @Setup
+    public void setup() {
+        data = new byte[BlobBuffer.MAX_BLOB_LENGTH];
+        new Random(0).nextBytes(data);
+        encoded = Base64.getEncoder().encodeToString(data);
+        writer = new WriterGuacamoleWriter(new NullWriter());
+    }
+
+    /**
+     * Uploads 1 GiB, allocating a new array for each blob read and encoding
+     * each blob within a new GuacamoleInstruction.
+     *
+     * @return
+     *     The number of blobs written.
+     *
+     * @throws IOException
+     *     If reading fails.
+     *
+     * @throws GuacamoleException
+     *     If writing fails.
+     */
+    @Benchmark
+    public long uploadInstruction() throws IOException, GuacamoleException {
+
+        InputStream input = new RepeatingInputStream(data);
+        long blobs = 0;
+
+        for (;;) {
+
+            byte[] blob = new byte[BlobBuffer.MAX_BLOB_LENGTH];
+            int length = input.read(blob);
+            if (length == -1)
+                return blobs;
+
+            writer.writeInstruction(new GuacamoleInstruction("blob", STREAM_INDEX,
+                    Base64.getEncoder().encodeToString(Arrays.copyOf(blob, length))));
+            blobs++;
+
+        }
+
+    }
+
+    /**
+     * Uploads 1 GiB using a pooled BlobBuffer.
+     *
+     * @return
+     *     The number of blobs written.
+     *
+     * @throws IOException
+     *     If reading fails.
+     *
+     * @throws GuacamoleException
+     *     If writing fails.
+     */
+    @Benchmark
+    public long uploadBlobBuffer() throws IOException, GuacamoleException {
+
+        InputStream input = new RepeatingInputStream(data);
+        BlobBuffer buffer = BlobBuffer.acquire();
+        long blobs = 0;
+
+        try {
+            while (buffer.read(input) != -1) {
+                buffer.writeBlob(writer, STREAM_INDEX);
+                blobs++;
+            }
+        }
+        finally {
+            buffer.release();
+        }
+
+        return blobs;
+
+    }
+
+    /**
+     * Downloads 1 GiB, decoding each blob into a new array.
+     *
+     * @return
+     *     A checksum of the data decoded.
+     */
+    @Benchmark
+    public long downloadDecode() {
+
+        long checksum = 0;
+        for (long received = 0; received < TRANSFER_SIZE; ) {
+            byte[] blob = Base64.getDecoder().decode(encoded);
+            checksum += blob[blob.length - 1];
+            received += blob.length;
+        }
+
+        return checksum;
+
+    }
+
+    /**
+     * Downloads 1 GiB, decoding each blob into a pooled BlobBuffer.
+     *
+     * @return
+     *     A checksum of the data decoded.
+     */
+    @Benchmark
+    public long downloadBlobBuffer() {
+
+        BlobBuffer buffer = BlobBuffer.acquire();
+        long checksum = 0;
+
+        try {
+            for (long received = 0; received < TRANSFER_SIZE; ) {
+                buffer.decode(encoded);
+                checksum += buffer.getData()[buffer.getLength() - 1];
+                received += buffer.getLength();
+            }
+        }
+        finally {
+            buffer.release();
+        }
+
+        return checksum;
+
+    }
+
+    /**
+     * Runs this benchmark.
+     *
+     * @param args
+     *     Ignored.
+     *
+     * @throws RunnerException
+     *     If the benchmark cannot be run.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BlobTransferBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
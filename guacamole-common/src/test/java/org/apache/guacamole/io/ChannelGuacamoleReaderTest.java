@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ChannelGuacamoleReader implementation of GuacamoleReader,
+ * validating that instructions are parsed correctly and identically to
+ * ReaderGuacamoleReader.
+ */
+public class ChannelGuacamoleReaderTest {
+
+    /**
+     * ReadableByteChannel which returns the contents of a byte array at most
+     * a few bytes at a time, such that instructions and multi-byte characters
+     * are split across reads.
+     */
+    private static class TrickleChannel implements ReadableByteChannel {
+
+        /**
+         * The data to return.
+         */
+        private final byte[] data;
+
+        /**
+         * The offset of the next byte to return.
+         */
+        private int offset = 0;
+
+        /**
+         * The number of bytes returned by each read, varying with each call.
+         */
+        private int chunkSize = 1;
+
+        /**
+         * Creates a new TrickleChannel which returns the given data.
+         *
+         * @param data
+         *     The data to return.
+         */
+        public TrickleChannel(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+
+            if (offset == data.length)
+                return -1;
+
+            int length = Math.min(Math.min(chunkSize, dst.remaining()), data.length - offset);
+            dst.put(data, offset, length);
+            offset += length;
+
+            chunkSize = chunkSize % 7 + 1;
+            return length;
+
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    /**
+     * Test of ChannelGuacamoleReader parsing.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test string.
+     */
+    @Test
+    public void testReader() throws GuacamoleException {
+
+        // Test string
+        final String test = "1.a,2.bc,3.def,10.helloworld;4.test,5.test2;0.;3.foo;";
+
+        GuacamoleReader reader = new ChannelGuacamoleReader(Channels.newChannel(
+                new ByteArrayInputStream(test.getBytes(StandardCharsets.UTF_8))));
+
+        GuacamoleInstruction instruction;
+
+        // Validate first test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(3, instruction.getArgs().size());
+        assertEquals("a", instruction.getOpcode());
+        assertEquals("bc", instruction.getArgs().get(0));
+        assertEquals("def", instruction.getArgs().get(1));
+        assertEquals("helloworld", instruction.getArgs().get(2));
+
+        // Validate second test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(1, instruction.getArgs().size());
+        assertEquals("test", instruction.getOpcode());
+        assertEquals("test2", instruction.getArgs().get(0));
+
+        // Validate third test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(0, instruction.getArgs().size());
+        assertEquals("", instruction.getOpcode());
+
+        // Validate fourth test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(0, instruction.getArgs().size());
+        assertEquals("foo", instruction.getOpcode());
+
+        // There should be no more instructions
+        instruction = reader.readInstruction();
+        assertNull(instruction);
+
+    }
+
+    /**
+     * Test of instruction views, verifying that element locations are
+     * reported correctly even when data arrives in small fragments.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test string.
+     */
+    @Test
+    public void testView() throws GuacamoleException {
+
+        final String test = "4.sync,8.12345678;5.mouse,2.10,3.200,1.0;";
+
+        ChannelGuacamoleReader reader = new ChannelGuacamoleReader(
+                new TrickleChannel(test.getBytes(StandardCharsets.UTF_8)));
+
+        GuacamoleInstructionView view = reader.readView();
+        assertNotNull(view);
+        assertEquals("4.sync,8.12345678;", view.toString());
+        assertEquals(2, view.getElementCount());
+        assertTrue(view.elementEquals(0, "sync"));
+        assertFalse(view.elementEquals(0, "sun"));
+        assertEquals("12345678", view.getElement(1));
+
+        view = reader.readView();
+        assertNotNull(view);
+        assertEquals("5.mouse,2.10,3.200,1.0;", view.toString());
+        assertEquals(4, view.getElementCount());
+        assertTrue(view.elementEquals(0, "mouse"));
+        assertEquals(3, view.getElementLength(2));
+        assertEquals('2', view.getBuffer()[view.getElementOffset(2)]);
+
+        assertNull(reader.readView());
+
+    }
+
+    /**
+     * Verifies that ChannelGuacamoleReader returns exactly the same data as
+     * ReaderGuacamoleReader for a stream which contains multi-byte characters
+     * and is large enough to require both wrapping around and growing the
+     * internal buffer.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test string.
+     */
+    @Test
+    public void testCompatibility() throws GuacamoleException {
+
+        StringBuilder test = new StringBuilder();
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+
+            String value = "élément-€-😀-" + i;
+            test.append("4.blob,").append(Integer.toString(i).length()).append('.').append(i)
+                .append(',').append(value.length()).append('.').append(value).append(';');
+
+            // Periodically include an instruction larger than the buffer
+            if (i % 100 == 0) {
+                large.append("0123456789");
+                test.append("3.img,").append(large.length()).append('.').append(large).append(';');
+            }
+
+        }
+
+        byte[] data = test.toString().getBytes(StandardCharsets.UTF_8);
+
+        GuacamoleReader expected = new ReaderGuacamoleReader(new StringReader(test.toString()));
+        GuacamoleReader actual = new ChannelGuacamoleReader(new TrickleChannel(data), 64);
+
+        char[] expectedInstruction;
+        while ((expectedInstruction = expected.read()) != null)
+            assertArrayEquals(expectedInstruction, actual.read());
+
+        assertNull(actual.read());
+
+    }
+
+}
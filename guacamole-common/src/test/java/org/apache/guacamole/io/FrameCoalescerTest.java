@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test for FrameCoalescer and FrameHistogram. Verifies that frames are
+ * sent as dictated by the coalescing policy, and that frame statistics are
+ * recorded.
+ */
+public class FrameCoalescerTest {
+
+    /**
+     * An encoded "sync" instruction.
+     */
+    private static final String SYNC = "4.sync,8.12345678;";
+
+    /**
+     * An encoded instruction which is not a "sync" instruction.
+     */
+    private static final String SIZE = "4.size,1.0,4.1024,3.768;";
+
+    /**
+     * Test which verifies that "sync" instructions are recognized in both
+     * character and UTF-8 encoded form.
+     */
+    @Test
+    public void testIsSync() {
+
+        assertTrue(FrameCoalescer.isSync(SYNC.toCharArray()));
+        assertFalse(FrameCoalescer.isSync(SIZE.toCharArray()));
+        assertFalse(FrameCoalescer.isSync("4.syn".toCharArray()));
+        assertFalse(FrameCoalescer.isSync("5.syncs,1.0;".toCharArray()));
+
+        ByteBuffer buffer = ByteBuffer.wrap((SIZE + SYNC).getBytes(StandardCharsets.UTF_8));
+        assertFalse(FrameCoalescer.isSync(buffer));
+        buffer.position(SIZE.length());
+        assertTrue(FrameCoalescer.isSync(buffer));
+        assertEquals(SIZE.length(), buffer.position());
+
+    }
+
+    /**
+     * Test which verifies that the default policy sends each frame as soon
+     * as no further data is available, or once full.
+     */
+    @Test
+    public void testDefaultPolicy() {
+
+        FrameCoalescer coalescer = FrameCoalescingPolicy.DEFAULT.newCoalescer();
+        assertTrue(coalescer.isEmpty());
+        assertFalse(coalescer.isFlushRequired(false));
+
+        coalescer.instructionBuffered(SIZE.length(), false);
+        assertFalse(coalescer.isFlushRequired(true));
+        assertTrue(coalescer.isFlushRequired(false));
+
+        coalescer.instructionBuffered(FrameCoalescingPolicy.DEFAULT_MAX_FRAME_SIZE, false);
+        assertTrue(coalescer.isFlushRequired(true));
+
+        coalescer.frameFlushed();
+        assertTrue(coalescer.isEmpty());
+        assertEquals(1, coalescer.getFrameSizes().getCount());
+        assertEquals(SIZE.length() + FrameCoalescingPolicy.DEFAULT_MAX_FRAME_SIZE,
+                coalescer.getFrameSizes().getMax());
+
+    }
+
+    /**
+     * Test which verifies that incomplete frames are held for the maximum
+     * delay, while complete frames are sent immediately.
+     *
+     * @throws Exception
+     *     If an error occurs while reading from the test reader.
+     */
+    @Test
+    public void testSyncAligned() throws Exception {
+
+        FrameCoalescer coalescer = new FrameCoalescingPolicy(
+                TimeUnit.SECONDS.toMicros(60), 65536, true).newCoalescer();
+
+        // Incomplete frames are held while the delay has not elapsed
+        coalescer.instructionBuffered(SIZE.length(), false);
+        assertFalse(coalescer.isFlushRequired(false));
+        assertFalse(coalescer.isFlushRequired(true));
+        assertTrue(coalescer.getRemainingDelay() > 0);
+
+        // Complete frames are sent once no further data is available
+        coalescer.instructionBuffered(SYNC.length(), true);
+        assertTrue(coalescer.isFlushRequired(false));
+        assertFalse(coalescer.isFlushRequired(true));
+
+        PipedWriter writer = new PipedWriter();
+        GuacamoleReader reader = new ReaderGuacamoleReader(new PipedReader(writer));
+        assertTrue(coalescer.awaitFlush(reader));
+
+        // Frames are read further while data is available
+        writer.write(SIZE);
+        assertFalse(coalescer.awaitFlush(reader));
+
+    }
+
+    /**
+     * Test which verifies that incomplete frames are sent once the maximum
+     * delay has elapsed.
+     *
+     * @throws Exception
+     *     If an error occurs while reading from the test reader.
+     */
+    @Test
+    public void testMaxDelay() throws Exception {
+
+        FrameCoalescer coalescer = new FrameCoalescingPolicy(1000, 65536, true).newCoalescer();
+        GuacamoleReader reader = new ReaderGuacamoleReader(new PipedReader(new PipedWriter()));
+
+        coalescer.instructionBuffered(SIZE.length(), false);
+
+        long started = System.nanoTime();
+        assertTrue(coalescer.awaitFlush(reader));
+        assertTrue(System.nanoTime() - started >= TimeUnit.MICROSECONDS.toNanos(1000));
+        assertEquals(0, coalescer.getRemainingDelay());
+
+        coalescer.frameFlushed();
+        assertTrue(coalescer.getFrameLatencies().getMax() >= 1000);
+
+    }
+
+    /**
+     * Test which verifies that the frame size is limited by the estimated
+     * bandwidth, but never below the minimum frame size.
+     */
+    @Test
+    public void testBandwidthLimit() {
+
+        FrameCoalescer coalescer = new FrameCoalescingPolicy(10000, 65536, true).newCoalescer();
+        assertEquals(65536, coalescer.getFrameLimit());
+
+        // 1 MB/s allows 10000 bytes within 10ms
+        coalescer.frameSent(1000, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(1000000, coalescer.getBandwidth(), 1);
+        assertEquals(10000, coalescer.getFrameLimit(), 1);
+
+        // Slower estimates never reduce frames below the minimum size
+        for (int i = 0; i < 100; i++)
+            coalescer.frameSent(1, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(FrameCoalescingPolicy.MIN_FRAME_SIZE, coalescer.getFrameLimit());
+
+    }
+
+    /**
+     * Test which verifies that histogram percentiles are bounded by the
+     * buckets containing them.
+     */
+    @Test
+    public void testHistogram() {
+
+        FrameHistogram histogram = new FrameHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+        assertEquals(1, histogram.getCount(1));
+        assertEquals(37, histogram.getCount(7));
+
+    }
+
+}
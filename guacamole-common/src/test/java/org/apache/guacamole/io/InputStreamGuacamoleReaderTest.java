@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the InputStreamGuacamoleReader implementation of GuacamoleReader,
+ * validating that instruction boundaries are located correctly within
+ * UTF-8 data.
+ */
+public class InputStreamGuacamoleReaderTest {
+
+    /**
+     * InputStream which returns the contents of a byte array at most a few
+     * bytes at a time, such that instructions and multi-byte characters are
+     * split across reads.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        /**
+         * The number of bytes returned by each read, varying with each call.
+         */
+        private int chunkSize = 1;
+
+        /**
+         * Creates a new TrickleInputStream which returns the given data.
+         *
+         * @param data
+         *     The data to return.
+         */
+        public TrickleInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int result = super.read(b, off, Math.min(len, chunkSize));
+            chunkSize = chunkSize % 7 + 1;
+            return result;
+        }
+
+    }
+
+    /**
+     * Returns the given element prefixed with its length in Unicode code
+     * points, as required by the Guacamole protocol.
+     *
+     * @param value
+     *     The value of the element.
+     *
+     * @return
+     *     The given element in the form used by the Guacamole protocol.
+     */
+    private static String element(String value) {
+        return value.codePointCount(0, value.length()) + "." + value;
+    }
+
+    /**
+     * Test of InputStreamGuacamoleReader parsing.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test string.
+     */
+    @Test
+    public void testReader() throws GuacamoleException {
+
+        // Test string
+        final String test = "1.a,2.bc,3.def,10.helloworld;4.test,5.test2;0.;3.foo;";
+
+        GuacamoleReader reader = new InputStreamGuacamoleReader(
+                new ByteArrayInputStream(test.getBytes(StandardCharsets.UTF_8)));
+
+        GuacamoleInstruction instruction;
+
+        // Validate first test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(3, instruction.getArgs().size());
+        assertEquals("a", instruction.getOpcode());
+        assertEquals("bc", instruction.getArgs().get(0));
+        assertEquals("def", instruction.getArgs().get(1));
+        assertEquals("helloworld", instruction.getArgs().get(2));
+
+        // Validate second test instruction
+        assertArrayEquals("4.test,5.test2;".toCharArray(), reader.read());
+
+        // Validate third test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(0, instruction.getArgs().size());
+        assertEquals("", instruction.getOpcode());
+
+        // Validate fourth test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(0, instruction.getArgs().size());
+        assertEquals("foo", instruction.getOpcode());
+
+        // There should be no more instructions
+        instruction = reader.readInstruction();
+        assertNull(instruction);
+
+    }
+
+    /**
+     * Verifies that element lengths are interpreted as Unicode code points,
+     * and that readBytes() returns exactly the original bytes of each
+     * instruction, even when data arrives in small fragments and the internal
+     * buffer must wrap around or grow.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test data.
+     */
+    @Test
+    public void testBytes() throws GuacamoleException {
+
+        List<String> values = new ArrayList<String>();
+        List<String> instructions = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+
+            StringBuilder value = new StringBuilder("élément-€-😀-");
+            for (int j = 0; j < i % 37; j++)
+                value.append("𝄞");
+
+            values.add(value.toString());
+            instructions.add(element("blob") + "," + element(Integer.toString(i))
+                    + "," + element(value.toString()) + ";");
+
+        }
+
+        StringBuilder test = new StringBuilder();
+        for (String instruction : instructions)
+            test.append(instruction);
+
+        InputStream input = new TrickleInputStream(test.toString().getBytes(StandardCharsets.UTF_8));
+        GuacamoleByteReader reader = new InputStreamGuacamoleReader(input, 64);
+
+        for (int i = 0; i < instructions.size(); i++) {
+
+            ByteBuffer data = reader.readBytes();
+            assertNotNull(data);
+
+            byte[] actual = new byte[data.remaining()];
+            data.get(actual);
+            assertArrayEquals(instructions.get(i).getBytes(StandardCharsets.UTF_8), actual);
+
+            GuacamoleInstruction instruction = reader.decodeInstruction();
+            assertEquals("blob", instruction.getOpcode());
+            assertEquals(Integer.toString(i), instruction.getArgs().get(0));
+            assertEquals(values.get(i), instruction.getArgs().get(1));
+
+        }
+
+        assertNull(reader.readBytes());
+
+    }
+
+}
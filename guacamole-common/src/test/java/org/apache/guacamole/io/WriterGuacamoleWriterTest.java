@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.StringWriter;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates WriterGuacamoleWriter, verifying that instructions
+ * are serialized correctly and that data is flushed only outside of batches.
+ */
+public class WriterGuacamoleWriterTest {
+
+    /**
+     * Writer which records all data written, counting the number of times
+     * it has been flushed.
+     */
+    private static class FlushCountingWriter extends StringWriter {
+
+        /**
+         * The number of times this writer has been flushed.
+         */
+        private int flushes = 0;
+
+        @Override
+        public void flush() {
+            flushes++;
+            super.flush();
+        }
+
+    }
+
+    /**
+     * Test which verifies that instructions are serialized identically to
+     * GuacamoleInstruction.toString(), including instructions larger than
+     * the initial serialization buffer.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing.
+     */
+    @Test
+    public void testWriteInstruction() throws GuacamoleException {
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+            large.append((char) ('a' + i % 26));
+
+        GuacamoleInstruction[] instructions = {
+            new GuacamoleInstruction("nop"),
+            new GuacamoleInstruction("key", "65307", "1"),
+            new GuacamoleInstruction("args", "", "VERSION_1_1_0", ""),
+            new GuacamoleInstruction("blob", "0", large.toString()),
+            new GuacamoleInstruction("sync", "1234567890")
+        };
+
+        FlushCountingWriter output = new FlushCountingWriter();
+        GuacamoleWriter writer = new WriterGuacamoleWriter(output);
+
+        StringBuilder expected = new StringBuilder();
+        for (GuacamoleInstruction instruction : instructions) {
+            writer.writeInstruction(instruction);
+            expected.append(instruction.toString());
+        }
+
+        assertEquals(expected.toString(), output.toString());
+        assertEquals(instructions.length, output.flushes);
+
+    }
+
+    /**
+     * Test which verifies that data written within a batch, including nested
+     * batches, is flushed only once the outermost batch ends.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing.
+     */
+    @Test
+    public void testBatch() throws GuacamoleException {
+
+        FlushCountingWriter output = new FlushCountingWriter();
+        GuacamoleWriter writer = new WriterGuacamoleWriter(output);
+
+        writer.beginBatch();
+        writer.writeInstruction(new GuacamoleInstruction("size", "1024", "768"));
+
+        writer.beginBatch();
+        writer.write("5.mouse,1.0,1.0,1.0;".toCharArray());
+        writer.endBatch();
+
+        assertEquals(0, output.flushes);
+
+        writer.write("3.key,5.65307,1.1;".toCharArray());
+        writer.endBatch();
+
+        assertEquals(1, output.flushes);
+        assertEquals("4.size,4.1024,3.768;5.mouse,1.0,1.0,1.0;3.key,5.65307,1.1;",
+                output.toString());
+
+        // Unmatched calls to endBatch() are ignored
+        writer.endBatch();
+        writer.write("3.nop;".toCharArray());
+        assertEquals(2, output.flushes);
+
+    }
+
+}
@@ -0,0 +1,375 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Stress test for the reader hand-off of AbstractGuacamoleTunnel. Several
+ * threads emulate the overlapping long-poll requests of the HTTP tunnel,
+ * each reading until another thread is waiting, verifying that every
+ * instruction is read exactly once and in order, and that no two threads
+ * ever hold read access at the same time.
+ */
+public class AbstractGuacamoleTunnelTest {
+
+    /**
+     * The number of instructions read from the test socket during the
+     * long-poll stress test.
+     */
+    private static final int INSTRUCTIONS = 200000;
+
+    /**
+     * The number of threads emulating concurrent long-poll requests.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Reader which produces a fixed number of "sync" instructions having
+     * sequential timestamps. The reader is deliberately not thread-safe, such
+     * that concurrent use would produce duplicate or skipped timestamps.
+     */
+    private static class SequenceReader implements GuacamoleReader {
+
+        /**
+         * The timestamp of the next instruction to read.
+         */
+        private int next = 0;
+
+        /**
+         * The number of threads currently holding read access, as tracked
+         * by the test harness.
+         */
+        private final AtomicInteger owners = new AtomicInteger();
+
+        @Override
+        public boolean available() {
+            return next < INSTRUCTIONS;
+        }
+
+        @Override
+        public char[] read() {
+            GuacamoleInstruction instruction = readInstruction();
+            return instruction == null ? null : instruction.toString().toCharArray();
+        }
+
+        @Override
+        public GuacamoleInstruction readInstruction() {
+
+            if (next >= INSTRUCTIONS)
+                return null;
+
+            return new GuacamoleInstruction("sync", Integer.toString(next++));
+
+        }
+
+    }
+
+    /**
+     * Tunnel whose socket provides only a SequenceReader.
+     */
+    private static class TestTunnel extends AbstractGuacamoleTunnel {
+
+        /**
+         * The reader of the socket of this tunnel.
+         */
+        private final SequenceReader reader = new SequenceReader();
+
+        /**
+         * The socket of this tunnel.
+         */
+        private final GuacamoleSocket socket = new GuacamoleSocket() {
+
+            @Override
+            public GuacamoleReader getReader() {
+                return reader;
+            }
+
+            @Override
+            public GuacamoleWriter getWriter() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+        };
+
+        /**
+         * The UUID of this tunnel.
+         */
+        private final UUID uuid = UUID.randomUUID();
+
+        @Override
+        public UUID getUUID() {
+            return uuid;
+        }
+
+        @Override
+        public GuacamoleSocket getSocket() {
+            return socket;
+        }
+
+    }
+
+    /**
+     * Test which emulates concurrent long-poll requests, each acquiring read
+     * access with a timeout and reading until another request is waiting,
+     * verifying that all instructions are read exactly once, in order.
+     *
+     * @throws Exception
+     *     If a test thread fails or is interrupted.
+     */
+    @Test
+    public void testLongPollOrdering() throws Exception {
+
+        final TestTunnel tunnel = new TestTunnel();
+        final List<Integer> timestamps = new ArrayList<Integer>(INSTRUCTIONS);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+
+            final Random random = new Random(i);
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        start.await();
+
+                        while (true) {
+
+                            GuacamoleReader reader = tunnel.acquireReader(1, TimeUnit.SECONDS);
+                            if (reader == null)
+                                continue;
+
+                            try {
+
+                                assertEquals("Read access held concurrently.",
+                                        1, tunnel.reader.owners.incrementAndGet());
+
+                                // Read at least one instruction, stopping
+                                // once another request is waiting, as
+                                // doRead() does
+                                int limit = 1 + random.nextInt(64);
+                                for (int read = 0; read < limit; read++) {
+
+                                    GuacamoleInstruction instruction = reader.readInstruction();
+                                    if (instruction == null)
+                                        return;
+
+                                    timestamps.add(Integer.valueOf(instruction.getArgs().get(0)));
+
+                                    if (tunnel.hasQueuedReaderThreads())
+                                        break;
+
+                                }
+
+                            }
+                            finally {
+                                tunnel.reader.owners.decrementAndGet();
+                                tunnel.releaseReader();
+                            }
+
+                        }
+
+                    }
+                    catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+
+                }
+
+            };
+
+            threads[i].start();
+
+        }
+
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        // Every instruction must have been read exactly once, in order
+        assertEquals(INSTRUCTIONS, timestamps.size());
+        for (int i = 0; i < INSTRUCTIONS; i++)
+            assertEquals(i, timestamps.get(i).intValue());
+
+    }
+
+    /**
+     * Test which verifies that timed acquisition of read access gives up
+     * while another thread holds read access, that waiting threads are
+     * reported, and that read access is handed off once released.
+     *
+     * @throws Exception
+     *     If the test thread is interrupted.
+     */
+    @Test
+    public void testTimedHandoff() throws Exception {
+
+        final TestTunnel tunnel = new TestTunnel();
+        assertNotNull(tunnel.acquireReader());
+
+        // Read access cannot be acquired while held
+        final AtomicReference<GuacamoleReader> acquired = new AtomicReference<GuacamoleReader>();
+        Thread waiter = new Thread() {
+
+            @Override
+            public void run() {
+                acquired.set(tunnel.acquireReader(50, TimeUnit.MILLISECONDS));
+            }
+
+        };
+
+        waiter.start();
+        waiter.join();
+        assertNull(acquired.get());
+        assertFalse(tunnel.hasQueuedReaderThreads());
+
+        // Read access is handed off once released
+        waiter = new Thread() {
+
+            @Override
+            public void run() {
+                acquired.set(tunnel.acquireReader(1, TimeUnit.MINUTES));
+                tunnel.releaseReader();
+            }
+
+        };
+
+        waiter.start();
+        while (!tunnel.hasQueuedReaderThreads())
+            Thread.yield();
+
+        tunnel.releaseReader();
+        waiter.join();
+        assertSame(tunnel.reader, acquired.get());
+
+    }
+
+    /**
+     * Test which verifies that read access is reentrant, and that only the
+     * thread holding read access may release it.
+     *
+     * @throws Exception
+     *     If the test thread is interrupted.
+     */
+    @Test
+    public void testReentrant() throws Exception {
+
+        final TestTunnel tunnel = new TestTunnel();
+        tunnel.acquireReader();
+        tunnel.acquireReader();
+        tunnel.releaseReader();
+
+        // Read access is still held by this thread
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread other = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    tunnel.releaseReader();
+                }
+                catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+
+        };
+
+        other.start();
+        other.join();
+        assertTrue(failure.get() instanceof IllegalMonitorStateException);
+
+        tunnel.releaseReader();
+        assertNotNull(tunnel.acquireReader(0, TimeUnit.MILLISECONDS));
+        tunnel.releaseReader();
+
+    }
+
+    /**
+     * Test which verifies that tunnel extras may be set and removed
+     * concurrently.
+     *
+     * @throws Exception
+     *     If a test thread is interrupted.
+     */
+    @Test
+    public void testExtras() throws Exception {
+
+        final TestTunnel tunnel = new TestTunnel();
+
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+
+            final String key = "key-" + i;
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++)
+                        tunnel.setExtra(key, j);
+                }
+
+            };
+
+            threads[i].start();
+
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int i = 0; i < THREADS; i++)
+            assertEquals(9999, tunnel.getExtra("key-" + i));
+
+        tunnel.setExtra("key-0", null);
+        assertNull(tunnel.getExtra("key-0"));
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.net;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import org.apache.guacamole.GuacamoleException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates SSLGuacamoleSocketContext, verifying that configured
+ * protocols and cipher suites are applied to created sockets.
+ */
+public class SSLGuacamoleSocketContextTest {
+
+    /**
+     * Verifies that sockets created by an SSLGuacamoleSocketContext enable
+     * only the configured protocols and cipher suites, and that no
+     * handshakes are counted until a handshake is actually performed.
+     *
+     * @throws Exception
+     *     If the SSL/TLS context or a local socket cannot be created.
+     */
+    @Test
+    public void testCreateSocket() throws Exception {
+
+        SSLContext sslContext = SSLGuacamoleSocketContext.createSSLContext(null);
+        String protocol = sslContext.getDefaultSSLParameters().getProtocols()[0];
+        String cipherSuite = sslContext.getDefaultSSLParameters().getCipherSuites()[0];
+
+        SSLGuacamoleSocketContext context = new SSLGuacamoleSocketContext(
+                sslContext, new String[] { protocol },
+                new String[] { cipherSuite });
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                Socket plain = new Socket(server.getInetAddress(), server.getLocalPort());
+                SSLSocket socket = context.createSocket(plain, "localhost", server.getLocalPort())) {
+            assertArrayEquals(new String[] { protocol }, socket.getEnabledProtocols());
+            assertArrayEquals(new String[] { cipherSuite }, socket.getEnabledCipherSuites());
+        }
+
+        assertEquals(0, context.getHandshakeCount());
+        assertEquals(0, context.getResumedHandshakeCount());
+        assertEquals(0, context.getResumptionRate(), 0);
+
+    }
+
+    /**
+     * Verifies that requesting an unknown security provider fails with a
+     * GuacamoleException.
+     */
+    @Test(expected = GuacamoleException.class)
+    public void testUnknownProvider() throws GuacamoleException {
+        SSLGuacamoleSocketContext.createSSLContext("org.example.NoSuchProvider");
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.protocol;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.net.GuacamoleSocket;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates ConfiguredGuacamoleSocket, verifying that the
+ * Guacamole protocol handshake is sent correctly and with as few writes as
+ * possible.
+ */
+public class ConfiguredGuacamoleSocketTest {
+
+    /**
+     * Writer which records all data written, additionally recording the data
+     * written as of each flush.
+     */
+    private static class FlushRecordingWriter extends StringWriter {
+
+        /**
+         * All data written as of each flush, separated by newlines.
+         */
+        private final StringBuilder flushed = new StringBuilder();
+
+        @Override
+        public void flush() {
+            flushed.append(toString()).append('\n');
+            super.flush();
+        }
+
+    }
+
+    /**
+     * GuacamoleSocket which reads the given server response, recording all
+     * data written.
+     */
+    private static class TestSocket implements GuacamoleSocket {
+
+        /**
+         * The reader providing the server response.
+         */
+        private final GuacamoleReader reader;
+
+        /**
+         * The writer recording all data written.
+         */
+        private final GuacamoleWriter writer;
+
+        /**
+         * Creates a new TestSocket which reads the given server response and
+         * records all data written to the given writer.
+         *
+         * @param response
+         *     The Guacamole protocol data sent by the server.
+         *
+         * @param output
+         *     The writer which should receive all data written.
+         */
+        public TestSocket(String response, StringWriter output) {
+            this.reader = new ReaderGuacamoleReader(new StringReader(response));
+            this.writer = new WriterGuacamoleWriter(output);
+        }
+
+        @Override
+        public GuacamoleReader getReader() {
+            return reader;
+        }
+
+        @Override
+        public GuacamoleWriter getWriter() {
+            return writer;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+    }
+
+    /**
+     * Test which verifies that everything which does not depend on the
+     * server's "args" is sent along with "select", and that the remainder of
+     * the handshake is sent with a single write.
+     *
+     * @throws GuacamoleException
+     *     If the handshake fails.
+     */
+    @Test
+    public void testPipelinedHandshake() throws GuacamoleException {
+
+        GuacamoleConfiguration config = new GuacamoleConfiguration();
+        config.setProtocol("vnc");
+        config.setParameter("hostname", "localhost");
+
+        GuacamoleClientInformation info = new GuacamoleClientInformation();
+        info.setTimezone("UTC");
+
+        FlushRecordingWriter output = new FlushRecordingWriter();
+        ConfiguredGuacamoleSocket socket = new ConfiguredGuacamoleSocket(
+                new TestSocket("4.args,13.VERSION_1_1_0,8.hostname;"
+                        + "5.ready,5.$abcd;", output), config, info);
+
+        assertEquals("$abcd", socket.getConnectionID());
+        assertEquals(GuacamoleProtocolVersion.VERSION_1_1_0, socket.getProtocolVersion());
+
+        String select = "6.select,3.vnc;"
+                + "4.size,4.1024,3.768,2.96;"
+                + "5.audio;5.video;5.image;";
+
+        String connect = "8.timezone,3.UTC;"
+                + "7.connect,13.VERSION_1_1_0,9.localhost;";
+
+        assertEquals(select + "\n" + select + connect + "\n", output.flushed.toString());
+
+    }
+
+}
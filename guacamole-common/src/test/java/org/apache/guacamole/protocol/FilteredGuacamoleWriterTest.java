@@ -64,5 +64,73 @@ public class FilteredGuacamoleWriterTest {
         assertEquals("3.yes,1.A;3.yes,1.C;3.yes,1.D;3.yes,5.hello;3.yes,5.world;", stringWriter.toString());
 
     }
-    
+
+    /**
+     * Filter which applies only to "key" instructions, dropping those for the
+     * "a" key and replacing all others with "nop".
+     */
+    private static class KeyFilter implements GuacamoleFilter {
+
+        @Override
+        public boolean appliesTo(String opcode) {
+            return opcode.equals("key");
+        }
+
+        @Override
+        public GuacamoleInstruction filter(GuacamoleInstruction instruction) throws GuacamoleException {
+
+            if (!instruction.getOpcode().equals("key"))
+                fail("Filter invoked for instruction it does not apply to.");
+
+            if (instruction.getArgs().get(0).equals("97"))
+                return null;
+
+            return new GuacamoleInstruction("nop");
+
+        }
+
+    }
+
+    @Test
+    public void testOpcodeFilter() throws Exception {
+
+        StringWriter stringWriter = new StringWriter();
+        GuacamoleWriter writer = new FilteredGuacamoleWriter(new WriterGuacamoleWriter(stringWriter),
+                                                             new KeyFilter());
+
+        // Write instructions, only some of which the filter applies to
+        writer.write("5.mouse,1.0,1.0,1.1;3.key,2.97,1.1;3.key,2.98,1.1;4.sync,3.123;".toCharArray());
+
+        // Validate filtered results
+        assertEquals("5.mouse,1.0,1.0,1.1;3.nop;4.sync,3.123;", stringWriter.toString());
+
+    }
+
+    @Test
+    public void testFilterChain() throws Exception {
+
+        StringWriter stringWriter = new StringWriter();
+        GuacamoleWriter writer = new FilteredGuacamoleWriter(new WriterGuacamoleWriter(stringWriter),
+                new GuacamoleFilterChain(new BlockedOpcodeFilter("mouse"), new KeyFilter()));
+
+        // Write instructions through both filters
+        writer.write("5.mouse,1.0,1.0,1.1;3.key,2.97,1.1;3.key,2.98,1.1;4.sync,3.123;".toCharArray());
+
+        // Incomplete instructions must be rejected
+        try {
+            writer.write("4.sync,3.456;3.key,2.9".toCharArray());
+            fail("Incomplete instruction was not rejected.");
+        }
+        catch (GuacamoleException e) {
+            // Expected
+        }
+
+        // The same writer must remain usable for later, complete writes
+        writer.write("4.sync,3.789;".toCharArray());
+
+        // Validate filtered results
+        assertEquals("3.nop;4.sync,3.123;4.sync,3.456;4.sync,3.789;", stringWriter.toString());
+
+    }
+
 }
@@ -118,4 +118,60 @@ public class GuacamoleParserTest {
 
     }
 
+    /**
+     * Test of lazy parsing, verifying that instruction views refer to the
+     * original data and that known opcodes are interned.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test string.
+     */
+    @Test
+    public void testLazyParser() throws GuacamoleException {
+
+        GuacamoleParser lazyParser = new GuacamoleParser(true);
+
+        // Test string
+        char buffer[] = "5.mouse,2.10,2.20,1.1;4.xyzw,1.a;".toCharArray();
+        int offset = 0;
+        int length = buffer.length;
+
+        GuacamoleInstructionView view;
+        int parsed;
+
+        // Parse more data
+        while (length > 0 && (parsed = lazyParser.append(buffer, offset, length)) != 0) {
+            offset += parsed;
+            length -= parsed;
+        }
+
+        // Validate first test instruction
+        assertTrue(lazyParser.hasNext());
+        view = lazyParser.nextView();
+        assertNotNull(view);
+        assertSame(buffer, view.getBuffer());
+        assertEquals(0, view.getOffset());
+        assertEquals(22, view.getLength());
+        assertEquals(4, view.getElementCount());
+        assertSame("mouse", view.getOpcode());
+        assertEquals("20", view.getElement(2));
+
+        // Parse more data
+        while (length > 0 && (parsed = lazyParser.append(buffer, offset, length)) != 0) {
+            offset += parsed;
+            length -= parsed;
+        }
+
+        // Validate second test instruction, which has an unknown opcode
+        assertTrue(lazyParser.hasNext());
+        GuacamoleInstruction instruction = lazyParser.next();
+        assertNotNull(instruction);
+        assertEquals("xyzw", instruction.getOpcode());
+        assertEquals(1, instruction.getArgs().size());
+        assertEquals("a", instruction.getArgs().get(0));
+
+        // There should be no more instructions
+        assertFalse(lazyParser.hasNext());
+
+    }
+
 }
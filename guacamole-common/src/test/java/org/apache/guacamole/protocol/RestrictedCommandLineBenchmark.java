@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark measuring the cost of each keystroke checked against a
+ * RestrictedCommandPolicy, for blacklists of varying size. This benchmark is
+ * not run as part of the build, and can be run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.guacamole.protocol.RestrictedCommandLineBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestrictedCommandLineBenchmark {
+
+    /**
+     * The number of blacklisted commands.
+     */
+    @Param({"10", "100", "1000"})
+    public int commands;
+
+    /**
+     * Keystrokes typed by each benchmark invocation, consisting of ordinary
+     * typing interspersed with occasional cursor movement and deletion.
+     */
+    private int[] keystrokes;
+
+    /**
+     * The index of the next keystroke to type.
+     */
+    private int next;
+
+    /**
+     * The line receiving the keystrokes.
+     */
+    private RestrictedCommandLine line;
+
+    /**
+     * Compiles a blacklist of random commands, none of which will be typed,
+     * and generates the keystrokes to be typed.
+     */
+    @Setup
+    public void setup() {
+
+        Random random = new Random(commands);
+
+        // Blacklisted commands use only characters never typed
+        List<String> blacklist = new ArrayList<String>(commands);
+        for (int i = 0; i < commands; i++) {
+            StringBuilder command = new StringBuilder();
+            int length = 4 + random.nextInt(12);
+            for (int j = 0; j < length; j++)
+                command.append((char) ('A' + random.nextInt(26)));
+            blacklist.add(command.toString());
+        }
+
+        // Typed text is lowercase, with each line entered after 80 keys
+        keystrokes = new int[8192];
+        for (int i = 0; i < keystrokes.length; i++) {
+            int choice = random.nextInt(100);
+            if (i % 80 == 79)
+                keystrokes[i] = RestrictedCommandLine.KEYSYM_RETURN;
+            else if (choice < 3)
+                keystrokes[i] = RestrictedCommandLine.KEYSYM_LEFT;
+            else if (choice < 5)
+                keystrokes[i] = RestrictedCommandLine.KEYSYM_BACKSPACE;
+            else
+                keystrokes[i] = 'a' + random.nextInt(26);
+        }
+
+        line = new RestrictedCommandPolicy(blacklist,
+                Collections.<String>emptyList()).newCommandLine();
+
+    }
+
+    /**
+     * Types a single keystroke.
+     *
+     * @return
+     *     Whether the line is restricted after the keystroke.
+     */
+    @Benchmark
+    public boolean keyPressed() {
+        int keysym = keystrokes[next];
+        next = (next + 1) & (keystrokes.length - 1);
+        return line.keyPressed(keysym);
+    }
+
+    /**
+     * Runs this benchmark.
+     *
+     * @param args
+     *     Ignored.
+     *
+     * @throws RunnerException
+     *     If the benchmark cannot be run.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RestrictedCommandLineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test for RestrictedCommandLine. Verifies that keystrokes are applied
+ * to the line correctly and that blacklisted and non-whitelisted commands
+ * are detected regardless of how the line is edited.
+ */
+public class RestrictedCommandLineTest {
+
+    /**
+     * Commands blacklisted by the policies tested, including commands which
+     * overlap or are contained within one another.
+     */
+    private static final List<String> BLACKLIST = Arrays.asList(
+        "rm -rf", "shutdown", "reboot", "dd if=", "her", "hers", "she", "",
+        "aab"
+    );
+
+    /**
+     * Types the given text into the given line, one key at a time.
+     *
+     * @param line
+     *     The line to type into.
+     *
+     * @param text
+     *     The text to type.
+     *
+     * @return
+     *     Whether the line was restricted after the final key was pressed.
+     */
+    private static boolean type(RestrictedCommandLine line, String text) {
+
+        boolean restricted = line.isRestricted();
+        for (int i = 0; i < text.length(); i++)
+            restricted = line.keyPressed(text.charAt(i));
+
+        return restricted;
+
+    }
+
+    /**
+     * Test of the automaton on its own, including overlapping commands and
+     * characters not present in any command.
+     */
+    @Test
+    public void testAutomaton() {
+
+        RestrictedCommandAutomaton automaton = new RestrictedCommandAutomaton(BLACKLIST);
+        assertEquals(8, automaton.getMaxCommandLength());
+        assertFalse(automaton.isEmpty());
+
+        assertTrue(automaton.matches("ushers"));
+        assertTrue(automaton.matches("xaaab"));
+        assertTrue(automaton.matches("sudo shutdown now"));
+        assertFalse(automaton.matches("hxe sh aa b"));
+        assertFalse(automaton.matches(""));
+        assertFalse(automaton.matches("\u00E9\u4E2D"));
+
+        RestrictedCommandAutomaton empty = new RestrictedCommandAutomaton(Collections.<String>emptyList());
+        assertTrue(empty.isEmpty());
+        assertFalse(empty.matches("anything"));
+
+    }
+
+    /**
+     * Test of editing keys, verifying the resulting line and cursor.
+     */
+    @Test
+    public void testEditing() {
+
+        RestrictedCommandLine line = new RestrictedCommandPolicy(
+                BLACKLIST, Collections.<String>emptyList()).newCommandLine();
+
+        type(line, "lsal");
+        line.keyPressed(RestrictedCommandLine.KEYSYM_LEFT);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_LEFT);
+        type(line, " -");
+        assertEquals("ls -al", line.getLine());
+        assertEquals(4, line.getCursor());
+
+        line.keyPressed(RestrictedCommandLine.KEYSYM_HOME);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_DELETE);
+        assertEquals("s -al", line.getLine());
+        assertEquals(0, line.getCursor());
+
+        line.keyPressed(RestrictedCommandLine.KEYSYM_BACKSPACE);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_RIGHT);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_BACKSPACE);
+        assertEquals(" -al", line.getLine());
+
+        line.keyPressed(RestrictedCommandLine.KEYSYM_END);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_DELETE);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_RIGHT);
+        assertEquals(4, line.getCursor());
+
+        // Keys outside the printable range are ignored
+        line.keyPressed(0xFFE3);
+        assertEquals(" -al", line.getLine());
+
+        line.keyPressed(RestrictedCommandLine.KEYSYM_RETURN);
+        assertEquals(" -al", line.getEnteredLine());
+        assertEquals("", line.getLine());
+        assertEquals(0, line.getCursor());
+
+    }
+
+    /**
+     * Test of blacklisted commands formed by typing, by inserting before
+     * existing text, and by deleting the text between two halves of a
+     * command.
+     */
+    @Test
+    public void testBlacklist() {
+
+        RestrictedCommandPolicy policy = new RestrictedCommandPolicy(
+                BLACKLIST, Collections.<String>emptyList());
+
+        // Typed normally
+        RestrictedCommandLine line = policy.newCommandLine();
+        assertFalse(type(line, "sudo shutdow"));
+        assertTrue(type(line, "n"));
+
+        // Completed by inserting the first character
+        line = policy.newCommandLine();
+        assertFalse(type(line, "hutdown"));
+        line.keyPressed(RestrictedCommandLine.KEYSYM_HOME);
+        assertTrue(type(line, "s"));
+
+        // Removing the command lifts the restriction
+        assertFalse(line.keyPressed(RestrictedCommandLine.KEYSYM_BACKSPACE));
+
+        // Joined by deleting the characters between both halves
+        line = policy.newCommandLine();
+        assertFalse(type(line, "rebxoot"));
+        line.keyPressed(RestrictedCommandLine.KEYSYM_LEFT);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_LEFT);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_LEFT);
+        assertTrue(line.keyPressed(RestrictedCommandLine.KEYSYM_BACKSPACE));
+
+        line = policy.newCommandLine();
+        assertFalse(type(line, "aaxb"));
+        line.keyPressed(RestrictedCommandLine.KEYSYM_LEFT);
+        line.keyPressed(RestrictedCommandLine.KEYSYM_LEFT);
+        assertTrue(line.keyPressed(RestrictedCommandLine.KEYSYM_DELETE));
+
+        // Entering the line clears the restriction
+        assertFalse(line.keyPressed(RestrictedCommandLine.KEYSYM_RETURN));
+
+    }
+
+    /**
+     * Test of whitelisted commands, which restrict the session only once a
+     * non-whitelisted line has been entered.
+     */
+    @Test
+    public void testWhitelist() {
+
+        RestrictedCommandLine line = new RestrictedCommandPolicy(
+                Collections.<String>emptyList(), Arrays.asList("ls", "pwd")).newCommandLine();
+
+        assertFalse(type(line, "cat"));
+        assertFalse(line.keyPressed(RestrictedCommandLine.KEYSYM_BACKSPACE));
+        assertFalse(line.keyPressed(RestrictedCommandLine.KEYSYM_BACKSPACE));
+        assertFalse(line.keyPressed(RestrictedCommandLine.KEYSYM_BACKSPACE));
+        assertFalse(type(line, "pwd"));
+        assertFalse(line.keyPressed(RestrictedCommandLine.KEYSYM_RETURN));
+        assertFalse(line.keyPressed(RestrictedCommandLine.KEYSYM_RETURN));
+        assertFalse(type(line, "ls -l"));
+        assertTrue(line.keyPressed(RestrictedCommandLine.KEYSYM_RETURN));
+
+    }
+
+    /**
+     * Test of random editing against a straightforward model of the line,
+     * verifying that the incremental matching always agrees with searching
+     * the entire line.
+     */
+    @Test
+    public void testRandomEditing() {
+
+        RestrictedCommandPolicy policy = new RestrictedCommandPolicy(
+                BLACKLIST, Collections.<String>emptyList());
+        RestrictedCommandAutomaton automaton = policy.getBlacklist();
+
+        int[] keysyms = {
+            'a', 'b', 'e', 'h', 'r', 's', 'x', ' ',
+            RestrictedCommandLine.KEYSYM_HOME,
+            RestrictedCommandLine.KEYSYM_END,
+            RestrictedCommandLine.KEYSYM_LEFT,
+            RestrictedCommandLine.KEYSYM_RIGHT,
+            RestrictedCommandLine.KEYSYM_BACKSPACE,
+            RestrictedCommandLine.KEYSYM_DELETE
+        };
+
+        Random random = new Random(0x5EED);
+        RestrictedCommandLine line = policy.newCommandLine();
+        StringBuilder model = new StringBuilder();
+        int cursor = 0;
+
+        for (int i = 0; i < 100000; i++) {
+
+            int keysym = keysyms[random.nextInt(keysyms.length)];
+            switch (keysym) {
+
+                case RestrictedCommandLine.KEYSYM_HOME:
+                    cursor = 0;
+                    break;
+
+                case RestrictedCommandLine.KEYSYM_END:
+                    cursor = model.length();
+                    break;
+
+                case RestrictedCommandLine.KEYSYM_LEFT:
+                    cursor = Math.max(0, cursor - 1);
+                    break;
+
+                case RestrictedCommandLine.KEYSYM_RIGHT:
+                    cursor = Math.min(model.length(), cursor + 1);
+                    break;
+
+                case RestrictedCommandLine.KEYSYM_BACKSPACE:
+                    if (cursor > 0)
+                        model.deleteCharAt(--cursor);
+                    break;
+
+                case RestrictedCommandLine.KEYSYM_DELETE:
+                    if (cursor < model.length())
+                        model.deleteCharAt(cursor);
+                    break;
+
+                default:
+                    model.insert(cursor++, (char) keysym);
+
+            }
+
+            boolean restricted = line.keyPressed(keysym);
+            assertEquals(model.toString(), line.getLine());
+            assertEquals(cursor, line.getCursor());
+            assertEquals(model.toString(), automaton.matches(model), restricted);
+
+            // Keep lines reasonably short such that edits interact
+            if (model.length() > 40) {
+                line.keyPressed(RestrictedCommandLine.KEYSYM_RETURN);
+                model.setLength(0);
+                cursor = 0;
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import org.apache.guacamole.io.ByteBufferPool;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test for AsyncWebSocketSender. Verifies that frames are sent one at a
+ * time, in order, and that pending frames and actions are tracked correctly.
+ */
+public class AsyncWebSocketSenderTest {
+
+    /**
+     * Asynchronous remote which records each frame sent, completing each
+     * send only when explicitly requested. Only the functions used by
+     * AsyncWebSocketSender are implemented.
+     */
+    private static class TestRemote implements RemoteEndpoint.Async {
+
+        /**
+         * Every frame sent, in order, with binary frames decoded as UTF-8.
+         */
+        private final List<String> sent = new ArrayList<String>();
+
+        /**
+         * The handler of the send in progress, if any.
+         */
+        private SendHandler inProgress;
+
+        /**
+         * Records the start of a send, failing if a send is already in
+         * progress.
+         *
+         * @param frame
+         *     The frame being sent.
+         *
+         * @param handler
+         *     The handler to invoke once the send completes.
+         */
+        private void start(String frame, SendHandler handler) {
+            assertNull("Send started while another send in progress.", inProgress);
+            sent.add(frame);
+            inProgress = handler;
+        }
+
+        /**
+         * Completes the send in progress.
+         *
+         * @param result
+         *     The result of the send.
+         */
+        private void complete(SendResult result) {
+            SendHandler handler = inProgress;
+            assertNotNull("No send in progress.", handler);
+            inProgress = null;
+            handler.onResult(result);
+        }
+
+        @Override
+        public void sendText(String text, SendHandler handler) {
+            start(text, handler);
+        }
+
+        @Override
+        public void sendBinary(ByteBuffer data, SendHandler handler) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            start(new String(bytes, StandardCharsets.UTF_8), handler);
+        }
+
+        @Override
+        public long getSendTimeout() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setSendTimeout(long timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Void> sendText(String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Void> sendBinary(ByteBuffer data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendObject(Object data, SendHandler handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Void> sendObject(Object data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setBatchingAllowed(boolean allowed) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getBatchingAllowed() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flushBatch() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendPing(ByteBuffer data) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendPong(ByteBuffer data) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Listener which counts the sends completed.
+     */
+    private static class CountingListener implements AsyncWebSocketSender.Listener {
+
+        /**
+         * The number of frames sent successfully.
+         */
+        private int sent = 0;
+
+        /**
+         * The number of frames which could not be sent.
+         */
+        private int failed = 0;
+
+        @Override
+        public void frameSent(int length, long duration) {
+            sent++;
+        }
+
+        @Override
+        public void sendFailed(Throwable cause) {
+            failed++;
+        }
+
+    }
+
+    /**
+     * Test which verifies that frames and actions are processed one at a
+     * time and in order, and that pooled buffers are returned to the pool.
+     */
+    @Test
+    public void testOrdering() {
+
+        TestRemote remote = new TestRemote();
+        CountingListener listener = new CountingListener();
+        ByteBufferPool pool = new ByteBufferPool(16, 4);
+        AsyncWebSocketSender sender = new AsyncWebSocketSender(remote, pool, listener);
+
+        final List<String> actions = new ArrayList<String>();
+
+        ByteBuffer pooled = pool.acquire();
+        pooled.put("4.sync,1.1;".getBytes(StandardCharsets.UTF_8));
+        pooled.flip();
+
+        sender.sendText("first");
+        sender.sendBinary(pooled, true);
+        sender.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                actions.add("action");
+            }
+
+        });
+        sender.sendText("last");
+
+        // Only the first frame may be in progress
+        assertEquals(1, remote.sent.size());
+        assertEquals(3, sender.getPendingFrames());
+
+        remote.complete(new SendResult());
+        assertEquals(2, remote.sent.size());
+        assertEquals("4.sync,1.1;", remote.sent.get(1));
+        assertTrue(actions.isEmpty());
+
+        // The action runs only once all previous frames are sent
+        remote.complete(new SendResult());
+        assertEquals(1, actions.size());
+        assertEquals(3, remote.sent.size());
+        assertSame(pooled, pool.acquire());
+
+        remote.complete(new SendResult(new IOException("Test failure.")));
+        assertEquals(0, sender.getPendingFrames());
+        assertEquals(2, listener.sent);
+        assertEquals(1, listener.failed);
+
+        // Frames queued after a failure are rejected
+        assertFalse(sender.sendText("again"));
+        assertEquals(3, remote.sent.size());
+        assertEquals(0, sender.getPendingFrames());
+
+    }
+
+    /**
+     * Test which verifies that a failed send discards all queued frames and
+     * actions, returns their pooled buffers to the pool, notifies the
+     * listener only once, and causes further frames to be rejected.
+     */
+    @Test
+    public void testFailure() {
+
+        TestRemote remote = new TestRemote();
+        CountingListener listener = new CountingListener();
+        ByteBufferPool pool = new ByteBufferPool(16, 4);
+        AsyncWebSocketSender sender = new AsyncWebSocketSender(remote, pool, listener);
+
+        final List<String> actions = new ArrayList<String>();
+
+        ByteBuffer first = pool.acquire();
+        first.flip();
+        ByteBuffer second = pool.acquire();
+        second.flip();
+
+        assertTrue(sender.sendText("first"));
+        assertTrue(sender.sendBinary(first, true));
+        assertTrue(sender.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                actions.add("action");
+            }
+
+        }));
+        assertTrue(sender.sendBinary(second, true));
+        assertEquals(3, sender.getPendingFrames());
+
+        // Nothing further is sent once the first frame fails
+        remote.complete(new SendResult(new IOException("Test failure.")));
+        assertEquals(1, remote.sent.size());
+        assertEquals(0, sender.getPendingFrames());
+        assertEquals(0, listener.sent);
+        assertEquals(1, listener.failed);
+        assertTrue(actions.isEmpty());
+
+        // All discarded pooled buffers are returned to the pool
+        assertSame(first, pool.acquire());
+        assertSame(second, pool.acquire());
+
+        // Later frames are rejected, with pooled buffers still released
+        ByteBuffer rejected = pool.acquire();
+        assertFalse(sender.sendBinary(rejected, true));
+        assertFalse(sender.sendText("rejected"));
+        assertEquals(1, remote.sent.size());
+        assertEquals(0, sender.getPendingFrames());
+        assertEquals(1, listener.failed);
+        assertSame(rejected, pool.acquire());
+
+    }
+
+}
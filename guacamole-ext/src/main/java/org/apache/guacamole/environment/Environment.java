@@ -66,6 +66,62 @@ public interface Environment {
 
     };
 
+    /**
+     * The comma-separated list of SSL/TLS protocols, such as "TLSv1.3",
+     * which may be used for SSL/TLS connections to guacd.
+     */
+    public static final StringGuacamoleProperty GUACD_SSL_PROTOCOLS = new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-protocols"; }
+
+    };
+
+    /**
+     * The comma-separated list of cipher suites which may be used for SSL/TLS
+     * connections to guacd.
+     */
+    public static final StringGuacamoleProperty GUACD_SSL_CIPHER_SUITES = new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-cipher-suites"; }
+
+    };
+
+    /**
+     * The maximum number of SSL/TLS sessions with guacd which are cached for
+     * resumption, or zero if there should be no limit.
+     */
+    public static final IntegerGuacamoleProperty GUACD_SSL_SESSION_CACHE_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-session-cache-size"; }
+
+    };
+
+    /**
+     * The number of seconds that cached SSL/TLS sessions with guacd may be
+     * resumed, or zero if there should be no limit.
+     */
+    public static final IntegerGuacamoleProperty GUACD_SSL_SESSION_TIMEOUT = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-session-timeout"; }
+
+    };
+
+    /**
+     * The name of the security provider implementing SSL/TLS connections to
+     * guacd, or the fully-qualified name of its Provider class, such as
+     * "org.conscrypt.OpenSSLProvider" for the BoringSSL-based Conscrypt.
+     */
+    public static final StringGuacamoleProperty GUACD_SSL_PROVIDER = new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-provider"; }
+
+    };
+
     /**
      * Returns the Guacamole home directory as determined when this Environment
      * object was created. The Guacamole home directory is found by checking, in
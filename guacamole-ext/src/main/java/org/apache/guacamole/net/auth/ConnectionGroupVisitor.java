@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Receives each object within a tree of connection groups as that tree is
+ * traversed. Objects are received in depth-first order: each connection
+ * group is entered, followed by each of its connections, followed by each of
+ * its child connection groups (recursively), after which the connection group
+ * is left. The sharing profiles of each connection are received immediately
+ * after that connection. As the children of each object are visited
+ * directly, the identifiers of those children need not be provided by the
+ * objects received.
+ *
+ * @see TraversableConnectionGroup
+ */
+public interface ConnectionGroupVisitor {
+
+    /**
+     * Invoked when the given connection group is entered, before any of its
+     * connections or child connection groups.
+     *
+     * @param connectionGroup
+     *     The connection group being entered.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while handling the connection group. The
+     *     traversal will be aborted.
+     */
+    void enterConnectionGroup(ConnectionGroup connectionGroup)
+            throws GuacamoleException;
+
+    /**
+     * Invoked when the given connection group is left, after all of its
+     * connections and child connection groups.
+     *
+     * @param connectionGroup
+     *     The connection group being left.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while handling the connection group. The
+     *     traversal will be aborted.
+     */
+    void leaveConnectionGroup(ConnectionGroup connectionGroup)
+            throws GuacamoleException;
+
+    /**
+     * Invoked for each connection within the connection group most recently
+     * entered.
+     *
+     * @param connection
+     *     The connection being visited.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while handling the connection. The traversal
+     *     will be aborted.
+     */
+    void visitConnection(Connection connection) throws GuacamoleException;
+
+    /**
+     * Invoked for each sharing profile of the connection most recently
+     * visited.
+     *
+     * @param sharingProfile
+     *     The sharing profile being visited.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while handling the sharing profile. The
+     *     traversal will be aborted.
+     */
+    void visitSharingProfile(SharingProfile sharingProfile)
+            throws GuacamoleException;
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * A connection group whose entire tree of descendants can be traversed
+ * directly, without retrieving each descendant through the connection group,
+ * connection, and sharing profile directories of the UserContext. This allows
+ * implementations to retrieve the tree with a fixed number of queries,
+ * regardless of its size or depth.
+ */
+public interface TraversableConnectionGroup extends ConnectionGroup {
+
+    /**
+     * Traverses this connection group and all of its descendants that are
+     * visible to the current user, passing each to the given visitor in
+     * depth-first order. This connection group is the first group entered
+     * and the last group left. Only connection groups which are reachable
+     * through visible connection groups are traversed.
+     *
+     * @param visitor
+     *     The visitor which should receive each object within the tree.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the tree, or if the visitor
+     *     fails to handle any object within the tree.
+     */
+    void traverse(ConnectionGroupVisitor visitor) throws GuacamoleException;
+
+}
@@ -21,9 +21,11 @@ package org.apache.guacamole;
 
 import com.google.inject.AbstractModule;
 import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.expiry.TimingWheel;
 
 /**
- * Guice module which binds the base Guacamole server environment.
+ * Guice module which binds the base Guacamole server environment, along with
+ * the TimingWheel shared by all components which expire idle objects.
  */
 public class EnvironmentModule extends AbstractModule {
 
@@ -49,6 +51,9 @@ public class EnvironmentModule extends AbstractModule {
         // Bind environment
         bind(Environment.class).toInstance(environment);
 
+        // Bind shared expiration service
+        bind(TimingWheel.class).toInstance(TimingWheel.getSharedInstance());
+
     }
 
 }
@@ -29,12 +29,16 @@ import java.util.List;
 import javax.servlet.ServletContextEvent;
 import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.environment.LocalEnvironment;
+import org.apache.guacamole.expiry.TimingWheel;
 import org.apache.guacamole.extension.ExtensionModule;
 import org.apache.guacamole.log.LogModule;
 import org.apache.guacamole.net.auth.AuthenticationProvider;
 import org.apache.guacamole.rest.RESTServiceModule;
 import org.apache.guacamole.rest.auth.HashTokenSessionMap;
 import org.apache.guacamole.rest.auth.TokenSessionMap;
+import org.apache.guacamole.rest.tunnel.StreamSpoolService;
+import org.apache.guacamole.tunnel.GuacdSSLService;
+import org.apache.guacamole.tunnel.websocket.WebSocketReadExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,12 +69,31 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
     @Inject
     private List<AuthenticationProvider> authProviders;
 
+    /**
+     * Service providing the executor shared by WebSocket tunnels, if any.
+     */
+    @Inject
+    private WebSocketReadExecutorService readExecutorService;
+
+    /**
+     * Service which configures SSL/TLS connections to guacd.
+     */
+    @Inject
+    private GuacdSSLService guacdSSLService;
+
+    /**
+     * Service spooling the contents of downloaded streams to disk.
+     */
+    @Inject
+    private StreamSpoolService streamSpoolService;
+
     @Override
     public void contextInitialized(ServletContextEvent servletContextEvent) {
 
         try {
             environment = new LocalEnvironment();
-            sessionMap = new HashTokenSessionMap(environment);
+            sessionMap = new HashTokenSessionMap(environment,
+                    TimingWheel.getSharedInstance());
         }
         catch (GuacamoleException e) {
             logger.error("Unable to read guacamole.properties: {}", e.getMessage());
@@ -97,6 +120,9 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
         // Inject any annotated members of this class
         injector.injectMembers(this);
 
+        // Configure SSL/TLS for guacd before any connections are made
+        guacdSSLService.install();
+
         return injector;
 
     }
@@ -110,12 +136,24 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
         if (sessionMap != null)
             sessionMap.shutdown();
 
+        // Stop any threads shared by WebSocket tunnels
+        if (readExecutorService != null)
+            readExecutorService.shutdown();
+
+        // Delete any spooled downloads
+        if (streamSpoolService != null)
+            streamSpoolService.shutdown();
+
         // Unload all extensions
         if (authProviders != null) {
             for (AuthenticationProvider authProvider : authProviders)
                 authProvider.shutdown();
         }
 
+        // Report SSL/TLS session resumption effectiveness
+        if (guacdSSLService != null)
+            guacdSSLService.logStatistics();
+
     }
 
 }
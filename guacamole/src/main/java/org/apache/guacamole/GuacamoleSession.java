@@ -64,7 +64,7 @@ public class GuacamoleSession {
     /**
      * The last time this session was accessed.
      */
-    private long lastAccessedTime;
+    private volatile long lastAccessedTime;
 
     /**
      * Did this session had ever tried to have any tunnels
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.extension;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.guacamole.GuacamoleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the names of all entries within the .jar files of a given
+ * directory. The index allows a ClassLoader to determine immediately that a
+ * class or resource is not present within any .jar, rather than searching
+ * each .jar in turn. An index is immutable once created and may be shared by
+ * any number of ClassLoaders.
+ */
+public class ClassPathIndex {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ClassPathIndex.class);
+
+    /**
+     * The prefix of the names of entries within multi-release .jar files
+     * which apply only to specific Java versions.
+     */
+    private static final String VERSIONED_ENTRY_PREFIX = "META-INF/versions/";
+
+    /**
+     * The URLs of all indexed .jar files.
+     */
+    private final URL[] urls;
+
+    /**
+     * The names of all entries within the indexed .jar files, or null if the
+     * .jar files could not be indexed and every name must be assumed to be
+     * present.
+     */
+    private final Set<String> entries;
+
+    /**
+     * Creates a new ClassPathIndex of the given .jar files.
+     *
+     * @param urls
+     *     The URLs of all indexed .jar files.
+     *
+     * @param entries
+     *     The names of all entries within the indexed .jar files, or null if
+     *     the .jar files could not be indexed.
+     */
+    private ClassPathIndex(URL[] urls, Set<String> entries) {
+        this.urls = urls;
+        this.entries = entries;
+    }
+
+    /**
+     * Returns a new ClassPathIndex of all .jar files within the given
+     * directory. If any .jar cannot be read, the returned index will treat
+     * all names as present, such that lookups fall back to searching each
+     * .jar.
+     *
+     * @param dir
+     *     The directory whose .jar files should be indexed.
+     *
+     * @return
+     *     A new ClassPathIndex of all .jar files within the given directory.
+     *
+     * @throws GuacamoleException
+     *     If the given file is not a directory, or the contents of the given
+     *     directory cannot be read.
+     */
+    public static ClassPathIndex getInstance(File dir) throws GuacamoleException {
+
+        // Validate directory is indeed a directory
+        if (!dir.isDirectory())
+            throw new GuacamoleException(dir + " is not a directory.");
+
+        // Get list of all .jar's in the directory
+        File[] files = dir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+
+                // If it ends with .jar, accept the file
+                return name.endsWith(".jar");
+
+            }
+
+        });
+
+        // Verify directory was successfully read
+        if (files == null)
+            throw new GuacamoleException("Unable to read contents of directory " + dir);
+
+        URL[] urls = new URL[files.length];
+        Set<String> entries = new HashSet<String>();
+
+        for (int i = 0; i < files.length; i++) {
+
+            // Add the URL for each .jar to the jar URL list
+            try {
+                urls[i] = files[i].toURI().toURL();
+            }
+            catch (MalformedURLException e) {
+                throw new GuacamoleException(e);
+            }
+
+            // Index all entries within the .jar, abandoning the index
+            // entirely if any .jar cannot be read
+            if (entries != null) {
+                try {
+                    addEntries(files[i], entries);
+                }
+                catch (IOException e) {
+                    logger.warn("Unable to index \"{}\": {}", files[i], e.getMessage());
+                    logger.debug("Error indexing .jar file.", e);
+                    entries = null;
+                }
+            }
+
+        }
+
+        return new ClassPathIndex(urls, entries);
+
+    }
+
+    /**
+     * Adds the names of all entries within the given .jar file to the given
+     * set. Entries which apply only to specific Java versions are added under
+     * their unversioned names.
+     *
+     * @param file
+     *     The .jar file to read.
+     *
+     * @param entries
+     *     The set to add entry names to.
+     *
+     * @throws IOException
+     *     If the .jar file cannot be read.
+     */
+    private static void addEntries(File file, Set<String> entries)
+            throws IOException {
+
+        ZipFile jar = new ZipFile(file);
+        try {
+
+            Enumeration<? extends ZipEntry> jarEntries = jar.entries();
+            while (jarEntries.hasMoreElements()) {
+
+                String name = jarEntries.nextElement().getName();
+                entries.add(name);
+
+                // Strip "META-INF/versions/N/" from versioned entries
+                if (name.startsWith(VERSIONED_ENTRY_PREFIX)) {
+                    int end = name.indexOf('/', VERSIONED_ENTRY_PREFIX.length());
+                    if (end != -1)
+                        entries.add(name.substring(end + 1));
+                }
+
+            }
+
+        }
+        finally {
+            jar.close();
+        }
+
+    }
+
+    /**
+     * Returns the URLs of all indexed .jar files. The returned array must not
+     * be modified.
+     *
+     * @return
+     *     The URLs of all indexed .jar files.
+     */
+    public URL[] getURLs() {
+        return urls;
+    }
+
+    /**
+     * Returns whether an entry having the given name may be present within
+     * any of the indexed .jar files. If this function returns false, the
+     * entry is definitely not present.
+     *
+     * @param name
+     *     The name of the entry, such as "org/example/Example.class".
+     *
+     * @return
+     *     true if an entry having the given name may be present, false if it
+     *     is definitely not present.
+     */
+    public boolean contains(String name) {
+        return entries == null || entries.contains(name);
+    }
+
+    /**
+     * Returns the number of entries within the indexed .jar files, or -1 if
+     * the .jar files could not be indexed.
+     *
+     * @return
+     *     The number of indexed entries, or -1 if the .jar files could not be
+     *     indexed.
+     */
+    public int size() {
+        return entries == null ? -1 : entries.size();
+    }
+
+}
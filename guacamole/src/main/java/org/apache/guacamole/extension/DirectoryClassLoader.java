@@ -20,23 +20,33 @@
 package org.apache.guacamole.extension;
 
 import java.io.File;
-import java.io.FilenameFilter;
-import java.net.MalformedURLException;
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import org.apache.guacamole.GuacamoleException;
 
 /**
  * A ClassLoader implementation which finds classes within .jar files within a
- * given directory.
+ * given directory. Classes and resources which are not present within any of
+ * those .jar files, as determined by a ClassPathIndex, are rejected without
+ * searching the .jar files.
  */
 public class DirectoryClassLoader extends URLClassLoader {
 
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /**
+     * The index of all entries within the .jar files of the directory.
+     */
+    private final ClassPathIndex index;
+
     /**
      * Returns an instance of DirectoryClassLoader configured to load .jar
      * files from the given directory. Calling this function multiple times
@@ -53,17 +63,38 @@ public class DirectoryClassLoader extends URLClassLoader {
      *     If the given file is not a directory, or the contents of the given
      *     directory cannot be read.
      */
-    public static DirectoryClassLoader getInstance(final File dir)
+    public static DirectoryClassLoader getInstance(File dir)
+            throws GuacamoleException {
+        return getInstance(ClassPathIndex.getInstance(dir));
+    }
+
+    /**
+     * Returns an instance of DirectoryClassLoader configured to load the
+     * .jar files described by the given index. Calling this function
+     * multiple times will not affect previously-returned instances of
+     * DirectoryClassLoader, though the index itself may be shared.
+     *
+     * @param index
+     *     The index of the .jar files from which classes should be loaded.
+     *
+     * @return
+     *     A DirectoryClassLoader instance which loads classes from the .jar
+     *     files described by the given index.
+     *
+     * @throws GuacamoleException
+     *     If the DirectoryClassLoader cannot be created.
+     */
+    public static DirectoryClassLoader getInstance(final ClassPathIndex index)
             throws GuacamoleException {
 
         try {
-            // Attempt to create singleton classloader which loads classes from
-            // all .jar's in the lib directory defined in guacamole.properties
+            // Attempt to create classloader which loads classes from all
+            // .jar's in the lib directory defined in guacamole.properties
             return AccessController.doPrivileged(new PrivilegedExceptionAction<DirectoryClassLoader>() {
 
                 @Override
                 public DirectoryClassLoader run() throws GuacamoleException {
-                    return new DirectoryClassLoader(dir);
+                    return new DirectoryClassLoader(index);
                 }
 
             });
@@ -76,74 +107,48 @@ public class DirectoryClassLoader extends URLClassLoader {
     }
 
     /**
-     * Returns all .jar files within the given directory as an array of URLs.
-     *
-     * @param dir
-     *     The directory to retrieve all .jar files from.
-     *
-     * @return
-     *     An array of the URLs of all .jar files within the given directory.
+     * Creates a new DirectoryClassLoader configured to load the .jar files
+     * described by the given index.
      *
-     * @throws GuacamoleException
-     *     If the given file is not a directory, or the contents of the given
-     *     directory cannot be read.
+     * @param index
+     *     The index of the .jar files from which classes should be loaded.
      */
-    private static URL[] getJarURLs(File dir) throws GuacamoleException {
-
-        // Validate directory is indeed a directory
-        if (!dir.isDirectory())
-            throw new GuacamoleException(dir + " is not a directory.");
-
-        // Get list of URLs for all .jar's in the lib directory
-        Collection<URL> jarURLs = new ArrayList<URL>();
-        File[] files = dir.listFiles(new FilenameFilter() {
+    private DirectoryClassLoader(ClassPathIndex index) {
+        super(index.getURLs(), DirectoryClassLoader.class.getClassLoader());
+        this.index = index;
+    }
 
-            @Override
-            public boolean accept(File dir, String name) {
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
 
-                // If it ends with .jar, accept the file
-                return name.endsWith(".jar");
+        // Do not search .jar files which cannot contain the class
+        if (!index.contains(name.replace('.', '/') + ".class"))
+            throw new ClassNotFoundException(name);
 
-            }
+        return super.findClass(name);
 
-        });
+    }
 
-        // Verify directory was successfully read
-        if (files == null)
-            throw new GuacamoleException("Unable to read contents of directory " + dir);
+    @Override
+    public URL findResource(String name) {
 
-        // Add the URL for each .jar to the jar URL list
-        for (File file : files) {
+        // Do not search .jar files which cannot contain the resource
+        if (!index.contains(name))
+            return null;
 
-            try {
-                jarURLs.add(file.toURI().toURL());
-            }
-            catch (MalformedURLException e) {
-                throw new GuacamoleException(e);
-            }
+        return super.findResource(name);
 
-        }
+    }
 
-        // Set delegate classloader to new URLClassLoader which loads from the .jars found above.
-        URL[] urls = new URL[jarURLs.size()];
-        return jarURLs.toArray(urls);
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
 
-    }
+        // Do not search .jar files which cannot contain the resource
+        if (!index.contains(name))
+            return Collections.<URL>emptyEnumeration();
 
-    /**
-     * Creates a new DirectoryClassLoader configured to load .jar files from
-     * the given directory.
-     *
-     * @param dir
-     *     The directory from which .jar files should be read.
-     *
-     * @throws GuacamoleException
-     *     If the given file is not a directory, or the contents of the given
-     *     directory cannot be read.
-     */
+        return super.findResources(name);
 
-    private DirectoryClassLoader(File dir) throws GuacamoleException {
-        super(getJarURLs(dir), DirectoryClassLoader.class.getClassLoader());
     }
 
 }
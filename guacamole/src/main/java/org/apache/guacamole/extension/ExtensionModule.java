@@ -23,13 +23,22 @@ import com.google.inject.Provides;
 import com.google.inject.servlet.ServletModule;
 import java.io.File;
 import java.io.FileFilter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.guacamole.auth.file.FileAuthenticationProvider;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
@@ -37,6 +46,8 @@ import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.net.auth.AuthenticationProvider;
 import org.apache.guacamole.net.event.listener.Listener;
 import org.apache.guacamole.properties.StringSetProperty;
+import org.apache.guacamole.resource.ByteArrayResource;
+import org.apache.guacamole.resource.MaterializedResource;
 import org.apache.guacamole.resource.Resource;
 import org.apache.guacamole.resource.ResourceServlet;
 import org.apache.guacamole.resource.SequenceResource;
@@ -132,31 +143,229 @@ public class ExtensionModule extends ServletModule {
      */
     private final PatchResourceService patchResourceService;
     
+    /**
+     * Returns an index of all .jar files within the GUACAMOLE_HOME/lib
+     * directory, which is shared by the parent classloaders of all
+     * extensions. Lacking the GUACAMOLE_HOME/lib directory, this will be
+     * null.
+     *
+     * @return
+     *     An index of all .jar files within the GUACAMOLE_HOME/lib directory,
+     *     or null if that directory does not exist.
+     *
+     * @throws GuacamoleException
+     *     If the contents of the GUACAMOLE_HOME/lib directory cannot be read.
+     */
+    private ClassPathIndex getLibraryIndex() throws GuacamoleException {
+
+        // Retrieve lib directory
+        File libDir = new File(environment.getGuacamoleHome(), LIB_DIRECTORY);
+
+        // If lib directory does not exist, there is nothing to index
+        if (!libDir.isDirectory())
+            return null;
+
+        return ClassPathIndex.getInstance(libDir);
+
+    }
+
     /**
      * Returns the classloader that should be used as the parent classloader
-     * for all extensions. If the GUACAMOLE_HOME/lib directory exists, this
+     * for an extension. If the GUACAMOLE_HOME/lib directory exists, this
      * will be a classloader that loads classes from within the .jar files in
      * that directory. Lacking the GUACAMOLE_HOME/lib directory, this will
      * simply be the classloader associated with the ExtensionModule class.
      *
+     * @param libraryIndex
+     *     The index of all .jar files within the GUACAMOLE_HOME/lib
+     *     directory, as returned by getLibraryIndex(), or null if that
+     *     directory does not exist.
+     *
      * @return
      *     The classloader that should be used as the parent classloader for
-     *     all extensions.
+     *     an extension.
      *
      * @throws GuacamoleException
      *     If an error occurs while retrieving the classloader.
      */
-    private ClassLoader getParentClassLoader() throws GuacamoleException {
-
-        // Retrieve lib directory
-        File libDir = new File(environment.getGuacamoleHome(), LIB_DIRECTORY);
+    private ClassLoader getParentClassLoader(ClassPathIndex libraryIndex)
+            throws GuacamoleException {
 
         // If lib directory does not exist, use default class loader
-        if (!libDir.isDirectory())
+        if (libraryIndex == null)
             return ExtensionModule.class.getClassLoader();
 
         // Return classloader which loads classes from all .jars within the lib directory
-        return DirectoryClassLoader.getInstance(libDir);
+        return DirectoryClassLoader.getInstance(libraryIndex);
+
+    }
+
+    /**
+     * Returns a copy of the given map of resources in which each resource
+     * has been read into memory, preserving the iteration order of the
+     * original map.
+     *
+     * @param resources
+     *     The map of resources to read.
+     *
+     * @return
+     *     A new, unmodifiable map containing a MaterializedResource for each
+     *     resource within the given map.
+     */
+    private static Map<String, Resource> materialize(Map<String, Resource> resources) {
+
+        Map<String, Resource> materialized = new LinkedHashMap<String, Resource>(resources.size());
+        for (Map.Entry<String, Resource> entry : resources.entrySet())
+            materialized.put(entry.getKey(), new MaterializedResource(entry.getValue()));
+
+        return Collections.unmodifiableMap(materialized);
+
+    }
+
+    /**
+     * Returns a copy of the given map of resources in which each resource
+     * that may be held in memory by a ResourceServlet has been read into
+     * memory, preserving the iteration order of the original map. Resources
+     * larger than ResourceServlet.MAX_MATERIALIZED_SIZE are left as-is, to be
+     * read as they are requested.
+     *
+     * @param resources
+     *     The map of resources to read.
+     *
+     * @return
+     *     A new, unmodifiable map containing either a MaterializedResource or
+     *     the original resource for each resource within the given map.
+     */
+    private static Map<String, Resource> materializeServed(Map<String, Resource> resources) {
+
+        Map<String, Resource> materialized = new LinkedHashMap<String, Resource>(resources.size());
+        for (Map.Entry<String, Resource> entry : resources.entrySet())
+            materialized.put(entry.getKey(), materializeServed(entry.getValue()));
+
+        return Collections.unmodifiableMap(materialized);
+
+    }
+
+    /**
+     * Reads the given resource into memory if it may be held in memory by a
+     * ResourceServlet, returning the resource as-is if it is larger than
+     * ResourceServlet.MAX_MATERIALIZED_SIZE.
+     *
+     * @param resource
+     *     The resource to read, or null if there is no such resource.
+     *
+     * @return
+     *     A MaterializedResource containing the contents of the given
+     *     resource, the given resource itself if it is too large to be held
+     *     in memory, or null if the given resource is null.
+     */
+    private static Resource materializeServed(Resource resource) {
+
+        if (resource == null)
+            return null;
+
+        return MaterializedResource.materialize(resource,
+                ResourceServlet.MAX_MATERIALIZED_SIZE);
+
+    }
+
+    /**
+     * An extension which has been read from its .jar file and found to be
+     * compatible with this version of Guacamole, with its resources read
+     * into memory, but which has not yet been bound. Static resources and
+     * icons too large to be held in memory are read only as they are
+     * requested.
+     */
+    private class LoadedExtension {
+
+        /**
+         * The extension read from the .jar file.
+         */
+        private final Extension extension;
+
+        /**
+         * All JavaScript resources of the extension.
+         */
+        private final Map<String, Resource> javaScriptResources;
+
+        /**
+         * All CSS resources of the extension.
+         */
+        private final Map<String, Resource> cssResources;
+
+        /**
+         * All HTML patch resources of the extension.
+         */
+        private final Map<String, Resource> htmlResources;
+
+        /**
+         * All translation resources of the extension.
+         */
+        private final Map<String, Resource> translationResources;
+
+        /**
+         * All static resources of the extension.
+         */
+        private final Map<String, Resource> staticResources;
+
+        /**
+         * The small favicon of the extension, or null if none is provided.
+         */
+        private final Resource smallIcon;
+
+        /**
+         * The large favicon of the extension, or null if none is provided.
+         */
+        private final Resource largeIcon;
+
+        /**
+         * The number of milliseconds taken to read the extension.
+         */
+        private final long loadTime;
+
+        /**
+         * Reads the given extension .jar file, including its manifest,
+         * classes, and all resources. The Guacamole version declared within
+         * the manifest is verified before any resources are read.
+         *
+         * @param parent
+         *     The classloader to use as the parent of the extension's
+         *     classloader.
+         *
+         * @param file
+         *     The extension .jar file to read.
+         *
+         * @throws GuacamoleException
+         *     If the extension cannot be read, or is not compatible with this
+         *     version of Guacamole.
+         */
+        public LoadedExtension(ClassLoader parent, File file)
+                throws GuacamoleException {
+
+            long start = System.nanoTime();
+
+            extension = new Extension(parent, file);
+
+            // Validate Guacamole version of extension
+            if (!isCompatible(extension.getGuacamoleVersion())) {
+                logger.debug("Declared Guacamole version \"{}\" of extension \"{}\" is not compatible with this version of Guacamole.",
+                        extension.getGuacamoleVersion(), file.getName());
+                throw new GuacamoleServerException("Extension \"" + extension.getName() + "\" is not "
+                        + "compatible with this version of Guacamole.");
+            }
+
+            javaScriptResources = materialize(extension.getJavaScriptResources());
+            cssResources = materialize(extension.getCSSResources());
+            htmlResources = materialize(extension.getHTMLResources());
+            translationResources = materialize(extension.getTranslationResources());
+            staticResources = materializeServed(extension.getStaticResources());
+
+            smallIcon = materializeServed(extension.getSmallIcon());
+            largeIcon = materializeServed(extension.getLargeIcon());
+
+            loadTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        }
 
     }
 
@@ -444,27 +653,79 @@ public class ExtensionModule extends ServletModule {
         // Sort files lexicographically
         Arrays.sort(extensionFiles);
 
-        // Load each extension within the extension directory
-        for (File extensionFile : extensionFiles) {
+        // Index GUACAMOLE_HOME/lib once for all extensions
+        final ClassPathIndex libraryIndex;
+        try {
+            libraryIndex = getLibraryIndex();
+        }
+        catch (GuacamoleException e) {
+            logger.error("Extensions could not be loaded: {}", e.getMessage());
+            logger.debug("Unable to index GUACAMOLE_HOME/" + LIB_DIRECTORY + ".", e);
+            return;
+        }
+
+        if (libraryIndex != null)
+            logger.debug("Indexed {} entries within GUACAMOLE_HOME/" + LIB_DIRECTORY + ".", libraryIndex.size());
 
-            logger.debug("Loading extension: \"{}\"", extensionFile.getName());
+        long start = System.nanoTime();
 
-            try {
+        // Read all extensions in parallel. The resulting futures remain in
+        // the same order as the extension files, such that extensions are
+        // bound below in a deterministic order.
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        List<Callable<LoadedExtension>> tasks = new ArrayList<Callable<LoadedExtension>>(extensionFiles.length);
+        for (final File extensionFile : extensionFiles) {
+            tasks.add(new Callable<LoadedExtension>() {
 
-                // Load extension from file
-                Extension extension = new Extension(getParentClassLoader(), extensionFile);
+                @Override
+                public LoadedExtension call() throws GuacamoleException {
+
+                    logger.debug("Loading extension: \"{}\"", extensionFile.getName());
+
+                    Thread thread = Thread.currentThread();
+                    ClassLoader original = thread.getContextClassLoader();
+                    thread.setContextClassLoader(contextClassLoader);
+                    try {
+                        return new LoadedExtension(getParentClassLoader(libraryIndex), extensionFile);
+                    }
+                    finally {
+                        thread.setContextClassLoader(original);
+                    }
 
-                // Validate Guacamole version of extension
-                if (!isCompatible(extension.getGuacamoleVersion())) {
-                    logger.debug("Declared Guacamole version \"{}\" of extension \"{}\" is not compatible with this version of Guacamole.",
-                            extension.getGuacamoleVersion(), extensionFile.getName());
-                    throw new GuacamoleServerException("Extension \"" + extension.getName() + "\" is not "
-                            + "compatible with this version of Guacamole.");
                 }
 
+            });
+        }
+
+        List<Future<LoadedExtension>> loadedExtensions;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1,
+                Math.min(extensionFiles.length, Runtime.getRuntime().availableProcessors())));
+        try {
+            loadedExtensions = pool.invokeAll(tasks);
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        int loaded = 0;
+        String slowestExtension = null;
+        long slowestTime = -1;
+
+        // Bind each extension in order
+        for (int i = 0; i < extensionFiles.length; i++) {
+
+            File extensionFile = extensionFiles[i];
+
+            try {
+
+                // Retrieve extension as read from file
+                LoadedExtension loadedExtension = getLoadedExtension(loadedExtensions.get(i));
+                Extension extension = loadedExtension.extension;
+                long bindStart = System.nanoTime();
+
                 // Add any JavaScript / CSS resources
-                javaScriptResources.addAll(extension.getJavaScriptResources().values());
-                cssResources.addAll(extension.getCSSResources().values());
+                javaScriptResources.addAll(loadedExtension.javaScriptResources.values());
+                cssResources.addAll(loadedExtension.cssResources.values());
 
                 // Attempt to load all authentication providers
                 bindAuthenticationProviders(extension.getAuthenticationProviderClasses(), toleratedAuthProviders);
@@ -473,25 +734,37 @@ public class ExtensionModule extends ServletModule {
                 bindListeners(extension.getListenerClasses());
 
                 // Add any translation resources
-                serveLanguageResources(extension.getTranslationResources());
+                serveLanguageResources(loadedExtension.translationResources);
 
                 // Add all HTML patch resources
-                patchResourceService.addPatchResources(extension.getHTMLResources().values());
+                patchResourceService.addPatchResources(loadedExtension.htmlResources.values());
 
                 // Add all static resources under namespace-derived prefix
                 String staticResourcePrefix = "/app/ext/" + extension.getNamespace() + "/";
-                serveStaticResources(staticResourcePrefix, extension.getStaticResources());
+                serveStaticResources(staticResourcePrefix, loadedExtension.staticResources);
 
                 // Serve up the small favicon if provided
-                if(extension.getSmallIcon() != null)
-                    serve("/images/logo-64.png").with(new ResourceServlet(extension.getSmallIcon()));
+                if (loadedExtension.smallIcon != null)
+                    serve("/images/logo-64.png").with(new ResourceServlet(loadedExtension.smallIcon));
 
                 // Serve up the large favicon if provided
-                if(extension.getLargeIcon()!= null)
-                    serve("/images/logo-144.png").with(new ResourceServlet(extension.getLargeIcon()));
+                if (loadedExtension.largeIcon != null)
+                    serve("/images/logo-144.png").with(new ResourceServlet(loadedExtension.largeIcon));
+
+                // Log successful loading of extension by name, along with the
+                // time taken to read and to bind the extension
+                long bindTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bindStart);
+                logger.info("Extension \"{}\" loaded (read in {} ms, bound in {} ms).",
+                        extension.getName(), loadedExtension.loadTime, bindTime);
+
+                // Track the slowest extension for the summary below
+                long totalTime = loadedExtension.loadTime + bindTime;
+                if (totalTime > slowestTime) {
+                    slowestExtension = extension.getName();
+                    slowestTime = totalTime;
+                }
 
-                // Log successful loading of extension by name
-                logger.info("Extension \"{}\" loaded.", extension.getName());
+                loaded++;
 
             }
             catch (GuacamoleException e) {
@@ -501,8 +774,109 @@ public class ExtensionModule extends ServletModule {
 
         }
 
+        // Summarize startup time of all extensions
+        if (slowestExtension != null)
+            logger.info("{} of {} extension(s) loaded in {} ms. Slowest was \"{}\" ({} ms).",
+                    loaded, extensionFiles.length,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    slowestExtension, slowestTime);
+
+    }
+
+    /**
+     * Returns the extension read by the given task, rethrowing any error
+     * which prevented the extension from being read.
+     *
+     * @param future
+     *     The completed task which read the extension.
+     *
+     * @return
+     *     The extension read by the given task.
+     *
+     * @throws GuacamoleException
+     *     If the extension could not be read.
+     */
+    private LoadedExtension getLoadedExtension(Future<LoadedExtension> future)
+            throws GuacamoleException {
+
+        try {
+            return future.get();
+        }
+
+        // Loading was interrupted before the extension could be read
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GuacamoleServerException("Interrupted while loading extension.", e);
+        }
+
+        // Rethrow any error encountered while reading the extension
+        catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+            if (cause instanceof GuacamoleException)
+                throw (GuacamoleException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new GuacamoleServerException("Unexpected error while loading extension.", cause);
+
+        }
+
     }
     
+    /**
+     * Regular expression matching the references to app.js and app.css
+     * within index.html, including their "v" parameters. The first group
+     * contains the name of the referenced resource.
+     */
+    private static final Pattern VERSIONED_REFERENCE =
+            Pattern.compile("(app\\.(?:js|css))\\?v=[^\"'&]*");
+
+    /**
+     * Returns a copy of index.html in which the references to app.js and
+     * app.css include the content hashes of the given resources. If
+     * index.html cannot be read, null is returned and index.html will be
+     * served as a normal static file.
+     *
+     * @param javaScript
+     *     The resource served as app.js.
+     *
+     * @param css
+     *     The resource served as app.css.
+     *
+     * @return
+     *     A copy of index.html referencing app.js and app.css by the hashes
+     *     of their contents, or null if index.html cannot be read.
+     */
+    private Resource getVersionedIndex(MaterializedResource javaScript,
+            MaterializedResource css) {
+
+        MaterializedResource index = new MaterializedResource(
+                new WebApplicationResource(getServletContext(), "text/html", "/index.html"));
+
+        if (!index.exists()) {
+            logger.warn("Unable to read index.html. Clients will need to "
+                    + "revalidate app.js and app.css on every load.");
+            return null;
+        }
+
+        // Replace each version parameter with the relevant content hash
+        Matcher matcher = VERSIONED_REFERENCE.matcher(
+                new String(index.getBytes(), StandardCharsets.UTF_8));
+        StringBuffer html = new StringBuffer();
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String hash = name.equals("app.js") ? javaScript.getContentHash() : css.getContentHash();
+            matcher.appendReplacement(html, Matcher.quoteReplacement(hash == null ? matcher.group()
+                    : name + "?" + ResourceServlet.VERSION_PARAMETER + "=" + hash));
+        }
+        matcher.appendTail(html);
+
+        return new ByteArrayResource("text/html",
+                html.toString().getBytes(StandardCharsets.UTF_8));
+
+    }
+
     @Override
     protected void configureServlets() {
 
@@ -528,9 +902,19 @@ public class ExtensionModule extends ServletModule {
         // Always bind default file-driven auth last
         bindAuthenticationProvider(FileAuthenticationProvider.class, toleratedAuthProviders);
 
-        // Dynamically generate app.js and app.css from extensions
-        serve("/app.js").with(new ResourceServlet(new SequenceResource(javaScriptResources)));
-        serve("/app.css").with(new ResourceServlet(new SequenceResource(cssResources)));
+        // Dynamically generate app.js and app.css from extensions, reading
+        // each extension only once
+        MaterializedResource javaScript = new MaterializedResource(new SequenceResource(javaScriptResources));
+        MaterializedResource css = new MaterializedResource(new SequenceResource(cssResources));
+        serve("/app.js").with(new ResourceServlet(javaScript));
+        serve("/app.css").with(new ResourceServlet(css));
+
+        // Serve index.html such that app.js and app.css are referenced by
+        // the hashes of their contents, allowing both to be cached
+        // indefinitely
+        Resource index = getVersionedIndex(javaScript, css);
+        if (index != null)
+            serve("/", "/index.html").with(new ResourceServlet(index));
 
         // Dynamically serve all language resources
         for (Map.Entry<String, Resource> entry : languageResourceService.getLanguageResources().entrySet()) {
@@ -37,6 +37,7 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.properties.StringSetProperty;
 import org.apache.guacamole.resource.ByteArrayResource;
+import org.apache.guacamole.resource.MaterializedResource;
 import org.apache.guacamole.resource.Resource;
 import org.apache.guacamole.resource.WebApplicationResource;
 import org.slf4j.Logger;
@@ -95,14 +96,59 @@ public class LanguageResourceService {
     private final Set<String> allowedLanguages;
 
     /**
-     * Map of all language resources by language key. Language keys are
-     * language and country code pairs, separated by an underscore, like
-     * "en_US". The country code and underscore SHOULD be omitted in the case
-     * that only one dialect of that language is defined, or in the case of the
-     * most universal or well-supported of all supported dialects of that
-     * language.
+     * Map of the parsed and merged strings of all languages by language key.
+     * Language keys are language and country code pairs, separated by an
+     * underscore, like "en_US". The country code and underscore SHOULD be
+     * omitted in the case that only one dialect of that language is defined,
+     * or in the case of the most universal or well-supported of all supported
+     * dialects of that language.
      */
-    private final Map<String, Resource> resources = new HashMap<String, Resource>();
+    private final Map<String, JsonNode> translations = new HashMap<String, JsonNode>();
+
+    /**
+     * The serialized translations and language names derived from the
+     * current contents of the translations map, or null if they have not yet
+     * been built or the available translations have since changed.
+     */
+    private volatile TranslationCache cache;
+
+    /**
+     * The serialized form of all merged translations, along with the
+     * human-readable name of each language, built once from the merged
+     * translations and reused until the available translations change.
+     */
+    private static class TranslationCache {
+
+        /**
+         * Map of language key to the serialized, precompressed translations
+         * of that language.
+         */
+        private final Map<String, Resource> resources;
+
+        /**
+         * Map of language key to the human-readable name of that language.
+         */
+        private final Map<String, String> names;
+
+        /**
+         * Creates a new TranslationCache containing the given serialized
+         * translations and language names.
+         *
+         * @param resources
+         *     Map of language key to the serialized translations of that
+         *     language.
+         *
+         * @param names
+         *     Map of language key to the human-readable name of that
+         *     language.
+         */
+        public TranslationCache(Map<String, Resource> resources,
+                Map<String, String> names) {
+            this.resources = Collections.unmodifiableMap(resources);
+            this.names = Collections.unmodifiableMap(names);
+        }
+
+    }
 
     /**
      * Creates a new service for tracking and parsing available translations
@@ -272,7 +318,7 @@ public class LanguageResourceService {
      *     The language resource to add. This resource must have the mimetype
      *     "application/json".
      */
-    public void addLanguageResource(String key, Resource resource) {
+    public synchronized void addLanguageResource(String key, Resource resource) {
 
         // Skip loading of language if not allowed
         if (!isLanguageAllowed(key)) {
@@ -280,46 +326,47 @@ public class LanguageResourceService {
             return;
         }
 
-        // Merge language resources if already defined
-        Resource existing = resources.get(key);
-        if (existing != null) {
-
-            try {
-
-                // Read the original language resource
-                JsonNode existingTree = parseLanguageResource(existing);
-                if (existingTree == null) {
-                    logger.warn("Base language resource \"{}\" does not exist.", key);
-                    return;
-                }
-
-                // Read new language resource
-                JsonNode resourceTree = parseLanguageResource(resource);
-                if (resourceTree == null) {
-                    logger.warn("Overlay language resource \"{}\" does not exist.", key);
-                    return;
-                }
-
-                // Merge the language resources
-                JsonNode mergedTree = mergeTranslations(existingTree, resourceTree);
-                resources.put(key, new ByteArrayResource("application/json", mapper.writeValueAsBytes(mergedTree)));
+        // Parse each contributed resource only once
+        JsonNode resourceTree;
+        try {
+            resourceTree = parseLanguageResource(resource);
+        }
+        catch (IOException e) {
+            logger.error("Unable to read language resource \"{}\": {}", key, e.getMessage());
+            logger.debug("Error reading language resource.", e);
+            return;
+        }
 
-                logger.debug("Merged strings with existing language: \"{}\"", key);
+        // Merge language resources if already defined
+        JsonNode existingTree = translations.get(key);
+        if (existingTree != null) {
 
-            }
-            catch (IOException e) {
-                logger.error("Unable to merge language resource \"{}\": {}", key, e.getMessage());
-                logger.debug("Error merging language resource.", e);
+            if (resourceTree == null) {
+                logger.warn("Overlay language resource \"{}\" does not exist.", key);
+                return;
             }
 
+            translations.put(key, mergeTranslations(existingTree, resourceTree));
+            logger.debug("Merged strings with existing language: \"{}\"", key);
+
         }
 
         // Otherwise, add new language resource
         else {
-            resources.put(key, resource);
+
+            if (resourceTree == null) {
+                logger.warn("Expected language resource does not exist: \"{}\".", key);
+                return;
+            }
+
+            translations.put(key, resourceTree);
             logger.debug("Added language: \"{}\"", key);
+
         }
 
+        // Serialized translations no longer reflect available languages
+        cache = null;
+
     }
 
     /**
@@ -365,6 +412,69 @@ public class LanguageResourceService {
 
     }
 
+    /**
+     * Returns the serialized translations and language names reflecting all
+     * language resources currently added to this service, building them if
+     * they have not yet been built since the last language resource was
+     * added.
+     *
+     * @return
+     *     The serialized translations and language names for all languages
+     *     associated with this service.
+     */
+    private TranslationCache getCache() {
+
+        TranslationCache current = cache;
+        if (current != null)
+            return current;
+
+        synchronized (this) {
+
+            // Another thread may have built the cache in the meantime
+            if (cache != null)
+                return cache;
+
+            Map<String, Resource> resources = new HashMap<String, Resource>();
+            Map<String, String> languageNames = new HashMap<String, String>();
+
+            // For each language key/translations pair
+            for (Map.Entry<String, JsonNode> entry : translations.entrySet()) {
+
+                // Get language key and translations
+                String languageKey = entry.getKey();
+                JsonNode tree = entry.getValue();
+
+                // Serialize and compress merged translations only once
+                try {
+                    resources.put(languageKey, new MaterializedResource(new ByteArrayResource(
+                            "application/json", mapper.writeValueAsBytes(tree))));
+                }
+                catch (IOException e) {
+                    logger.warn("Unable to serialize language resource \"{}\".", languageKey);
+                    logger.debug("Error serializing language resource.", e);
+                    continue;
+                }
+
+                // Attempt to read language name from node
+                JsonNode nameNode = tree.get(LANGUAGE_DISPLAY_NAME_KEY);
+                String languageName;
+                if (nameNode == null || (languageName = nameNode.getTextValue()) == null) {
+                    logger.warn("Root-level \"" + LANGUAGE_DISPLAY_NAME_KEY + "\" string missing or invalid in language \"{}\"", languageKey);
+                    languageName = languageKey;
+                }
+
+                // Add language key/name pair to map
+                languageNames.put(languageKey, languageName);
+
+            }
+
+            cache = new TranslationCache(resources, languageNames);
+            return cache;
+
+        }
+
+    }
+
     /**
      * Returns a set of all unique language keys currently associated with
      * language resources stored in this service. The returned set cannot be
@@ -375,76 +485,35 @@ public class LanguageResourceService {
      *     service.
      */
     public Set<String> getLanguageKeys() {
-        return Collections.unmodifiableSet(resources.keySet());
+        return getCache().resources.keySet();
     }
 
     /**
      * Returns a map of all languages currently associated with this service,
      * where the key of each map entry is the language key. The returned map
-     * cannot be modified.
+     * cannot be modified. Each resource contains the serialized, merged
+     * translations of its language and is held in memory, precompressed.
      *
      * @return
      *     A map of all languages currently associated with this service.
      */
     public Map<String, Resource> getLanguageResources() {
-        return Collections.unmodifiableMap(resources);
+        return getCache().resources;
     }
 
     /**
      * Returns a mapping of all language keys to their corresponding human-
-     * readable language names. If an error occurs while parsing a language
-     * resource, its key/name pair will simply be omitted. The returned map
-     * cannot be modified.
+     * readable language names. If a language does not define its name, its
+     * language key is used as its name. The returned map cannot be modified.
+     * The names are determined only once for each set of available
+     * languages, and are not re-read from the language resources.
      *
      * @return
      *     A map of all language keys and their corresponding human-readable
      *     names.
      */
     public Map<String, String> getLanguageNames() {
-
-        Map<String, String> languageNames = new HashMap<String, String>();
-
-        // For each language key/resource pair
-        for (Map.Entry<String, Resource> entry : resources.entrySet()) {
-
-            // Get language key and resource
-            String languageKey = entry.getKey();
-            Resource resource = entry.getValue();
-
-            // Get stream for resource
-            InputStream resourceStream = resource.asStream();
-            if (resourceStream == null) {
-                logger.warn("Expected language resource does not exist: \"{}\".", languageKey);
-                continue;
-            }
-            
-            // Get name node of language
-            try {
-                JsonNode tree = mapper.readTree(resourceStream);
-                JsonNode nameNode = tree.get(LANGUAGE_DISPLAY_NAME_KEY);
-                
-                // Attempt to read language name from node
-                String languageName;
-                if (nameNode == null || (languageName = nameNode.getTextValue()) == null) {
-                    logger.warn("Root-level \"" + LANGUAGE_DISPLAY_NAME_KEY + "\" string missing or invalid in language \"{}\"", languageKey);
-                    languageName = languageKey;
-                }
-                
-                // Add language key/name pair to map
-                languageNames.put(languageKey, languageName);
-
-            }
-
-            // Continue with next language if unable to read
-            catch (IOException e) {
-                logger.warn("Unable to read language resource \"{}\".", languageKey);
-                logger.debug("Error reading language resource.", e);
-            }
-
-        }
-        
-        return Collections.unmodifiableMap(languageNames);
-        
+        return getCache().names;
     }
-    
+
 }
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A resource whose entire contents are read from another resource once, upon
+ * creation, and then held in memory. A strong entity tag is derived from a
+ * hash of those contents, and a gzip-compressed copy is prepared in advance
+ * for textual resources, such that serving the resource never requires
+ * reading the original resource again.
+ */
+public class MaterializedResource extends AbstractResource {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MaterializedResource.class);
+
+    /**
+     * The size of the buffer to use when reading the original resource.
+     */
+    private static final int BUFFER_SIZE = 10240;
+
+    /**
+     * The number of characters of the hex-encoded SHA-256 hash of the
+     * contents of a resource which are used as its content hash.
+     */
+    private static final int CONTENT_HASH_LENGTH = 16;
+
+    /**
+     * The contents of the resource, or null if the original resource does
+     * not exist.
+     */
+    private final byte[] bytes;
+
+    /**
+     * The gzip-compressed contents of the resource, or null if the resource
+     * is not compressed.
+     */
+    private final byte[] gzipBytes;
+
+    /**
+     * The hash of the contents of the resource, or null if the original
+     * resource does not exist.
+     */
+    private final String contentHash;
+
+    /**
+     * Reads the contents of the given resource, up to the given number of
+     * bytes.
+     *
+     * @param resource
+     *     The resource to read.
+     *
+     * @param limit
+     *     The maximum number of bytes to read.
+     *
+     * @return
+     *     The contents of the given resource, truncated to the given limit,
+     *     or null if the resource does not exist or cannot be read.
+     */
+    private static byte[] read(Resource resource, long limit) {
+
+        InputStream input = resource.asStream();
+        if (input == null)
+            return null;
+
+        try {
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while (output.size() < limit && (length = input.read(buffer, 0,
+                    (int) Math.min(buffer.length, limit - output.size()))) != -1)
+                output.write(buffer, 0, length);
+
+            return output.toByteArray();
+
+        }
+        catch (IOException e) {
+            logger.warn("Resource could not be read: {}", e.getMessage());
+            logger.debug("Unable to read resource.", e);
+            return null;
+        }
+        finally {
+            try {
+                input.close();
+            }
+            catch (IOException e) {
+                logger.debug("Unable to close resource.", e);
+            }
+        }
+
+    }
+
+    /**
+     * Returns whether resources of the given mimetype are likely to benefit
+     * from compression.
+     *
+     * @param mimetype
+     *     The mimetype to test.
+     *
+     * @return
+     *     true if resources of the given mimetype are likely to benefit from
+     *     compression, false otherwise.
+     */
+    private static boolean isCompressible(String mimetype) {
+        return mimetype.startsWith("text/")
+                || mimetype.contains("javascript")
+                || mimetype.contains("json")
+                || mimetype.contains("xml");
+    }
+
+    /**
+     * Compresses the given data using gzip at maximum compression.
+     *
+     * @param data
+     *     The data to compress.
+     *
+     * @return
+     *     The gzip-compressed data.
+     *
+     * @throws IOException
+     *     If the data cannot be compressed.
+     */
+    private static byte[] gzip(byte[] data) throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(data);
+        }
+
+        return output.toByteArray();
+
+    }
+
+    /**
+     * Returns the hex-encoded SHA-256 hash of the given data, truncated to
+     * CONTENT_HASH_LENGTH characters.
+     *
+     * @param data
+     *     The data to hash.
+     *
+     * @return
+     *     The truncated hex-encoded hash of the given data.
+     */
+    private static String hash(byte[] data) {
+
+        try {
+
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(CONTENT_HASH_LENGTH);
+            for (int i = 0; hex.length() < CONTENT_HASH_LENGTH; i++)
+                hex.append(String.format("%02x", digest[i]));
+
+            return hex.toString();
+
+        }
+
+        // SHA-256 is required of all Java platforms
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    /**
+     * Creates a new MaterializedResource containing the current contents of
+     * the given resource. The given resource is read in its entirety by this
+     * constructor and is not read again.
+     *
+     * @param resource
+     *     The resource to read.
+     */
+    public MaterializedResource(Resource resource) {
+        this(resource, read(resource, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Creates a new MaterializedResource having the given contents, which
+     * have already been read from the given resource.
+     *
+     * @param resource
+     *     The resource whose contents were read.
+     *
+     * @param bytes
+     *     The entire contents of the given resource, or null if the resource
+     *     does not exist or cannot be read.
+     */
+    private MaterializedResource(Resource resource, byte[] bytes) {
+
+        super(resource.getMimeType(), resource.getLastModified());
+
+        this.bytes = bytes;
+        contentHash = (bytes != null) ? hash(bytes) : null;
+
+        // Compress in advance only where doing so actually saves space
+        byte[] compressed = null;
+        if (bytes != null && isCompressible(getMimeType())) {
+            try {
+                compressed = gzip(bytes);
+                if (compressed.length >= bytes.length)
+                    compressed = null;
+            }
+            catch (IOException e) {
+                logger.debug("Unable to compress resource.", e);
+            }
+        }
+
+        gzipBytes = compressed;
+
+    }
+
+    /**
+     * Returns a MaterializedResource containing the current contents of the
+     * given resource if those contents are no larger than the given size.
+     * Larger resources are not held in memory, and the given resource is
+     * returned unchanged. No more than the given number of bytes, plus one,
+     * are read to make this determination.
+     *
+     * @param resource
+     *     The resource to read.
+     *
+     * @param maxSize
+     *     The maximum size of resource which should be held in memory, in
+     *     bytes.
+     *
+     * @return
+     *     A MaterializedResource containing the contents of the given
+     *     resource, or the given resource itself if it is larger than the
+     *     given size.
+     */
+    public static Resource materialize(Resource resource, int maxSize) {
+
+        // Resources which are already in memory need not be read again
+        if (resource instanceof MaterializedResource)
+            return resource;
+
+        byte[] contents = read(resource, maxSize + 1L);
+        if (contents != null && contents.length > maxSize)
+            return resource;
+
+        return new MaterializedResource(resource, contents);
+
+    }
+
+    /**
+     * Returns whether the original resource existed when this resource was
+     * created.
+     *
+     * @return
+     *     true if the original resource existed, false otherwise.
+     */
+    public boolean exists() {
+        return bytes != null;
+    }
+
+    /**
+     * Returns the entire contents of this resource. The returned array must
+     * not be modified.
+     *
+     * @return
+     *     The entire contents of this resource, or null if the original
+     *     resource did not exist.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the gzip-compressed contents of this resource. The returned
+     * array must not be modified.
+     *
+     * @return
+     *     The gzip-compressed contents of this resource, or null if this
+     *     resource is not available in compressed form.
+     */
+    public byte[] getGzipBytes() {
+        return gzipBytes;
+    }
+
+    /**
+     * Returns a short hash of the contents of this resource, suitable for
+     * inclusion within the URL of the resource such that the URL changes
+     * whenever the contents change.
+     *
+     * @return
+     *     A hash of the contents of this resource, or null if the original
+     *     resource did not exist.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public InputStream asStream() {
+        if (bytes == null)
+            return null;
+        return new ByteArrayInputStream(bytes);
+    }
+
+}
@@ -30,10 +30,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Servlet which serves a given resource for all HTTP GET requests. The HEAD
- * method is correctly supported, and HTTP 304 ("Not Modified") responses will
- * be properly returned for GET requests depending on the last time the
- * resource was modified.
+ * Servlet which serves a given resource for all HTTP GET requests. Unless
+ * larger than MAX_MATERIALIZED_SIZE, the resource is read into memory once,
+ * when the servlet is created, and is served from memory thereafter,
+ * compressed with gzip if the client accepts gzip and the resource is
+ * textual. The HEAD method is correctly supported, and HTTP 304 ("Not
+ * Modified") responses will be properly returned for conditional GET
+ * requests based on either the strong entity tag derived from the contents
+ * of the resource or the last time the resource was modified. Requests whose
+ * "v" parameter matches the content hash of the resource may be cached
+ * indefinitely, as the URL of the resource changes along with its contents.
+ *
+ * Larger resources are not held in memory, and are instead read from the
+ * original resource for each request, with only the last time the resource
+ * was modified used to answer conditional requests.
  */
 public class ResourceServlet extends HttpServlet {
 
@@ -42,44 +52,279 @@ public class ResourceServlet extends HttpServlet {
      */
     private static final Logger logger = LoggerFactory.getLogger(ResourceServlet.class);
 
+    /**
+     * The name of the request parameter which, if equal to the content hash
+     * of the resource, allows the response to be cached indefinitely.
+     */
+    public static final String VERSION_PARAMETER = "v";
+
+    /**
+     * The "Cache-Control" header value sent for requests whose URL contains
+     * the content hash of the resource.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /**
+     * The "Cache-Control" header value sent for all other requests, requiring
+     * that clients revalidate their cached copy before use.
+     */
+    private static final String REVALIDATE_CACHE_CONTROL = "no-cache";
+
+    /**
+     * The maximum size of any resource which is held in memory, in bytes.
+     * Larger resources are read from the original resource for each request.
+     */
+    public static final int MAX_MATERIALIZED_SIZE = 262144;
+
     /**
      * The size of the buffer to use when transferring data from the input
-     * stream of a resource to the output stream of a request.
+     * stream of a resource which is not held in memory to the output stream
+     * of a request.
      */
     private static final int BUFFER_SIZE = 10240;
 
     /**
-     * The resource to serve for every GET request.
+     * The resource to serve for every GET request, held in memory, or null
+     * if the resource is too large to be held in memory.
      */
-    private final Resource resource;
+    private final MaterializedResource resource;
+
+    /**
+     * The resource to serve for every GET request, read for each request, or
+     * null if the resource is held in memory.
+     */
+    private final Resource streamedResource;
 
     /**
      * Creates a new ResourceServlet which serves the given Resource for all
-     * HTTP GET requests.
+     * HTTP GET requests. Unless the given Resource is already a
+     * MaterializedResource, it is read in its entirety by this constructor
+     * if no larger than MAX_MATERIALIZED_SIZE.
      *
      * @param resource
      *     The Resource to serve.
      */
     public ResourceServlet(Resource resource) {
-        this.resource = resource;
+
+        Resource materialized = MaterializedResource.materialize(resource,
+                MAX_MATERIALIZED_SIZE);
+
+        if (materialized instanceof MaterializedResource) {
+            this.resource = (MaterializedResource) materialized;
+            this.streamedResource = null;
+        }
+        else {
+            this.resource = null;
+            this.streamedResource = materialized;
+        }
+
     }
 
-    @Override
-    protected void doHead(HttpServletRequest request, HttpServletResponse response)
-            throws ServletException, IOException {
+    /**
+     * Returns the resource served by this servlet.
+     *
+     * @return
+     *     The resource served by this servlet.
+     */
+    public Resource getResource() {
+        return (resource != null) ? resource : streamedResource;
+    }
+
+    /**
+     * Returns whether the given request accepts gzip-compressed responses.
+     *
+     * @param request
+     *     The request to test.
+     *
+     * @return
+     *     true if the given request accepts gzip-compressed responses, false
+     *     otherwise.
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null)
+            return false;
+
+        for (String coding : acceptEncoding.split(",")) {
 
-        // Set last modified and content type headers
+            String[] parameters = coding.trim().split("\\s*;\\s*");
+            if (!parameters[0].equalsIgnoreCase("gzip"))
+                continue;
+
+            // Honor explicit refusal ("gzip;q=0")
+            for (int i = 1; i < parameters.length; i++) {
+                if (parameters[i].matches("[qQ]=0(\\.0*)?"))
+                    return false;
+            }
+
+            return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Returns whether the given "If-None-Match" header matches the given
+     * entity tag.
+     *
+     * @param ifNoneMatch
+     *     The value of the "If-None-Match" header, or null if absent.
+     *
+     * @param entityTag
+     *     The entity tag of the resource, including quotes.
+     *
+     * @return
+     *     true if the header matches the entity tag, false otherwise.
+     */
+    private static boolean matches(String ifNoneMatch, String entityTag) {
+
+        if (ifNoneMatch == null)
+            return false;
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(entityTag))
+                return true;
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Returns whether the gzip-compressed representation of the resource
+     * should be sent in response to the given request.
+     *
+     * @param request
+     *     The request being handled.
+     *
+     * @return
+     *     true if the gzip-compressed representation should be sent, false
+     *     otherwise.
+     */
+    private boolean isCompressed(HttpServletRequest request) {
+        return resource.getGzipBytes() != null && acceptsGzip(request);
+    }
+
+    /**
+     * Returns the strong entity tag of the representation of the resource
+     * sent in response to the given request, including quotes.
+     *
+     * @param request
+     *     The request being handled.
+     *
+     * @return
+     *     The entity tag of the representation sent in response to the given
+     *     request.
+     */
+    private String getEntityTag(HttpServletRequest request) {
+        if (isCompressed(request))
+            return '"' + resource.getContentHash() + "-gzip\"";
+        return '"' + resource.getContentHash() + '"';
+    }
+
+    /**
+     * Writes the headers describing the resource to the given response,
+     * returning the representation of the resource which should be sent.
+     *
+     * @param request
+     *     The request being handled.
+     *
+     * @param response
+     *     The response to write headers to.
+     *
+     * @return
+     *     The representation of the resource to send.
+     */
+    private byte[] writeHeaders(HttpServletRequest request,
+            HttpServletResponse response) {
+
+        byte[] body = resource.getBytes();
+
+        // Send compressed copy to clients that accept it
+        if (resource.getGzipBytes() != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            if (isCompressed(request)) {
+                body = resource.getGzipBytes();
+                response.setHeader("Content-Encoding", "gzip");
+            }
+        }
+
+        // Allow indefinite caching only if the URL identifies the contents
+        if (resource.getContentHash().equals(request.getParameter(VERSION_PARAMETER)))
+            response.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        else
+            response.setHeader("Cache-Control", REVALIDATE_CACHE_CONTROL);
+
+        response.setHeader("ETag", getEntityTag(request));
         response.addDateHeader("Last-Modified", resource.getLastModified());
         response.setContentType(resource.getMimeType());
+        response.setContentLength(body.length);
+
+        return body;
 
     }
 
-    @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response)
-            throws ServletException, IOException {
+    /**
+     * Returns whether the client's cached copy of the resource, as described
+     * by the conditional headers of the given request, is still current. The
+     * "If-None-Match" header takes precedence over "If-Modified-Since".
+     *
+     * @param request
+     *     The request being handled.
+     *
+     * @return
+     *     true if the client's cached copy is current, false otherwise.
+     */
+    private boolean isNotModified(HttpServletRequest request) {
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+            return matches(ifNoneMatch, getEntityTag(request));
+
+        // Last-Modified has only one-second granularity
+        long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        return ifModifiedSince != -1
+                && resource.getLastModified() / 1000 <= ifModifiedSince / 1000;
+
+    }
+
+    /**
+     * Writes the headers describing the resource which is not held in memory
+     * to the given response.
+     *
+     * @param response
+     *     The response to write headers to.
+     */
+    private void writeStreamedHeaders(HttpServletResponse response) {
+        response.setHeader("Cache-Control", REVALIDATE_CACHE_CONTROL);
+        response.addDateHeader("Last-Modified", streamedResource.getLastModified());
+        response.setContentType(streamedResource.getMimeType());
+    }
+
+    /**
+     * Serves the resource which is not held in memory, reading that resource
+     * for the given request.
+     *
+     * @param request
+     *     The request being handled.
+     *
+     * @param response
+     *     The response to write the resource to.
+     *
+     * @throws IOException
+     *     If the resource cannot be read or written.
+     */
+    private void doGetStreamed(HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
         // Get input stream from resource
-        InputStream input = resource.asStream();
+        InputStream input = streamedResource.asStream();
 
         // If resource does not exist, return not found
         if (input == null) {
@@ -91,11 +336,13 @@ public class ResourceServlet extends HttpServlet {
         try {
 
             // Write headers
-            doHead(request, response);
+            writeStreamedHeaders(response);
 
-            // If not modified since "If-Modified-Since" header, return not modified
+            // If not modified since "If-Modified-Since" header, return not
+            // modified (Last-Modified has only one-second granularity)
             long ifModifiedSince = request.getDateHeader("If-Modified-Since");
-            if (resource.getLastModified() - ifModifiedSince < 1000) {
+            if (ifModifiedSince != -1
+                    && streamedResource.getLastModified() / 1000 <= ifModifiedSince / 1000) {
                 logger.debug("Resource not modified: \"{}\"", request.getServletPath());
                 response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
                 return;
@@ -118,4 +365,57 @@ public class ResourceServlet extends HttpServlet {
 
     }
 
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        // Resources not held in memory are described by their metadata alone
+        if (resource == null) {
+            writeStreamedHeaders(response);
+            return;
+        }
+
+        // If resource does not exist, return not found
+        if (!resource.exists()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        writeHeaders(request, response);
+
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        // Read resources not held in memory for each request
+        if (resource == null) {
+            doGetStreamed(request, response);
+            return;
+        }
+
+        // If resource does not exist, return not found
+        if (!resource.exists()) {
+            logger.debug("Resource does not exist: \"{}\"", request.getServletPath());
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // Write headers
+        byte[] body = writeHeaders(request, response);
+
+        // If client's copy is current, return not modified
+        if (isNotModified(request)) {
+            logger.debug("Resource not modified: \"{}\"", request.getServletPath());
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setContentLength(-1);
+            return;
+        }
+
+        // Write resource to response body
+        response.getOutputStream().write(body);
+
+    }
+
 }
@@ -19,15 +19,13 @@
 
 package org.apache.guacamole.rest.auth;
 
-import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.expiry.Expirable;
+import org.apache.guacamole.expiry.Expiration;
+import org.apache.guacamole.expiry.TimingWheel;
 import org.apache.guacamole.GuacamoleSession;
 import org.apache.guacamole.properties.IntegerGuacamoleProperty;
 import org.slf4j.Logger;
@@ -45,15 +43,26 @@ public class HashTokenSessionMap implements TokenSessionMap {
     private static final Logger logger = LoggerFactory.getLogger(HashTokenSessionMap.class);
 
     /**
-     * Executor service which runs the period session eviction task.
+     * The interval at which sessions which have active tunnels, and thus
+     * cannot time out, are checked again, in milliseconds.
      */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-    
+    private static final long ACTIVE_SESSION_CHECK_INTERVAL = 60000;
+
+    /**
+     * The TimingWheel which evicts sessions that have timed out.
+     */
+    private final TimingWheel timingWheel;
+
     /**
      * Keeps track of the authToken to GuacamoleSession mapping.
      */
-    private final ConcurrentMap<String, GuacamoleSession> sessionMap =
-            new ConcurrentHashMap<String, GuacamoleSession>();
+    private final ConcurrentMap<String, SessionEntry> sessionMap =
+            new ConcurrentHashMap<String, SessionEntry>();
+
+    /**
+     * The maximum allowed age of any inactive session, in milliseconds.
+     */
+    private final long sessionTimeout;
 
     /**
      * The session timeout for the Guacamole REST API, in minutes.
@@ -67,13 +76,30 @@ public class HashTokenSessionMap implements TokenSessionMap {
     };
 
     /**
-     * Create a new HashTokenSessionMap configured using the given environment.
+     * Create a new HashTokenSessionMap configured using the given environment,
+     * evicting sessions through the shared TimingWheel.
      *
      * @param environment
      *     The environment to use when configuring the token session map.
      */
     public HashTokenSessionMap(Environment environment) {
+        this(environment, TimingWheel.getSharedInstance());
+    }
+
+    /**
+     * Create a new HashTokenSessionMap configured using the given environment,
+     * evicting sessions through the given TimingWheel.
+     *
+     * @param environment
+     *     The environment to use when configuring the token session map.
+     *
+     * @param timingWheel
+     *     The TimingWheel to use to evict sessions which have timed out.
+     */
+    public HashTokenSessionMap(Environment environment, TimingWheel timingWheel) {
         
+        this.timingWheel = timingWheel;
+
         int sessionTimeoutValue;
 
         // Read session timeout from guacamole.properties
@@ -86,69 +112,70 @@ public class HashTokenSessionMap implements TokenSessionMap {
             sessionTimeoutValue = 60;
         }
         
-        // Check for expired sessions every minute
         logger.info("Sessions will expire after {} minutes of inactivity.", sessionTimeoutValue);
-        executor.scheduleAtFixedRate(new SessionEvictionTask(sessionTimeoutValue * 60000l), 1, 1, TimeUnit.MINUTES);
+        this.sessionTimeout = sessionTimeoutValue * 60000l;
         
     }
 
     /**
-     * Task which iterates through all active sessions, evicting those sessions
-     * which are beyond the session timeout.
+     * A stored session, which evicts itself from the map once it has been
+     * inactive for longer than the session timeout. Sessions are considered
+     * active while they have associated tunnels.
      */
-    private class SessionEvictionTask implements Runnable {
+    private class SessionEntry implements Expirable {
 
         /**
-         * The maximum allowed age of any session, in milliseconds.
+         * The auth token associated with the session.
          */
-        private final long sessionTimeout;
+        private final String authToken;
 
         /**
-         * Creates a new task which automatically evicts sessions which are
-         * older than the specified timeout.
-         * 
-         * @param sessionTimeout The maximum age of any session, in
-         *                       milliseconds.
+         * The stored session.
          */
-        public SessionEvictionTask(long sessionTimeout) {
-            this.sessionTimeout = sessionTimeout;
-        }
-        
-        @Override
-        public void run() {
+        private final GuacamoleSession session;
+
+        /**
+         * The registration of this entry with the TimingWheel.
+         */
+        private final Expiration expiration;
 
-            // Get start time of session check time
-            long sessionCheckStart = System.currentTimeMillis();
+        /**
+         * Creates a new SessionEntry for the given session, registering that
+         * entry with the TimingWheel.
+         *
+         * @param authToken
+         *     The auth token associated with the session.
+         *
+         * @param session
+         *     The session being stored.
+         */
+        public SessionEntry(String authToken, GuacamoleSession session) {
+            this.authToken = authToken;
+            this.session = session;
+            this.expiration = timingWheel.register(this);
+        }
 
-            logger.debug("Checking for expired sessions...");
+        @Override
+        public long getExpirationTime() {
 
-            // For each session, remove sesions which have expired
-            Iterator<Map.Entry<String, GuacamoleSession>> entries = sessionMap.entrySet().iterator();
-            while (entries.hasNext()) {
+            // Do not expire sessions which are active
+            if (session.hasTunnels())
+                return System.currentTimeMillis() + ACTIVE_SESSION_CHECK_INTERVAL;
 
-                Map.Entry<String, GuacamoleSession> entry = entries.next();
-                GuacamoleSession session = entry.getValue();
+            return session.getLastAccessedTime() + sessionTimeout;
 
-                // Do not expire sessions which are active
-                if (session.hasTunnels())
-                    continue;
+        }
 
-                // Get elapsed time since last access
-                long age = sessionCheckStart - session.getLastAccessedTime();
+        @Override
+        public void expire() {
 
-                // If session is too old, evict it and check the next one
-                if (age >= sessionTimeout) {
-                    logger.debug("Session \"{}\" has timed out.", entry.getKey());
-                    entries.remove();
-                    session.invalidate();
-                }
+            // Evict only if not already removed or replaced
+            if (!sessionMap.remove(authToken, this))
+                return;
 
-            }
+            logger.debug("Session \"{}\" has timed out.", authToken);
+            session.invalidate();
 
-            // Log completion and duration
-            logger.debug("Session check completed in {} ms.",
-                    System.currentTimeMillis() - sessionCheckStart);
-            
         }
 
     }
@@ -161,17 +188,23 @@ public class HashTokenSessionMap implements TokenSessionMap {
             return null;
 
         // Update the last access time and return the GuacamoleSession
-        GuacamoleSession session = sessionMap.get(authToken);
-        if (session != null)
-            session.access();
+        SessionEntry entry = sessionMap.get(authToken);
+        if (entry == null)
+            return null;
 
-        return session;
+        entry.session.access();
+        return entry.session;
 
     }
 
     @Override
     public void put(String authToken, GuacamoleSession session) {
-        sessionMap.put(authToken, session);
+
+        // Stop tracking any session being replaced
+        SessionEntry replaced = sessionMap.put(authToken, new SessionEntry(authToken, session));
+        if (replaced != null)
+            replaced.expiration.cancel();
+
     }
 
     @Override
@@ -182,13 +215,19 @@ public class HashTokenSessionMap implements TokenSessionMap {
             return null;
 
         // Attempt to retrieve only if non-null
-        return sessionMap.remove(authToken);
+        SessionEntry entry = sessionMap.remove(authToken);
+        if (entry == null)
+            return null;
+
+        entry.expiration.cancel();
+        return entry.session;
 
     }
 
     @Override
     public void shutdown() {
-        executor.shutdownNow();
+        for (SessionEntry entry : sessionMap.values())
+            entry.expiration.cancel();
     }
 
 }
@@ -21,6 +21,8 @@ package org.apache.guacamole.rest.connectiongroup;
 
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -28,6 +30,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.auth.ConnectionGroup;
 import org.apache.guacamole.net.auth.Directory;
@@ -85,7 +88,10 @@ public class ConnectionGroupResource
     }
 
     /**
-     * Returns the current connection group along with all descendants.
+     * Returns the current connection group along with all descendants. The
+     * tree is written to the response as it is retrieved, such that the
+     * tree need not be held in memory in its entirety. Any permissions used
+     * to filter the tree are retrieved before this function returns.
      *
      * @param permissions
      *     If specified and non-empty, limit the returned list to only those
@@ -94,7 +100,8 @@ public class ConnectionGroupResource
      *     ConnectionGroups are unaffected by this parameter.
      *
      * @return
-     *     The current connection group, including all descendants.
+     *     The JSON representation of the current connection group, including
+     *     all descendants.
      *
      * @throws GuacamoleException
      *     If a problem is encountered while retrieving the connection group or
@@ -102,16 +109,23 @@ public class ConnectionGroupResource
      */
     @GET
     @Path("tree")
-    public APIConnectionGroup getConnectionGroupTree(
+    public StreamingOutput getConnectionGroupTree(
             @QueryParam("permission") List<ObjectPermission.Type> permissions)
             throws GuacamoleException {
 
-        // Retrieve the requested tree, filtering by the given permissions
-        ConnectionGroupTree tree = new ConnectionGroupTree(userContext,
+        // Prepare the requested tree, filtering by the given permissions
+        final ConnectionGroupTree tree = new ConnectionGroupTree(userContext,
                 connectionGroup, permissions);
 
-        // Return tree as a connection group
-        return tree.getRootAPIConnectionGroup();
+        // Stream tree as a connection group
+        return new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream output) throws IOException {
+                tree.write(output);
+            }
+
+        };
 
     }
 
@@ -17,319 +17,391 @@
  * under the License.
  */
 
+
 package org.apache.guacamole.rest.connectiongroup;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.net.auth.Connection;
 import org.apache.guacamole.net.auth.ConnectionGroup;
+import org.apache.guacamole.net.auth.ConnectionGroupVisitor;
 import org.apache.guacamole.net.auth.Directory;
 import org.apache.guacamole.net.auth.Permissions;
 import org.apache.guacamole.net.auth.SharingProfile;
+import org.apache.guacamole.net.auth.TraversableConnectionGroup;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.net.auth.permission.ObjectPermission;
 import org.apache.guacamole.net.auth.permission.ObjectPermissionSet;
 import org.apache.guacamole.rest.connection.APIConnection;
 import org.apache.guacamole.rest.sharingprofile.APISharingProfile;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.util.JsonGeneratorDelegate;
 
 /**
- * Provides access to the entire tree of connection groups, their
- * connections, and any associated sharing profiles.
+ * Provides access to the tree of connection groups, their connections, and
+ * any associated sharing profiles beneath a given root connection group. The
+ * tree is written as JSON while it is being retrieved, without first building
+ * a hierarchy of APIConnectionGroup objects. If the root connection group is
+ * a TraversableConnectionGroup, the entire tree is retrieved through that
+ * connection group in a single traversal. Otherwise, the tree is retrieved
+ * through the directories of the UserContext, one connection group at a time.
  */
 public class ConnectionGroupTree {
 
     /**
-     * Logger for this class.
+     * The ObjectMapper to use when serializing the objects within the tree.
+     * Output is not flushed after each object, as the tree is written as a
+     * single stream.
      */
-    private static final Logger logger = LoggerFactory.getLogger(ConnectionGroupTree.class);
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(SerializationConfig.Feature.FLUSH_AFTER_WRITE_VALUE, false);
 
     /**
-     * The root connection group as an APIConnectionGroup.
+     * The context of the user obtaining the connection group tree.
      */
-    private final APIConnectionGroup rootAPIGroup;
+    private final UserContext userContext;
 
     /**
-     * All connection permissions granted to the user obtaining this tree.
+     * The connection group at the root of this tree.
      */
-    private final ObjectPermissionSet connectionPermissions;
+    private final ConnectionGroup root;
 
     /**
-     * All sharing profile permissions granted to the user obtaining this tree.
+     * The identifiers of all connections which may be included in the tree,
+     * or null if connections should not be filtered by permission.
      */
-    private final ObjectPermissionSet sharingProfilePermissions;
+    private final Set<String> accessibleConnections;
 
     /**
-     * The directory of all connections visible to the user obtaining this tree.
+     * The identifiers of all sharing profiles which may be included in the
+     * tree, or null if sharing profiles should not be filtered by
+     * permission.
      */
-    private final Directory<Connection> connectionDirectory;
+    private final Set<String> accessibleSharingProfiles;
 
     /**
-     * The directory of all connection groups visible to the user obtaining this
-     * tree.
+     * The arrays of child objects which may be written within the JSON
+     * representation of a connection group.
      */
-    private final Directory<ConnectionGroup> connectionGroupDirectory;
+    private enum Section {
+
+        /**
+         * No array of child objects has yet been started.
+         */
+        NONE(null),
+
+        /**
+         * The array of child connections.
+         */
+        CONNECTIONS("childConnections"),
+
+        /**
+         * The array of child connection groups.
+         */
+        CONNECTION_GROUPS("childConnectionGroups");
+
+        /**
+         * The name of the JSON field containing this array, or null if this
+         * section does not represent an array.
+         */
+        private final String fieldName;
+
+        /**
+         * Creates a new Section having the given JSON field name.
+         *
+         * @param fieldName
+         *     The name of the JSON field containing the array represented by
+         *     this section, or null if this section does not represent an
+         *     array.
+         */
+        private Section(String fieldName) {
+            this.fieldName = fieldName;
+        }
 
-    /**
-     * The directory of all sharing profiles visible to the user obtaining this
-     * tree.
-     */
-    private final Directory<SharingProfile> sharingProfileDirectory;
+    }
 
     /**
-     * All connection groups that have been retrieved, stored by their
-     * identifiers.
+     * JsonGenerator which writes all output to another JsonGenerator, except
+     * that the end of the outermost JSON object is not written. Objects
+     * serialized through this generator are thus left open, such that
+     * further fields can be written to them.
      */
-    private final Map<String, APIConnectionGroup> retrievedGroups =
-            new HashMap<String, APIConnectionGroup>();
+    private static class OpenObjectGenerator extends JsonGeneratorDelegate {
+
+        /**
+         * The number of JSON objects which have been started but not yet
+         * ended.
+         */
+        private int depth = 0;
+
+        /**
+         * Creates a new OpenObjectGenerator which writes to the given
+         * generator.
+         *
+         * @param generator
+         *     The generator to write all output to.
+         */
+        public OpenObjectGenerator(JsonGenerator generator) {
+            super(generator);
+        }
 
-    /**
-     * All connections that have been retrieved, stored by their identifiers.
-     */
-    private final Map<String, APIConnection> retrievedConnections =
-            new HashMap<String, APIConnection>();
+        @Override
+        public void writeStartObject() throws IOException {
+            depth++;
+            super.writeStartObject();
+        }
+
+        @Override
+        public void writeEndObject() throws IOException {
+            if (--depth > 0)
+                super.writeEndObject();
+        }
+
+    }
 
     /**
-     * Adds each of the provided connections to the current tree as children
-     * of their respective parents. The parent connection groups must already
-     * be added.
-     *
-     * @param connections
-     *     The connections to add to the tree.
-     * 
-     * @throws GuacamoleException
-     *     If an error occurs while adding the connection to the tree.
+     * ConnectionGroupVisitor which writes each visited object to a
+     * JsonGenerator as part of the JSON representation of the root
+     * connection group, filtering connections and sharing profiles by
+     * permission as requested.
      */
-    private void addConnections(Collection<Connection> connections)
-        throws GuacamoleException {
-
-        // Add each connection to the tree
-        for (Connection connection : connections) {
-
-            // Retrieve the connection's parent group
-            APIConnectionGroup parent = retrievedGroups.get(connection.getParentIdentifier());
-            if (parent != null) {
-
-                Collection<APIConnection> children = parent.getChildConnections();
-                
-                // Create child collection if it does not yet exist
-                if (children == null) {
-                    children = new ArrayList<APIConnection>();
-                    parent.setChildConnections(children);
-                }
+    private class TreeWriter implements ConnectionGroupVisitor {
+
+        /**
+         * The generator to write the tree to.
+         */
+        private final JsonGenerator generator;
+
+        /**
+         * The array currently being written within each connection group
+         * which has been entered but not yet left, with the innermost
+         * connection group first.
+         */
+        private final Deque<Section> sections = new ArrayDeque<>();
+
+        /**
+         * Whether the most recently visited connection has been written and
+         * is still open, such that its sharing profiles may be added to it.
+         */
+        private boolean connectionOpen = false;
+
+        /**
+         * Whether the array of sharing profiles within the most recently
+         * visited connection has been started but not yet ended.
+         */
+        private boolean sharingProfilesOpen = false;
+
+        /**
+         * Creates a new TreeWriter which writes to the given generator.
+         *
+         * @param generator
+         *     The generator to write the tree to.
+         */
+        public TreeWriter(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        /**
+         * Serializes the given object as JSON, leaving the resulting JSON
+         * object open such that further fields can be written to it.
+         *
+         * @param object
+         *     The object to write.
+         *
+         * @throws IOException
+         *     If an error occurs while writing the object.
+         */
+        private void writeOpenObject(Object object) throws IOException {
+            mapper.writeValue(new OpenObjectGenerator(generator), object);
+        }
 
-                // Add child
-                APIConnection apiConnection = new APIConnection(connection);
-                retrievedConnections.put(connection.getIdentifier(), apiConnection);
-                children.add(apiConnection);
-                
+        /**
+         * Ends the most recently written connection, including its array of
+         * sharing profiles, if either is still open.
+         *
+         * @throws IOException
+         *     If an error occurs while writing to the generator.
+         */
+        private void closeConnection() throws IOException {
+
+            if (sharingProfilesOpen) {
+                generator.writeEndArray();
+                sharingProfilesOpen = false;
             }
 
-            // Warn of internal consistency issues
-            else
-                logger.debug("Connection \"{}\" cannot be added to the tree: parent \"{}\" does not actually exist.",
-                        connection.getIdentifier(),
-                        connection.getParentIdentifier());
+            if (connectionOpen) {
+                generator.writeEndObject();
+                connectionOpen = false;
+            }
 
-        } // end for each connection
-        
-    }
-    
-    /**
-     * Adds each of the provided connection groups to the current tree as
-     * children of their respective parents. The parent connection groups must
-     * already be added.
-     *
-     * @param connectionGroups
-     *     The connection groups to add to the tree.
-     */
-    private void addConnectionGroups(Collection<ConnectionGroup> connectionGroups) {
+        }
 
-        // Add each connection group to the tree
-        for (ConnectionGroup connectionGroup : connectionGroups) {
+        /**
+         * Starts the given array of child objects within the connection group
+         * most recently entered, ending any array previously started within
+         * that connection group. If the given array has already been started,
+         * this function has no effect.
+         *
+         * @param section
+         *     The array of child objects to start.
+         *
+         * @throws IOException
+         *     If an error occurs while writing to the generator.
+         */
+        private void startSection(Section section) throws IOException {
+
+            Section current = sections.pop();
+            if (current != section) {
+                if (current != Section.NONE)
+                    generator.writeEndArray();
+                generator.writeArrayFieldStart(section.fieldName);
+            }
 
-            // Retrieve the connection group's parent group
-            APIConnectionGroup parent = retrievedGroups.get(connectionGroup.getParentIdentifier());
-            if (parent != null) {
+            sections.push(section);
 
-                Collection<APIConnectionGroup> children = parent.getChildConnectionGroups();
-                
-                // Create child collection if it does not yet exist
-                if (children == null) {
-                    children = new ArrayList<APIConnectionGroup>();
-                    parent.setChildConnectionGroups(children);
-                }
+        }
 
-                // Add child
-                APIConnectionGroup apiConnectionGroup = new APIConnectionGroup(connectionGroup);
-                retrievedGroups.put(connectionGroup.getIdentifier(), apiConnectionGroup);
-                children.add(apiConnectionGroup);
-                
-            }
+        @Override
+        public void enterConnectionGroup(ConnectionGroup connectionGroup)
+                throws GuacamoleException {
 
-            // Warn of internal consistency issues
-            else
-                logger.debug("Connection group \"{}\" cannot be added to the tree: parent \"{}\" does not actually exist.",
-                        connectionGroup.getIdentifier(),
-                        connectionGroup.getParentIdentifier());
+            try {
 
-        } // end for each connection group
-        
-    }
+                // Child groups are elements of their parent's array
+                closeConnection();
+                if (!sections.isEmpty())
+                    startSection(Section.CONNECTION_GROUPS);
 
-    /**
-     * Adds each of the provided sharing profiles to the current tree as
-     * children of their respective primary connections. The primary connections
-     * must already be added.
-     *
-     * @param sharingProfiles
-     *     The sharing profiles to add to the tree.
-     *
-     * @throws GuacamoleException
-     *     If an error occurs while adding the sharing profiles to the tree.
-     */
-    private void addSharingProfiles(Collection<SharingProfile> sharingProfiles)
-        throws GuacamoleException {
+                writeOpenObject(new APIConnectionGroup(connectionGroup));
+                sections.push(Section.NONE);
 
-        // Add each sharing profile to the tree
-        for (SharingProfile sharingProfile : sharingProfiles) {
+            }
+            catch (IOException e) {
+                throw new GuacamoleServerException("Unable to write connection group.", e);
+            }
 
-            // Retrieve the sharing profile's associated connection
-            String primaryConnectionIdentifier = sharingProfile.getPrimaryConnectionIdentifier();
-            APIConnection primaryConnection = retrievedConnections.get(primaryConnectionIdentifier);
+        }
 
-            // Add the sharing profile as a child of the primary connection
-            if (primaryConnection != null) {
+        @Override
+        public void leaveConnectionGroup(ConnectionGroup connectionGroup)
+                throws GuacamoleException {
 
-                Collection<APISharingProfile> children = primaryConnection.getSharingProfiles();
+            try {
 
-                // Create child collection if it does not yet exist
-                if (children == null) {
-                    children = new ArrayList<APISharingProfile>();
-                    primaryConnection.setSharingProfiles(children);
-                }
+                closeConnection();
+                if (sections.pop() != Section.NONE)
+                    generator.writeEndArray();
 
-                // Add child
-                children.add(new APISharingProfile(sharingProfile));
+                generator.writeEndObject();
 
             }
+            catch (IOException e) {
+                throw new GuacamoleServerException("Unable to write connection group.", e);
+            }
 
-            // Warn of internal consistency issues
-            else
-                logger.debug("Sharing profile \"{}\" cannot be added to the "
-                        + "tree: primary connection \"{}\" does not actually "
-                        + "exist.", sharingProfile.getIdentifier(),
-                        primaryConnectionIdentifier);
+        }
 
-        } // end for each sharing profile
+        @Override
+        public void visitConnection(Connection connection)
+                throws GuacamoleException {
 
-    }
+            try {
 
-    /**
-     * Adds all descendants of the given parent groups to their corresponding
-     * parents already stored under root.
-     *
-     * @param parents
-     *     The parents whose descendants should be added to the tree.
-     * 
-     * @param permissions
-     *     If specified and non-empty, limit added connections to only
-     *     connections for which the current user has any of the given
-     *     permissions. Otherwise, all visible connections are added.
-     *     Connection groups are unaffected by this parameter.
-     *
-     * @throws GuacamoleException
-     *     If an error occurs while retrieving the descendants.
-     */
-    private void addConnectionGroupDescendants(Collection<ConnectionGroup> parents,
-            List<ObjectPermission.Type> permissions)
-        throws GuacamoleException {
-
-        // If no parents, nothing to do
-        if (parents.isEmpty())
-            return;
-
-        Collection<String> childConnectionIdentifiers = new ArrayList<String>();
-        Collection<String> childConnectionGroupIdentifiers = new ArrayList<String>();
-        
-        // Build lists of identifiers for retrieval
-        for (ConnectionGroup parent : parents) {
-            childConnectionIdentifiers.addAll(parent.getConnectionIdentifiers());
-            childConnectionGroupIdentifiers.addAll(parent.getConnectionGroupIdentifiers());
-        }
+                closeConnection();
+
+                // Skip connections (and thus their sharing profiles) which
+                // were not requested
+                if (accessibleConnections != null
+                        && !accessibleConnections.contains(connection.getIdentifier()))
+                    return;
+
+                startSection(Section.CONNECTIONS);
+                writeOpenObject(new APIConnection(connection));
+                connectionOpen = true;
+
+            }
+            catch (IOException e) {
+                throw new GuacamoleServerException("Unable to write connection.", e);
+            }
 
-        // Filter identifiers based on permissions, if requested
-        if (permissions != null && !permissions.isEmpty())
-            childConnectionIdentifiers = connectionPermissions.getAccessibleObjects(
-                    permissions, childConnectionIdentifiers);
-        
-        // Retrieve child connections
-        if (!childConnectionIdentifiers.isEmpty()) {
-            Collection<Connection> childConnections = connectionDirectory.getAll(childConnectionIdentifiers);
-            addConnections(childConnections);
-            addConnectionDescendants(childConnections, permissions);
         }
 
-        // Retrieve child connection groups
-        if (!childConnectionGroupIdentifiers.isEmpty()) {
-            Collection<ConnectionGroup> childConnectionGroups = connectionGroupDirectory.getAll(childConnectionGroupIdentifiers);
-            addConnectionGroups(childConnectionGroups);
-            addConnectionGroupDescendants(childConnectionGroups, permissions);
+        @Override
+        public void visitSharingProfile(SharingProfile sharingProfile)
+                throws GuacamoleException {
+
+            // Skip sharing profiles of skipped connections, as well as any
+            // sharing profiles which were not requested
+            if (!connectionOpen || (accessibleSharingProfiles != null
+                    && !accessibleSharingProfiles.contains(sharingProfile.getIdentifier())))
+                return;
+
+            try {
+
+                if (!sharingProfilesOpen) {
+                    generator.writeArrayFieldStart("sharingProfiles");
+                    sharingProfilesOpen = true;
+                }
+
+                mapper.writeValue(generator, new APISharingProfile(sharingProfile));
+
+            }
+            catch (IOException e) {
+                throw new GuacamoleServerException("Unable to write sharing profile.", e);
+            }
+
         }
 
     }
 
     /**
-     * Adds all descendant sharing profiles of the given connections to their
-     * corresponding primary connections already stored under root.
+     * Returns the identifiers of all objects within the given directory for
+     * which the current user has any of the given permissions.
      *
-     * @param connections
-     *     The connections whose descendant sharing profiles should be added to
-     *     the tree.
+     * @param directory
+     *     The directory containing the objects to test.
+     *
+     * @param permissionSet
+     *     The permissions granted to the current user for objects within the
+     *     given directory.
      *
      * @param permissions
-     *     If specified and non-empty, limit added sharing profiles to only
-     *     those for which the current user has any of the given
-     *     permissions. Otherwise, all visible sharing profiles are added.
+     *     The permissions to test for.
+     *
+     * @return
+     *     The identifiers of all objects within the given directory for which
+     *     the current user has any of the given permissions.
      *
      * @throws GuacamoleException
-     *     If an error occurs while retrieving the descendants.
+     *     If an error occurs while retrieving the identifiers or
+     *     permissions.
      */
-    private void addConnectionDescendants(Collection<Connection> connections,
-            List<ObjectPermission.Type> permissions)
-        throws GuacamoleException {
-
-        // If no connections, nothing to do
-        if (connections.isEmpty())
-            return;
-
-        // Build lists of sharing profile identifiers for retrieval
-        Collection<String> identifiers = new ArrayList<String>();
-        for (Connection connection : connections)
-            identifiers.addAll(connection.getSharingProfileIdentifiers());
-
-        // Filter identifiers based on permissions, if requested
-        if (permissions != null && !permissions.isEmpty())
-            identifiers = sharingProfilePermissions.getAccessibleObjects(
-                    permissions, identifiers);
-
-        // Retrieve and add all associated sharing profiles
-        if (!identifiers.isEmpty()) {
-            Collection<SharingProfile> sharingProfiles = sharingProfileDirectory.getAll(identifiers);
-            addSharingProfiles(sharingProfiles);
-        }
-
+    private static Set<String> getAccessibleIdentifiers(Directory<?> directory,
+            ObjectPermissionSet permissionSet,
+            List<ObjectPermission.Type> permissions) throws GuacamoleException {
+        return new HashSet<>(permissionSet.getAccessibleObjects(permissions,
+                directory.getIdentifiers()));
     }
-    
+
     /**
      * Creates a new connection group tree using the given connection group as
-     * the tree root.
+     * the tree root. The descendants of the root are not retrieved until the
+     * tree is written, however any permissions used to filter the tree are
+     * retrieved by this constructor.
      *
      * @param userContext
      *     The context of the user obtaining the connection group tree.
@@ -337,7 +409,7 @@ public class ConnectionGroupTree {
      * @param root
      *     The connection group to use as the root of this connection group
      *     tree.
-     * 
+     *
      * @param permissions
      *     If specified and non-empty, limit the contents of the tree to only
      *     those connections for which the current user has any of the given
@@ -345,42 +417,157 @@ public class ConnectionGroupTree {
      *     Connection groups are unaffected by this parameter.
      *
      * @throws GuacamoleException
-     *     If an error occurs while retrieving the tree of connection groups
-     *     and their descendants.
+     *     If an error occurs while retrieving the permissions of the current
+     *     user.
      */
     public ConnectionGroupTree(UserContext userContext, ConnectionGroup root,
             List<ObjectPermission.Type> permissions) throws GuacamoleException {
 
-        // Store root of tree
-        this.rootAPIGroup = new APIConnectionGroup(root);
-        retrievedGroups.put(root.getIdentifier(), this.rootAPIGroup);
+        this.userContext = userContext;
+        this.root = root;
+
+        // Determine up front which connections and sharing profiles may be
+        // included, if filtering by permission
+        if (permissions != null && !permissions.isEmpty()) {
+            Permissions effective = userContext.self().getEffectivePermissions();
+            accessibleConnections = getAccessibleIdentifiers(
+                    userContext.getConnectionDirectory(),
+                    effective.getConnectionPermissions(), permissions);
+            accessibleSharingProfiles = getAccessibleIdentifiers(
+                    userContext.getSharingProfileDirectory(),
+                    effective.getSharingProfilePermissions(), permissions);
+        }
+
+        // Otherwise, include everything visible
+        else {
+            accessibleConnections = null;
+            accessibleSharingProfiles = null;
+        }
+
+    }
+
+    /**
+     * Traverses the given connection group and all of its descendants using
+     * the directories of the UserContext, passing each object to the given
+     * visitor in the order defined by ConnectionGroupVisitor. Each
+     * connection group requires a single call to getAll() for each type of
+     * object within that group.
+     *
+     * @param group
+     *     The connection group to traverse.
+     *
+     * @param visitor
+     *     The visitor which should receive each object.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving any object, or if the visitor
+     *     fails to handle any object.
+     */
+    private void traverse(ConnectionGroup group, ConnectionGroupVisitor visitor)
+            throws GuacamoleException {
+
+        visitor.enterConnectionGroup(group);
+
+        // Visit child connections, each followed by its sharing profiles
+        Collection<String> connectionIdentifiers = group.getConnectionIdentifiers();
+        if (!connectionIdentifiers.isEmpty()) {
+
+            Collection<Connection> connections =
+                    userContext.getConnectionDirectory().getAll(connectionIdentifiers);
+
+            // Retrieve the sharing profiles of all child connections at once
+            Collection<String> sharingProfileIdentifiers = new ArrayList<>();
+            for (Connection connection : connections)
+                sharingProfileIdentifiers.addAll(connection.getSharingProfileIdentifiers());
 
-        // Store user's current permissions
-        Permissions effective = userContext.self().getEffectivePermissions();
-        this.connectionPermissions = effective.getConnectionPermissions();
-        this.sharingProfilePermissions = effective.getSharingProfilePermissions();
+            // Index sharing profiles by primary connection
+            Map<String, List<SharingProfile>> sharingProfiles = new HashMap<>();
+            if (!sharingProfileIdentifiers.isEmpty()) {
+                for (SharingProfile sharingProfile : userContext
+                        .getSharingProfileDirectory().getAll(sharingProfileIdentifiers)) {
 
-        // Store required directories
-        this.connectionDirectory = userContext.getConnectionDirectory();
-        this.connectionGroupDirectory = userContext.getConnectionGroupDirectory();
-        this.sharingProfileDirectory = userContext.getSharingProfileDirectory();
+                    String primary = sharingProfile.getPrimaryConnectionIdentifier();
+                    List<SharingProfile> children = sharingProfiles.get(primary);
+                    if (children == null) {
+                        children = new ArrayList<>();
+                        sharingProfiles.put(primary, children);
+                    }
+
+                    children.add(sharingProfile);
+
+                }
+            }
+
+            for (Connection connection : connections) {
+
+                visitor.visitConnection(connection);
+
+                List<SharingProfile> children = sharingProfiles.get(connection.getIdentifier());
+                if (children != null) {
+                    for (SharingProfile sharingProfile : children)
+                        visitor.visitSharingProfile(sharingProfile);
+                }
+
+            }
+
+        }
+
+        // Visit child connection groups recursively
+        Collection<String> connectionGroupIdentifiers = group.getConnectionGroupIdentifiers();
+        if (!connectionGroupIdentifiers.isEmpty()) {
+            for (ConnectionGroup child : userContext.getConnectionGroupDirectory()
+                    .getAll(connectionGroupIdentifiers))
+                traverse(child, visitor);
+        }
+
+        visitor.leaveConnectionGroup(group);
 
-        // Add all descendants
-        addConnectionGroupDescendants(Collections.singleton(root), permissions);
-        
     }
 
     /**
-     * Returns the entire connection group tree as an APIConnectionGroup. The
-     * returned APIConnectionGroup is the root group and will contain all
-     * descendant connection groups and connections, arranged hierarchically.
+     * Writes the entire connection group tree to the given stream as the JSON
+     * representation of an APIConnectionGroup. The root group will contain
+     * all descendant connection groups and connections, arranged
+     * hierarchically. Each descendant is written as soon as it has been
+     * retrieved.
      *
-     * @return
-     *     The root connection group, containing the entire connection group
-     *     tree and all connections.
+     * @param output
+     *     The stream to write the tree to. This stream is flushed but not
+     *     closed.
+     *
+     * @throws IOException
+     *     If an error occurs while retrieving or writing the tree.
      */
-    public APIConnectionGroup getRootAPIConnectionGroup() {
-        return rootAPIGroup;
+    public void write(OutputStream output) throws IOException {
+
+        JsonGenerator generator = mapper.getJsonFactory().createJsonGenerator(
+                output, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        TreeWriter writer = new TreeWriter(generator);
+        try {
+
+            // Retrieve the entire tree at once, if supported
+            if (root instanceof TraversableConnectionGroup)
+                ((TraversableConnectionGroup) root).traverse(writer);
+
+            // Otherwise, retrieve the tree one connection group at a time
+            else
+                traverse(root, writer);
+
+        }
+        catch (GuacamoleException e) {
+
+            // Rethrow any failure to write as-is
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+
+            throw new IOException("Unable to retrieve connection group tree.", e);
+
+        }
+
+        generator.close();
+
     }
 
 }
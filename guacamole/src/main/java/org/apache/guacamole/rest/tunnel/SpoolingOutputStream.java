@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.rest.tunnel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * OutputStream which writes all data both to a StreamSpool and to the
+ * response of the client which requested the stream. If the client
+ * disconnects, data continues to be spooled such that the client may resume
+ * the download. Writes fail only once neither the spool nor the client can
+ * receive further data.
+ */
+class SpoolingOutputStream extends OutputStream {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SpoolingOutputStream.class);
+
+    /**
+     * The spool receiving all data.
+     */
+    private final StreamSpool spool;
+
+    /**
+     * The response of the client which requested the stream, or null if the
+     * client has disconnected.
+     */
+    private OutputStream client;
+
+    /**
+     * Creates a new SpoolingOutputStream which writes all data to both the
+     * given spool and the given client response.
+     *
+     * @param spool
+     *     The spool which should receive all data.
+     *
+     * @param client
+     *     The response of the client which requested the stream.
+     */
+    public SpoolingOutputStream(StreamSpool spool, OutputStream client) {
+        this.spool = spool;
+        this.client = client;
+    }
+
+    /**
+     * Stops writing to the client, as the client is no longer able to receive
+     * data.
+     *
+     * @param e
+     *     The error which occurred while writing to the client.
+     */
+    private void clientFailed(IOException e) {
+        logger.debug("Client disconnected from spooled stream. Spooling "
+                + "will continue such that the download may be resumed.", e);
+        client = null;
+    }
+
+    /**
+     * Fails if neither the spool nor the client can receive further data.
+     *
+     * @throws IOException
+     *     If neither the spool nor the client can receive further data.
+     */
+    private void checkOpen() throws IOException {
+        if (client == null && spool.isFailed())
+            throw new IOException("Client disconnected and stream could not "
+                    + "be spooled.");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+
+        spool.write(buffer, offset, length);
+
+        if (client != null) {
+            try {
+                client.write(buffer, offset, length);
+            }
+            catch (IOException e) {
+                clientFailed(e);
+            }
+        }
+
+        checkOpen();
+
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        if (client != null) {
+            try {
+                client.flush();
+            }
+            catch (IOException e) {
+                clientFailed(e);
+            }
+        }
+
+        checkOpen();
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        // The spool is completed or abandoned only once the outcome of the
+        // stream is known
+        if (client != null) {
+            try {
+                client.close();
+            }
+            catch (IOException e) {
+                clientFailed(e);
+            }
+        }
+
+    }
+
+}
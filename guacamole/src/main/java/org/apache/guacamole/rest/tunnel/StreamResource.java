@@ -22,8 +22,11 @@ package org.apache.guacamole.rest.tunnel;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
@@ -41,6 +44,32 @@ import org.apache.guacamole.tunnel.StreamInterceptingTunnel;
 @Consumes(MediaType.APPLICATION_JSON)
 public class StreamResource {
 
+    /**
+     * The HTTP status code of a successful response containing the entire
+     * stream.
+     */
+    private static final int HTTP_OK = 200;
+
+    /**
+     * The HTTP status code of a successful response containing only the
+     * requested range of the stream.
+     */
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+
+    /**
+     * The HTTP status code of a response to a request for a range which lies
+     * outside the stream.
+     */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * Pattern matching an HTTP "Range" header requesting a single range of
+     * bytes, where the first group is the offset of the first byte requested
+     * and the second group is the offset of the last byte requested. Either
+     * group may be empty.
+     */
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
     /**
      * The tunnel whose stream is exposed through this StreamResource.
      */
@@ -56,6 +85,11 @@ public class StreamResource {
      */
     private final String mediaType;
 
+    /**
+     * The service spooling the contents of downloaded streams.
+     */
+    private final StreamSpoolService spoolService;
+
     /**
      * Creates a new StreamResource which provides access to the given
      * stream.
@@ -68,24 +102,28 @@ public class StreamResource {
      *
      * @param mediaType
      *     The media type of the data within the stream.
+     *
+     * @param spoolService
+     *     The service spooling the contents of downloaded streams.
      */
     public StreamResource(StreamInterceptingTunnel tunnel, int streamIndex,
-            String mediaType) {
+            String mediaType, StreamSpoolService spoolService) {
         this.tunnel = tunnel;
         this.streamIndex = streamIndex;
         this.mediaType = mediaType;
+        this.spoolService = spoolService;
     }
 
     /**
-     * Intercepts and returns the entire contents the stream represented by
-     * this StreamResource.
+     * Returns a response which intercepts the stream represented by this
+     * StreamResource, sending its entire contents to the client without
+     * spooling.
      *
      * @return
      *     A response through which the entire contents of the intercepted
      *     stream will be sent.
      */
-    @GET
-    public Response getStreamContents() {
+    private ResponseBuilder interceptContents() {
 
         // Intercept all output
         StreamingOutput stream = new StreamingOutput() {
@@ -102,8 +140,246 @@ public class StreamResource {
 
         };
 
-        // Begin successful response
-        ResponseBuilder responseBuilder = Response.ok(stream, mediaType);
+        return Response.ok(stream, mediaType);
+
+    }
+
+    /**
+     * Returns a response which intercepts the stream represented by this
+     * StreamResource, sending its entire contents to the client while also
+     * writing those contents to the given spool. The stream continues to be
+     * spooled even if the client disconnects.
+     *
+     * @param spool
+     *     The empty spool which should receive the contents of the stream.
+     *
+     * @return
+     *     A response through which the entire contents of the intercepted
+     *     stream will be sent.
+     */
+    private ResponseBuilder spoolContents(final StreamSpool spool) {
+
+        // Intercept all output, writing to both the client and the spool
+        StreamingOutput stream = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream output) throws IOException {
+
+                try {
+                    tunnel.interceptStream(streamIndex,
+                            new SpoolingOutputStream(spool, output));
+                }
+                catch (GuacamoleException e) {
+                    spool.fail();
+                    throw new IOException(e);
+                }
+
+                // A stream cut short by the tunnel closing is incomplete
+                if (tunnel.isOpen())
+                    spool.complete();
+                else
+                    spool.fail();
+
+            }
+
+        };
+
+        return Response.ok(stream, mediaType)
+                .header("Accept-Ranges", "bytes")
+                .header("ETag", spool.getEntityTag());
+
+    }
+
+    /**
+     * Returns a response which sends the given range of the contents of the
+     * given spool, waiting for the spooled stream to be received if
+     * necessary. If the number of bytes that will be sent is known, the
+     * response includes a "Content-Length" header.
+     *
+     * @param spool
+     *     The spool containing the contents of the stream.
+     *
+     * @param status
+     *     The HTTP status code of the response.
+     *
+     * @param offset
+     *     The offset of the first byte to send.
+     *
+     * @param count
+     *     The number of bytes to send, or -1 to send all remaining bytes.
+     *
+     * @return
+     *     A response through which the given range will be sent.
+     */
+    private ResponseBuilder sendSpooled(final StreamSpool spool, int status,
+            final long offset, final long count) {
+
+        StreamingOutput stream = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream output) throws IOException {
+                spool.copyTo(output, offset, count);
+            }
+
+        };
+
+        ResponseBuilder responseBuilder = Response.status(status)
+                .entity(stream).type(mediaType)
+                .header("Accept-Ranges", "bytes")
+                .header("ETag", spool.getEntityTag());
+
+        // The remaining length is known only once spooling has completed
+        if (count >= 0)
+            responseBuilder.header("Content-Length", count);
+        else if (spool.isComplete())
+            responseBuilder.header("Content-Length", spool.getLength() - offset);
+
+        return responseBuilder;
+
+    }
+
+    /**
+     * Parses the given byte position from an HTTP "Range" header. As the
+     * position has already been matched as a sequence of digits, the only
+     * possible parse failure is a value too large to represent, which is
+     * treated as the largest representable position.
+     *
+     * @param position
+     *     The non-empty string of digits to parse.
+     *
+     * @return
+     *     The parsed byte position, or Long.MAX_VALUE if the position is too
+     *     large to represent.
+     */
+    private static long parseBytePosition(String position) {
+        try {
+            return Long.parseLong(position);
+        }
+        catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Returns a response which sends the portion of the given spool
+     * requested by the given HTTP "Range" header. Ranges are honored only
+     * once the entire stream has been spooled, and only if a single range is
+     * requested. Otherwise, the entire contents of the stream are sent as
+     * they are spooled.
+     *
+     * @param spool
+     *     The spool containing the contents of the stream.
+     *
+     * @param range
+     *     The value of the HTTP "Range" header.
+     *
+     * @return
+     *     A response through which the requested portion of the spool will be
+     *     sent.
+     */
+    private ResponseBuilder sendRange(StreamSpool spool, String range) {
+
+        Matcher matcher = BYTE_RANGE.matcher(range.trim());
+        if (!spool.isComplete() || !matcher.matches())
+            return sendSpooled(spool, HTTP_OK, 0, -1);
+
+        long length = spool.getLength();
+        String first = matcher.group(1);
+        String last = matcher.group(2);
+
+        long start;
+        long end;
+
+        // Suffix range ("bytes=-N") requests the final N bytes
+        if (first.isEmpty()) {
+            if (last.isEmpty())
+                return sendSpooled(spool, HTTP_OK, 0, -1);
+            start = Math.max(length - parseBytePosition(last), 0);
+            end = length - 1;
+        }
+
+        else {
+
+            start = parseBytePosition(first);
+            end = length - 1;
+
+            // Per RFC 7233, a range ending before it begins is invalid, and
+            // the "Range" header must then be ignored
+            if (!last.isEmpty()) {
+                long lastPosition = parseBytePosition(last);
+                if (lastPosition < start)
+                    return sendSpooled(spool, HTTP_OK, 0, -1);
+                end = Math.min(lastPosition, end);
+            }
+
+        }
+
+        // Only a valid range beginning beyond the end of the stream is
+        // unsatisfiable
+        if (start >= length)
+            return Response.status(HTTP_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + length);
+
+        return sendSpooled(spool, HTTP_PARTIAL_CONTENT, start, end - start + 1)
+                .header("Content-Range", "bytes " + start + "-" + end + "/" + length);
+
+    }
+
+    /**
+     * Intercepts and returns the entire contents the stream represented by
+     * this StreamResource. If spooling is enabled, the contents of the stream
+     * are additionally spooled to disk, and a request which includes an HTTP
+     * "Range" header is served from the existing spool of the stream, if any,
+     * allowing an interrupted download to be resumed without intercepting the
+     * stream again.
+     *
+     * @param range
+     *     The value of the HTTP "Range" header, or null if the entire stream
+     *     is requested.
+     *
+     * @param ifRange
+     *     The value of the HTTP "If-Range" header, or null if the range should
+     *     be sent regardless of which spooled stream it is from.
+     *
+     * @return
+     *     A response through which the entire contents of the intercepted
+     *     stream, or the requested portion of those contents, will be sent.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be parsed.
+     */
+    @GET
+    public Response getStreamContents(@HeaderParam("Range") String range,
+            @HeaderParam("If-Range") String ifRange) throws GuacamoleException {
+
+        ResponseBuilder responseBuilder = null;
+
+        if (spoolService.isEnabled()) {
+
+            StreamSpool spool = spoolService.get(tunnel, streamIndex);
+
+            // Serve ranges only from the spool having the expected contents
+            if (range != null && spool != null
+                    && (ifRange == null || ifRange.equals(spool.getEntityTag())))
+                responseBuilder = sendRange(spool, range);
+
+            // A repeated request for a stream still being received must not
+            // intercept the remainder of that stream a second time
+            else if (spool != null && !spool.isComplete())
+                responseBuilder = sendSpooled(spool, HTTP_OK, 0, -1);
+
+            // Otherwise, begin spooling newly-intercepted stream
+            else {
+                spool = spoolService.create(tunnel, streamIndex);
+                if (spool != null)
+                    responseBuilder = spoolContents(spool);
+            }
+
+        }
+
+        // Intercept without spooling if spooling is disabled or unavailable
+        if (responseBuilder == null)
+            responseBuilder = interceptContents();
 
         // Set Content-Disposition header for "application/octet-stream"
         if (mediaType.equals(MediaType.APPLICATION_OCTET_STREAM))
@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.rest.tunnel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import org.apache.guacamole.expiry.Expirable;
+import org.apache.guacamole.expiry.Expiration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The contents of a single intercepted stream, written to a file on disk as
+ * they are received such that any portion of those contents may be sent
+ * again after the stream has ended. Contents are read back by memory-mapping
+ * the portion of the file requested. A spool which has not been written to
+ * or read from within its time-to-live is deleted automatically.
+ */
+public class StreamSpool implements Expirable {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StreamSpool.class);
+
+    /**
+     * The maximum number of bytes memory-mapped at once while reading.
+     */
+    private static final int MAP_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The number of bytes copied from the memory-mapped file to the output
+     * at a time.
+     */
+    private static final int COPY_BUFFER_SIZE = 65536;
+
+    /**
+     * The service which created this spool, and which accounts for the disk
+     * space used by all spools.
+     */
+    private final StreamSpoolService service;
+
+    /**
+     * The key identifying the stream being spooled.
+     */
+    private final String key;
+
+    /**
+     * The file containing the spooled data.
+     */
+    private final Path file;
+
+    /**
+     * The channel used to write to the spool file.
+     */
+    private final FileChannel output;
+
+    /**
+     * The entity tag identifying the contents of this spool, as sent within
+     * the "ETag" and "If-Range" HTTP headers.
+     */
+    private final String entityTag = '"' + UUID.randomUUID().toString() + '"';
+
+    /**
+     * The number of milliseconds after last access that this spool expires.
+     */
+    private final long timeToLive;
+
+    /**
+     * The number of bytes written to the spool file.
+     */
+    private volatile long length = 0;
+
+    /**
+     * Whether all data of the stream has been written to this spool.
+     */
+    private volatile boolean complete = false;
+
+    /**
+     * Whether this spool has been abandoned and its file deleted, such that
+     * its contents are no longer available.
+     */
+    private volatile boolean failed = false;
+
+    /**
+     * The time that this spool was last written to or read from, in
+     * milliseconds since midnight, January 1, 1970 UTC.
+     */
+    private volatile long lastAccessed = System.currentTimeMillis();
+
+    /**
+     * The registration of this spool with the TimingWheel, or null if not yet
+     * registered.
+     */
+    private volatile Expiration expiration;
+
+    /**
+     * Creates a new, empty StreamSpool backed by the given file.
+     *
+     * @param service
+     *     The service creating this spool.
+     *
+     * @param key
+     *     The key identifying the stream being spooled.
+     *
+     * @param file
+     *     The newly-created, empty file which should contain the spooled
+     *     data.
+     *
+     * @param timeToLive
+     *     The number of milliseconds after last access that this spool should
+     *     expire.
+     *
+     * @throws IOException
+     *     If the given file cannot be opened for writing.
+     */
+    StreamSpool(StreamSpoolService service, String key, Path file,
+            long timeToLive) throws IOException {
+        this.service = service;
+        this.key = key;
+        this.file = file;
+        this.timeToLive = timeToLive;
+        this.output = FileChannel.open(file, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Associates this spool with its registration with the TimingWheel.
+     *
+     * @param expiration
+     *     The registration of this spool with the TimingWheel.
+     */
+    void setExpiration(Expiration expiration) {
+        this.expiration = expiration;
+    }
+
+    /**
+     * Returns the key identifying the stream being spooled.
+     *
+     * @return
+     *     The key identifying the stream being spooled.
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the entity tag identifying the contents of this spool,
+     * including surrounding quotes, as sent within the "ETag" HTTP header.
+     *
+     * @return
+     *     The entity tag identifying the contents of this spool.
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Returns the number of bytes written to this spool so far.
+     *
+     * @return
+     *     The number of bytes written to this spool so far.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns whether all data of the stream has been written to this spool.
+     *
+     * @return
+     *     true if all data of the stream has been written to this spool,
+     *     false otherwise.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns whether this spool has been abandoned, such that its contents
+     * are no longer available.
+     *
+     * @return
+     *     true if this spool has been abandoned, false otherwise.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Appends the given data to this spool. If the data cannot be written,
+     * including if doing so would exceed the space available for all spools,
+     * this spool is abandoned.
+     *
+     * @param buffer
+     *     The array containing the data to append.
+     *
+     * @param offset
+     *     The offset of the data within the array.
+     *
+     * @param count
+     *     The number of bytes to append.
+     *
+     * @return
+     *     true if the data was appended, false if this spool has been
+     *     abandoned.
+     */
+    boolean write(byte[] buffer, int offset, int count) {
+
+        if (failed)
+            return false;
+
+        if (!service.reserve(count)) {
+            logger.debug("Spooling of stream \"{}\" abandoned as spool space "
+                    + "is exhausted.", key);
+            fail();
+            return false;
+        }
+
+        try {
+            ByteBuffer data = ByteBuffer.wrap(buffer, offset, count);
+            while (data.hasRemaining())
+                output.write(data);
+        }
+        catch (IOException e) {
+            logger.debug("Spooling of stream \"{}\" failed.", key, e);
+            service.release(count);
+            fail();
+            return false;
+        }
+
+        synchronized (this) {
+
+            // Space used by an abandoned spool has already been released,
+            // except for the data just written
+            if (failed) {
+                service.release(count);
+                return false;
+            }
+
+            length += count;
+            lastAccessed = System.currentTimeMillis();
+            notifyAll();
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Marks this spool as containing all data of the stream.
+     */
+    synchronized void complete() {
+
+        try {
+            output.close();
+        }
+        catch (IOException e) {
+            logger.debug("Unable to close spool file of stream \"{}\".", key, e);
+        }
+
+        complete = true;
+        lastAccessed = System.currentTimeMillis();
+        notifyAll();
+
+    }
+
+    /**
+     * Abandons this spool, deleting its file and releasing the space it
+     * used. Readers still waiting for data will fail.
+     */
+    void fail() {
+
+        long spooled;
+        synchronized (this) {
+            if (failed)
+                return;
+            failed = true;
+            spooled = length;
+            notifyAll();
+        }
+
+        try {
+            output.close();
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            logger.warn("Unable to delete spool file \"{}\": {}", file, e.getMessage());
+            logger.debug("Spool file could not be deleted.", e);
+        }
+
+        service.release(spooled);
+        service.remove(this);
+
+        Expiration registered = expiration;
+        if (registered != null)
+            registered.cancel();
+
+    }
+
+    /**
+     * Waits until data beyond the given offset has been written, or until
+     * the stream has ended.
+     *
+     * @param offset
+     *     The offset of the data required.
+     *
+     * @return
+     *     The number of bytes written to this spool.
+     *
+     * @throws IOException
+     *     If this spool is abandoned or the wait is interrupted.
+     */
+    private synchronized long waitFor(long offset) throws IOException {
+
+        while (length <= offset && !complete && !failed) {
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting "
+                        + "for spooled data.");
+            }
+        }
+
+        if (failed)
+            throw new IOException("Spooled stream is no longer available.");
+
+        return length;
+
+    }
+
+    /**
+     * Copies the given range of spooled data to the given OutputStream,
+     * waiting for that data to be written if the stream has not yet ended.
+     * Data is read by memory-mapping the spool file.
+     *
+     * @param out
+     *     The OutputStream to copy data to.
+     *
+     * @param offset
+     *     The offset of the first byte to copy.
+     *
+     * @param count
+     *     The number of bytes to copy, or -1 to copy all data through the end
+     *     of the stream.
+     *
+     * @throws IOException
+     *     If the data cannot be read or written, or if this spool is
+     *     abandoned before all requested data has been copied.
+     */
+    public void copyTo(OutputStream out, long offset, long count)
+            throws IOException {
+
+        long position = offset;
+        long end = (count < 0) ? Long.MAX_VALUE : offset + count;
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            while (position < end) {
+
+                // Stop once all data of the completed stream has been copied
+                long available = Math.min(waitFor(position), end);
+                if (available <= position) {
+                    if (count < 0)
+                        return;
+                    throw new IOException("Spooled stream ended before the "
+                            + "requested range.");
+                }
+
+                MappedByteBuffer mapped = input.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(available - position, MAP_SIZE));
+
+                while (mapped.hasRemaining()) {
+                    int chunk = Math.min(mapped.remaining(), buffer.length);
+                    mapped.get(buffer, 0, chunk);
+                    out.write(buffer, 0, chunk);
+                }
+
+                position += mapped.capacity();
+                lastAccessed = System.currentTimeMillis();
+
+            }
+
+        }
+
+    }
+
+    @Override
+    public long getExpirationTime() {
+        return lastAccessed + timeToLive;
+    }
+
+    @Override
+    public void expire() {
+        logger.debug("Spool of stream \"{}\" has expired.", key);
+        expiration = null;
+        fail();
+    }
+
+}
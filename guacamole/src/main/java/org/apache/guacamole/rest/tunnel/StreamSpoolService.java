@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.rest.tunnel;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.expiry.TimingWheel;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
+import org.apache.guacamole.properties.FileGuacamoleProperty;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.apache.guacamole.properties.LongGuacamoleProperty;
+import org.apache.guacamole.tunnel.StreamInterceptingTunnel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which spools the contents of streams downloaded through the REST
+ * API to disk, as configured within guacamole.properties, such that
+ * interrupted downloads may be resumed and completed downloads may be
+ * fetched again in segments using HTTP range requests. The total size of all
+ * spools is bounded, and spools which are not accessed within a configurable
+ * time-to-live are deleted. Spooling is disabled by default.
+ */
+@Singleton
+public class StreamSpoolService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StreamSpoolService.class);
+
+    /**
+     * The default maximum total size of all spools, in bytes.
+     */
+    private static final long DEFAULT_MAX_SIZE = 4L * 1024 * 1024 * 1024;
+
+    /**
+     * The default number of seconds after last access that a spool expires.
+     */
+    private static final int DEFAULT_TTL = 600;
+
+    /**
+     * Whether the contents of downloaded streams should be spooled to disk.
+     */
+    private static final BooleanGuacamoleProperty TUNNEL_STREAM_SPOOL =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-stream-spool"; }
+
+    };
+
+    /**
+     * The directory which should contain all spool files. By default, a
+     * "guacamole-spool" directory within the system temporary directory is
+     * used.
+     */
+    private static final FileGuacamoleProperty TUNNEL_STREAM_SPOOL_DIRECTORY =
+            new FileGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-stream-spool-directory"; }
+
+    };
+
+    /**
+     * The maximum total size of all spools, in bytes. Streams which would
+     * exceed this size are still downloaded, but cannot be resumed.
+     */
+    private static final LongGuacamoleProperty TUNNEL_STREAM_SPOOL_MAX_SIZE =
+            new LongGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-stream-spool-max-size"; }
+
+    };
+
+    /**
+     * The number of seconds after last access that a spool is deleted.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_STREAM_SPOOL_TTL =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-stream-spool-ttl"; }
+
+    };
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * The TimingWheel which deletes spools that have expired.
+     */
+    private final TimingWheel timingWheel = TimingWheel.getSharedInstance();
+
+    /**
+     * All spools which have not expired, indexed by the key returned by
+     * getKey().
+     */
+    private final ConcurrentMap<String, StreamSpool> spools =
+            new ConcurrentHashMap<String, StreamSpool>();
+
+    /**
+     * The total number of bytes within all spools.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * The maximum total size of all spools, in bytes, as read when the most
+     * recent spool was created.
+     */
+    private volatile long maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Returns a key which uniquely identifies the stream having the given
+     * index within the given tunnel.
+     *
+     * @param tunnel
+     *     The tunnel containing the stream.
+     *
+     * @param streamIndex
+     *     The index of the stream.
+     *
+     * @return
+     *     A key which uniquely identifies the stream.
+     */
+    private static String getKey(StreamInterceptingTunnel tunnel, int streamIndex) {
+        return tunnel.getUUID() + "/" + streamIndex;
+    }
+
+    /**
+     * Returns whether the contents of downloaded streams should be spooled to
+     * disk.
+     *
+     * @return
+     *     true if downloaded streams should be spooled, false otherwise.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be parsed.
+     */
+    public boolean isEnabled() throws GuacamoleException {
+        return environment.getProperty(TUNNEL_STREAM_SPOOL, false);
+    }
+
+    /**
+     * Returns the spool of the stream having the given index within the
+     * given tunnel, if that spool has not been abandoned or expired.
+     *
+     * @param tunnel
+     *     The tunnel containing the stream.
+     *
+     * @param streamIndex
+     *     The index of the stream.
+     *
+     * @return
+     *     The spool of the given stream, or null if there is no such spool.
+     */
+    public StreamSpool get(StreamInterceptingTunnel tunnel, int streamIndex) {
+        return spools.get(getKey(tunnel, streamIndex));
+    }
+
+    /**
+     * Creates a new, empty spool for the stream having the given index within
+     * the given tunnel, replacing any existing spool for that stream.
+     *
+     * @param tunnel
+     *     The tunnel containing the stream.
+     *
+     * @param streamIndex
+     *     The index of the stream.
+     *
+     * @return
+     *     A new, empty spool, or null if the spool file cannot be created.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be parsed.
+     */
+    public StreamSpool create(StreamInterceptingTunnel tunnel, int streamIndex)
+            throws GuacamoleException {
+
+        File directory = environment.getProperty(TUNNEL_STREAM_SPOOL_DIRECTORY,
+                new File(System.getProperty("java.io.tmpdir"), "guacamole-spool"));
+        long timeToLive = environment.getProperty(TUNNEL_STREAM_SPOOL_TTL,
+                DEFAULT_TTL) * 1000L;
+        maxSize = environment.getProperty(TUNNEL_STREAM_SPOOL_MAX_SIZE,
+                DEFAULT_MAX_SIZE);
+
+        String key = getKey(tunnel, streamIndex);
+        StreamSpool spool;
+        try {
+            Path dir = Files.createDirectories(directory.toPath());
+            spool = new StreamSpool(this, key,
+                    Files.createTempFile(dir, "stream-", ".spool"), timeToLive);
+        }
+        catch (IOException e) {
+            logger.warn("Unable to create spool for stream within \"{}\": {}",
+                    directory, e.getMessage());
+            logger.debug("Spool file could not be created.", e);
+            return null;
+        }
+
+        StreamSpool replaced = spools.put(key, spool);
+        if (replaced != null)
+            replaced.fail();
+
+        spool.setExpiration(timingWheel.register(spool));
+        return spool;
+
+    }
+
+    /**
+     * Reserves the given number of bytes of spool space, failing if doing so
+     * would exceed the maximum total size of all spools.
+     *
+     * @param count
+     *     The number of bytes to reserve.
+     *
+     * @return
+     *     true if the space was reserved, false otherwise.
+     */
+    boolean reserve(long count) {
+
+        if (size.addAndGet(count) > maxSize) {
+            size.addAndGet(-count);
+            return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Releases the given number of bytes of spool space.
+     *
+     * @param count
+     *     The number of bytes to release.
+     */
+    void release(long count) {
+        size.addAndGet(-count);
+    }
+
+    /**
+     * Stops tracking the given abandoned spool.
+     *
+     * @param spool
+     *     The spool which has been abandoned.
+     */
+    void remove(StreamSpool spool) {
+        spools.remove(spool.getKey(), spool);
+    }
+
+    /**
+     * Abandons all spools, deleting their files.
+     */
+    public void shutdown() {
+        for (StreamSpool spool : new ArrayList<StreamSpool>(spools.values()))
+            spool.fail();
+    }
+
+}
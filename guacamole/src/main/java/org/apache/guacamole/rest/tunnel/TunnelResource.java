@@ -77,6 +77,12 @@ public class TunnelResource {
     @Inject
     private Environment environment;
 
+    /**
+     * The service spooling the contents of downloaded streams.
+     */
+    @Inject
+    private StreamSpoolService spoolService;
+
     /**
      * A factory which can be used to create instances of resources representing
      * ActiveConnections.
@@ -197,7 +203,7 @@ public class TunnelResource {
             url = requestURL.append('?').append(queryString).toString();
         }
         sendFileTransferLog(url, method, cookie, filename, mediaType, contentLength);
-        return new StreamResource(tunnel, streamIndex, mediaType);
+        return new StreamResource(tunnel, streamIndex, mediaType, spoolService);
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.io.FrameCoalescingPolicy;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.apache.guacamole.properties.LongGuacamoleProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which provides the policy determining how instructions received
+ * from guacd are combined into the frames sent to the client by both the
+ * HTTP and WebSocket tunnels, as configured within guacamole.properties. By
+ * default, frames are sent as soon as no further data is immediately
+ * available.
+ */
+@Singleton
+public class FrameCoalescingService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(FrameCoalescingService.class);
+
+    /**
+     * The maximum amount of time that data received from guacd may be held
+     * awaiting the remainder of a frame, in microseconds. If zero or unset,
+     * data is sent as soon as no further data is immediately available.
+     */
+    private static final LongGuacamoleProperty TUNNEL_COALESCE_MAX_DELAY =
+            new LongGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-coalesce-max-delay"; }
+
+    };
+
+    /**
+     * The maximum size of each frame sent to the client, in bytes or
+     * characters. Frames may be smaller if the estimated bandwidth of a
+     * tunnel would not allow a full frame to be sent within the maximum
+     * delay.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_COALESCE_MAX_FRAME_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-coalesce-max-frame-size"; }
+
+    };
+
+    /**
+     * Whether a frame should be sent as soon as it ends with a "sync"
+     * instruction and no further data is immediately available, rather than
+     * waiting for the maximum delay to elapse. Enabled by default.
+     */
+    private static final BooleanGuacamoleProperty TUNNEL_COALESCE_SYNC =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-coalesce-sync"; }
+
+    };
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * The policy read from guacamole.properties, or null if
+     * guacamole.properties has not yet been read.
+     */
+    private FrameCoalescingPolicy policy;
+
+    /**
+     * Returns the policy which should determine how instructions received
+     * from guacd are combined into the frames sent to the client. The policy
+     * is read from guacamole.properties upon first use. If the configured
+     * values are invalid, the default policy is used.
+     *
+     * @return
+     *     The policy to apply to all frames sent to the client.
+     */
+    public synchronized FrameCoalescingPolicy getPolicy() {
+
+        if (policy != null)
+            return policy;
+
+        try {
+            policy = new FrameCoalescingPolicy(
+                environment.getProperty(TUNNEL_COALESCE_MAX_DELAY,
+                        FrameCoalescingPolicy.DEFAULT_MAX_DELAY),
+                environment.getProperty(TUNNEL_COALESCE_MAX_FRAME_SIZE,
+                        FrameCoalescingPolicy.DEFAULT_MAX_FRAME_SIZE),
+                environment.getProperty(TUNNEL_COALESCE_SYNC, true)
+            );
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading frame coalescing properties.", e);
+            policy = FrameCoalescingPolicy.DEFAULT;
+        }
+        catch (IllegalArgumentException e) {
+            logger.error("Invalid frame coalescing configuration: {}", e.getMessage());
+            logger.debug("Frame coalescing properties are out of range.", e);
+            policy = FrameCoalescingPolicy.DEFAULT;
+        }
+
+        logger.debug("Tunnel frames will be coalesced with {}.", policy);
+        return policy;
+
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.guacamole.tunnel;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.net.SSLGuacamoleSocketContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which configures the SSL/TLS context used for all SSL/TLS
+ * connections to guacd, as configured within guacamole.properties. If no
+ * relevant properties are set, the default SSL/TLS context of the JVM is used.
+ */
+@Singleton
+public class GuacdSSLService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacdSSLService.class);
+
+    /**
+     * A pattern which matches against the delimiters between the values of
+     * list properties.
+     */
+    private static final Pattern DELIMITER_PATTERN = Pattern.compile("\\s*,\\s*");
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * The context installed by install(), or null if no context has been
+     * installed.
+     */
+    private SSLGuacamoleSocketContext context;
+
+    /**
+     * Parses the given comma-separated list, verifying that each value is
+     * among the given supported values.
+     *
+     * @param name
+     *     The name of the property being parsed, for the sake of error
+     *     messages.
+     *
+     * @param value
+     *     The comma-separated list to parse, or null if the property is not
+     *     set.
+     *
+     * @param supported
+     *     All values which are supported.
+     *
+     * @return
+     *     The values within the given list, in order, or null if the property
+     *     is not set.
+     *
+     * @throws GuacamoleException
+     *     If any value within the given list is not supported.
+     */
+    private static String[] parseList(String name, String value,
+            String[] supported) throws GuacamoleException {
+
+        if (value == null || value.trim().isEmpty())
+            return null;
+
+        String[] values = DELIMITER_PATTERN.split(value.trim());
+        List<String> supportedValues = Arrays.asList(supported);
+        for (String requested : values) {
+            if (!supportedValues.contains(requested))
+                throw new GuacamoleServerException("\"" + requested + "\" "
+                        + "within \"" + name + "\" is not supported.");
+        }
+
+        return values;
+
+    }
+
+    /**
+     * Reads the SSL/TLS configuration for guacd from guacamole.properties,
+     * installing the resulting context as the default for all
+     * SSLGuacamoleSockets. If the configuration is invalid, the default
+     * SSL/TLS context of the JVM continues to be used.
+     */
+    public synchronized void install() {
+
+        try {
+
+            String provider = environment.getProperty(Environment.GUACD_SSL_PROVIDER);
+            String protocols = environment.getProperty(Environment.GUACD_SSL_PROTOCOLS);
+            String cipherSuites = environment.getProperty(Environment.GUACD_SSL_CIPHER_SUITES);
+            Integer cacheSize = environment.getProperty(Environment.GUACD_SSL_SESSION_CACHE_SIZE);
+            Integer timeout = environment.getProperty(Environment.GUACD_SSL_SESSION_TIMEOUT);
+
+            // Use a dedicated SSLContext only if a provider is specified, such
+            // that the session cache of the JVM default is otherwise shared
+            SSLContext sslContext = provider != null
+                    ? SSLGuacamoleSocketContext.createSSLContext(provider)
+                    : SSLContext.getDefault();
+
+            SSLParameters supported = sslContext.getSupportedSSLParameters();
+            context = new SSLGuacamoleSocketContext(sslContext,
+                parseList(Environment.GUACD_SSL_PROTOCOLS.getName(),
+                        protocols, supported.getProtocols()),
+                parseList(Environment.GUACD_SSL_CIPHER_SUITES.getName(),
+                        cipherSuites, supported.getCipherSuites())
+            );
+
+            if (cacheSize != null)
+                context.setSessionCacheSize(cacheSize);
+
+            if (timeout != null)
+                context.setSessionTimeout(timeout);
+
+            SSLGuacamoleSocketContext.setDefault(context);
+            logger.debug("SSL/TLS connections to guacd will use provider "
+                    + "\"{}\".", sslContext.getProvider().getName());
+
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to configure SSL/TLS for guacd: {}", e.getMessage());
+            logger.debug("Error while reading guacd SSL/TLS properties.", e);
+        }
+        catch (GeneralSecurityException e) {
+            logger.error("Unable to configure SSL/TLS for guacd: {}", e.getMessage());
+            logger.debug("Default SSL/TLS context could not be created.", e);
+        }
+
+    }
+
+    /**
+     * Logs the handshake statistics of the installed context, if any.
+     */
+    public synchronized void logStatistics() {
+        if (context != null)
+            logger.info("SSL/TLS connections to guacd: {}", context);
+    }
+
+}
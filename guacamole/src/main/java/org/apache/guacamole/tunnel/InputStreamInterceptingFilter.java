@@ -19,12 +19,13 @@
 
 package org.apache.guacamole.tunnel;
 
-import com.google.common.io.BaseEncoding;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BlobBuffer;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.protocol.GuacamoleStatus;
@@ -35,7 +36,9 @@ import org.slf4j.LoggerFactory;
  * Filter which selectively intercepts "ack" instructions, automatically reading
  * from or closing the stream given with interceptStream(). The required "blob"
  * and "end" instructions denoting the content and boundary of the stream are
- * sent automatically.
+ * sent automatically. Up to a fixed number of blobs may be sent before their
+ * corresponding "ack" instructions are received, such that throughput is not
+ * limited to a single blob per round trip.
  */
 public class InputStreamInterceptingFilter
         extends StreamInterceptingFilter<InputStream> {
@@ -46,6 +49,43 @@ public class InputStreamInterceptingFilter
     private static final Logger logger =
             LoggerFactory.getLogger(InputStreamInterceptingFilter.class);
 
+    /**
+     * The number of blobs which may be sent for each stream before their
+     * corresponding "ack" instructions are received, if not otherwise
+     * specified.
+     */
+    public static final int DEFAULT_BLOB_WINDOW = 8;
+
+    /**
+     * The number of blobs which may be sent for each stream before their
+     * corresponding "ack" instructions are received.
+     */
+    private final int blobWindow;
+
+    /**
+     * The progress of each stream currently being intercepted.
+     */
+    private final ConcurrentMap<InterceptedStream<InputStream>, Transfer> transfers =
+            new ConcurrentHashMap<InterceptedStream<InputStream>, Transfer>();
+
+    /**
+     * The progress of sending the contents of a single intercepted stream.
+     * All access to a Transfer must be synchronized on that Transfer.
+     */
+    private static class Transfer {
+
+        /**
+         * The number of blobs sent for which no "ack" has yet been received.
+         */
+        private int unacknowledged = 0;
+
+        /**
+         * Whether the end of the stream has been reached.
+         */
+        private boolean ended = false;
+
+    }
+
     /**
      * Creates a new InputStreamInterceptingFilter which selectively intercepts
      * "ack" instructions. The required "blob" and "end" instructions will
@@ -57,26 +97,28 @@ public class InputStreamInterceptingFilter
      *     instructions should be sent.
      */
     public InputStreamInterceptingFilter(GuacamoleTunnel tunnel) {
-        super(tunnel);
+        this(tunnel, DEFAULT_BLOB_WINDOW);
     }
 
     /**
-     * Injects a "blob" instruction into the outbound Guacamole protocol
-     * stream, as if sent by the connected client. "blob" instructions are used
-     * to send chunks of data along a stream.
+     * Creates a new InputStreamInterceptingFilter which selectively intercepts
+     * "ack" instructions. The required "blob" and "end" instructions will
+     * automatically be sent over the given tunnel based on the content of
+     * provided InputStreams, sending up to the given number of blobs before
+     * their corresponding "ack" instructions are received.
      *
-     * @param index
-     *     The index of the stream that this "blob" instruction relates to.
+     * @param tunnel
+     *     The GuacamoleTunnel over which any required "blob" and "end"
+     *     instructions should be sent.
      *
-     * @param blob
-     *     The chunk of data to send within the "blob" instruction.
+     * @param blobWindow
+     *     The number of blobs which may be sent for each stream before their
+     *     corresponding "ack" instructions are received. Values less than 1
+     *     are treated as 1.
      */
-    private void sendBlob(String index, byte[] blob) {
-
-        // Send "blob" containing provided data
-        sendInstruction(new GuacamoleInstruction("blob", index,
-           BaseEncoding.base64().encode(blob)));
-
+    public InputStreamInterceptingFilter(GuacamoleTunnel tunnel, int blobWindow) {
+        super(tunnel);
+        this.blobWindow = Math.max(blobWindow, 1);
     }
 
     /**
@@ -92,48 +134,78 @@ public class InputStreamInterceptingFilter
     }
 
     /**
-     * Reads the next chunk of data from the InputStream associated with an
-     * intercepted stream, sending that data as a "blob" instruction over the
-     * GuacamoleTunnel associated with this filter. If the end of the
-     * InputStream is reached, an "end" instruction will automatically be sent.
+     * Closes the given stream, discarding its progress, and sending an "end"
+     * instruction if the stream was still being intercepted.
      *
      * @param stream
-     *     The stream from which the next chunk of data should be read.
+     *     The stream to close.
      */
-    private void readNextBlob(InterceptedStream<InputStream> stream) {
+    private void endStream(InterceptedStream<InputStream> stream) {
 
-        // Read blob from stream if it exists
+        transfers.remove(stream);
+
+        // Close stream, send end if the stream is still valid
+        if (closeInterceptedStream(stream))
+            sendEnd(stream.getIndex());
+
+    }
+
+    /**
+     * Reads further chunks of data from the InputStream associated with an
+     * intercepted stream, sending each chunk as a "blob" instruction over the
+     * GuacamoleTunnel associated with this filter until the number of
+     * unacknowledged blobs reaches the window size. Once the end of the
+     * InputStream is reached and all blobs have been acknowledged, an "end"
+     * instruction will automatically be sent.
+     *
+     * @param stream
+     *     The stream from which further chunks of data should be read.
+     *
+     * @param transfer
+     *     The progress of the given stream.
+     */
+    private void sendNextBlobs(InterceptedStream<InputStream> stream,
+            Transfer transfer) {
+
+        BlobBuffer blob = BlobBuffer.acquire();
+
+        // Read blobs from stream while the window allows
         try {
+            synchronized (transfer) {
+
+                while (!transfer.ended && transfer.unacknowledged < blobWindow) {
 
-            // Read raw data from input stream
-            byte[] blob = new byte[6048];
-            int length = stream.getStream().read(blob);
+                    // End stream if no more data
+                    if (blob.read(stream.getStream()) == -1) {
+                        transfer.ended = true;
+                        break;
+                    }
 
-            // End stream if no more data
-            if (length == -1) {
+                    // Inject corresponding "blob" instruction
+                    sendBlob(stream.getIndex(), blob);
+                    transfer.unacknowledged++;
 
-                // Close stream, send end if the stream is still valid
-                if (closeInterceptedStream(stream))
-                    sendEnd(stream.getIndex());
+                }
 
-                return;
+                // Do not end the stream until all blobs are acknowledged, such
+                // that any failure to handle those blobs is still reported
+                if (!transfer.ended || transfer.unacknowledged > 0)
+                    return;
 
             }
 
-            // Inject corresponding "blob" instruction
-            sendBlob(stream.getIndex(), Arrays.copyOf(blob, length));
+            endStream(stream);
 
         }
 
         // Terminate stream if it cannot be read
         catch (IOException e) {
-
             logger.debug("Unable to read data of intercepted input stream.", e);
+            endStream(stream);
+        }
 
-            // Close stream, send end if the stream is still valid
-            if (closeInterceptedStream(stream))
-                sendEnd(stream.getIndex());
-
+        finally {
+            blob.release();
         }
 
     }
@@ -160,6 +232,11 @@ public class InputStreamInterceptingFilter
         if (stream == null)
             return;
 
+        // Ignore acknowledgements of streams not yet being sent
+        Transfer transfer = transfers.get(stream);
+        if (transfer == null)
+            return;
+
         // Pull status code
         String status = args.get(2);
 
@@ -180,16 +257,27 @@ public class InputStreamInterceptingFilter
 
             // Flag error and close stream
             stream.setStreamError(code, args.get(1));
+            transfers.remove(stream);
             closeInterceptedStream(stream);
             return;
 
         }
 
-        // Send next blob
-        readNextBlob(stream);
+        // Send next blobs now that the window has room
+        synchronized (transfer) {
+            if (transfer.unacknowledged > 0)
+                transfer.unacknowledged--;
+        }
+
+        sendNextBlobs(stream, transfer);
 
     }
 
+    @Override
+    public boolean appliesTo(String opcode) {
+        return opcode.equals("ack");
+    }
+
     @Override
     public GuacamoleInstruction filter(GuacamoleInstruction instruction)
             throws GuacamoleException {
@@ -206,10 +294,19 @@ public class InputStreamInterceptingFilter
     @Override
     protected void handleInterceptedStream(InterceptedStream<InputStream> stream) {
 
-        // Read the first blob. Note that future blobs will be read in response
-        // to received "ack" instructions.
-        readNextBlob(stream);
+        Transfer transfer = new Transfer();
+        transfers.put(stream, transfer);
+
+        // Send the first window of blobs. Note that future blobs will be sent
+        // in response to received "ack" instructions.
+        sendNextBlobs(stream, transfer);
 
     }
 
+    @Override
+    public void closeAllInterceptedStreams() {
+        transfers.clear();
+        super.closeAllInterceptedStreams();
+    }
+
 }
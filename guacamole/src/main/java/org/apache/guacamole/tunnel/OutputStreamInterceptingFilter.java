@@ -19,11 +19,11 @@
 
 package org.apache.guacamole.tunnel;
 
-import com.google.common.io.BaseEncoding;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BlobBuffer;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.protocol.GuacamoleStatus;
@@ -96,10 +96,10 @@ public class OutputStreamInterceptingFilter
     }
 
     /**
-     * Handles a single "blob" instruction, decoding its base64 data,
-     * sending that data to the associated OutputStream, and ultimately
-     * dropping the "blob" instruction such that the client never receives
-     * it. If no OutputStream is associated with the stream index within
+     * Handles a single "blob" instruction, decoding its base64 data into a
+     * pooled buffer, sending that data to the associated OutputStream, and
+     * ultimately dropping the "blob" instruction such that the client never
+     * receives it. If no OutputStream is associated with the stream index within
      * the "blob" instruction, the instruction is passed through untouched.
      *
      * @param instruction
@@ -123,22 +123,21 @@ public class OutputStreamInterceptingFilter
         if (stream == null)
             return instruction;
 
-        // Decode blob
-        byte[] blob;
+        // Decode blob into a pooled buffer
+        BlobBuffer blob = BlobBuffer.acquire();
         try {
-            String data = args.get(1);
-            blob = BaseEncoding.base64().decode(data);
-        }
-        catch (IllegalArgumentException e) {
-            logger.warn("Received base64 data for intercepted stream was invalid.");
-            logger.debug("Decoding base64 data for intercepted stream failed.", e);
-            return null;
-        }
 
-        try {
+            try {
+                blob.decode(args.get(1));
+            }
+            catch (IllegalArgumentException e) {
+                logger.warn("Received base64 data for intercepted stream was invalid.");
+                logger.debug("Decoding base64 data for intercepted stream failed.", e);
+                return null;
+            }
 
             // Attempt to write data to stream
-            stream.getStream().write(blob);
+            stream.getStream().write(blob.getData(), 0, blob.getLength());
 
             // Force client to respond with their own "ack" if we need to
             // confirm that they are not falling behind with respect to the
@@ -156,6 +155,9 @@ public class OutputStreamInterceptingFilter
             sendAck(index, "FAIL", GuacamoleStatus.SERVER_ERROR);
             logger.debug("Write failed for intercepted stream.", e);
         }
+        finally {
+            blob.release();
+        }
 
         // Instruction was handled purely internally
         return null;
@@ -193,6 +195,12 @@ public class OutputStreamInterceptingFilter
         acknowledgeBlobs = false;
     }
 
+    @Override
+    public boolean appliesTo(String opcode) {
+        return opcode.equals("blob") || opcode.equals("end")
+                || opcode.equals("sync");
+    }
+
     @Override
     public GuacamoleInstruction filter(GuacamoleInstruction instruction)
             throws GuacamoleException {
@@ -21,6 +21,7 @@ package org.apache.guacamole.tunnel;
 
 import java.io.Closeable;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BlobBuffer;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleFilter;
@@ -101,6 +102,36 @@ public abstract class StreamInterceptingFilter<T extends Closeable>
 
     }
 
+    /**
+     * Injects a "blob" instruction containing the current contents of the
+     * given buffer into the outbound Guacamole protocol stream (GuacamoleWriter)
+     * of the tunnel associated with this StreamInterceptingFilter, as if the
+     * instruction was sent by the connected client. The buffer is encoded
+     * directly into the stream without constructing a GuacamoleInstruction.
+     *
+     * @param index
+     *     The index of the stream that the "blob" instruction relates to.
+     *
+     * @param blob
+     *     The buffer containing the data to send.
+     */
+    protected void sendBlob(String index, BlobBuffer blob) {
+
+        // Temporarily acquire writer to send "blob" instruction
+        GuacamoleWriter writer = tunnel.acquireWriter();
+
+        try {
+            blob.writeBlob(writer, index);
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Unable to send \"blob\" for intercepted stream.", e);
+        }
+
+        // Done writing
+        tunnel.releaseWriter();
+
+    }
+
     /**
      * Returns the stream having the given index and currently being intercepted
      * by this filter.
@@ -45,6 +45,17 @@ public class StreamInterceptingTunnel extends DelegatingGuacamoleTunnel {
     private static final Logger logger =
             LoggerFactory.getLogger(StreamInterceptingTunnel.class);
 
+    /**
+     * The filter to use for providing stream data from InputStreams.
+     */
+    private final InputStreamInterceptingFilter inputStreamFilter;
+
+    /**
+     * The filter to use for rerouting received stream data to OutputStreams.
+     */
+    private final OutputStreamInterceptingFilter outputStreamFilter =
+            new OutputStreamInterceptingFilter(this);
+
     /**
      * Creates a new StreamInterceptingTunnel which wraps the given tunnel,
      * reading and intercepting stream-related instructions as necessary to
@@ -55,20 +66,28 @@ public class StreamInterceptingTunnel extends DelegatingGuacamoleTunnel {
      *     interceptStream() is invoked.
      */
     public StreamInterceptingTunnel(GuacamoleTunnel tunnel) {
-        super(tunnel);
+        this(tunnel, InputStreamInterceptingFilter.DEFAULT_BLOB_WINDOW);
     }
 
     /**
-     * The filter to use for providing stream data from InputStreams.
-     */
-    private final InputStreamInterceptingFilter inputStreamFilter =
-            new InputStreamInterceptingFilter(this);
-
-    /**
-     * The filter to use for rerouting received stream data to OutputStreams.
+     * Creates a new StreamInterceptingTunnel which wraps the given tunnel,
+     * reading and intercepting stream-related instructions as necessary to
+     * fulfill calls to interceptStream(), sending up to the given number of
+     * blobs of each InputStream before their corresponding "ack"
+     * instructions are received.
+     *
+     * @param tunnel
+     *     The tunnel whose stream-related instruction should be intercepted if
+     *     interceptStream() is invoked.
+     *
+     * @param blobWindow
+     *     The number of blobs of each InputStream which may be sent before
+     *     their corresponding "ack" instructions are received.
      */
-    private final OutputStreamInterceptingFilter outputStreamFilter =
-            new OutputStreamInterceptingFilter(this);
+    public StreamInterceptingTunnel(GuacamoleTunnel tunnel, int blobWindow) {
+        super(tunnel);
+        this.inputStreamFilter = new InputStreamInterceptingFilter(this, blobWindow);
+    }
 
     /**
      * Intercept all data received along the stream having the given index,
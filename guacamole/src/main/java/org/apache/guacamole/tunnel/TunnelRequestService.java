@@ -27,6 +27,7 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
 import org.apache.guacamole.GuacamoleSession;
 import org.apache.guacamole.GuacamoleUnauthorizedException;
+import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.*;
 import org.apache.guacamole.net.event.TunnelCloseEvent;
@@ -34,6 +35,7 @@ import org.apache.guacamole.net.event.TunnelConnectEvent;
 import org.apache.guacamole.protocol.GuacamoleConfiguration;	
 import org.apache.guacamole.rest.auth.AuthenticationService;
 import org.apache.guacamole.protocol.GuacamoleClientInformation;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
 import org.apache.guacamole.rest.event.ListenerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +55,26 @@ public class TunnelRequestService {
      */
     private final Logger logger = LoggerFactory.getLogger(TunnelRequestService.class);
 
+    /**
+     * The number of blobs of each file uploaded through the REST API which may
+     * be sent to guacd before their corresponding "ack" instructions are
+     * received. If unset, InputStreamInterceptingFilter.DEFAULT_BLOB_WINDOW
+     * is used.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_STREAM_WINDOW =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-stream-window"; }
+
+    };
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
     /**
      * A service for authenticating users from auth tokens.
      */
@@ -269,7 +291,9 @@ public class TunnelRequestService {
             final String id) throws GuacamoleException {
 
         // Monitor tunnel closure and data
-        UserTunnel monitoredTunnel = new UserTunnel(context, tunnel) {
+        UserTunnel monitoredTunnel = new UserTunnel(context, tunnel,
+                environment.getProperty(TUNNEL_STREAM_WINDOW,
+                        InputStreamInterceptingFilter.DEFAULT_BLOB_WINDOW)) {
 
             /**
              * The time the connection began, measured in milliseconds since
@@ -60,6 +60,33 @@ public class UserTunnel extends StreamInterceptingTunnel {
         this.userContext = userContext;
     }
 
+    /**
+     * Creates a new UserTunnel which wraps the given tunnel, associating it
+     * with the given UserContext, and sending up to the given number of blobs
+     * of each intercepted InputStream before their corresponding "ack"
+     * instructions are received. The UserContext MUST be from the
+     * AuthenticationProvider that created this tunnel, and MUST be associated
+     * with the user for whom this tunnel was created.
+     *
+     * @param userContext
+     *     The UserContext associated with the user for whom this tunnel was
+     *     created. This UserContext MUST be from the AuthenticationProvider
+     *     that created this tunnel.
+     *
+     * @param tunnel
+     *     The tunnel whose stream-related instruction should be intercepted if
+     *     interceptStream() is invoked.
+     *
+     * @param blobWindow
+     *     The number of blobs of each intercepted InputStream which may be
+     *     sent before their corresponding "ack" instructions are received.
+     */
+    public UserTunnel(UserContext userContext, GuacamoleTunnel tunnel,
+            int blobWindow) {
+        super(tunnel, blobWindow);
+        this.userContext = userContext;
+    }
+
     /**
      * Returns the UserContext of the user for whom this tunnel was created.
      * This UserContext will be the UserContext from the AuthenticationProvider
@@ -24,6 +24,8 @@ import com.google.inject.Singleton;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.FrameCoalescingPolicy;
+import org.apache.guacamole.tunnel.FrameCoalescingService;
 import org.apache.guacamole.tunnel.TunnelRequestService;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.servlet.GuacamoleHTTPTunnelServlet;
@@ -42,12 +44,24 @@ public class RestrictedGuacamoleHTTPTunnelServlet extends GuacamoleHTTPTunnelSer
      */
     @Inject
     private TunnelRequestService tunnelRequestService;
+
+    /**
+     * Service providing the policy for combining instructions into the
+     * chunks flushed to the client.
+     */
+    @Inject
+    private FrameCoalescingService frameCoalescingService;
     
     /**
      * Logger for this class.
      */
     private static final Logger logger = LoggerFactory.getLogger(RestrictedGuacamoleHTTPTunnelServlet.class);
 
+    @Override
+    protected FrameCoalescingPolicy getFrameCoalescingPolicy() {
+        return frameCoalescingService.getPolicy();
+    }
+
     @Override
     protected GuacamoleTunnel doConnect(HttpServletRequest request) throws GuacamoleException {
 
@@ -21,13 +21,16 @@ package org.apache.guacamole.tunnel.websocket;
 
 import com.google.inject.Provider;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import javax.websocket.EndpointConfig;
 import javax.websocket.HandshakeResponse;
 import javax.websocket.Session;
 import javax.websocket.server.HandshakeRequest;
 import javax.websocket.server.ServerEndpointConfig;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.FrameCoalescingPolicy;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.tunnel.FrameCoalescingService;
 import org.apache.guacamole.tunnel.TunnelRequest;
 import org.apache.guacamole.tunnel.TunnelRequestService;
 import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
@@ -50,6 +53,18 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
      */
     private static final String TUNNEL_REQUEST_SERVICE_PROPERTY = "WS_GUAC_TUNNEL_REQUEST_SERVICE";
 
+    /**
+     * Unique string which shall be used to store the executor shared by all
+     * WebSocket tunnels for relaying instructions from guacd, if any.
+     */
+    private static final String READ_EXECUTOR_PROPERTY = "WS_GUAC_READ_EXECUTOR";
+
+    /**
+     * Unique string which shall be used to store the policy determining how
+     * instructions are combined into the frames sent to the client.
+     */
+    private static final String COALESCING_POLICY_PROPERTY = "WS_GUAC_COALESCING_POLICY";
+
     /**
      * Configurator implementation which stores the requested GuacamoleTunnel
      * within the user properties. The GuacamoleTunnel will be later retrieved
@@ -62,6 +77,18 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
          * tunnel requests.
          */
         private final Provider<TunnelRequestService> tunnelRequestServiceProvider;
+
+        /**
+         * Provider which provides the service determining the executor
+         * shared by all WebSocket tunnels for relaying instructions.
+         */
+        private final Provider<WebSocketReadExecutorService> readExecutorServiceProvider;
+
+        /**
+         * Provider which provides the service determining how instructions
+         * are combined into the frames sent to the client.
+         */
+        private final Provider<FrameCoalescingService> frameCoalescingServiceProvider;
          
         /**
          * Creates a new Configurator which uses the given tunnel request
@@ -71,9 +98,21 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
          * @param tunnelRequestServiceProvider
          *     The tunnel request service provider to use for all new
          *     connections.
+         *
+         * @param readExecutorServiceProvider
+         *     The provider of the service determining the executor shared by
+         *     all WebSocket tunnels for relaying instructions.
+         *
+         * @param frameCoalescingServiceProvider
+         *     The provider of the service determining how instructions are
+         *     combined into the frames sent to the client.
          */
-        public Configurator(Provider<TunnelRequestService> tunnelRequestServiceProvider) {
+        public Configurator(Provider<TunnelRequestService> tunnelRequestServiceProvider,
+                Provider<WebSocketReadExecutorService> readExecutorServiceProvider,
+                Provider<FrameCoalescingService> frameCoalescingServiceProvider) {
             this.tunnelRequestServiceProvider = tunnelRequestServiceProvider;
+            this.readExecutorServiceProvider = readExecutorServiceProvider;
+            this.frameCoalescingServiceProvider = frameCoalescingServiceProvider;
         }
         
         @Override
@@ -88,11 +127,33 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
             userProperties.clear();
             userProperties.put(TUNNEL_REQUEST_PROPERTY, new WebSocketTunnelRequest(request));
             userProperties.put(TUNNEL_REQUEST_SERVICE_PROPERTY, tunnelRequestServiceProvider.get());
+            userProperties.put(COALESCING_POLICY_PROPERTY, frameCoalescingServiceProvider.get().getPolicy());
+
+            // Store shared read executor, if configured
+            Executor readExecutor = readExecutorServiceProvider.get().getExecutor();
+            if (readExecutor != null)
+                userProperties.put(READ_EXECUTOR_PROPERTY, readExecutor);
 
         }
         
     }
     
+    @Override
+    protected Executor getReadExecutor(EndpointConfig config) {
+        return (Executor) config.getUserProperties().get(READ_EXECUTOR_PROPERTY);
+    }
+
+    @Override
+    protected FrameCoalescingPolicy getFrameCoalescingPolicy(EndpointConfig config) {
+
+        FrameCoalescingPolicy policy = (FrameCoalescingPolicy) config.getUserProperties().get(COALESCING_POLICY_PROPERTY);
+        if (policy == null)
+            return super.getFrameCoalescingPolicy(config);
+
+        return policy;
+
+    }
+
     @Override
     protected GuacamoleTunnel createTunnel(Session session,
             EndpointConfig config) throws GuacamoleException {
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel.websocket;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which provides the executor shared by all WebSocket tunnels for
+ * relaying instructions from guacd, if so configured within
+ * guacamole.properties. The executor runs each tunnel within its own
+ * virtual thread, which blocks within reads from guacd without holding a
+ * platform thread. By default, or if the running JVM does not support
+ * virtual threads, no executor is provided, and each WebSocket tunnel uses
+ * its own, dedicated thread.
+ */
+@Singleton
+public class WebSocketReadExecutorService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketReadExecutorService.class);
+
+    /**
+     * Whether WebSocket tunnels should relay instructions from guacd within
+     * virtual threads, rather than dedicated platform threads. Virtual
+     * threads require Java 21 or later. If false or unset, each WebSocket
+     * tunnel uses its own, dedicated platform thread.
+     */
+    private static final BooleanGuacamoleProperty WEBSOCKET_VIRTUAL_THREADS =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "websocket-virtual-threads"; }
+
+    };
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * The shared executor, or null if no executor has yet been created or
+     * none is configured.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Whether guacamole.properties has been read to determine whether an
+     * executor should be created.
+     */
+    private boolean initialized = false;
+
+    /**
+     * Whether this service has been shut down.
+     */
+    private boolean shutdown = false;
+
+    /**
+     * Creates a new executor which runs each task within its own virtual
+     * thread. As this webapp is built for Java 8, the executor is created
+     * reflectively.
+     *
+     * @return
+     *     A new executor which runs each task within its own virtual thread,
+     *     or null if the running JVM does not support virtual threads.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        }
+
+        // Virtual threads are not supported prior to Java 21
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+
+        catch (IllegalAccessException | InvocationTargetException e) {
+            logger.debug("Unable to create virtual thread executor.", e);
+            return null;
+        }
+
+    }
+
+    /**
+     * Returns the executor which should be shared by all WebSocket tunnels
+     * for relaying instructions from guacd. The executor is created upon
+     * first use.
+     *
+     * @return
+     *     The shared executor, or null if each WebSocket tunnel should use
+     *     its own, dedicated thread.
+     */
+    public synchronized ExecutorService getExecutor() {
+
+        if (initialized || shutdown)
+            return executor;
+
+        initialized = true;
+
+        boolean virtualThreads;
+        try {
+            virtualThreads = environment.getProperty(WEBSOCKET_VIRTUAL_THREADS, false);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading whether WebSocket tunnels should use virtual threads.", e);
+            virtualThreads = false;
+        }
+
+        // Use dedicated threads unless explicitly configured otherwise
+        if (!virtualThreads)
+            return null;
+
+        executor = createVirtualThreadExecutor();
+        if (executor == null) {
+            logger.warn("Virtual threads are not supported by this version "
+                    + "of Java. WebSocket tunnels will use dedicated threads.");
+            return null;
+        }
+
+        logger.info("WebSocket tunnels will be relayed within virtual threads.");
+        return executor;
+
+    }
+
+    /**
+     * Shuts down the shared executor, if any, interrupting all tunnels which
+     * are still being relayed.
+     */
+    public synchronized void shutdown() {
+
+        shutdown = true;
+
+        if (executor != null)
+            executor.shutdownNow();
+
+    }
+
+}
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import javax.websocket.DeploymentException;
 import javax.websocket.server.ServerContainer;
 import javax.websocket.server.ServerEndpointConfig;
+import org.apache.guacamole.tunnel.FrameCoalescingService;
 import org.apache.guacamole.tunnel.TunnelLoader;
 import org.apache.guacamole.tunnel.TunnelRequestService;
 import org.slf4j.Logger;
@@ -76,11 +77,13 @@ public class WebSocketTunnelModule extends ServletModule implements TunnelLoader
         }
 
         Provider<TunnelRequestService> tunnelRequestServiceProvider = getProvider(TunnelRequestService.class);
+        Provider<WebSocketReadExecutorService> readExecutorServiceProvider = getProvider(WebSocketReadExecutorService.class);
+        Provider<FrameCoalescingService> frameCoalescingServiceProvider = getProvider(FrameCoalescingService.class);
 
         // Build configuration for WebSocket tunnel
         ServerEndpointConfig config =
                 ServerEndpointConfig.Builder.create(RestrictedGuacamoleWebSocketTunnelEndpoint.class, "/websocket-tunnel")
-                                            .configurator(new RestrictedGuacamoleWebSocketTunnelEndpoint.Configurator(tunnelRequestServiceProvider))
+                                            .configurator(new RestrictedGuacamoleWebSocketTunnelEndpoint.Configurator(tunnelRequestServiceProvider, readExecutorServiceProvider, frameCoalescingServiceProvider))
                                             .subprotocols(Arrays.asList(new String[]{"guacamole"}))
                                             .build();
 